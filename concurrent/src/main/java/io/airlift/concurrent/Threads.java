@@ -2,10 +2,37 @@ package io.airlift.concurrent;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public final class Threads
 {
+    // Thread.ofVirtual() only exists on Java 21 and later, so it is looked up reflectively
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+        }
+        catch (ClassNotFoundException | NoSuchMethodException ignored) {
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
     private Threads() {}
 
     /**
@@ -42,6 +69,70 @@ public final class Threads
                 .build();
     }
 
+    /**
+     * Returns true if the running JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} that creates virtual threads named
+     * with the specified prefix followed by a sequence number.
+     *
+     * @throws UnsupportedOperationException if the running JVM does not
+     * support virtual threads
+     * @see #isVirtualThreadSupported()
+     */
+    public static ThreadFactory virtualThreadsNamed(String prefix)
+    {
+        checkNotNull(prefix, "prefix is null");
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        }
+        catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} that creates virtual threads when the
+     * running JVM supports them and named daemon threads otherwise.
+     *
+     * @param prefix the name prefix; a sequence number is appended to each thread name
+     */
+    public static ThreadFactory virtualOrDaemonThreadsNamed(String prefix)
+    {
+        if (isVirtualThreadSupported()) {
+            return virtualThreadsNamed(prefix);
+        }
+        return daemonThreadsNamed(prefix + "%s");
+    }
+
+    /**
+     * Creates an {@link Executor} that starts a new thread from the specified
+     * factory for every task. This is the intended way to use virtual threads,
+     * which are cheap to create and should never be pooled.
+     */
+    public static Executor threadPerTaskExecutor(final ThreadFactory threadFactory)
+    {
+        checkNotNull(threadFactory, "threadFactory is null");
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                threadFactory.newThread(task).start();
+            }
+        };
+    }
+
     private static class ContextClassLoaderThreadFactory
             implements ThreadFactory
     {
@@ -0,0 +1,800 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.RequestBudget;
+import io.airlift.http.client.RequestStats;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An {@link HttpClient} that sends each request to one of the HTTP endpoints
+ * of a discovered service.
+ * <p>
+ * Only the path and query of the request URI are used. They are resolved
+ * against the selected endpoint, so callers can use any placeholder scheme
+ * and host (e.g. {@code http://service/v1/foo}). The endpoint is chosen by
+ * comparing two random candidates ("power of two choices") on the configured
+ * {@link BalancingPolicy}, which avoids herding onto a single endpoint while
+ * still steering load away from busy or slow endpoints.
+ * <p>
+ * With a {@link HedgingPolicy}, an asynchronous read-only request that has not
+ * completed after the hedge delay is duplicated to a second endpoint. The
+ * first successful response wins and the other request is cancelled, which
+ * aborts the underlying HTTP exchange. A server error response counts as a
+ * failed attempt, so it does not cancel an attempt that may still succeed. Each attempt buffers its response, and
+ * the caller's response handler is applied once, to the winning response
+ * only, so the handler may be stateful or consume the body as a stream.
+ */
+@Beta
+public class BalancingHttpClient
+        implements HttpClient
+{
+    private static final Logger log = Logger.get(BalancingHttpClient.class);
+    private static final int MAX_HEDGE_BURST = 10;
+    private static final long HEDGE_DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final BufferingResponseHandler BUFFERING_RESPONSE_HANDLER = new BufferingResponseHandler();
+
+    public enum BalancingPolicy
+    {
+        /**
+         * Choose the endpoint with the fewest requests in flight.
+         */
+        OUTSTANDING_REQUESTS
+                {
+                    @Override
+                    double cost(EndpointStats endpoint, double defaultLatencyNanos)
+                    {
+                        return endpoint.getOutstandingRequests();
+                    }
+                },
+
+        /**
+         * Choose the endpoint with the lowest moving average latency,
+         * weighted by the number of requests in flight. An endpoint that has
+         * not completed a request yet is assumed to have the median latency
+         * of the others, and the time its requests have been in flight counts
+         * towards its latency, so it is not treated as infinitely fast.
+         */
+        EWMA_LATENCY
+                {
+                    @Override
+                    double cost(EndpointStats endpoint, double defaultLatencyNanos)
+                    {
+                        return endpoint.getLoadLatencyNanos(defaultLatencyNanos) * (endpoint.getOutstandingRequests() + 1);
+                    }
+                };
+
+        /**
+         * @param defaultLatencyNanos the latency to assume for an endpoint
+         * with no completed requests
+         */
+        abstract double cost(EndpointStats endpoint, double defaultLatencyNanos);
+    }
+
+    private final ServiceSelector serviceSelector;
+    private final HttpServiceSelector httpServiceSelector;
+    private final HttpClient httpClient;
+    private final BalancingPolicy policy;
+    private final MBeanExporter exporter;
+    private final Map<URI, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private volatile Set<URI> currentUris = ImmutableSet.of();
+
+    private final HedgingPolicy hedgingPolicy;
+    private final ScheduledExecutorService hedgeExecutor;
+    private final RequestBudget hedgeBudget;
+    private final CounterStat hedgesSent = new CounterStat();
+    private final CounterStat hedgesWon = new CounterStat();
+    private final CounterStat hedgesOverBudget = new CounterStat();
+    private volatile long hedgeDelayNanos;
+    private volatile long hedgeDelayComputedNanos;
+
+    public BalancingHttpClient(ServiceSelector serviceSelector, HttpClient httpClient, BalancingPolicy policy)
+    {
+        this(serviceSelector, httpClient, policy, null);
+    }
+
+    /**
+     * @param exporter if not null, the stats of each endpoint are exported
+     * while the endpoint is part of the service
+     */
+    public BalancingHttpClient(ServiceSelector serviceSelector, HttpClient httpClient, BalancingPolicy policy, @Nullable MBeanExporter exporter)
+    {
+        this(serviceSelector, httpClient, policy, null, null, exporter);
+    }
+
+    /**
+     * @param hedgingPolicy if not null, slow asynchronous read-only requests are hedged
+     * @param hedgeExecutor used to schedule hedges; required if hedging is enabled
+     * @param exporter if not null, the stats of each endpoint are exported
+     * while the endpoint is part of the service
+     */
+    public BalancingHttpClient(
+            ServiceSelector serviceSelector,
+            HttpClient httpClient,
+            BalancingPolicy policy,
+            @Nullable HedgingPolicy hedgingPolicy,
+            @Nullable ScheduledExecutorService hedgeExecutor,
+            @Nullable MBeanExporter exporter)
+    {
+        this.serviceSelector = checkNotNull(serviceSelector, "serviceSelector is null");
+        this.httpServiceSelector = new HttpServiceSelectorImpl(serviceSelector);
+        this.httpClient = checkNotNull(httpClient, "httpClient is null");
+        this.policy = checkNotNull(policy, "policy is null");
+        this.exporter = exporter;
+
+        checkArgument(hedgingPolicy == null || hedgeExecutor != null, "hedgeExecutor is required for hedging");
+        this.hedgingPolicy = hedgingPolicy;
+        this.hedgeExecutor = hedgeExecutor;
+        this.hedgeBudget = (hedgingPolicy == null) ? null : new RequestBudget(hedgingPolicy.getBudgetRatio(), MAX_HEDGE_BURST);
+        this.hedgeDelayComputedNanos = System.nanoTime() - HEDGE_DELAY_REFRESH_NANOS;
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        EndpointStats endpoint = selectEndpoint();
+        if (endpoint == null) {
+            return responseHandler.handleException(request, serviceUnavailable());
+        }
+
+        long start = endpoint.requestStarted();
+        boolean failed = true;
+        try {
+            T value = httpClient.execute(rewriteRequest(request, endpoint.getUri()), responseHandler);
+            failed = false;
+            return value;
+        }
+        finally {
+            endpoint.requestComplete(start, failed);
+        }
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        EndpointStats endpoint = selectEndpoint();
+        if (endpoint == null) {
+            return failedFuture(request, responseHandler, serviceUnavailable());
+        }
+        if (hedgingPolicy != null && hedgingPolicy.isHedgeable(request.getMethod())) {
+            return executeHedged(endpoint, request, responseHandler);
+        }
+        return executeAsync(endpoint, request, responseHandler);
+    }
+
+    private <T, E extends Exception> HttpResponseFuture<T> executeAsync(EndpointStats endpoint, Request request, ResponseHandler<T, E> responseHandler)
+    {
+        return sendAsync(endpoint, rewriteRequest(request, endpoint.getUri()), responseHandler);
+    }
+
+    /**
+     * Sends a request that has already been resolved against the endpoint.
+     */
+    private <T, E extends Exception> HttpResponseFuture<T> sendAsync(final EndpointStats endpoint, Request request, ResponseHandler<T, E> responseHandler)
+    {
+        final long start = endpoint.requestStarted();
+        HttpResponseFuture<T> future;
+        try {
+            future = httpClient.executeAsync(request, responseHandler);
+        }
+        catch (RuntimeException e) {
+            endpoint.requestComplete(start, true);
+            throw e;
+        }
+
+        Futures.addCallback(future, new FutureCallback<T>()
+        {
+            @Override
+            public void onSuccess(T result)
+            {
+                endpoint.requestComplete(start, false);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                // a cancelled request took at least this long, but did not fail
+                endpoint.requestComplete(start, !(t instanceof CancellationException));
+            }
+        });
+        return future;
+    }
+
+    private <T, E extends Exception> HttpResponseFuture<T> executeHedged(final EndpointStats endpoint, final Request request, final ResponseHandler<T, E> responseHandler)
+    {
+        hedgeBudget.requestSent();
+
+        final HedgedResponseFuture<T, E> future = new HedgedResponseFuture<>(responseHandler);
+        future.addAttempt(endpoint, request, false);
+
+        ScheduledFuture<?> hedgeTask = hedgeExecutor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (future.isResolved()) {
+                    return;
+                }
+                EndpointStats hedgeEndpoint = selectEndpoint(endpoint.getUri());
+                if (hedgeEndpoint == null) {
+                    return;
+                }
+                if (!hedgeBudget.tryAcquire()) {
+                    hedgesOverBudget.update(1);
+                    return;
+                }
+                hedgesSent.update(1);
+                future.addAttempt(hedgeEndpoint, request, true);
+            }
+        }, getHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        future.setHedgeTask(hedgeTask);
+
+        return future;
+    }
+
+    private long getHedgeDelayNanos()
+    {
+        long now = System.nanoTime();
+        if (now - hedgeDelayComputedNanos >= HEDGE_DELAY_REFRESH_NANOS) {
+            hedgeDelayNanos = hedgingPolicy.computeDelayNanos(httpClient.getStats().getRequestTime().getOneMinute());
+            hedgeDelayComputedNanos = now;
+        }
+        return hedgeDelayNanos;
+    }
+
+    @VisibleForTesting
+    EndpointStats selectEndpoint()
+    {
+        return selectEndpoint(null);
+    }
+
+    private EndpointStats selectEndpoint(@Nullable URI exclude)
+    {
+        List<URI> uris = selectUris();
+        if (exclude != null) {
+            List<URI> remaining = new ArrayList<>(uris);
+            remaining.remove(exclude);
+            uris = remaining;
+        }
+        if (uris.isEmpty()) {
+            return null;
+        }
+
+        EndpointStats first = getEndpoint(uris.get(0));
+        if (uris.size() == 1) {
+            return first;
+        }
+
+        // the list is shuffled, so the first two entries are a random pair
+        EndpointStats second = getEndpoint(uris.get(1));
+        double defaultLatencyNanos = 0;
+        if (!first.hasLatency() || !second.hasLatency()) {
+            defaultLatencyNanos = getMedianLatencyNanos();
+        }
+        double firstCost = policy.cost(first, defaultLatencyNanos);
+        double secondCost = policy.cost(second, defaultLatencyNanos);
+        if (firstCost == secondCost) {
+            return ThreadLocalRandom.current().nextBoolean() ? first : second;
+        }
+        return firstCost < secondCost ? first : second;
+    }
+
+    /**
+     * Returns the median latency of the endpoints that have completed
+     * requests, or one nanosecond if there are none, which leaves only the
+     * requests in flight to compare.
+     */
+    private double getMedianLatencyNanos()
+    {
+        List<Double> latencies = new ArrayList<>();
+        for (EndpointStats endpoint : endpoints.values()) {
+            if (endpoint.hasLatency()) {
+                latencies.add(endpoint.getLatencyEwmaNanos());
+            }
+        }
+        if (latencies.isEmpty()) {
+            return 1;
+        }
+        Collections.sort(latencies);
+        return latencies.get(latencies.size() / 2);
+    }
+
+    private List<URI> selectUris()
+    {
+        List<URI> uris = httpServiceSelector.selectHttpService();
+        if (uris.isEmpty()) {
+            updateEndpoints(ImmutableSet.<URI>of());
+            return uris;
+        }
+
+        // https endpoints are listed first and favored over http
+        String scheme = uris.get(0).getScheme();
+        ImmutableList.Builder<URI> builder = ImmutableList.builder();
+        for (URI uri : uris) {
+            if (uri.getScheme().equals(scheme)) {
+                builder.add(uri);
+            }
+        }
+        List<URI> selected = builder.build();
+        updateEndpoints(selected);
+        return selected;
+    }
+
+    private EndpointStats getEndpoint(URI uri)
+    {
+        EndpointStats endpoint = endpoints.get(uri);
+        if (endpoint == null) {
+            synchronized (this) {
+                endpoint = endpoints.get(uri);
+                if (endpoint == null) {
+                    endpoint = new EndpointStats(uri);
+                    endpoints.put(uri, endpoint);
+                    export(endpoint);
+                }
+            }
+        }
+        return endpoint;
+    }
+
+    private void updateEndpoints(List<URI> uris)
+    {
+        if (uris.size() == currentUris.size() && currentUris.containsAll(uris)) {
+            return;
+        }
+        synchronized (this) {
+            Set<URI> newUris = ImmutableSet.copyOf(uris);
+            for (URI uri : ImmutableList.copyOf(endpoints.keySet())) {
+                if (!newUris.contains(uri)) {
+                    unexport(endpoints.remove(uri));
+                }
+            }
+            currentUris = newUris;
+        }
+    }
+
+    private static Request rewriteRequest(Request request, URI endpoint)
+    {
+        URI uri = request.getUri();
+        String pathAndQuery = uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            pathAndQuery += "?" + uri.getRawQuery();
+        }
+        return Request.Builder.fromRequest(request)
+                .setUri(endpoint.resolve(pathAndQuery))
+                .build();
+    }
+
+    private DiscoveryException serviceUnavailable()
+    {
+        return new DiscoveryException(String.format("Service type=[%s], pool=[%s] is not available", serviceSelector.getType(), serviceSelector.getPool()));
+    }
+
+    private void export(EndpointStats endpoint)
+    {
+        if (exporter == null) {
+            return;
+        }
+        try {
+            exporter.export(objectName(endpoint), endpoint);
+        }
+        catch (RuntimeException e) {
+            log.warn(e, "Unable to export stats for endpoint %s", endpoint.getUri());
+        }
+    }
+
+    private void unexport(EndpointStats endpoint)
+    {
+        if (exporter == null || endpoint == null) {
+            return;
+        }
+        try {
+            exporter.unexport(objectName(endpoint));
+        }
+        catch (RuntimeException e) {
+            log.warn(e, "Unable to unexport stats for endpoint %s", endpoint.getUri());
+        }
+    }
+
+    private String objectName(EndpointStats endpoint)
+    {
+        return String.format("%s:type=%s,serviceType=%s,pool=%s,endpoint=%s",
+                BalancingHttpClient.class.getPackage().getName(),
+                BalancingHttpClient.class.getSimpleName(),
+                ObjectName.quote(serviceSelector.getType()),
+                ObjectName.quote(serviceSelector.getPool()),
+                ObjectName.quote(endpoint.getUri().toString()));
+    }
+
+    public Map<URI, EndpointStats> getEndpointStats()
+    {
+        return ImmutableMap.copyOf(endpoints);
+    }
+
+    @Managed
+    public int getEndpointCount()
+    {
+        return currentUris.size();
+    }
+
+    @Managed
+    public String getPolicy()
+    {
+        return policy.toString();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getHedgesSent()
+    {
+        return hedgesSent;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getHedgesWon()
+    {
+        return hedgesWon;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getHedgesOverBudget()
+    {
+        return hedgesOverBudget;
+    }
+
+    @Override
+    public RequestStats getStats()
+    {
+        return httpClient.getStats();
+    }
+
+    /**
+     * Removes the exported endpoint stats. The underlying client is shared
+     * and is not closed.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this) {
+            for (EndpointStats endpoint : endpoints.values()) {
+                unexport(endpoint);
+            }
+            endpoints.clear();
+            currentUris = ImmutableSet.of();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("type", serviceSelector.getType())
+                .add("pool", serviceSelector.getPool())
+                .add("policy", policy)
+                .add("hedgingPolicy", hedgingPolicy)
+                .toString();
+    }
+
+    /**
+     * Completes with the first successful attempt and cancels the others.
+     * Fails only once all attempts have failed. Attempts buffer their
+     * responses, and the response handler is applied once, to the response
+     * or failure that resolves the future.
+     */
+    private class HedgedResponseFuture<T, E extends Exception>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private final ResponseHandler<T, E> responseHandler;
+        private final List<HttpResponseFuture<BufferedResponse>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger pendingAttempts = new AtomicInteger();
+        private final AtomicBoolean resolved = new AtomicBoolean();
+        private volatile ScheduledFuture<?> hedgeTask;
+
+        HedgedResponseFuture(ResponseHandler<T, E> responseHandler)
+        {
+            this.responseHandler = responseHandler;
+        }
+
+        boolean isResolved()
+        {
+            return resolved.get();
+        }
+
+        void addAttempt(EndpointStats endpoint, Request request, final boolean hedge)
+        {
+            final Request attemptRequest = rewriteRequest(request, endpoint.getUri());
+            HttpResponseFuture<BufferedResponse> attempt = sendAsync(endpoint, attemptRequest, BUFFERING_RESPONSE_HANDLER);
+            attempts.add(attempt);
+            pendingAttempts.incrementAndGet();
+            Futures.addCallback(attempt, new FutureCallback<BufferedResponse>()
+            {
+                @Override
+                public void onSuccess(BufferedResponse response)
+                {
+                    if (response.getStatusCode() >= 500) {
+                        attemptFailed(attemptRequest, response, null);
+                        return;
+                    }
+                    pendingAttempts.decrementAndGet();
+                    if (!resolved.compareAndSet(false, true)) {
+                        return;
+                    }
+                    if (hedge) {
+                        hedgesWon.update(1);
+                    }
+                    cancelAttempts();
+                    try {
+                        set(responseHandler.handle(attemptRequest, response));
+                    }
+                    catch (Throwable e) {
+                        setException(e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    attemptFailed(attemptRequest, null, t);
+                }
+            });
+
+            // the hedge may have been sent after the future was resolved
+            if (isResolved()) {
+                attempt.cancel(true);
+            }
+        }
+
+        /**
+         * Resolves the future with the failure of the last attempt to
+         * complete, which is either an error response or an exception.
+         */
+        private void attemptFailed(Request attemptRequest, @Nullable BufferedResponse response, @Nullable Throwable t)
+        {
+            if (pendingAttempts.decrementAndGet() != 0 || !resolved.compareAndSet(false, true)) {
+                return;
+            }
+            cancelAttempts();
+            try {
+                if (response != null) {
+                    set(responseHandler.handle(attemptRequest, response));
+                    return;
+                }
+                // give handler a chance to rewrite the exception or return a value instead
+                Exception exception = (t instanceof Exception) ? (Exception) t : new RuntimeException(t);
+                set(responseHandler.handleException(attemptRequest, exception));
+            }
+            catch (Throwable e) {
+                setException(e);
+            }
+        }
+
+        void setHedgeTask(ScheduledFuture<?> hedgeTask)
+        {
+            this.hedgeTask = hedgeTask;
+            if (isResolved()) {
+                hedgeTask.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (!super.cancel(mayInterruptIfRunning)) {
+                return false;
+            }
+            resolved.set(true);
+            cancelAttempts();
+            return true;
+        }
+
+        private void cancelAttempts()
+        {
+            ScheduledFuture<?> task = hedgeTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            for (HttpResponseFuture<BufferedResponse> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+
+        @Override
+        public String getState()
+        {
+            StringBuilder state = new StringBuilder();
+            for (HttpResponseFuture<BufferedResponse> attempt : attempts) {
+                if (state.length() > 0) {
+                    state.append(", ");
+                }
+                state.append(attempt.getState());
+            }
+            return state.toString();
+        }
+    }
+
+    /**
+     * Reads the entire response body into memory, so the response of an
+     * attempt can be handed to the caller's handler after the race is decided.
+     */
+    private static class BufferingResponseHandler
+            implements ResponseHandler<BufferedResponse, Exception>
+    {
+        @Override
+        public BufferedResponse handleException(Request request, Exception exception)
+                throws Exception
+        {
+            throw exception;
+        }
+
+        @Override
+        public BufferedResponse handle(Request request, Response response)
+                throws Exception
+        {
+            byte[] body = ByteStreams.toByteArray(response.getInputStream());
+            return new BufferedResponse(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), body);
+        }
+    }
+
+    private static class BufferedResponse
+            implements Response
+    {
+        private final int statusCode;
+        private final String statusMessage;
+        private final ListMultimap<String, String> headers;
+        private final byte[] body;
+
+        private BufferedResponse(int statusCode, String statusMessage, ListMultimap<String, String> headers, byte[] body)
+        {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = ImmutableListMultimap.copyOf(headers);
+            this.body = body;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusMessage()
+        {
+            return statusMessage;
+        }
+
+        @Override
+        public String getHeader(String name)
+        {
+            for (Entry<String, String> entry : headers.entries()) {
+                if (entry.getKey().equalsIgnoreCase(name)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public ListMultimap<String, String> getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return body.length;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(body);
+        }
+    }
+
+    private static <T, E extends Exception> HttpResponseFuture<T> failedFuture(Request request, ResponseHandler<T, E> responseHandler, Exception exception)
+    {
+        ImmediateHttpResponseFuture<T> future = new ImmediateHttpResponseFuture<>();
+        try {
+            // give handler a chance to rewrite the exception or return a value instead
+            future.set(responseHandler.handleException(request, exception));
+        }
+        catch (Throwable e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    private static class ImmediateHttpResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private volatile String state = "WAITING_FOR_ENDPOINT";
+
+        @Override
+        public String getState()
+        {
+            return state;
+        }
+
+        @Override
+        protected boolean set(@Nullable T value)
+        {
+            state = "DONE";
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable)
+        {
+            state = "FAILED";
+            return super.setException(throwable);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Load and latency of a single service endpoint as seen by a {@link BalancingHttpClient}.
+ */
+@Beta
+public class EndpointStats
+{
+    // decay time constant of the latency moving average
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final URI uri;
+    private final Ticker ticker;
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+    // sum of the start times of the requests in flight, relative to createdNanos
+    private final AtomicLong outstandingStartNanos = new AtomicLong();
+    private final long createdNanos;
+    private final CounterStat requests = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+    private final TimeStat latency = new TimeStat(TimeUnit.MILLISECONDS);
+
+    @GuardedBy("this")
+    private boolean hasLatency;
+    @GuardedBy("this")
+    private double latencyEwmaNanos;
+    @GuardedBy("this")
+    private long lastUpdateNanos;
+
+    public EndpointStats(URI uri)
+    {
+        this(uri, Ticker.systemTicker());
+    }
+
+    public EndpointStats(URI uri, Ticker ticker)
+    {
+        this.uri = checkNotNull(uri, "uri is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        this.createdNanos = ticker.read();
+        this.lastUpdateNanos = createdNanos;
+    }
+
+    public URI getUri()
+    {
+        return uri;
+    }
+
+    /**
+     * Marks the start of a request and returns the start time to pass to {@link #requestComplete}.
+     */
+    public long requestStarted()
+    {
+        long start = ticker.read();
+        outstandingStartNanos.addAndGet(start - createdNanos);
+        outstandingRequests.incrementAndGet();
+        requests.update(1);
+        return start;
+    }
+
+    public void requestComplete(long startNanos, boolean failed)
+    {
+        outstandingRequests.decrementAndGet();
+        outstandingStartNanos.addAndGet(createdNanos - startNanos);
+        long now = ticker.read();
+        long elapsed = now - startNanos;
+        latency.add(elapsed, TimeUnit.NANOSECONDS);
+        if (failed) {
+            failures.update(1);
+        }
+        synchronized (this) {
+            if (hasLatency) {
+                double weight = Math.exp(-(now - lastUpdateNanos) / DECAY_NANOS);
+                latencyEwmaNanos = (latencyEwmaNanos * weight) + (elapsed * (1.0 - weight));
+            }
+            else {
+                // the first latency is taken as is rather than averaged with zero
+                latencyEwmaNanos = elapsed;
+                hasLatency = true;
+            }
+            lastUpdateNanos = now;
+        }
+    }
+
+    @Managed
+    public int getOutstandingRequests()
+    {
+        return outstandingRequests.get();
+    }
+
+    @Managed
+    public synchronized double getLatencyEwmaMillis()
+    {
+        return latencyEwmaNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    synchronized double getLatencyEwmaNanos()
+    {
+        return latencyEwmaNanos;
+    }
+
+    synchronized boolean hasLatency()
+    {
+        return hasLatency;
+    }
+
+    /**
+     * Returns the latency moving average, or the average time the requests
+     * in flight have been running if that is longer, so an endpoint that
+     * stops completing requests does not keep looking fast.
+     *
+     * @param defaultLatencyNanos used in place of the moving average until
+     * a request to the endpoint has completed
+     */
+    double getLoadLatencyNanos(double defaultLatencyNanos)
+    {
+        double latency;
+        synchronized (this) {
+            latency = hasLatency ? latencyEwmaNanos : defaultLatencyNanos;
+        }
+        // the two values are not read atomically, which is fine for balancing
+        int outstanding = outstandingRequests.get();
+        if (outstanding > 0) {
+            double averageStart = (double) outstandingStartNanos.get() / outstanding;
+            latency = Math.max(latency, (ticker.read() - createdNanos) - averageStart);
+        }
+        return latency;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRequests()
+    {
+        return requests;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailures()
+    {
+        return failures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getLatency()
+    {
+        return latency;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("uri", uri)
+                .add("outstandingRequests", getOutstandingRequests())
+                .add("latencyEwmaMillis", getLatencyEwmaMillis())
+                .toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.stats.TimeDistribution;
+import io.airlift.units.Duration;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes when {@link BalancingHttpClient} sends a duplicate of a slow
+ * read-only request to a second endpoint.
+ */
+@Beta
+public class HedgingPolicy
+{
+    private static final Set<String> HEDGEABLE_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS");
+
+    private final Duration minDelay;
+    private final double percentile;
+    private final double budgetRatio;
+
+    private HedgingPolicy(Duration minDelay, double percentile, double budgetRatio)
+    {
+        this.minDelay = checkNotNull(minDelay, "minDelay is null");
+        checkArgument(Double.isNaN(percentile) || (percentile > 0 && percentile < 1), "percentile must be between 0 and 1");
+        checkArgument(budgetRatio > 0 && budgetRatio <= 1, "budgetRatio must be between 0 and 1");
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * Hedge requests that have not responded after a fixed delay.
+     *
+     * @param budgetRatio maximum number of hedges as a fraction of requests, e.g. 0.05
+     */
+    public static HedgingPolicy fixedDelay(Duration delay, double budgetRatio)
+    {
+        return new HedgingPolicy(delay, Double.NaN, budgetRatio);
+    }
+
+    /**
+     * Hedge requests that have not responded after the given percentile of
+     * the recent request times of the client, but never before {@code minDelay}.
+     *
+     * @param budgetRatio maximum number of hedges as a fraction of requests, e.g. 0.05
+     */
+    public static HedgingPolicy percentileDelay(double percentile, Duration minDelay, double budgetRatio)
+    {
+        checkArgument(!Double.isNaN(percentile), "percentile is NaN");
+        return new HedgingPolicy(minDelay, percentile, budgetRatio);
+    }
+
+    public double getBudgetRatio()
+    {
+        return budgetRatio;
+    }
+
+    public boolean isHedgeable(String method)
+    {
+        return HEDGEABLE_METHODS.contains(method);
+    }
+
+    /**
+     * Computes the delay in nanoseconds after which a hedge should be sent.
+     */
+    long computeDelayNanos(TimeDistribution requestTime)
+    {
+        long minDelayNanos = minDelay.roundTo(TimeUnit.NANOSECONDS);
+        if (Double.isNaN(percentile)) {
+            return minDelayNanos;
+        }
+
+        // percentiles are reported in steps of 0.01 up to 0.99
+        double key = Math.min(99, Math.round(percentile * 100)) / 100.0;
+        Double value = requestTime.getPercentiles().get(key);
+        if (value == null || value.isNaN()) {
+            return minDelayNanos;
+        }
+        return Math.max(minDelayNanos, (long) (value * requestTime.getUnit().toNanos(1)));
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("minDelay", minDelay)
+                .add("percentile", percentile)
+                .add("budgetRatio", budgetRatio)
+                .toString();
+    }
+}
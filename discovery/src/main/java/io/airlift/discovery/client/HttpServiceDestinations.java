@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import com.google.common.base.Supplier;
+
+import java.net.URI;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Supplies the current URIs of an {@link HttpServiceSelector}, for example
+ * to keep connections warm with {@code JettyHttpClient.addWarmDestinations}.
+ */
+public class HttpServiceDestinations
+        implements Supplier<List<URI>>
+{
+    private final HttpServiceSelector serviceSelector;
+
+    public HttpServiceDestinations(HttpServiceSelector serviceSelector)
+    {
+        this.serviceSelector = checkNotNull(serviceSelector, "serviceSelector is null");
+    }
+
+    public HttpServiceDestinations(ServiceSelector serviceSelector)
+    {
+        this(new HttpServiceSelectorImpl(serviceSelector));
+    }
+
+    @Override
+    public List<URI> get()
+    {
+        return serviceSelector.selectHttpService();
+    }
+
+    @Override
+    public String toString()
+    {
+        return serviceSelector.getType() + ":" + serviceSelector.getPool();
+    }
+}
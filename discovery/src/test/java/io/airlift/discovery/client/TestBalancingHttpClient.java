@@ -0,0 +1,500 @@
+package io.airlift.discovery.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multiset;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.airlift.discovery.client.BalancingHttpClient.BalancingPolicy;
+import io.airlift.discovery.client.testing.StaticServiceSelector;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.stats.TimeDistribution;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.ResponseHandlerUtils.propagate;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.airlift.testing.Assertions.assertInstanceOf;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBalancingHttpClient
+{
+    private static final URI FIRST = URI.create("http://first.example.com:8080");
+    private static final URI SECOND = URI.create("http://second.example.com:8080");
+    private static final URI SECURE = URI.create("https://secure.example.com:8443");
+
+    @Test
+    public void testRequestIsResolvedAgainstEndpoint()
+    {
+        RecordingProcessor processor = new RecordingProcessor();
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST), new TestingHttpClient(processor), BalancingPolicy.OUTSTANDING_REQUESTS);
+
+        client.execute(prepareGet().setUri(URI.create("http://service/v1/foo?bar=baz")).build(), createStatusResponseHandler());
+
+        assertEquals(processor.getUris().size(), 1);
+        assertEquals(processor.getUris().get(0), URI.create("http://first.example.com:8080/v1/foo?bar=baz"));
+    }
+
+    @Test
+    public void testHttpsIsFavored()
+    {
+        RecordingProcessor processor = new RecordingProcessor();
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST, SECURE), new TestingHttpClient(processor), BalancingPolicy.OUTSTANDING_REQUESTS);
+
+        for (int i = 0; i < 10; i++) {
+            client.execute(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler());
+        }
+
+        for (URI uri : processor.getUris()) {
+            assertEquals(uri.getHost(), SECURE.getHost());
+        }
+    }
+
+    @Test
+    public void testRequestsAreSpread()
+    {
+        RecordingProcessor processor = new RecordingProcessor();
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST, SECOND), new TestingHttpClient(processor), BalancingPolicy.EWMA_LATENCY);
+
+        Multiset<String> hosts = ConcurrentHashMultiset.create();
+        for (int i = 0; i < 100; i++) {
+            client.execute(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler());
+        }
+        for (URI uri : processor.getUris()) {
+            hosts.add(uri.getHost());
+        }
+
+        assertEquals(hosts.size(), 100);
+        assertTrue(hosts.count(FIRST.getHost()) > 0);
+        assertTrue(hosts.count(SECOND.getHost()) > 0);
+        assertEquals(client.getEndpointStats().get(FIRST).getRequests().getTotalCount() + client.getEndpointStats().get(SECOND).getRequests().getTotalCount(), 100);
+    }
+
+    @Test
+    public void testBusyEndpointIsAvoided()
+    {
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST, SECOND), new TestingHttpClient(new RecordingProcessor()), BalancingPolicy.OUTSTANDING_REQUESTS);
+
+        EndpointStats busy = client.selectEndpoint();
+        assertNotNull(busy);
+        busy.requestStarted();
+
+        for (int i = 0; i < 10; i++) {
+            EndpointStats endpoint = client.selectEndpoint();
+            assertNotNull(endpoint);
+            assertTrue(endpoint != busy, "busy endpoint selected");
+        }
+    }
+
+    @Test
+    public void testStuckEndpointIsAvoided()
+    {
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST, SECOND), new TestingHttpClient(new RecordingProcessor()), BalancingPolicy.EWMA_LATENCY);
+
+        // requests to the first endpoint never complete, and it has no latency history
+        for (int i = 0; i < 20; i++) {
+            EndpointStats endpoint = client.selectEndpoint();
+            assertNotNull(endpoint);
+            long start = endpoint.requestStarted();
+            if (endpoint.getUri().equals(SECOND)) {
+                endpoint.requestComplete(start, false);
+            }
+        }
+
+        int stuck = client.getEndpointStats().get(FIRST).getOutstandingRequests();
+        assertTrue(stuck <= 2, "stuck endpoint has " + stuck + " requests in flight");
+    }
+
+    @Test
+    public void testFailuresAreRecorded()
+    {
+        BalancingHttpClient client = new BalancingHttpClient(selector(FIRST), new TestingHttpClient(new Function<Request, Response>()
+        {
+            @Override
+            public Response apply(Request input)
+            {
+                throw new IllegalStateException("test");
+            }
+        }), BalancingPolicy.OUTSTANDING_REQUESTS);
+
+        try {
+            client.execute(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler());
+            fail("expected exception");
+        }
+        catch (IllegalStateException expected) {
+        }
+
+        EndpointStats stats = client.getEndpointStats().get(FIRST);
+        assertEquals(stats.getFailures().getTotalCount(), 1);
+        assertEquals(stats.getOutstandingRequests(), 0);
+    }
+
+    @Test
+    public void testNoEndpoints()
+            throws Exception
+    {
+        BalancingHttpClient client = new BalancingHttpClient(selector(), new TestingHttpClient(new RecordingProcessor()), BalancingPolicy.OUTSTANDING_REQUESTS);
+        Request request = prepareGet().setUri(URI.create("http://service/v1/foo")).build();
+
+        try {
+            client.execute(request, createStatusResponseHandler());
+            fail("expected exception");
+        }
+        catch (DiscoveryException expected) {
+        }
+
+        try {
+            client.executeAsync(request, createStatusResponseHandler()).get();
+            fail("expected exception");
+        }
+        catch (ExecutionException e) {
+            assertInstanceOf(e.getCause(), DiscoveryException.class);
+        }
+    }
+
+    @Test
+    public void testRemovedEndpointsAreDropped()
+    {
+        final List<ServiceDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(descriptor(FIRST));
+        descriptors.add(descriptor(SECOND));
+        ServiceSelector selector = new StaticServiceSelector(descriptors)
+        {
+            @Override
+            public List<ServiceDescriptor> selectAllServices()
+            {
+                return new ArrayList<>(descriptors);
+            }
+        };
+        BalancingHttpClient client = new BalancingHttpClient(selector, new TestingHttpClient(new RecordingProcessor()), BalancingPolicy.OUTSTANDING_REQUESTS);
+
+        client.selectEndpoint();
+        assertEquals(client.getEndpointCount(), 2);
+
+        descriptors.remove(1);
+        assertEquals(client.selectEndpoint().getUri(), FIRST);
+        assertEquals(client.getEndpointCount(), 1);
+        assertEquals(client.getEndpointStats().keySet().size(), 1);
+    }
+
+    @Test
+    public void testSlowRequestIsHedged()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Request, Response> processor = new Function<Request, Response>()
+        {
+            @Override
+            public Response apply(Request input)
+            {
+                // the first request hangs until it is cancelled
+                if (calls.getAndIncrement() == 0) {
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+                return new TestingResponse(HttpStatus.OK, ImmutableListMultimap.<String, String>of(), new byte[0]);
+            }
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        ScheduledExecutorService hedgeExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("hedge-%s"));
+        try {
+            BalancingHttpClient client = new BalancingHttpClient(
+                    selector(FIRST, SECOND),
+                    new TestingHttpClient(processor, executor),
+                    BalancingPolicy.OUTSTANDING_REQUESTS,
+                    HedgingPolicy.fixedDelay(new Duration(10, MILLISECONDS), 1.0),
+                    hedgeExecutor,
+                    null);
+
+            String host = client.executeAsync(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), new HostResponseHandler()).get(10, SECONDS);
+
+            assertEquals(calls.get(), 2);
+            assertEquals(client.getHedgesSent().getTotalCount(), 1);
+            assertEquals(client.getHedgesWon().getTotalCount(), 1);
+            assertEquals(client.getEndpointStats().get(URI.create("http://" + host + ":8080")).getFailures().getTotalCount(), 0);
+        }
+        finally {
+            release.countDown();
+            executor.shutdownNow();
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testHandlerIsAppliedOnceToWinner()
+            throws Exception
+    {
+        // both attempts complete, the first only once the hedge has been sent
+        final CountDownLatch hedgeSent = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Request, Response> processor = new Function<Request, Response>()
+        {
+            @Override
+            public Response apply(Request input)
+            {
+                if (calls.getAndIncrement() == 0) {
+                    Uninterruptibles.awaitUninterruptibly(hedgeSent);
+                }
+                else {
+                    hedgeSent.countDown();
+                }
+                return new TestingResponse(HttpStatus.OK, ImmutableListMultimap.<String, String>of(), "body".getBytes(Charsets.UTF_8));
+            }
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        ScheduledExecutorService hedgeExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("hedge-%s"));
+        try {
+            BalancingHttpClient client = new BalancingHttpClient(
+                    selector(FIRST, SECOND),
+                    new TestingHttpClient(processor, executor),
+                    BalancingPolicy.OUTSTANDING_REQUESTS,
+                    HedgingPolicy.fixedDelay(new Duration(10, MILLISECONDS), 1.0),
+                    hedgeExecutor,
+                    null);
+
+            final AtomicInteger handled = new AtomicInteger();
+            String body = client.executeAsync(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), new ResponseHandler<String, RuntimeException>()
+            {
+                @Override
+                public String handleException(Request request, Exception exception)
+                {
+                    throw propagate(request, exception);
+                }
+
+                @Override
+                public String handle(Request request, Response response)
+                {
+                    handled.incrementAndGet();
+                    try {
+                        return new String(ByteStreams.toByteArray(response.getInputStream()), Charsets.UTF_8);
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }).get(10, SECONDS);
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, SECONDS));
+
+            assertEquals(body, "body");
+            assertEquals(calls.get(), 2);
+            assertEquals(handled.get(), 1);
+        }
+        finally {
+            hedgeSent.countDown();
+            executor.shutdownNow();
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testServerErrorDoesNotWinHedge()
+            throws Exception
+    {
+        // the first attempt fails fast once the hedge has been sent, and the hedge succeeds later
+        final CountDownLatch hedgeSent = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Request, Response> processor = new Function<Request, Response>()
+        {
+            @Override
+            public Response apply(Request input)
+            {
+                if (calls.getAndIncrement() == 0) {
+                    Uninterruptibles.awaitUninterruptibly(hedgeSent);
+                    return new TestingResponse(HttpStatus.SERVICE_UNAVAILABLE, ImmutableListMultimap.<String, String>of(), new byte[0]);
+                }
+                hedgeSent.countDown();
+                Uninterruptibles.sleepUninterruptibly(100, MILLISECONDS);
+                return new TestingResponse(HttpStatus.OK, ImmutableListMultimap.<String, String>of(), new byte[0]);
+            }
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        ScheduledExecutorService hedgeExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("hedge-%s"));
+        try {
+            BalancingHttpClient client = new BalancingHttpClient(
+                    selector(FIRST, SECOND),
+                    new TestingHttpClient(processor, executor),
+                    BalancingPolicy.OUTSTANDING_REQUESTS,
+                    HedgingPolicy.fixedDelay(new Duration(10, MILLISECONDS), 1.0),
+                    hedgeExecutor,
+                    null);
+
+            StatusResponse response = client.executeAsync(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler()).get(10, SECONDS);
+
+            assertEquals(response.getStatusCode(), HttpStatus.OK.code());
+            assertEquals(calls.get(), 2);
+            assertEquals(client.getHedgesWon().getTotalCount(), 1);
+        }
+        finally {
+            hedgeSent.countDown();
+            executor.shutdownNow();
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLastServerErrorIsReturned()
+            throws Exception
+    {
+        Function<Request, Response> processor = new Function<Request, Response>()
+        {
+            @Override
+            public Response apply(Request input)
+            {
+                Uninterruptibles.sleepUninterruptibly(50, MILLISECONDS);
+                return new TestingResponse(HttpStatus.BAD_GATEWAY, ImmutableListMultimap.<String, String>of(), new byte[0]);
+            }
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        ScheduledExecutorService hedgeExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("hedge-%s"));
+        try {
+            BalancingHttpClient client = new BalancingHttpClient(
+                    selector(FIRST, SECOND),
+                    new TestingHttpClient(processor, executor),
+                    BalancingPolicy.OUTSTANDING_REQUESTS,
+                    HedgingPolicy.fixedDelay(new Duration(10, MILLISECONDS), 1.0),
+                    hedgeExecutor,
+                    null);
+
+            StatusResponse response = client.executeAsync(prepareGet().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler()).get(10, SECONDS);
+
+            assertEquals(response.getStatusCode(), HttpStatus.BAD_GATEWAY.code());
+            assertEquals(client.getHedgesSent().getTotalCount(), 1);
+            assertEquals(client.getHedgesWon().getTotalCount(), 0);
+        }
+        finally {
+            executor.shutdownNow();
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWritesAreNotHedged()
+            throws Exception
+    {
+        RecordingProcessor processor = new RecordingProcessor();
+        ScheduledExecutorService hedgeExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("hedge-%s"));
+        try {
+            BalancingHttpClient client = new BalancingHttpClient(
+                    selector(FIRST, SECOND),
+                    new TestingHttpClient(processor),
+                    BalancingPolicy.OUTSTANDING_REQUESTS,
+                    HedgingPolicy.fixedDelay(new Duration(0, MILLISECONDS), 1.0),
+                    hedgeExecutor,
+                    null);
+
+            client.executeAsync(preparePost().setUri(URI.create("http://service/v1/foo")).build(), createStatusResponseHandler()).get(10, SECONDS);
+
+            assertEquals(processor.getUris().size(), 1);
+            assertEquals(client.getHedgesSent().getTotalCount(), 0);
+        }
+        finally {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testHedgePercentileDelay()
+    {
+        TimeDistribution distribution = new TimeDistribution(MILLISECONDS);
+        HedgingPolicy policy = HedgingPolicy.percentileDelay(0.95, new Duration(5, MILLISECONDS), 0.05);
+
+        // no data uses the minimum delay
+        assertEquals(policy.computeDelayNanos(distribution), MILLISECONDS.toNanos(5));
+
+        for (int i = 1; i <= 100; i++) {
+            distribution.add(MILLISECONDS.toNanos(i));
+        }
+        long delay = policy.computeDelayNanos(distribution);
+        assertTrue(delay >= MILLISECONDS.toNanos(90) && delay <= MILLISECONDS.toNanos(100), "delay " + delay);
+    }
+
+    private static ServiceSelector selector(URI... uris)
+    {
+        List<ServiceDescriptor> descriptors = new ArrayList<>();
+        for (URI uri : uris) {
+            descriptors.add(descriptor(uri));
+        }
+        return new StaticServiceSelector(descriptors);
+    }
+
+    private static ServiceDescriptor descriptor(URI uri)
+    {
+        return new ServiceDescriptor(UUID.randomUUID(), "node", "apple", "pool", "location", ServiceState.RUNNING, ImmutableMap.of(uri.getScheme(), uri.toString()));
+    }
+
+    private static class HostResponseHandler
+            implements ResponseHandler<String, RuntimeException>
+    {
+        @Override
+        public String handleException(Request request, Exception exception)
+        {
+            throw propagate(request, exception);
+        }
+
+        @Override
+        public String handle(Request request, Response response)
+        {
+            return request.getUri().getHost();
+        }
+    }
+
+    private static class RecordingProcessor
+            implements Function<Request, Response>
+    {
+        private final List<URI> uris = new ArrayList<>();
+
+        @Override
+        public synchronized Response apply(Request request)
+        {
+            uris.add(request.getUri());
+            return new TestingResponse(HttpStatus.OK, ImmutableListMultimap.<String, String>of(), new byte[0]);
+        }
+
+        public synchronized List<URI> getUris()
+        {
+            return new ArrayList<>(uris);
+        }
+    }
+}
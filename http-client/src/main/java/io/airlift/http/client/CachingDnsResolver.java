@@ -0,0 +1,271 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link DnsResolver} that caches the addresses of a host for a TTL, and
+ * failed lookups for a separate, usually shorter, TTL.
+ * <p>
+ * The JDK does not expose the TTL of DNS records, so the TTLs are
+ * configured. Once three quarters of the TTL have passed, the next lookup
+ * of the host returns the cached addresses and refreshes them on the given
+ * executor, so hosts in use never block on a lookup. If the refresh fails,
+ * the cached addresses are used until the TTL expires.
+ * <p>
+ * When a host has multiple addresses, each lookup returns them rotated by
+ * one so that callers using the first address spread across all of them.
+ */
+@Beta
+public class CachingDnsResolver
+        implements DnsResolver
+{
+    private final DnsResolver delegate;
+    private final Executor refreshExecutor;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LoadingCache<String, Resolution> cache;
+
+    private final CounterStat refreshes = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+    private final TimeStat lookupTime = new TimeStat(TimeUnit.MILLISECONDS);
+
+    public CachingDnsResolver(DnsResolver delegate, Duration ttl, Duration negativeTtl, int maxEntries, Executor refreshExecutor)
+    {
+        this(delegate, ttl, negativeTtl, maxEntries, refreshExecutor, Ticker.systemTicker());
+    }
+
+    public CachingDnsResolver(DnsResolver delegate, Duration ttl, Duration negativeTtl, int maxEntries, Executor refreshExecutor, Ticker ticker)
+    {
+        this.delegate = checkNotNull(delegate, "delegate is null");
+        this.refreshExecutor = checkNotNull(refreshExecutor, "refreshExecutor is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        checkNotNull(ttl, "ttl is null");
+        checkNotNull(negativeTtl, "negativeTtl is null");
+        checkArgument(maxEntries > 0, "maxEntries must be positive");
+
+        ttlNanos = ttl.roundTo(TimeUnit.NANOSECONDS);
+        negativeTtlNanos = negativeTtl.roundTo(TimeUnit.NANOSECONDS);
+        checkArgument(ttlNanos > 0, "ttl must be positive");
+
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Math.max(ttlNanos, negativeTtlNanos), TimeUnit.NANOSECONDS)
+                .refreshAfterWrite(Math.max(ttlNanos / 4 * 3, 1), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build(new CacheLoader<String, Resolution>()
+                {
+                    @Override
+                    public Resolution load(String host)
+                    {
+                        return lookup(host);
+                    }
+
+                    @Override
+                    public ListenableFuture<Resolution> reload(final String host, final Resolution oldValue)
+                    {
+                        refreshes.update(1);
+                        ListenableFutureTask<Resolution> task = ListenableFutureTask.create(new Callable<Resolution>()
+                        {
+                            @Override
+                            public Resolution call()
+                            {
+                                Resolution resolution = lookup(host);
+                                if (resolution.isFailed() && !oldValue.isFailed()) {
+                                    // keep using the addresses we have until they expire
+                                    return oldValue;
+                                }
+                                return resolution;
+                            }
+                        });
+                        refreshExecutor.execute(task);
+                        return task;
+                    }
+                });
+    }
+
+    @Override
+    public List<InetAddress> resolve(String host)
+            throws UnknownHostException
+    {
+        checkNotNull(host, "host is null");
+        Resolution resolution = cache.getUnchecked(host);
+        if (resolution.isExpired(ticker.read())) {
+            // expired entry kept alive by a failed refresh
+            cache.invalidate(host);
+            resolution = cache.getUnchecked(host);
+        }
+        return resolution.getAddresses();
+    }
+
+    /**
+     * Returns true if {@link #resolve} would return without a lookup.
+     */
+    public boolean isCached(String host)
+    {
+        Resolution resolution = cache.getIfPresent(host);
+        return resolution != null && !resolution.isExpired(ticker.read());
+    }
+
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+    private Resolution lookup(String host)
+    {
+        long start = ticker.read();
+        try {
+            List<InetAddress> addresses = delegate.resolve(host);
+            if (addresses.isEmpty()) {
+                throw new UnknownHostException(host);
+            }
+            return new Resolution(host, addresses, null, start + ttlNanos);
+        }
+        catch (UnknownHostException e) {
+            failures.update(1);
+            return new Resolution(host, null, e, start + negativeTtlNanos);
+        }
+        finally {
+            lookupTime.add(ticker.read() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Managed
+    public long getSize()
+    {
+        return cache.size();
+    }
+
+    @Managed
+    public long getHitCount()
+    {
+        return cache.stats().hitCount();
+    }
+
+    @Managed
+    public long getMissCount()
+    {
+        return cache.stats().missCount();
+    }
+
+    @Managed
+    public double getHitRate()
+    {
+        CacheStats stats = cache.stats();
+        return stats.hitRate();
+    }
+
+    @Managed
+    public long getEvictionCount()
+    {
+        return cache.stats().evictionCount();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRefreshes()
+    {
+        return refreshes;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailures()
+    {
+        return failures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getLookupTime()
+    {
+        return lookupTime;
+    }
+
+    private static class Resolution
+    {
+        private final String host;
+        private final List<InetAddress> addresses;
+        private final UnknownHostException failure;
+        private final long expiresAt;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Resolution(String host, @Nullable List<InetAddress> addresses, @Nullable UnknownHostException failure, long expiresAt)
+        {
+            this.host = host;
+            this.addresses = (addresses == null) ? null : ImmutableList.copyOf(addresses);
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isFailed()
+        {
+            return failure != null;
+        }
+
+        public boolean isExpired(long now)
+        {
+            return now - expiresAt >= 0;
+        }
+
+        public List<InetAddress> getAddresses()
+                throws UnknownHostException
+        {
+            if (failure != null) {
+                // a new exception so the stack trace is that of the caller
+                UnknownHostException exception = new UnknownHostException(failure.getMessage() == null ? host : failure.getMessage());
+                exception.initCause(failure);
+                throw exception;
+            }
+            if (addresses.size() == 1) {
+                return addresses;
+            }
+            int first = (next.getAndIncrement() & Integer.MAX_VALUE) % addresses.size();
+            return ImmutableList.<InetAddress>builder()
+                    .addAll(addresses.subList(first, addresses.size()))
+                    .addAll(addresses.subList(0, first))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Circuit breaker for a single destination.
+ * <p>
+ * The breaker counts requests and failures over a sliding window. A request
+ * fails when it gets an exception, a server error response, or takes longer
+ * than the slow request threshold. Once the window holds at least
+ * {@code minRequests} requests and the failure ratio reaches the threshold,
+ * the breaker opens and rejects all requests. After {@code openDuration} it
+ * lets a single probe request through: the breaker closes if the probe
+ * succeeds and opens again if it fails.
+ * <p>
+ * Each request that is let through gets a {@link Permit} to report its
+ * outcome. Only the permit of the probe can close or reopen a half open
+ * breaker, so the outcome of a request that was sent before the breaker
+ * opened does not count as the probe.
+ */
+@Beta
+@ThreadSafe
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final double failureRatioThreshold;
+    private final int minRequests;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final long slowRequestNanos;
+    private final Ticker ticker;
+    private final Permit requestPermit = new Permit();
+
+    @GuardedBy("this")
+    private final long[] requests = new long[BUCKETS];
+    @GuardedBy("this")
+    private final long[] failures = new long[BUCKETS];
+    @GuardedBy("this")
+    private long currentBucket;
+    @GuardedBy("this")
+    private State state = State.CLOSED;
+    @GuardedBy("this")
+    private long openedAt;
+    @GuardedBy("this")
+    private Permit probe;
+    @GuardedBy("this")
+    private long timesOpened;
+
+    public CircuitBreaker(double failureRatioThreshold, int minRequests, Duration window, Duration openDuration, @Nullable Duration slowRequestThreshold)
+    {
+        this(failureRatioThreshold, minRequests, window, openDuration, slowRequestThreshold, Ticker.systemTicker());
+    }
+
+    public CircuitBreaker(double failureRatioThreshold, int minRequests, Duration window, Duration openDuration, @Nullable Duration slowRequestThreshold, Ticker ticker)
+    {
+        checkArgument(failureRatioThreshold > 0 && failureRatioThreshold <= 1, "failureRatioThreshold must be greater than 0 and at most 1");
+        checkArgument(minRequests >= 1, "minRequests must be at least 1");
+        checkNotNull(window, "window is null");
+        checkNotNull(openDuration, "openDuration is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+
+        this.failureRatioThreshold = failureRatioThreshold;
+        this.minRequests = minRequests;
+        this.bucketNanos = Math.max(1, window.roundTo(TimeUnit.NANOSECONDS) / BUCKETS);
+        this.openNanos = openDuration.roundTo(TimeUnit.NANOSECONDS);
+        this.slowRequestNanos = (slowRequestThreshold == null) ? Long.MAX_VALUE : slowRequestThreshold.roundTo(TimeUnit.NANOSECONDS);
+        this.currentBucket = ticker.read() / bucketNanos;
+    }
+
+    /**
+     * Returns a permit if a request may be sent, or null if it must be
+     * rejected. A caller that gets a permit must later call exactly one of
+     * {@link Permit#recordSuccess}, {@link Permit#recordFailure} or
+     * {@link Permit#release}.
+     */
+    @Nullable
+    public synchronized Permit tryAcquire()
+    {
+        switch (state) {
+            case CLOSED:
+                return requestPermit;
+            case OPEN:
+                if (ticker.read() - openedAt < openNanos) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                probe = new Permit();
+                return probe;
+            case HALF_OPEN:
+                if (probe != null) {
+                    return null;
+                }
+                probe = new Permit();
+                return probe;
+        }
+        throw new AssertionError("Unknown state " + state);
+    }
+
+    private synchronized void recordSuccess(Permit permit, long elapsedNanos)
+    {
+        if (elapsedNanos >= slowRequestNanos) {
+            recordFailure(permit);
+            return;
+        }
+        if (permit == probe) {
+            close();
+        }
+        else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    private synchronized void recordFailure(Permit permit)
+    {
+        if (permit == probe) {
+            open();
+            return;
+        }
+        if (state != State.CLOSED) {
+            // a request sent before the breaker opened
+            return;
+        }
+        record(true);
+        long total = sum(requests);
+        if (total >= minRequests && sum(failures) >= failureRatioThreshold * total) {
+            open();
+        }
+    }
+
+    private synchronized void release(Permit permit)
+    {
+        if (permit == probe) {
+            probe = null;
+        }
+    }
+
+    @Managed
+    public synchronized State getState()
+    {
+        // report an open breaker that would admit a probe as half open
+        if (state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    @Managed
+    public synchronized double getFailureRatio()
+    {
+        advance();
+        long total = sum(requests);
+        if (total == 0) {
+            return 0;
+        }
+        return sum(failures) * 1.0 / total;
+    }
+
+    @Managed
+    public synchronized long getRequestCount()
+    {
+        advance();
+        return sum(requests);
+    }
+
+    @Managed
+    public synchronized long getTimesOpened()
+    {
+        return timesOpened;
+    }
+
+    @GuardedBy("this")
+    private void record(boolean failed)
+    {
+        advance();
+        int index = (int) (currentBucket % BUCKETS);
+        requests[index]++;
+        if (failed) {
+            failures[index]++;
+        }
+    }
+
+    @GuardedBy("this")
+    private void advance()
+    {
+        long bucket = ticker.read() / bucketNanos;
+        long stale = Math.min(BUCKETS, bucket - currentBucket);
+        for (long i = 1; i <= stale; i++) {
+            int index = (int) ((currentBucket + i) % BUCKETS);
+            requests[index] = 0;
+            failures[index] = 0;
+        }
+        currentBucket = Math.max(currentBucket, bucket);
+    }
+
+    @GuardedBy("this")
+    private void open()
+    {
+        state = State.OPEN;
+        openedAt = ticker.read();
+        probe = null;
+        timesOpened++;
+    }
+
+    @GuardedBy("this")
+    private void close()
+    {
+        state = State.CLOSED;
+        probe = null;
+        for (int i = 0; i < BUCKETS; i++) {
+            requests[i] = 0;
+            failures[i] = 0;
+        }
+    }
+
+    private static long sum(long[] values)
+    {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Permission to send one request, used to report how it went.
+     */
+    public final class Permit
+    {
+        private Permit()
+        {
+        }
+
+        /**
+         * Records a request that completed without error after the given time.
+         */
+        public void recordSuccess(long elapsedNanos)
+        {
+            CircuitBreaker.this.recordSuccess(this, elapsedNanos);
+        }
+
+        public void recordFailure()
+        {
+            CircuitBreaker.this.recordFailure(this);
+        }
+
+        /**
+         * Releases the permit of a request that was cancelled before it completed.
+         */
+        public void release()
+        {
+            CircuitBreaker.this.release(this);
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("state", getState())
+                .add("failureRatio", getFailureRatio())
+                .add("requestCount", getRequestCount())
+                .toString();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.net.HostAndPort;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.http.client.Destinations.getDestination;
+
+/**
+ * The circuit breakers of a client, one per destination {@code host:port}.
+ * <p>
+ * A breaker that has not been used for longer than both the window and the
+ * open duration holds no state worth keeping and is dropped, and at most
+ * 10,000 breakers are kept.
+ */
+@Beta
+public class CircuitBreakers
+{
+    private static final int MAX_DESTINATIONS = 10_000;
+
+    private final double failureRatioThreshold;
+    private final int minRequests;
+    private final Duration window;
+    private final Duration openDuration;
+    private final Duration slowRequestThreshold;
+    private final ConcurrentMap<HostAndPort, CircuitBreaker> breakers;
+    private final CounterStat rejected = new CounterStat();
+
+    public CircuitBreakers(HttpClientConfig config)
+    {
+        this(config.getCircuitBreakerFailureRatio(),
+                config.getCircuitBreakerMinRequests(),
+                config.getCircuitBreakerWindow(),
+                config.getCircuitBreakerOpenDuration(),
+                config.getCircuitBreakerSlowRequestThreshold());
+    }
+
+    public CircuitBreakers(double failureRatioThreshold, int minRequests, Duration window, Duration openDuration, @Nullable Duration slowRequestThreshold)
+    {
+        checkArgument(failureRatioThreshold > 0 && failureRatioThreshold <= 1, "failureRatioThreshold must be greater than 0 and at most 1");
+        checkArgument(minRequests >= 1, "minRequests must be at least 1");
+        this.failureRatioThreshold = failureRatioThreshold;
+        this.minRequests = minRequests;
+        this.window = checkNotNull(window, "window is null");
+        this.openDuration = checkNotNull(openDuration, "openDuration is null");
+        this.slowRequestThreshold = slowRequestThreshold;
+
+        long idleNanos = Math.max(window.roundTo(TimeUnit.NANOSECONDS), openDuration.roundTo(TimeUnit.NANOSECONDS));
+        this.breakers = CacheBuilder.newBuilder()
+                .maximumSize(MAX_DESTINATIONS)
+                .expireAfterAccess(idleNanos, TimeUnit.NANOSECONDS)
+                .<HostAndPort, CircuitBreaker>build()
+                .asMap();
+    }
+
+    public CircuitBreaker getCircuitBreaker(URI uri)
+    {
+        HostAndPort destination = getDestination(uri);
+        CircuitBreaker breaker = breakers.get(destination);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(failureRatioThreshold, minRequests, window, openDuration, slowRequestThreshold);
+            CircuitBreaker existing = breakers.putIfAbsent(destination, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Returns an exception for a request rejected by an open circuit breaker.
+     */
+    public CircuitBreakerOpenException rejected(URI uri)
+    {
+        rejected.update(1);
+        return new CircuitBreakerOpenException(getDestination(uri));
+    }
+
+    public Map<HostAndPort, CircuitBreaker> getCircuitBreakers()
+    {
+        return ImmutableMap.copyOf(breakers);
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Managed
+    public int getDestinationCount()
+    {
+        return breakers.size();
+    }
+
+    @Managed
+    public int getOpenCount()
+    {
+        int count = 0;
+        for (CircuitBreaker breaker : breakers.values()) {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Managed(description = "State of the circuit breaker of each destination that is not closed")
+    public Map<String, String> getOpenDestinations()
+    {
+        ImmutableSortedMap.Builder<String, String> states = ImmutableSortedMap.naturalOrder();
+        for (Entry<HostAndPort, CircuitBreaker> entry : breakers.entrySet()) {
+            CircuitBreaker.State state = entry.getValue().getState();
+            if (state != CircuitBreaker.State.CLOSED) {
+                states.put(entry.getKey().toString(), state.toString());
+            }
+        }
+        return states.build();
+    }
+
+    @Managed(description = "State of the circuit breaker of a destination host:port")
+    public String getState(String destination)
+    {
+        CircuitBreaker breaker = breakers.get(HostAndPort.fromString(destination));
+        if (breaker == null) {
+            return CircuitBreaker.State.CLOSED.toString();
+        }
+        return breaker.getState().toString();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.net.HostAndPort;
+
+/**
+ * Thrown when a request is rejected because its destination has reached its concurrency limit.
+ */
+public class ConcurrencyLimitExceededException
+        extends RuntimeException
+{
+    private final HostAndPort destination;
+
+    public ConcurrencyLimitExceededException(HostAndPort destination, int limit)
+    {
+        super("Concurrency limit of " + limit + " requests reached for " + destination);
+        this.destination = destination;
+    }
+
+    public HostAndPort getDestination()
+    {
+        return destination;
+    }
+}
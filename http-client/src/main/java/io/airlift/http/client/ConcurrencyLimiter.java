@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of in-flight requests to a single destination, adjusting
+ * the limit with additive increase and multiplicative decrease (AIMD).
+ * <p>
+ * Every request that completes while the limit is in use raises the limit by
+ * {@code 1 / limit}, so the limit grows by about one per round trip. A request
+ * that fails, or whose round trip time exceeds {@code rttTolerance} times the
+ * lowest recently observed round trip time, multiplies the limit by
+ * {@code backoffRatio}, at most once per round trip.
+ */
+@Beta
+@ThreadSafe
+public class ConcurrencyLimiter
+{
+    // the lowest round trip time is forgotten after this many samples so the limiter adapts to slower destinations
+    private static final int MIN_RTT_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // read without locking by tryAcquire
+    private volatile int currentLimit;
+
+    @GuardedBy("this")
+    private double limit;
+    @GuardedBy("this")
+    private long minRttNanos = Long.MAX_VALUE;
+    @GuardedBy("this")
+    private int samples;
+    @GuardedBy("this")
+    private long lastDecreaseNanos;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double backoffRatio)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be at least 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be at least minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+        checkArgument(rttTolerance >= 1, "rttTolerance must be at least 1");
+        checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns true if a request may be sent. A caller that is allowed to send
+     * must later call exactly one of {@link #onSuccess}, {@link #onDropped}
+     * or {@link #release}.
+     */
+    public boolean tryAcquire()
+    {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Records a request that completed after the given round trip time.
+     */
+    public void onSuccess(long rttNanos)
+    {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            samples++;
+            if (samples >= MIN_RTT_SAMPLES) {
+                samples = 0;
+                minRttNanos = rttNanos;
+            }
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+
+            if (rttNanos > minRttNanos * rttTolerance) {
+                decrease(System.nanoTime());
+            }
+            else if (current * 2 >= limit) {
+                // only grow while the limit is actually in use
+                setLimit(limit + (1.0 / limit));
+            }
+        }
+    }
+
+    /**
+     * Records a request that failed or timed out.
+     */
+    public void onDropped()
+    {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            decrease(System.nanoTime());
+        }
+    }
+
+    /**
+     * Releases a permit for a request that was cancelled before it completed.
+     */
+    public void release()
+    {
+        inFlight.decrementAndGet();
+    }
+
+    @GuardedBy("this")
+    private void decrease(long now)
+    {
+        // drops from one round trip count as a single congestion signal
+        long rtt = (minRttNanos == Long.MAX_VALUE) ? 0 : minRttNanos;
+        if (now - lastDecreaseNanos < rtt) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        setLimit(limit * backoffRatio);
+    }
+
+    @GuardedBy("this")
+    private void setLimit(double newLimit)
+    {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        currentLimit = (int) limit;
+    }
+
+    @Managed
+    public int getLimit()
+    {
+        return currentLimit;
+    }
+
+    @Managed
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    @Managed
+    public synchronized double getMinRttMillis()
+    {
+        if (minRttNanos == Long.MAX_VALUE) {
+            return Double.NaN;
+        }
+        return minRttNanos * 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("limit", getLimit())
+                .add("inFlight", getInFlight())
+                .add("minRttMillis", getMinRttMillis())
+                .toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.net.HostAndPort;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.http.client.Destinations.getDestination;
+
+/**
+ * The adaptive concurrency limiters of a client, one per destination {@code host:port}.
+ */
+@Beta
+public class ConcurrencyLimiters
+{
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final ConcurrentMap<HostAndPort, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final CounterStat rejected = new CounterStat();
+
+    public ConcurrencyLimiters(HttpClientConfig config)
+    {
+        this(config.getConcurrencyLimitInitial(),
+                config.getConcurrencyLimitMin(),
+                config.getConcurrencyLimitMax(),
+                config.getConcurrencyLimitRttTolerance(),
+                config.getConcurrencyLimitBackoffRatio());
+    }
+
+    public ConcurrencyLimiters(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double backoffRatio)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be at least 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be at least minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+        checkArgument(rttTolerance >= 1, "rttTolerance must be at least 1");
+        checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter(URI uri)
+    {
+        HostAndPort destination = getDestination(uri);
+        ConcurrencyLimiter limiter = limiters.get(destination);
+        if (limiter == null) {
+            limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, rttTolerance, backoffRatio);
+            ConcurrencyLimiter existing = limiters.putIfAbsent(destination, limiter);
+            if (existing != null) {
+                limiter = existing;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Returns an exception for a request rejected by a concurrency limiter.
+     */
+    public ConcurrencyLimitExceededException rejected(URI uri, ConcurrencyLimiter limiter)
+    {
+        rejected.update(1);
+        return new ConcurrencyLimitExceededException(getDestination(uri), limiter.getLimit());
+    }
+
+    public Map<HostAndPort, ConcurrencyLimiter> getConcurrencyLimiters()
+    {
+        return ImmutableMap.copyOf(limiters);
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Managed
+    public int getDestinationCount()
+    {
+        return limiters.size();
+    }
+
+    @Managed
+    public int getInFlight()
+    {
+        int inFlight = 0;
+        for (ConcurrencyLimiter limiter : limiters.values()) {
+            inFlight += limiter.getInFlight();
+        }
+        return inFlight;
+    }
+
+    @Managed(description = "Current concurrency limit of each destination")
+    public Map<String, Integer> getLimits()
+    {
+        ImmutableSortedMap.Builder<String, Integer> limits = ImmutableSortedMap.naturalOrder();
+        for (Entry<HostAndPort, ConcurrencyLimiter> entry : limiters.entrySet()) {
+            limits.put(entry.getKey().toString(), entry.getValue().getLimit());
+        }
+        return limits.build();
+    }
+
+    @Managed(description = "Current limit and in-flight requests of a destination host:port")
+    public String getState(String destination)
+    {
+        ConcurrencyLimiter limiter = limiters.get(HostAndPort.fromString(destination));
+        if (limiter == null) {
+            return null;
+        }
+        return limiter.toString();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+/**
+ * Statistics for the requests to a single destination {@code host:port}:
+ * the count of each status class, and the recent latency of each request
+ * phase as described in {@link RequestPhaseStats}. Recording only updates
+ * atomic counters, so requests to the same destination do not contend on a
+ * lock when they complete.
+ */
+@Beta
+public class DestinationStats
+{
+    private final StatusClassStats statusClasses = new StatusClassStats();
+    private final LatencyHistogram queuedTime = new LatencyHistogram();
+    private final LatencyHistogram requestHeadersTime = new LatencyHistogram();
+    private final LatencyHistogram requestContentTime = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram responseContentTime = new LatencyHistogram();
+    private final LatencyHistogram totalTime = new LatencyHistogram();
+
+    /**
+     * Records a completed exchange. See {@link StatusClassStats#record} and
+     * {@link RequestPhaseStats#record} for the meaning of the arguments.
+     */
+    public void record(int statusCode, long queuedNanos, long beginNanos, long headersSentNanos, long contentSentNanos, long responseBeginNanos, long completeNanos)
+    {
+        statusClasses.record(statusCode, (queuedNanos == 0) ? 0 : completeNanos - queuedNanos);
+        add(queuedTime, queuedNanos, beginNanos);
+        add(requestHeadersTime, beginNanos, headersSentNanos);
+        add(requestContentTime, headersSentNanos, contentSentNanos);
+        // the server may respond before the request content is sent
+        add(timeToFirstByte, (contentSentNanos != 0) ? Math.min(contentSentNanos, responseBeginNanos) : headersSentNanos, responseBeginNanos);
+        add(responseContentTime, responseBeginNanos, completeNanos);
+        add(totalTime, queuedNanos, completeNanos);
+    }
+
+    private static void add(LatencyHistogram histogram, long startNanos, long endNanos)
+    {
+        if (startNanos != 0 && endNanos != 0 && endNanos >= startNanos) {
+            histogram.add(endNanos - startNanos);
+        }
+    }
+
+    @Managed
+    @Nested
+    public StatusClassStats getStatusClasses()
+    {
+        return statusClasses;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getQueuedTime()
+    {
+        return queuedTime;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getRequestHeadersTime()
+    {
+        return requestHeadersTime;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getRequestContentTime()
+    {
+        return requestContentTime;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getTimeToFirstByte()
+    {
+        return timeToFirstByte;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getResponseContentTime()
+    {
+        return responseContentTime;
+    }
+
+    @Managed
+    @Nested
+    public LatencyHistogram getTotalTime()
+    {
+        return totalTime;
+    }
+}
@@ -18,11 +18,15 @@ package io.airlift.http.client;
 import com.google.common.annotations.Beta;
 import com.google.common.net.HostAndPort;
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
 import io.airlift.units.MinDuration;
 
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -44,6 +48,35 @@ public class HttpClientConfig
     private HostAndPort socksProxy;
     private String keyStorePath = System.getProperty(JAVAX_NET_SSL_KEY_STORE);
     private String keyStorePassword = System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD);
+    private int maxAttempts = 1;
+    private Duration initialRetryBackoff = new Duration(100, TimeUnit.MILLISECONDS);
+    private Duration maxRetryBackoff = new Duration(10, TimeUnit.SECONDS);
+    private double retryBudgetRatio = 0.1;
+    private boolean circuitBreakerEnabled;
+    private double circuitBreakerFailureRatio = 0.5;
+    private int circuitBreakerMinRequests = 20;
+    private Duration circuitBreakerWindow = new Duration(10, TimeUnit.SECONDS);
+    private Duration circuitBreakerOpenDuration = new Duration(5, TimeUnit.SECONDS);
+    private Duration circuitBreakerSlowRequestThreshold;
+    private boolean concurrencyLimitEnabled;
+    private int concurrencyLimitInitial = 20;
+    private int concurrencyLimitMin = 1;
+    private int concurrencyLimitMax = 1000;
+    private double concurrencyLimitRttTolerance = 2.0;
+    private double concurrencyLimitBackoffRatio = 0.9;
+    private boolean coalescingEnabled;
+    private String coalescingKeyHeaders = "Accept,Accept-Encoding,Accept-Language,Authorization,Cookie";
+    private boolean perDestinationStatsEnabled;
+    private int perDestinationStatsMaxDestinations = 100;
+    private int warmUpMinConnections;
+    private String warmUpDestinations;
+    private Duration warmUpInterval = new Duration(30, TimeUnit.SECONDS);
+    private String warmUpProbePath;
+    private boolean dnsCacheEnabled;
+    private Duration dnsCacheTtl = new Duration(1, TimeUnit.MINUTES);
+    private Duration dnsCacheNegativeTtl = new Duration(5, TimeUnit.SECONDS);
+    private int dnsCacheMaxEntries = 10_000;
+    private boolean bufferedExecuteEnabled;
 
     @NotNull
     @MinDuration("0ms")
@@ -172,4 +205,428 @@ public class HttpClientConfig
         this.keyStorePassword = keyStorePassword;
         return this;
     }
+
+    @Min(1)
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    @Config("http-client.retry.max-attempts")
+    @ConfigDescription("Maximum number of attempts for idempotent requests, including the first")
+    public HttpClientConfig setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getInitialRetryBackoff()
+    {
+        return initialRetryBackoff;
+    }
+
+    @Config("http-client.retry.initial-backoff")
+    public HttpClientConfig setInitialRetryBackoff(Duration initialRetryBackoff)
+    {
+        this.initialRetryBackoff = initialRetryBackoff;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getMaxRetryBackoff()
+    {
+        return maxRetryBackoff;
+    }
+
+    @Config("http-client.retry.max-backoff")
+    public HttpClientConfig setMaxRetryBackoff(Duration maxRetryBackoff)
+    {
+        this.maxRetryBackoff = maxRetryBackoff;
+        return this;
+    }
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    public double getRetryBudgetRatio()
+    {
+        return retryBudgetRatio;
+    }
+
+    @Config("http-client.retry.budget-ratio")
+    @ConfigDescription("Maximum number of retries as a fraction of requests")
+    public HttpClientConfig setRetryBudgetRatio(double retryBudgetRatio)
+    {
+        this.retryBudgetRatio = retryBudgetRatio;
+        return this;
+    }
+
+    @AssertTrue(message = "initialRetryBackoff must not be greater than maxRetryBackoff")
+    public boolean isRetryBackoffValid()
+    {
+        return initialRetryBackoff == null || maxRetryBackoff == null || initialRetryBackoff.compareTo(maxRetryBackoff) <= 0;
+    }
+
+    public boolean isCircuitBreakerEnabled()
+    {
+        return circuitBreakerEnabled;
+    }
+
+    @Config("http-client.circuit-breaker.enabled")
+    @ConfigDescription("Fail requests fast while a destination has a high rate of failed or slow requests")
+    public HttpClientConfig setCircuitBreakerEnabled(boolean circuitBreakerEnabled)
+    {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        return this;
+    }
+
+    @DecimalMin(value = "0.0", inclusive = false)
+    @DecimalMax("1.0")
+    public double getCircuitBreakerFailureRatio()
+    {
+        return circuitBreakerFailureRatio;
+    }
+
+    @Config("http-client.circuit-breaker.failure-ratio")
+    @ConfigDescription("Fraction of failed requests in the window that opens the circuit breaker")
+    public HttpClientConfig setCircuitBreakerFailureRatio(double circuitBreakerFailureRatio)
+    {
+        this.circuitBreakerFailureRatio = circuitBreakerFailureRatio;
+        return this;
+    }
+
+    @Min(1)
+    public int getCircuitBreakerMinRequests()
+    {
+        return circuitBreakerMinRequests;
+    }
+
+    @Config("http-client.circuit-breaker.min-requests")
+    @ConfigDescription("Minimum number of requests in the window before the circuit breaker can open")
+    public HttpClientConfig setCircuitBreakerMinRequests(int circuitBreakerMinRequests)
+    {
+        this.circuitBreakerMinRequests = circuitBreakerMinRequests;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getCircuitBreakerWindow()
+    {
+        return circuitBreakerWindow;
+    }
+
+    @Config("http-client.circuit-breaker.window")
+    public HttpClientConfig setCircuitBreakerWindow(Duration circuitBreakerWindow)
+    {
+        this.circuitBreakerWindow = circuitBreakerWindow;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getCircuitBreakerOpenDuration()
+    {
+        return circuitBreakerOpenDuration;
+    }
+
+    @Config("http-client.circuit-breaker.open-duration")
+    @ConfigDescription("Time an open circuit breaker rejects requests before sending a probe")
+    public HttpClientConfig setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration)
+    {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        return this;
+    }
+
+    public Duration getCircuitBreakerSlowRequestThreshold()
+    {
+        return circuitBreakerSlowRequestThreshold;
+    }
+
+    @Config("http-client.circuit-breaker.slow-request-threshold")
+    @ConfigDescription("Requests slower than this count as failures for the circuit breaker")
+    public HttpClientConfig setCircuitBreakerSlowRequestThreshold(Duration circuitBreakerSlowRequestThreshold)
+    {
+        this.circuitBreakerSlowRequestThreshold = circuitBreakerSlowRequestThreshold;
+        return this;
+    }
+
+    public boolean isConcurrencyLimitEnabled()
+    {
+        return concurrencyLimitEnabled;
+    }
+
+    @Config("http-client.concurrency-limit.enabled")
+    @ConfigDescription("Adapt the number of in-flight requests per destination to its measured round trip time")
+    public HttpClientConfig setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled)
+    {
+        this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrencyLimitInitial()
+    {
+        return concurrencyLimitInitial;
+    }
+
+    @Config("http-client.concurrency-limit.initial")
+    public HttpClientConfig setConcurrencyLimitInitial(int concurrencyLimitInitial)
+    {
+        this.concurrencyLimitInitial = concurrencyLimitInitial;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrencyLimitMin()
+    {
+        return concurrencyLimitMin;
+    }
+
+    @Config("http-client.concurrency-limit.min")
+    public HttpClientConfig setConcurrencyLimitMin(int concurrencyLimitMin)
+    {
+        this.concurrencyLimitMin = concurrencyLimitMin;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrencyLimitMax()
+    {
+        return concurrencyLimitMax;
+    }
+
+    @Config("http-client.concurrency-limit.max")
+    public HttpClientConfig setConcurrencyLimitMax(int concurrencyLimitMax)
+    {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+        return this;
+    }
+
+    @DecimalMin("1.0")
+    public double getConcurrencyLimitRttTolerance()
+    {
+        return concurrencyLimitRttTolerance;
+    }
+
+    @Config("http-client.concurrency-limit.rtt-tolerance")
+    @ConfigDescription("Round trip time, as a multiple of the lowest recent round trip time, that signals congestion")
+    public HttpClientConfig setConcurrencyLimitRttTolerance(double concurrencyLimitRttTolerance)
+    {
+        this.concurrencyLimitRttTolerance = concurrencyLimitRttTolerance;
+        return this;
+    }
+
+    @DecimalMin(value = "0.0", inclusive = false)
+    @DecimalMax(value = "1.0", inclusive = false)
+    public double getConcurrencyLimitBackoffRatio()
+    {
+        return concurrencyLimitBackoffRatio;
+    }
+
+    @Config("http-client.concurrency-limit.backoff-ratio")
+    @ConfigDescription("Factor applied to the concurrency limit on congestion")
+    public HttpClientConfig setConcurrencyLimitBackoffRatio(double concurrencyLimitBackoffRatio)
+    {
+        this.concurrencyLimitBackoffRatio = concurrencyLimitBackoffRatio;
+        return this;
+    }
+
+    @AssertTrue(message = "concurrency limits must satisfy min <= initial <= max")
+    public boolean isConcurrencyLimitValid()
+    {
+        return concurrencyLimitMin <= concurrencyLimitInitial && concurrencyLimitInitial <= concurrencyLimitMax;
+    }
+
+    public boolean isCoalescingEnabled()
+    {
+        return coalescingEnabled;
+    }
+
+    @Config("http-client.coalescing.enabled")
+    @ConfigDescription("Share a single exchange between concurrent identical GET and HEAD requests")
+    public HttpClientConfig setCoalescingEnabled(boolean coalescingEnabled)
+    {
+        this.coalescingEnabled = coalescingEnabled;
+        return this;
+    }
+
+    @NotNull
+    public String getCoalescingKeyHeaders()
+    {
+        return coalescingKeyHeaders;
+    }
+
+    @Config("http-client.coalescing.key-headers")
+    @ConfigDescription("Comma separated headers that must match for requests to be coalesced; other headers are ignored")
+    public HttpClientConfig setCoalescingKeyHeaders(String coalescingKeyHeaders)
+    {
+        this.coalescingKeyHeaders = coalescingKeyHeaders;
+        return this;
+    }
+
+    public boolean isPerDestinationStatsEnabled()
+    {
+        return perDestinationStatsEnabled;
+    }
+
+    @Config("http-client.per-destination-stats.enabled")
+    @ConfigDescription("Record request statistics for each destination host and port")
+    public HttpClientConfig setPerDestinationStatsEnabled(boolean perDestinationStatsEnabled)
+    {
+        this.perDestinationStatsEnabled = perDestinationStatsEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public int getPerDestinationStatsMaxDestinations()
+    {
+        return perDestinationStatsMaxDestinations;
+    }
+
+    @Config("http-client.per-destination-stats.max-destinations")
+    @ConfigDescription("Maximum number of destinations with separate statistics; the rest are recorded together")
+    public HttpClientConfig setPerDestinationStatsMaxDestinations(int perDestinationStatsMaxDestinations)
+    {
+        this.perDestinationStatsMaxDestinations = perDestinationStatsMaxDestinations;
+        return this;
+    }
+
+    @Min(0)
+    public int getWarmUpMinConnections()
+    {
+        return warmUpMinConnections;
+    }
+
+    @Config("http-client.warm-up.min-connections")
+    @ConfigDescription("Number of connections to keep open to each known destination, or zero to disable")
+    public HttpClientConfig setWarmUpMinConnections(int warmUpMinConnections)
+    {
+        this.warmUpMinConnections = warmUpMinConnections;
+        return this;
+    }
+
+    public String getWarmUpDestinations()
+    {
+        return warmUpDestinations;
+    }
+
+    @Config("http-client.warm-up.destinations")
+    @ConfigDescription("Comma separated URIs of destinations to keep connections open to")
+    public HttpClientConfig setWarmUpDestinations(String warmUpDestinations)
+    {
+        this.warmUpDestinations = warmUpDestinations;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1s")
+    public Duration getWarmUpInterval()
+    {
+        return warmUpInterval;
+    }
+
+    @Config("http-client.warm-up.interval")
+    @ConfigDescription("Interval between probes of the warm connections; must be shorter than the idle timeout")
+    public HttpClientConfig setWarmUpInterval(Duration warmUpInterval)
+    {
+        this.warmUpInterval = warmUpInterval;
+        return this;
+    }
+
+    public String getWarmUpProbePath()
+    {
+        return warmUpProbePath;
+    }
+
+    @Config("http-client.warm-up.probe-path")
+    @ConfigDescription("Path of the HEAD requests used to open and keep alive warm connections; required to enable warm-up")
+    public HttpClientConfig setWarmUpProbePath(String warmUpProbePath)
+    {
+        this.warmUpProbePath = warmUpProbePath;
+        return this;
+    }
+
+    @AssertTrue(message = "warm-up min connections must not be greater than max connections per server")
+    public boolean isWarmUpMinConnectionsValid()
+    {
+        return warmUpMinConnections <= maxConnectionsPerServer;
+    }
+
+    @AssertTrue(message = "warm-up probe path is required when warm-up min connections is set")
+    public boolean isWarmUpProbePathValid()
+    {
+        return warmUpMinConnections == 0 || warmUpProbePath != null;
+    }
+
+    public boolean isDnsCacheEnabled()
+    {
+        return dnsCacheEnabled;
+    }
+
+    @Config("http-client.dns-cache.enabled")
+    @ConfigDescription("Resolve hosts through a cache that is refreshed in the background instead of on every new connection")
+    public HttpClientConfig setDnsCacheEnabled(boolean dnsCacheEnabled)
+    {
+        this.dnsCacheEnabled = dnsCacheEnabled;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getDnsCacheTtl()
+    {
+        return dnsCacheTtl;
+    }
+
+    @Config("http-client.dns-cache.ttl")
+    @ConfigDescription("How long resolved addresses are cached")
+    public HttpClientConfig setDnsCacheTtl(Duration dnsCacheTtl)
+    {
+        this.dnsCacheTtl = dnsCacheTtl;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getDnsCacheNegativeTtl()
+    {
+        return dnsCacheNegativeTtl;
+    }
+
+    @Config("http-client.dns-cache.negative-ttl")
+    @ConfigDescription("How long failed lookups are cached")
+    public HttpClientConfig setDnsCacheNegativeTtl(Duration dnsCacheNegativeTtl)
+    {
+        this.dnsCacheNegativeTtl = dnsCacheNegativeTtl;
+        return this;
+    }
+
+    @Min(1)
+    public int getDnsCacheMaxEntries()
+    {
+        return dnsCacheMaxEntries;
+    }
+
+    @Config("http-client.dns-cache.max-entries")
+    public HttpClientConfig setDnsCacheMaxEntries(int dnsCacheMaxEntries)
+    {
+        this.dnsCacheMaxEntries = dnsCacheMaxEntries;
+        return this;
+    }
+
+    public boolean isBufferedExecuteEnabled()
+    {
+        return bufferedExecuteEnabled;
+    }
+
+    @Config("http-client.buffered-execute.enabled")
+    @ConfigDescription("Buffer responses for synchronous requests on the I/O threads and hand them to the waiting caller, which suits many (virtual) caller threads")
+    public HttpClientConfig setBufferedExecuteEnabled(boolean bufferedExecuteEnabled)
+    {
+        this.bufferedExecuteEnabled = bufferedExecuteEnabled;
+        return this;
+    }
 }
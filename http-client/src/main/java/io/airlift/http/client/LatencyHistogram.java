@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Ticker;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A lock-free histogram of recent latencies.
+ * <p>
+ * Latencies are counted in buckets of microseconds that grow exponentially,
+ * with four buckets per power of two, so a percentile is accurate to within
+ * about 20%. Recording is a single atomic increment, so unlike
+ * {@link io.airlift.stats.TimeStat} it can be updated by many threads on a
+ * hot path without contention on a lock.
+ * <p>
+ * Counts are kept for the current and the previous window, and older counts
+ * are dropped, so the statistics cover between one and two windows of the
+ * most recent latencies.
+ */
+@Beta
+public class LatencyHistogram
+{
+    // four buckets for each power of two up to 2^40 microseconds (about 12 days)
+    private static final int BUCKETS = 160;
+
+    private final long windowNanos;
+    private final Ticker ticker;
+    private final AtomicReference<Windows> windows;
+
+    public LatencyHistogram()
+    {
+        this(new Duration(1, TimeUnit.MINUTES));
+    }
+
+    public LatencyHistogram(Duration window)
+    {
+        this(window, Ticker.systemTicker());
+    }
+
+    public LatencyHistogram(Duration window, Ticker ticker)
+    {
+        checkNotNull(window, "window is null");
+        this.windowNanos = window.roundTo(TimeUnit.NANOSECONDS);
+        checkArgument(windowNanos > 0, "window must be greater than zero");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        this.windows = new AtomicReference<>(new Windows(new AtomicLongArray(BUCKETS), null, ticker.read()));
+    }
+
+    public void add(long nanos)
+    {
+        getWindows().current.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0))));
+    }
+
+    @Managed
+    public long getCount()
+    {
+        long[] snapshot = snapshot();
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += snapshot[i];
+        }
+        return count;
+    }
+
+    @Managed
+    public double getP50()
+    {
+        return getPercentile(0.5);
+    }
+
+    @Managed
+    public double getP90()
+    {
+        return getPercentile(0.9);
+    }
+
+    @Managed
+    public double getP99()
+    {
+        return getPercentile(0.99);
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the bucket that holds the
+     * given percentile, or NaN if nothing has been recorded recently.
+     */
+    public double getPercentile(double percentile)
+    {
+        checkArgument(percentile >= 0 && percentile <= 1, "percentile must be between 0 and 1");
+
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(rank, 1)) {
+                return getUpperBoundMicros(i) / 1000.0;
+            }
+        }
+        return getUpperBoundMicros(BUCKETS - 1) / 1000.0;
+    }
+
+    private long[] snapshot()
+    {
+        // the buckets are read one at a time, which is fine for stats
+        Windows windows = getWindows();
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = windows.current.get(i);
+            if (windows.previous != null) {
+                snapshot[i] += windows.previous.get(i);
+            }
+        }
+        return snapshot;
+    }
+
+    private Windows getWindows()
+    {
+        while (true) {
+            Windows windows = this.windows.get();
+            long now = ticker.read();
+            long elapsed = now - windows.startNanos;
+            if (elapsed < windowNanos) {
+                return windows;
+            }
+            // the current window becomes the previous one, unless it is too old to keep
+            AtomicLongArray previous = (elapsed < 2 * windowNanos) ? windows.current : null;
+            long start = (elapsed < 2 * windowNanos) ? windows.startNanos + windowNanos : now;
+            Windows rotated = new Windows(new AtomicLongArray(BUCKETS), previous, start);
+            if (this.windows.compareAndSet(windows, rotated)) {
+                return rotated;
+            }
+        }
+    }
+
+    static int getBucket(long micros)
+    {
+        if (micros < 4) {
+            return (int) micros;
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) ((micros >>> (log2 - 2)) & 3);
+        return Math.min(4 * (log2 - 1) + subBucket, BUCKETS - 1);
+    }
+
+    static long getUpperBoundMicros(int bucket)
+    {
+        if (bucket < 4) {
+            return bucket + 1;
+        }
+        int log2 = bucket / 4 + 1;
+        int subBucket = bucket % 4;
+        return (4L + subBucket + 1) << (log2 - 2);
+    }
+
+    private static class Windows
+    {
+        private final AtomicLongArray current;
+        private final AtomicLongArray previous;
+        private final long startNanos;
+
+        private Windows(AtomicLongArray current, AtomicLongArray previous, long startNanos)
+        {
+            this.current = current;
+            this.previous = previous;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.net.HostAndPort;
+import org.weakref.jmx.Managed;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.http.client.Destinations.getDestination;
+
+/**
+ * {@link DestinationStats} for each destination of a client. To bound the
+ * memory used by a client that talks to many hosts, destinations beyond the
+ * first {@code maxDestinations} share a single entry named {@value #OTHER}.
+ */
+@Beta
+public class PerDestinationStats
+{
+    public static final String OTHER = "other";
+
+    private final int maxDestinations;
+    private final ConcurrentMap<HostAndPort, DestinationStats> destinations = new ConcurrentHashMap<>();
+    private final DestinationStats other = new DestinationStats();
+
+    public PerDestinationStats(int maxDestinations)
+    {
+        checkArgument(maxDestinations >= 0, "maxDestinations is negative");
+        this.maxDestinations = maxDestinations;
+    }
+
+    public DestinationStats getDestinationStats(URI uri)
+    {
+        HostAndPort destination = getDestination(uri);
+        DestinationStats stats = destinations.get(destination);
+        if (stats != null) {
+            return stats;
+        }
+        // the bound is approximate under concurrent inserts, which is fine for stats
+        if (destinations.size() >= maxDestinations) {
+            return other;
+        }
+        stats = new DestinationStats();
+        DestinationStats existing = destinations.putIfAbsent(destination, stats);
+        return (existing == null) ? stats : existing;
+    }
+
+    public Map<String, DestinationStats> getDestinations()
+    {
+        ImmutableMap.Builder<String, DestinationStats> builder = ImmutableMap.builder();
+        for (Entry<HostAndPort, DestinationStats> entry : destinations.entrySet()) {
+            builder.put(entry.getKey().toString(), entry.getValue());
+        }
+        return builder.put(OTHER, other).build();
+    }
+
+    @Managed
+    public int getDestinationCount()
+    {
+        return destinations.size();
+    }
+
+    @Managed(description = "Total request count of each destination")
+    public Map<String, Long> getRequestCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, DestinationStats> entry : getDestinations().entrySet()) {
+            long total = 0;
+            for (long count : entry.getValue().getStatusClasses().getCounts().values()) {
+                total += count;
+            }
+            counts.put(entry.getKey(), total);
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Server error (5xx) count of each destination")
+    public Map<String, Long> getServerErrorCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, DestinationStats> entry : getDestinations().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getStatusClasses().getServerError());
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Count of requests that failed without a response for each destination")
+    public Map<String, Long> getFailedCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, DestinationStats> entry : getDestinations().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getStatusClasses().getFailed());
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Request count of each status class of a destination host:port")
+    public Map<String, Long> getStatusClassCounts(String destination)
+    {
+        DestinationStats stats = getDestinations().get(destination);
+        if (stats == null) {
+            return ImmutableMap.of();
+        }
+        return stats.getStatusClasses().getCounts();
+    }
+
+    @Managed(description = "Recent p99 of the total request time in milliseconds of each destination")
+    public Map<String, Double> getTotalTimeP99()
+    {
+        ImmutableSortedMap.Builder<String, Double> times = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, DestinationStats> entry : getDestinations().entrySet()) {
+            times.put(entry.getKey(), entry.getValue().getTotalTime().getP99());
+        }
+        return times.build();
+    }
+
+    @Managed(description = "Recent p50 and p99 of each request phase in milliseconds of a destination host:port")
+    public Map<String, Double> getPhaseTimes(String destination)
+    {
+        DestinationStats stats = getDestinations().get(destination);
+        if (stats == null) {
+            return ImmutableMap.of();
+        }
+        ImmutableMap.Builder<String, Double> times = ImmutableMap.builder();
+        addPercentiles(times, "queued", stats.getQueuedTime());
+        addPercentiles(times, "requestHeaders", stats.getRequestHeadersTime());
+        addPercentiles(times, "requestContent", stats.getRequestContentTime());
+        addPercentiles(times, "timeToFirstByte", stats.getTimeToFirstByte());
+        addPercentiles(times, "responseContent", stats.getResponseContentTime());
+        addPercentiles(times, "total", stats.getTotalTime());
+        return times.build();
+    }
+
+    private static void addPercentiles(ImmutableMap.Builder<String, Double> times, String phase, LatencyHistogram histogram)
+    {
+        times.put(phase + ".p50", histogram.getP50());
+        times.put(phase + ".p99", histogram.getP99());
+    }
+}
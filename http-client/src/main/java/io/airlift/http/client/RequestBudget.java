@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token bucket that limits extra requests (retries, hedges) to a fraction
+ * of the original requests. Every original request deposits {@code ratio}
+ * tokens, up to {@code maxTokens}, and every extra request withdraws one.
+ */
+@Beta
+public class RequestBudget
+{
+    // tokens are stored in thousandths to keep the bucket lock-free
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    public RequestBudget(double ratio, int maxTokens)
+    {
+        checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+        checkArgument(maxTokens >= 1, "maxTokens must be at least 1");
+        this.deposit = (long) (ratio * SCALE);
+        this.capacity = maxTokens * SCALE;
+        this.tokens = new AtomicLong(capacity);
+    }
+
+    public void requestSent()
+    {
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(capacity, current + deposit);
+            if (current == next || tokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if an extra request is allowed; the token is consumed
+     */
+    public boolean tryAcquire()
+    {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double getAvailableTokens()
+    {
+        return tokens.get() * 1.0 / SCALE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("ratio", deposit * 1.0 / SCALE)
+                .add("maxTokens", capacity / SCALE)
+                .add("availableTokens", getAvailableTokens())
+                .toString();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in each phase of an HTTP exchange:
+ * <ul>
+ * <li>queued: waiting for a connection, including connect and TLS handshake</li>
+ * <li>request headers: sending the request headers</li>
+ * <li>request content: sending the request body</li>
+ * <li>time to first byte: waiting for the response to begin</li>
+ * <li>response content: receiving the response body</li>
+ * </ul>
+ */
+@Beta
+public class RequestPhaseStats
+{
+    private final TimeStat queuedTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat requestHeadersTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat requestContentTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat timeToFirstByte = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat responseContentTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat totalTime = new TimeStat(TimeUnit.MILLISECONDS);
+
+    /**
+     * Records the {@link System#nanoTime()} at which each phase of an exchange
+     * ended. Phases that were not reached, for example because the exchange
+     * failed, are passed as zero and are not recorded.
+     */
+    public void record(long queuedNanos, long beginNanos, long headersSentNanos, long contentSentNanos, long responseBeginNanos, long completeNanos)
+    {
+        add(queuedTime, queuedNanos, beginNanos);
+        add(requestHeadersTime, beginNanos, headersSentNanos);
+        add(requestContentTime, headersSentNanos, contentSentNanos);
+        // the server may respond before the request content is sent
+        add(timeToFirstByte, (contentSentNanos != 0) ? Math.min(contentSentNanos, responseBeginNanos) : headersSentNanos, responseBeginNanos);
+        add(responseContentTime, responseBeginNanos, completeNanos);
+        add(totalTime, queuedNanos, completeNanos);
+    }
+
+    private static void add(TimeStat stat, long startNanos, long endNanos)
+    {
+        if (startNanos != 0 && endNanos != 0 && endNanos >= startNanos) {
+            stat.add(endNanos - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueuedTime()
+    {
+        return queuedTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRequestHeadersTime()
+    {
+        return requestHeadersTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRequestContentTime()
+    {
+        return requestContentTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getTimeToFirstByte()
+    {
+        return timeToFirstByte;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getResponseContentTime()
+    {
+        return responseContentTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getTotalTime()
+    {
+        return totalTime;
+    }
+}
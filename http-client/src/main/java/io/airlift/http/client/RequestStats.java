@@ -34,6 +34,9 @@ public class RequestStats
     private final TimeStat responseTime;
     private final DistributionStat readBytes;
     private final DistributionStat writtenBytes;
+    private final CounterStat coalesced;
+    private final RequestPhaseStats phases;
+    private final StatusClassStats statusClasses;
 
     @Inject
     public RequestStats()
@@ -43,6 +46,9 @@ public class RequestStats
         responseTime = new TimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
+        coalesced = new CounterStat();
+        phases = new RequestPhaseStats();
+        statusClasses = new StatusClassStats();
     }
 
     public void record(String method,
@@ -56,13 +62,21 @@ public class RequestStats
         if (requestProcessingTime != null) {
             requestTime.add(requestProcessingTime);
         }
-        if (requestProcessingTime != null) {
+        if (responseProcessingTime != null) {
             responseTime.add(responseProcessingTime);
         }
         readBytes.add(responseSizeInBytes);
         writtenBytes.add(requestSizeInBytes);
     }
 
+    /**
+     * Records a request that shared the exchange of an identical in-flight request.
+     */
+    public void recordCoalesced()
+    {
+        coalesced.update(1);
+    }
+
     @Managed
     @Flatten
     public CounterStat getRequest()
@@ -97,4 +111,25 @@ public class RequestStats
     {
         return writtenBytes;
     }
+
+    @Managed
+    @Nested
+    public CounterStat getCoalesced()
+    {
+        return coalesced;
+    }
+
+    @Managed
+    @Nested
+    public RequestPhaseStats getPhases()
+    {
+        return phases;
+    }
+
+    @Managed
+    @Nested
+    public StatusClassStats getStatusClasses()
+    {
+        return statusClasses;
+    }
 }
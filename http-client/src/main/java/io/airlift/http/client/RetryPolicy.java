@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.units.Duration;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides which failed requests are retried and how long to wait before each retry.
+ * <p>
+ * Only requests with an idempotent method and a body that can be sent again
+ * (no body or a {@link StaticBodyGenerator}) are retried. A request is retried
+ * when it fails with an I/O error or a timeout, or when the server responds
+ * with 502, 503 or 504. The wait before retry {@code n} is chosen uniformly at
+ * random between zero and {@code min(maxBackoff, initialBackoff * 2^(n-1))}.
+ * When a retriable response carries a {@code Retry-After} header with a delay
+ * in seconds, the retry waits at least that long; a response asking for a
+ * longer wait than {@code maxBackoff} is not retried.
+ */
+@Beta
+public class RetryPolicy
+{
+    private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE");
+    private static final Set<Integer> RETRIABLE_STATUS_CODES = ImmutableSet.of(
+            HttpStatus.BAD_GATEWAY.code(),
+            HttpStatus.SERVICE_UNAVAILABLE.code(),
+            HttpStatus.GATEWAY_TIMEOUT.code());
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff)
+    {
+        checkArgument(maxAttempts >= 1, "maxAttempts must be at least 1");
+        checkNotNull(initialBackoff, "initialBackoff is null");
+        checkNotNull(maxBackoff, "maxBackoff is null");
+        checkArgument(initialBackoff.compareTo(maxBackoff) <= 0, "initialBackoff %s is greater than maxBackoff %s", initialBackoff, maxBackoff);
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.roundTo(TimeUnit.NANOSECONDS);
+        this.maxBackoffNanos = maxBackoff.roundTo(TimeUnit.NANOSECONDS);
+    }
+
+    public static RetryPolicy noRetries()
+    {
+        return new RetryPolicy(1, new Duration(0, TimeUnit.MILLISECONDS), new Duration(0, TimeUnit.MILLISECONDS));
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    public boolean isEnabled()
+    {
+        return maxAttempts > 1;
+    }
+
+    public boolean canRetry(Request request)
+    {
+        BodyGenerator bodyGenerator = request.getBodyGenerator();
+        return IDEMPOTENT_METHODS.contains(request.getMethod()) &&
+                (bodyGenerator == null || bodyGenerator instanceof StaticBodyGenerator);
+    }
+
+    public boolean isRetriable(Throwable failure)
+    {
+        if (failure instanceof ResponseTooLargeException) {
+            return false;
+        }
+        return failure instanceof IOException || failure instanceof TimeoutException;
+    }
+
+    public boolean isRetriable(int statusCode)
+    {
+        return RETRIABLE_STATUS_CODES.contains(statusCode);
+    }
+
+    /**
+     * Returns the time in nanoseconds to wait after the given failed attempt (starting at 1).
+     */
+    public long getBackoffNanos(int attempt)
+    {
+        checkArgument(attempt >= 1, "attempt must be at least 1");
+        long ceiling = initialBackoffNanos;
+        for (int i = 1; i < attempt && ceiling < maxBackoffNanos; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffNanos);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Returns the time in nanoseconds to wait after the given failed attempt
+     * (starting at 1) that received a retriable response, or -1 if the
+     * {@code Retry-After} header asks for a longer wait than the maximum backoff.
+     *
+     * @param retryAfter the value of the {@code Retry-After} header, if any;
+     * HTTP dates are ignored
+     */
+    public long getBackoffNanos(int attempt, @Nullable String retryAfter)
+    {
+        long backoffNanos = getBackoffNanos(attempt);
+        long retryAfterNanos = parseRetryAfterNanos(retryAfter);
+        if (retryAfterNanos > maxBackoffNanos) {
+            return -1;
+        }
+        return Math.max(backoffNanos, retryAfterNanos);
+    }
+
+    private static long parseRetryAfterNanos(@Nullable String retryAfter)
+    {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            long seconds = Long.parseLong(retryAfter.trim());
+            if (seconds <= 0) {
+                return 0;
+            }
+            return TimeUnit.SECONDS.toNanos(seconds);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("maxAttempts", maxAttempts)
+                .add("initialBackoff", new Duration(initialBackoffNanos, TimeUnit.NANOSECONDS).convertToMostSuccinctTimeUnit())
+                .add("maxBackoff", new Duration(maxBackoffNanos, TimeUnit.NANOSECONDS).convertToMostSuccinctTimeUnit())
+                .toString();
+    }
+}
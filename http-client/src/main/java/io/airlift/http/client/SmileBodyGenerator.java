@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import io.airlift.json.JsonCodec;
+
+/**
+ * A body generator for an instance encoded in Smile. The request must set
+ * {@code Content-Type: application/x-jackson-smile}.
+ */
+@Beta
+public class SmileBodyGenerator<T>
+        extends StaticBodyGenerator
+{
+    public static <T> SmileBodyGenerator<T> smileBodyGenerator(JsonCodec<T> jsonCodec, T instance)
+    {
+        return new SmileBodyGenerator<>(jsonCodec, instance);
+    }
+
+    private SmileBodyGenerator(JsonCodec<T> jsonCodec, T instance)
+    {
+        super(jsonCodec.toJsonBytes(SmileSupport.getSmileFactory(), instance));
+    }
+}
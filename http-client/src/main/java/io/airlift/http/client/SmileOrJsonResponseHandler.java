@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.MediaType;
+import com.google.common.primitives.Ints;
+import io.airlift.json.JsonCodec;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static io.airlift.http.client.ResponseHandlerUtils.propagate;
+
+/**
+ * Decodes a response in either JSON or Smile, according to its Content-Type,
+ * with the type of a {@link JsonCodec}. The response is parsed as it is read.
+ * Requests should ask for either format with
+ * {@link SmileSupport#ACCEPT_SMILE_OR_JSON}.
+ */
+@Beta
+public class SmileOrJsonResponseHandler<T>
+        implements ResponseHandler<T, RuntimeException>
+{
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
+
+    public static <T> SmileOrJsonResponseHandler<T> createSmileOrJsonResponseHandler(JsonCodec<T> jsonCodec)
+    {
+        return new SmileOrJsonResponseHandler<>(jsonCodec, null, 200, 201, 202, 203, 204, 205, 206);
+    }
+
+    /**
+     * Creates a handler that also records in {@code smileSupport} whether the
+     * destination of each response supports Smile.
+     */
+    public static <T> SmileOrJsonResponseHandler<T> createSmileOrJsonResponseHandler(JsonCodec<T> jsonCodec, SmileSupport smileSupport)
+    {
+        return new SmileOrJsonResponseHandler<>(jsonCodec, smileSupport, 200, 201, 202, 203, 204, 205, 206);
+    }
+
+    public static <T> SmileOrJsonResponseHandler<T> createSmileOrJsonResponseHandler(JsonCodec<T> jsonCodec, @Nullable SmileSupport smileSupport, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        return new SmileOrJsonResponseHandler<>(jsonCodec, smileSupport, firstSuccessfulResponseCode, otherSuccessfulResponseCodes);
+    }
+
+    private final JsonCodec<T> jsonCodec;
+    private final SmileSupport smileSupport;
+    private final Set<Integer> successfulResponseCodes;
+
+    private SmileOrJsonResponseHandler(JsonCodec<T> jsonCodec, @Nullable SmileSupport smileSupport, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        this.jsonCodec = jsonCodec;
+        this.smileSupport = smileSupport;
+        this.successfulResponseCodes = ImmutableSet.<Integer>builder().add(firstSuccessfulResponseCode).addAll(Ints.asList(otherSuccessfulResponseCodes)).build();
+    }
+
+    @Override
+    public T handleException(Request request, Exception exception)
+    {
+        throw propagate(request, exception);
+    }
+
+    @Override
+    public T handle(Request request, Response response)
+    {
+        if (!successfulResponseCodes.contains(response.getStatusCode())) {
+            throw new UnexpectedResponseException(
+                    String.format("Expected response code to be %s, but was %d: %s", successfulResponseCodes, response.getStatusCode(), response.getStatusMessage()),
+                    request,
+                    response);
+        }
+        String contentType = response.getHeader(CONTENT_TYPE);
+        if (contentType == null) {
+            throw new UnexpectedResponseException("Content-Type is not set for response", request, response);
+        }
+        MediaType mediaType = MediaType.parse(contentType);
+        boolean smile = mediaType.is(SmileSupport.SMILE);
+        if (!smile && !mediaType.is(MEDIA_TYPE_JSON)) {
+            throw new UnexpectedResponseException("Expected application/x-jackson-smile or application/json response from server but got " + contentType, request, response);
+        }
+        if (smileSupport != null && request != null) {
+            smileSupport.recordResponse(request.getUri(), mediaType);
+        }
+
+        try {
+            if (smile) {
+                return jsonCodec.fromJson(SmileSupport.getSmileFactory(), response.getInputStream());
+            }
+            return jsonCodec.fromJson(response.getInputStream());
+        }
+        catch (IOException e) {
+            throw propagate(request, e);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unable to create " + jsonCodec.getType() + " from " + (smile ? "Smile" : "JSON") + " response", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.annotations.Beta;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.HostAndPort;
+import com.google.common.net.MediaType;
+import io.airlift.json.JsonCodec;
+
+import java.net.URI;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static io.airlift.http.client.Destinations.getDestination;
+import static io.airlift.http.client.JsonBodyGenerator.jsonBodyGenerator;
+import static io.airlift.http.client.SmileBodyGenerator.smileBodyGenerator;
+
+/**
+ * Content negotiation between JSON and Smile, the binary JSON format that
+ * the jaxrs {@code SmileMapper} reads and writes.
+ * <p>
+ * Requests prepared with {@link #prepareRequest} accept either format, and
+ * responses handled by a {@link SmileOrJsonResponseHandler} using this
+ * instance record which destinations answered in Smile. Request bodies sent
+ * to those destinations are encoded in Smile; all others are sent as JSON.
+ */
+@Beta
+public class SmileSupport
+{
+    public static final MediaType SMILE = MediaType.create("application", "x-jackson-smile");
+    public static final String ACCEPT_SMILE_OR_JSON = SMILE + ", application/json; q=0.5";
+
+    private static final MediaType JSON = MediaType.create("application", "json");
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+    private static final int MAX_DESTINATIONS = 10_000;
+
+    private final Cache<HostAndPort, Boolean> smileDestinations = CacheBuilder.newBuilder()
+            .maximumSize(MAX_DESTINATIONS)
+            .build();
+
+    /**
+     * Returns the factory shared by all Smile encoding and decoding in the
+     * client. Factories are thread safe and expensive to create.
+     */
+    public static SmileFactory getSmileFactory()
+    {
+        return SMILE_FACTORY;
+    }
+
+    /**
+     * Sets the URI of the request, asks for a Smile or JSON response, and
+     * sets the body to the instance encoded in Smile if the destination is
+     * known to support it, or in JSON otherwise.
+     */
+    public <T> Request.Builder prepareRequest(Request.Builder builder, URI uri, JsonCodec<T> codec, T instance)
+    {
+        checkNotNull(codec, "codec is null");
+        prepareRequest(builder, uri);
+        if (isSmileSupported(uri)) {
+            return builder.setHeader(CONTENT_TYPE, SMILE.toString())
+                    .setBodyGenerator(smileBodyGenerator(codec, instance));
+        }
+        return builder.setHeader(CONTENT_TYPE, JSON.toString())
+                .setBodyGenerator(jsonBodyGenerator(codec, instance));
+    }
+
+    /**
+     * Sets the URI of the request and asks for a Smile or JSON response.
+     */
+    public Request.Builder prepareRequest(Request.Builder builder, URI uri)
+    {
+        checkNotNull(builder, "builder is null");
+        checkNotNull(uri, "uri is null");
+        return builder.setUri(uri)
+                .setHeader(ACCEPT, ACCEPT_SMILE_OR_JSON);
+    }
+
+    public boolean isSmileSupported(URI uri)
+    {
+        return smileDestinations.getIfPresent(getDestination(uri)) != null;
+    }
+
+    void recordResponse(URI uri, MediaType contentType)
+    {
+        HostAndPort destination = getDestination(uri);
+        if (contentType.is(SMILE)) {
+            smileDestinations.put(destination, Boolean.TRUE);
+        }
+        else if (contentType.is(JSON)) {
+            // the destination may have been replaced by one without Smile support
+            smileDestinations.invalidate(destination);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import org.weakref.jmx.Managed;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counts and latencies by response status class. Exchanges that
+ * failed before a response was received are counted as failed. Recording
+ * is lock-free so it can be done on the request completion path.
+ */
+@Beta
+public class StatusClassStats
+{
+    private static final String[] NAMES = {"failed", "1xx", "2xx", "3xx", "4xx", "5xx"};
+    private static final int FAILED = 0;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NAMES.length);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(NAMES.length);
+
+    /**
+     * Records an exchange that completed with the given status code, or a
+     * status code of zero if no response was received.
+     */
+    public void record(int statusCode, long elapsedNanos)
+    {
+        int index = getIndex(statusCode);
+        counts.incrementAndGet(index);
+        totalNanos.addAndGet(index, Math.max(elapsedNanos, 0));
+    }
+
+    private static int getIndex(int statusCode)
+    {
+        int statusClass = statusCode / 100;
+        if (statusClass < 1 || statusClass > 5) {
+            return FAILED;
+        }
+        return statusClass;
+    }
+
+    @Managed
+    public long getFailed()
+    {
+        return counts.get(FAILED);
+    }
+
+    @Managed
+    public long getInformational()
+    {
+        return counts.get(1);
+    }
+
+    @Managed
+    public long getSuccess()
+    {
+        return counts.get(2);
+    }
+
+    @Managed
+    public long getRedirection()
+    {
+        return counts.get(3);
+    }
+
+    @Managed
+    public long getClientError()
+    {
+        return counts.get(4);
+    }
+
+    @Managed
+    public long getServerError()
+    {
+        return counts.get(5);
+    }
+
+    @Managed(description = "Request count of each status class")
+    public Map<String, Long> getCounts()
+    {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (int i = 0; i < NAMES.length; i++) {
+            builder.put(NAMES[i], counts.get(i));
+        }
+        return builder.build();
+    }
+
+    @Managed(description = "Average request time in milliseconds of each status class")
+    public Map<String, Double> getAverageTimes()
+    {
+        ImmutableMap.Builder<String, Double> builder = ImmutableMap.builder();
+        for (int i = 0; i < NAMES.length; i++) {
+            // the two reads are not atomic, which only skews the average slightly
+            long count = counts.get(i);
+            double average = (count == 0) ? 0.0 : ((double) totalNanos.get(i)) / count / TimeUnit.MILLISECONDS.toNanos(1);
+            builder.put(NAMES[i], average);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.MediaType;
+import com.google.common.primitives.Ints;
+import io.airlift.json.JsonCodec;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static io.airlift.http.client.ResponseHandlerUtils.propagate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Like {@link JsonResponseHandler}, but parses the response as it is read
+ * from the connection instead of first copying the whole body into a byte
+ * array. Only the most recently read bytes are kept, to show the JSON around
+ * the position reported by the parser when parsing fails. The parser reads
+ * ahead, so the kept bytes extend well past the bytes it has parsed.
+ */
+@Beta
+public class StreamingJsonResponseHandler<T>
+        implements ResponseHandler<T, RuntimeException>
+{
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
+    // larger than the Jackson read-ahead buffer, so the error position is still kept
+    private static final int RECENT_BYTES = 16 * 1024;
+    private static final int ERROR_CONTEXT_BEFORE = 512;
+    private static final int ERROR_CONTEXT_AFTER = 128;
+
+    public static <T> StreamingJsonResponseHandler<T> createStreamingJsonResponseHandler(JsonCodec<T> jsonCodec)
+    {
+        return new StreamingJsonResponseHandler<>(jsonCodec, 200, 201, 202, 203, 204, 205, 206);
+    }
+
+    public static <T> StreamingJsonResponseHandler<T> createStreamingJsonResponseHandler(JsonCodec<T> jsonCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        return new StreamingJsonResponseHandler<>(jsonCodec, firstSuccessfulResponseCode, otherSuccessfulResponseCodes);
+    }
+
+    private final JsonCodec<T> jsonCodec;
+    private final Set<Integer> successfulResponseCodes;
+
+    private StreamingJsonResponseHandler(JsonCodec<T> jsonCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        this.jsonCodec = jsonCodec;
+        this.successfulResponseCodes = ImmutableSet.<Integer>builder().add(firstSuccessfulResponseCode).addAll(Ints.asList(otherSuccessfulResponseCodes)).build();
+    }
+
+    @Override
+    public T handleException(Request request, Exception exception)
+    {
+        throw propagate(request, exception);
+    }
+
+    @Override
+    public T handle(Request request, Response response)
+    {
+        if (!successfulResponseCodes.contains(response.getStatusCode())) {
+            throw new UnexpectedResponseException(
+                    String.format("Expected response code to be %s, but was %d: %s", successfulResponseCodes, response.getStatusCode(), response.getStatusMessage()),
+                    request,
+                    response);
+        }
+        String contentType = response.getHeader(CONTENT_TYPE);
+        if (contentType == null) {
+            throw new UnexpectedResponseException("Content-Type is not set for response", request, response);
+        }
+        if (!MediaType.parse(contentType).is(MEDIA_TYPE_JSON)) {
+            throw new UnexpectedResponseException("Expected application/json response from server but got " + contentType, request, response);
+        }
+
+        RecentBytesInputStream input;
+        try {
+            input = new RecentBytesInputStream(response.getInputStream(), RECENT_BYTES);
+        }
+        catch (IOException e) {
+            throw propagate(request, e);
+        }
+        try {
+            return jsonCodec.fromJson(input);
+        }
+        catch (IOException e) {
+            throw propagate(request, e);
+        }
+        catch (IllegalArgumentException e) {
+            long errorOffset = getErrorOffset(e);
+            long start = Math.max(errorOffset - ERROR_CONTEXT_BEFORE, input.getFirstRecentPosition());
+            long end = Math.min(errorOffset + ERROR_CONTEXT_AFTER, input.getPosition());
+            if (errorOffset < 0 || start > errorOffset || errorOffset > end) {
+                // the parser did not report a position that is still in the buffer
+                throw new IllegalArgumentException(String.format("Unable to create %s from JSON response", jsonCodec.getType()), e);
+            }
+            String message = String.format("Unable to create %s from JSON response (bytes %d to %d):%n%s",
+                    jsonCodec.getType(),
+                    start,
+                    end,
+                    new String(input.getRecentBytes(start, end), UTF_8));
+            throw new IllegalArgumentException(message, e);
+        }
+    }
+
+    /**
+     * Returns the byte offset in the response of the JSON that failed to
+     * parse, or -1 if the parser did not report one.
+     */
+    private static long getErrorOffset(IllegalArgumentException e)
+    {
+        if (!(e.getCause() instanceof JsonProcessingException)) {
+            return -1;
+        }
+        JsonLocation location = ((JsonProcessingException) e.getCause()).getLocation();
+        if (location == null) {
+            return -1;
+        }
+        return location.getByteOffset();
+    }
+
+    /**
+     * Keeps the last bytes read from a stream in a ring buffer indexed by
+     * their offset in the stream.
+     */
+    private static class RecentBytesInputStream
+            extends FilterInputStream
+    {
+        private final byte[] recent;
+        private long position;
+
+        private RecentBytesInputStream(InputStream in, int size)
+        {
+            super(in);
+            this.recent = new byte[size];
+        }
+
+        public long getPosition()
+        {
+            return position;
+        }
+
+        /**
+         * Returns the offset of the oldest byte that is still kept.
+         */
+        public long getFirstRecentPosition()
+        {
+            return Math.max(position - recent.length, 0);
+        }
+
+        /**
+         * Returns the bytes from offset {@code start} inclusive to {@code end}
+         * exclusive, which must all still be kept.
+         */
+        public byte[] getRecentBytes(long start, long end)
+        {
+            checkArgument(start >= getFirstRecentPosition() && start <= end && end <= position, "bytes %s to %s are not kept", start, end);
+            int length = (int) (end - start);
+            byte[] bytes = new byte[length];
+            int offset = (int) (start % recent.length);
+            int firstPart = Math.min(length, recent.length - offset);
+            System.arraycopy(recent, offset, bytes, 0, firstPart);
+            System.arraycopy(recent, 0, bytes, firstPart, length - firstPart);
+            return bytes;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int value = in.read();
+            if (value != -1) {
+                recent[(int) (position % recent.length)] = (byte) value;
+                position++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            int count = in.read(buffer, offset, length);
+            if (count > 0) {
+                record(buffer, offset, count);
+            }
+            return count;
+        }
+
+        private void record(byte[] buffer, int offset, int count)
+        {
+            // only the tail of a large read can be kept
+            if (count > recent.length) {
+                offset += count - recent.length;
+                position += count - recent.length;
+                count = recent.length;
+            }
+            int start = (int) (position % recent.length);
+            int firstPart = Math.min(count, recent.length - start);
+            System.arraycopy(buffer, offset, recent, start, firstPart);
+            System.arraycopy(buffer, offset + firstPart, recent, 0, count - firstPart);
+            position += count;
+        }
+
+        @Override
+        public long skip(long n)
+                throws IOException
+        {
+            // read the skipped bytes so the recent bytes stay contiguous
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), recent.length)];
+            long skipped = 0;
+            while (skipped < n) {
+                int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (count <= 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.batch;
+
+import com.google.common.annotations.Beta;
+import io.airlift.http.client.BodyGenerator;
+import io.airlift.http.client.ResponseHandler;
+
+import java.util.List;
+
+/**
+ * Encodes a batch of items as the body of a single request and decodes the
+ * response into one result per item.
+ *
+ * @param <T> the item type
+ * @param <R> the result type
+ */
+@Beta
+public interface BatchCodec<T, R>
+{
+    /**
+     * Returns the value of the Content-Type header of batch requests.
+     */
+    String getContentType();
+
+    /**
+     * Creates the body of a request carrying the specified items in order.
+     */
+    BodyGenerator encode(List<T> items);
+
+    /**
+     * Returns a handler that decodes a batch response into the results for
+     * the items, in the order they were encoded. The handler must return
+     * exactly one result per item.
+     */
+    ResponseHandler<List<R>, ? extends Exception> getResponseHandler();
+}
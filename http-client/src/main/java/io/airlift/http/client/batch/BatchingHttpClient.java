@@ -0,0 +1,370 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.batch;
+
+import com.google.common.annotations.Beta;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.Request;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.Distribution;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Combines small calls to the same URI into batch POST requests.
+ * <p>
+ * Calls to a URI are buffered until the batch holds {@code maxBatchSize}
+ * items or the oldest item has waited {@code maxDelay}, whichever comes
+ * first. The batch is then encoded as a single request by the
+ * {@link BatchCodec}, and the results in the response are handed to the
+ * futures of the individual calls, in order. If the request fails, or the
+ * response does not contain one result per item, every call in the batch
+ * fails.
+ * <p>
+ * At most {@code maxPendingItems} items may be buffered or in flight at once.
+ * Calls beyond that fail immediately with a {@link RejectedExecutionException},
+ * so callers see backpressure instead of growing the queue without bound.
+ * <p>
+ * A batcher is kept for every URI that has been used, so this class is meant
+ * for a small set of endpoints. Closing it sends the buffered items but does
+ * not close the underlying client.
+ */
+@Beta
+public class BatchingHttpClient<T, R>
+        implements Closeable
+{
+    private final HttpClient httpClient;
+    private final BatchCodec<T, R> codec;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final int maxPendingItems;
+    private final Semaphore pendingItems;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<URI, Batcher> batchers = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final Distribution batchSize = new Distribution();
+    private final TimeStat batchDelay = new TimeStat(TimeUnit.MILLISECONDS);
+    private final CounterStat items = new CounterStat();
+    private final CounterStat rejected = new CounterStat();
+    private final CounterStat failedBatches = new CounterStat();
+
+    public BatchingHttpClient(HttpClient httpClient, BatchCodec<T, R> codec, int maxBatchSize, Duration maxDelay, int maxPendingItems)
+    {
+        this.httpClient = checkNotNull(httpClient, "httpClient is null");
+        this.codec = checkNotNull(codec, "codec is null");
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be greater than zero");
+        checkNotNull(maxDelay, "maxDelay is null");
+        checkArgument(maxPendingItems >= maxBatchSize, "maxPendingItems must be at least maxBatchSize");
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.roundTo(NANOSECONDS);
+        this.maxPendingItems = maxPendingItems;
+        this.pendingItems = new Semaphore(maxPendingItems);
+        this.scheduler = newSingleThreadScheduledExecutor(daemonThreadsNamed("batching-http-client-%s"));
+    }
+
+    /**
+     * Adds an item to the next batch for the URI.
+     *
+     * @return the result for the item, which fails with a
+     * {@link RejectedExecutionException} if too many items are pending
+     */
+    public ListenableFuture<R> submit(URI uri, T item)
+    {
+        checkNotNull(uri, "uri is null");
+        checkNotNull(item, "item is null");
+
+        if (closed.get()) {
+            return Futures.immediateFailedFuture(new RejectedExecutionException("client is closed"));
+        }
+        if (!pendingItems.tryAcquire()) {
+            rejected.update(1);
+            return Futures.immediateFailedFuture(new RejectedExecutionException(String.format("Too many pending items (max %s)", maxPendingItems)));
+        }
+        items.update(1);
+
+        Batcher batcher = batchers.get(uri);
+        if (batcher == null) {
+            Batcher newBatcher = new Batcher(uri);
+            batcher = batchers.putIfAbsent(uri, newBatcher);
+            if (batcher == null) {
+                batcher = newBatcher;
+            }
+        }
+
+        SettableFuture<R> future = SettableFuture.create();
+        batcher.add(item, future);
+        return future;
+    }
+
+    /**
+     * Sends the buffered items for every URI without waiting for their delay to expire.
+     */
+    public void flush()
+    {
+        for (Batcher batcher : batchers.values()) {
+            batcher.flush();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed.compareAndSet(false, true)) {
+            flush();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Managed
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    @Managed
+    public int getPendingItems()
+    {
+        return maxPendingItems - pendingItems.availablePermits();
+    }
+
+    @Managed
+    @Nested
+    public Distribution getBatchSize()
+    {
+        return batchSize;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getBatchDelay()
+    {
+        return batchDelay;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getItems()
+    {
+        return items;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedBatches()
+    {
+        return failedBatches;
+    }
+
+    private void send(URI uri, final Batch batch)
+    {
+        batchSize.add(batch.size());
+        batchDelay.add(System.nanoTime() - batch.getFirstItemNanos(), NANOSECONDS);
+
+        ListenableFuture<List<R>> response;
+        try {
+            Request request = preparePost()
+                    .setUri(uri)
+                    .setHeader(CONTENT_TYPE, codec.getContentType())
+                    .setBodyGenerator(codec.encode(batch.getItems()))
+                    .build();
+            response = httpClient.executeAsync(request, codec.getResponseHandler());
+        }
+        catch (RuntimeException e) {
+            failedBatches.update(1);
+            batch.fail(e);
+            return;
+        }
+
+        Futures.addCallback(response, new FutureCallback<List<R>>()
+        {
+            @Override
+            public void onSuccess(List<R> results)
+            {
+                if (results == null || results.size() != batch.size()) {
+                    failedBatches.update(1);
+                    batch.fail(new IllegalStateException(String.format("Expected %s results in batch response, but received %s", batch.size(), (results == null) ? null : results.size())));
+                    return;
+                }
+                batch.complete(results);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                failedBatches.update(1);
+                batch.fail(t);
+            }
+        });
+    }
+
+    private class Batcher
+            implements Runnable
+    {
+        private final URI uri;
+
+        @GuardedBy("this")
+        private List<T> items = new ArrayList<>();
+        @GuardedBy("this")
+        private List<SettableFuture<R>> futures = new ArrayList<>();
+        @GuardedBy("this")
+        private long firstItemNanos;
+        @GuardedBy("this")
+        private ScheduledFuture<?> timer;
+
+        private Batcher(URI uri)
+        {
+            this.uri = uri;
+        }
+
+        public void add(T item, SettableFuture<R> future)
+        {
+            Batch batch = null;
+            synchronized (this) {
+                if (items.isEmpty()) {
+                    firstItemNanos = System.nanoTime();
+                }
+                items.add(item);
+                futures.add(future);
+                if (items.size() >= maxBatchSize || closed.get()) {
+                    batch = takeBatch();
+                }
+                else if (items.size() == 1) {
+                    try {
+                        timer = scheduler.schedule(this, maxDelayNanos, NANOSECONDS);
+                    }
+                    catch (RejectedExecutionException e) {
+                        // closed concurrently
+                        batch = takeBatch();
+                    }
+                }
+            }
+            if (batch != null) {
+                send(uri, batch);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            flush();
+        }
+
+        public void flush()
+        {
+            Batch batch;
+            synchronized (this) {
+                if (items.isEmpty()) {
+                    return;
+                }
+                batch = takeBatch();
+            }
+            send(uri, batch);
+        }
+
+        @GuardedBy("this")
+        private Batch takeBatch()
+        {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            Batch batch = new Batch(items, futures, firstItemNanos);
+            items = new ArrayList<>();
+            futures = new ArrayList<>();
+            return batch;
+        }
+    }
+
+    private class Batch
+    {
+        private final List<T> items;
+        private final List<SettableFuture<R>> futures;
+        private final long firstItemNanos;
+
+        private Batch(List<T> items, List<SettableFuture<R>> futures, long firstItemNanos)
+        {
+            this.items = items;
+            this.futures = futures;
+            this.firstItemNanos = firstItemNanos;
+        }
+
+        public int size()
+        {
+            return items.size();
+        }
+
+        public List<T> getItems()
+        {
+            return items;
+        }
+
+        public long getFirstItemNanos()
+        {
+            return firstItemNanos;
+        }
+
+        public void complete(List<R> results)
+        {
+            pendingItems.release(items.size());
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).set(results.get(i));
+            }
+        }
+
+        public void fail(Throwable throwable)
+        {
+            pendingItems.release(items.size());
+            for (SettableFuture<R> future : futures) {
+                future.setException(throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.batch;
+
+import com.google.common.annotations.Beta;
+import io.airlift.http.client.BodyGenerator;
+import io.airlift.http.client.JsonResponseHandler;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.json.JsonCodec;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.http.client.JsonBodyGenerator.jsonBodyGenerator;
+import static io.airlift.http.client.JsonResponseHandler.createJsonResponseHandler;
+import static io.airlift.json.JsonCodec.listJsonCodec;
+
+/**
+ * Sends a batch as a JSON array of items and expects a JSON array with one
+ * result per item in response.
+ */
+@Beta
+public class JsonArrayBatchCodec<T, R>
+        implements BatchCodec<T, R>
+{
+    public static <T, R> JsonArrayBatchCodec<T, R> jsonArrayBatchCodec(Class<T> itemType, Class<R> resultType)
+    {
+        return new JsonArrayBatchCodec<>(listJsonCodec(itemType), listJsonCodec(resultType));
+    }
+
+    public static <T, R> JsonArrayBatchCodec<T, R> jsonArrayBatchCodec(JsonCodec<T> itemCodec, JsonCodec<R> resultCodec)
+    {
+        return new JsonArrayBatchCodec<>(listJsonCodec(itemCodec), listJsonCodec(resultCodec));
+    }
+
+    private final JsonCodec<List<T>> itemsCodec;
+    private final JsonResponseHandler<List<R>> responseHandler;
+
+    private JsonArrayBatchCodec(JsonCodec<List<T>> itemsCodec, JsonCodec<List<R>> resultsCodec)
+    {
+        this.itemsCodec = checkNotNull(itemsCodec, "itemsCodec is null");
+        this.responseHandler = createJsonResponseHandler(checkNotNull(resultsCodec, "resultsCodec is null"));
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return "application/json";
+    }
+
+    @Override
+    public BodyGenerator encode(List<T> items)
+    {
+        return jsonBodyGenerator(itemsCodec, items);
+    }
+
+    @Override
+    public ResponseHandler<List<R>, RuntimeException> getResponseHandler()
+    {
+        return responseHandler;
+    }
+}
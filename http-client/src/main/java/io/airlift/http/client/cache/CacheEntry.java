@@ -0,0 +1,284 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.cache;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.net.HttpHeaders;
+import com.google.common.primitives.Ints;
+import io.airlift.http.client.CacheControl;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+
+import javax.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Objects.firstNonNull;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.http.client.cache.CachedResponse.getHeader;
+
+class CacheEntry
+{
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+    private final CachedResponse response;
+    private final long storedAtNanos;
+    private final long freshnessNanos;
+    private final long staleWhileRevalidateNanos;
+    private final Map<String, String> varyValues;
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    CacheEntry(CachedResponse response, long storedAtNanos, long freshnessNanos, long staleWhileRevalidateNanos, Map<String, String> varyValues)
+    {
+        this.response = checkNotNull(response, "response is null");
+        this.storedAtNanos = storedAtNanos;
+        this.freshnessNanos = freshnessNanos;
+        this.staleWhileRevalidateNanos = staleWhileRevalidateNanos;
+        this.varyValues = ImmutableMap.copyOf(checkNotNull(varyValues, "varyValues is null"));
+    }
+
+    /**
+     * Creates an entry for a response, or returns null if the response may not be stored.
+     */
+    @Nullable
+    static CacheEntry create(Request request, CachedResponse response, long nowNanos)
+    {
+        if (response.getStatusCode() != HttpStatus.OK.code()) {
+            return null;
+        }
+
+        CacheControl cacheControl = null;
+        String cacheControlHeader = response.getHeader(HttpHeaders.CACHE_CONTROL);
+        if (cacheControlHeader != null) {
+            try {
+                cacheControl = CacheControl.valueOf(cacheControlHeader);
+            }
+            catch (RuntimeException e) {
+                // an unparsable header is not a permission to cache
+                return null;
+            }
+        }
+
+        // this cache is shared by every user of the client, so private responses are not stored
+        if (cacheControl != null && (cacheControl.isNoStore() || cacheControl.isPrivate())) {
+            return null;
+        }
+
+        Map<String, String> varyValues = getVaryValues(request, response);
+        if (varyValues == null) {
+            return null;
+        }
+
+        long freshnessNanos = 0;
+        long staleWhileRevalidateNanos = 0;
+        if (cacheControl != null && !cacheControl.isNoCache()) {
+            int maxAge = (cacheControl.getSMaxAge() >= 0) ? cacheControl.getSMaxAge() : cacheControl.getMaxAge();
+            if (maxAge > 0) {
+                long age = parseSeconds(response.getHeader(HttpHeaders.AGE));
+                freshnessNanos = TimeUnit.SECONDS.toNanos(Math.max(0, maxAge - age));
+            }
+            if (!cacheControl.isMustRevalidate() && !cacheControl.isProxyRevalidate()) {
+                staleWhileRevalidateNanos = TimeUnit.SECONDS.toNanos(parseSeconds(cacheControl.getCacheExtension().get(STALE_WHILE_REVALIDATE)));
+            }
+        }
+
+        CacheEntry entry = new CacheEntry(response, nowNanos, freshnessNanos, staleWhileRevalidateNanos, varyValues);
+        if (freshnessNanos == 0 && !entry.hasValidators()) {
+            // the entry could never be served
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the request header values the response varies on, or null if the response varies on everything.
+     */
+    @Nullable
+    private static Map<String, String> getVaryValues(Request request, CachedResponse response)
+    {
+        String vary = response.getHeader(HttpHeaders.VARY);
+        if (vary == null) {
+            return ImmutableMap.of();
+        }
+        Map<String, String> values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(vary)) {
+            if (name.equals("*")) {
+                return null;
+            }
+            values.put(name, firstNonNull(getHeader(request.getHeaders(), name), ""));
+        }
+        return values;
+    }
+
+    private static long parseSeconds(@Nullable String value)
+    {
+        if (value == null) {
+            return 0;
+        }
+        Integer seconds = Ints.tryParse(value.trim().replace("\"", ""));
+        return (seconds == null) ? 0 : Math.max(0, seconds);
+    }
+
+    public CachedResponse getResponse()
+    {
+        return response;
+    }
+
+    public String getETag()
+    {
+        return response.getHeader(HttpHeaders.ETAG);
+    }
+
+    public String getLastModified()
+    {
+        return response.getHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    public boolean hasValidators()
+    {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    public boolean isFresh(long nowNanos)
+    {
+        return nowNanos - storedAtNanos < freshnessNanos;
+    }
+
+    public boolean isStaleWhileRevalidate(long nowNanos)
+    {
+        return nowNanos - storedAtNanos < freshnessNanos + staleWhileRevalidateNanos;
+    }
+
+    /**
+     * Returns true if the request has the same values for the headers the response varies on.
+     */
+    public boolean matches(Request request)
+    {
+        for (Entry<String, String> entry : varyValues.entrySet()) {
+            if (!entry.getValue().equals(firstNonNull(getHeader(request.getHeaders(), entry.getKey()), ""))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Claims the background revalidation of this entry.
+     *
+     * @return false if another request is already revalidating the entry
+     */
+    public boolean startRevalidation()
+    {
+        return revalidating.compareAndSet(false, true);
+    }
+
+    public void revalidationFailed()
+    {
+        revalidating.set(false);
+    }
+
+    /**
+     * Returns the stored response updated with the headers of a 304 Not Modified response.
+     */
+    public CachedResponse merge(CachedResponse notModified)
+    {
+        Set<String> replaced = new HashSet<>();
+        for (String name : notModified.getHeaders().keySet()) {
+            replaced.add(name.toLowerCase());
+        }
+
+        ListMultimap<String, String> headers = ArrayListMultimap.create();
+        for (Entry<String, String> header : response.getHeaders().entries()) {
+            if (!replaced.contains(header.getKey().toLowerCase())) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        for (Entry<String, String> header : notModified.getHeaders().entries()) {
+            // the length describes the body of the 304, not the stored body
+            if (!header.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return new CachedResponse(response.getStatusCode(), response.getStatusMessage(), headers, response.getBody());
+    }
+
+    /**
+     * Approximate memory used by this entry in bytes.
+     */
+    public int getWeight()
+    {
+        int weight = 64 + response.getBody().length;
+        for (Entry<String, String> header : response.getHeaders().entries()) {
+            weight += 2 * (header.getKey().length() + header.getValue().length());
+        }
+        return weight;
+    }
+
+    public void writeTo(DataOutputStream out)
+            throws IOException
+    {
+        out.writeInt(response.getStatusCode());
+        out.writeUTF(firstNonNull(response.getStatusMessage(), ""));
+        out.writeInt(response.getHeaders().size());
+        for (Entry<String, String> header : response.getHeaders().entries()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.writeInt(response.getBody().length);
+        out.write(response.getBody());
+        out.writeLong(storedAtNanos);
+        out.writeLong(freshnessNanos);
+        out.writeLong(staleWhileRevalidateNanos);
+        out.writeInt(varyValues.size());
+        for (Entry<String, String> entry : varyValues.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    public static CacheEntry readFrom(DataInputStream in)
+            throws IOException
+    {
+        int statusCode = in.readInt();
+        String statusMessage = in.readUTF();
+        ListMultimap<String, String> headers = ArrayListMultimap.create();
+        int headerCount = in.readInt();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        long storedAtNanos = in.readLong();
+        long freshnessNanos = in.readLong();
+        long staleWhileRevalidateNanos = in.readLong();
+        ImmutableMap.Builder<String, String> varyValues = ImmutableMap.builder();
+        int varyCount = in.readInt();
+        for (int i = 0; i < varyCount; i++) {
+            varyValues.put(in.readUTF(), in.readUTF());
+        }
+        return new CacheEntry(new CachedResponse(statusCode, statusMessage, headers, body), storedAtNanos, freshnessNanos, staleWhileRevalidateNanos, varyValues.build());
+    }
+}
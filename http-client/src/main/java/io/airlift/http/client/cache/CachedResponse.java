@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import io.airlift.http.client.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A fully buffered response that can be read any number of times.
+ */
+@Beta
+public class CachedResponse
+        implements Response
+{
+    private final int statusCode;
+    private final String statusMessage;
+    private final ListMultimap<String, String> headers;
+    private final byte[] body;
+
+    public CachedResponse(int statusCode, String statusMessage, ListMultimap<String, String> headers, byte[] body)
+    {
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.headers = ImmutableListMultimap.copyOf(checkNotNull(headers, "headers is null"));
+        this.body = checkNotNull(body, "body is null");
+    }
+
+    @Override
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    @Override
+    public String getStatusMessage()
+    {
+        return statusMessage;
+    }
+
+    @Override
+    public String getHeader(String name)
+    {
+        return getHeader(headers, name);
+    }
+
+    @Override
+    public ListMultimap<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return body.length;
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return new ByteArrayInputStream(body);
+    }
+
+    byte[] getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Returns the first value of a header, ignoring the case of the header name.
+     */
+    static String getHeader(ListMultimap<String, String> headers, String name)
+    {
+        for (Entry<String, String> entry : headers.entries()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("statusCode", statusCode)
+                .add("statusMessage", statusMessage)
+                .add("headers", headers)
+                .add("bodySize", body.length)
+                .toString();
+    }
+}
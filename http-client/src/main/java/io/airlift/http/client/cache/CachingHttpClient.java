@@ -0,0 +1,463 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import io.airlift.http.client.CacheControl;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.RequestStats;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.DataSize;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.http.client.Request.Builder.fromRequest;
+import static io.airlift.http.client.cache.CachedResponse.getHeader;
+
+/**
+ * An {@link HttpClient} that caches responses to GET requests.
+ * <p>
+ * Responses are stored and served according to their {@code Cache-Control}
+ * header: {@code max-age} and {@code s-maxage} determine how long a response
+ * is served without contacting the server, {@code no-store} and
+ * {@code private} responses are never stored (the cache is shared by all
+ * users of the client), and {@code no-cache} responses are revalidated on
+ * every use. Stale responses with an {@code ETag} or {@code Last-Modified}
+ * header are revalidated with a conditional request. A stale response within
+ * its {@code stale-while-revalidate} period is served immediately while it is
+ * revalidated in the background.
+ * <p>
+ * Responses are fully buffered before they are passed to the response handler.
+ */
+@Beta
+public class CachingHttpClient
+        implements HttpClient
+{
+    private static final Set<String> CONDITIONAL_HEADERS = ImmutableSet.of(
+            HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE,
+            HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_UNMODIFIED_SINCE,
+            HttpHeaders.IF_RANGE,
+            HttpHeaders.RANGE);
+
+    private static final BufferingResponseHandler BUFFERING_RESPONSE_HANDLER = new BufferingResponseHandler();
+
+    private final HttpClient httpClient;
+    private final ResponseCache cache;
+    private final Ticker ticker;
+
+    private final CounterStat hits = new CounterStat();
+    private final CounterStat staleHits = new CounterStat();
+    private final CounterStat misses = new CounterStat();
+    private final CounterStat revalidations = new CounterStat();
+    private final CounterStat notModified = new CounterStat();
+    private final CounterStat uncacheable = new CounterStat();
+
+    public CachingHttpClient(HttpClient httpClient, DataSize maxMemorySize)
+    {
+        this(httpClient, new ResponseCache(maxMemorySize));
+    }
+
+    public CachingHttpClient(HttpClient httpClient, ResponseCache cache)
+    {
+        this(httpClient, cache, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingHttpClient(HttpClient httpClient, ResponseCache cache, Ticker ticker)
+    {
+        this.httpClient = checkNotNull(httpClient, "httpClient is null");
+        this.cache = checkNotNull(cache, "cache is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        if (!isCacheable(request)) {
+            uncacheable.update(1);
+            return httpClient.execute(request, responseHandler);
+        }
+
+        String key = getKey(request);
+        CacheEntry entry = lookup(key, request);
+        if (entry != null && isServable(key, request, entry)) {
+            return responseHandler.handle(request, entry.getResponse());
+        }
+
+        FetchResult result = httpClient.execute(prepareFetch(request, entry), BUFFERING_RESPONSE_HANDLER);
+        if (result.getFailure() != null) {
+            return responseHandler.handleException(request, result.getFailure());
+        }
+        return responseHandler.handle(request, store(key, request, entry, result.getResponse()));
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(final Request request, final ResponseHandler<T, E> responseHandler)
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        if (!isCacheable(request)) {
+            uncacheable.update(1);
+            return httpClient.executeAsync(request, responseHandler);
+        }
+
+        final String key = getKey(request);
+        final CacheEntry entry = lookup(key, request);
+        if (entry != null && isServable(key, request, entry)) {
+            CachingResponseFuture<T> future = new CachingResponseFuture<>(null);
+            future.complete(request, responseHandler, entry.getResponse(), null);
+            return future;
+        }
+
+        HttpResponseFuture<FetchResult> fetch = httpClient.executeAsync(prepareFetch(request, entry), BUFFERING_RESPONSE_HANDLER);
+        final CachingResponseFuture<T> future = new CachingResponseFuture<>(fetch);
+        Futures.addCallback(fetch, new FutureCallback<FetchResult>()
+        {
+            @Override
+            public void onSuccess(FetchResult result)
+            {
+                if (result.getFailure() != null) {
+                    future.complete(request, responseHandler, null, result.getFailure());
+                }
+                else {
+                    future.complete(request, responseHandler, store(key, request, entry, result.getResponse()), null);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                future.fail(t);
+            }
+        });
+        return future;
+    }
+
+    @Nullable
+    private CacheEntry lookup(String key, Request request)
+    {
+        CacheEntry entry = cache.get(key);
+        if (entry == null || !entry.matches(request)) {
+            misses.update(1);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns true if the entry can be served without waiting for the server,
+     * starting a background revalidation if the entry is stale.
+     */
+    private boolean isServable(String key, Request request, CacheEntry entry)
+    {
+        long now = ticker.read();
+        if (entry.isFresh(now)) {
+            hits.update(1);
+            return true;
+        }
+        if (entry.isStaleWhileRevalidate(now)) {
+            staleHits.update(1);
+            revalidateInBackground(key, request, entry);
+            return true;
+        }
+        return false;
+    }
+
+    private void revalidateInBackground(final String key, final Request request, final CacheEntry entry)
+    {
+        if (!entry.startRevalidation()) {
+            return;
+        }
+        Futures.addCallback(httpClient.executeAsync(prepareFetch(request, entry), BUFFERING_RESPONSE_HANDLER), new FutureCallback<FetchResult>()
+        {
+            @Override
+            public void onSuccess(FetchResult result)
+            {
+                if (result.getFailure() != null) {
+                    entry.revalidationFailed();
+                }
+                else {
+                    store(key, request, entry, result.getResponse());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                entry.revalidationFailed();
+            }
+        });
+    }
+
+    private Request prepareFetch(Request request, @Nullable CacheEntry entry)
+    {
+        if (entry == null) {
+            return request;
+        }
+
+        revalidations.update(1);
+        if (!entry.hasValidators()) {
+            return request;
+        }
+
+        Request.Builder builder = fromRequest(request);
+        if (entry.getETag() != null) {
+            builder.setHeader(HttpHeaders.IF_NONE_MATCH, entry.getETag());
+        }
+        if (entry.getLastModified() != null) {
+            builder.setHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Updates the cache with a response from the server and returns the response to serve.
+     */
+    private CachedResponse store(String key, Request request, @Nullable CacheEntry entry, CachedResponse response)
+    {
+        if (entry != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED.code()) {
+            notModified.update(1);
+            response = entry.merge(response);
+        }
+
+        CacheEntry updated = CacheEntry.create(request, response, ticker.read());
+        if (updated != null) {
+            cache.put(key, updated);
+        }
+        else if (response.getStatusCode() != HttpStatus.NOT_MODIFIED.code()) {
+            cache.invalidate(key);
+        }
+        return response;
+    }
+
+    private static boolean isCacheable(Request request)
+    {
+        if (!"GET".equals(request.getMethod()) || request.getBodyGenerator() != null) {
+            return false;
+        }
+        // responses to authorized requests may be specific to the user
+        if (getHeader(request.getHeaders(), HttpHeaders.AUTHORIZATION) != null) {
+            return false;
+        }
+        // requests that are conditional themselves are handled by the caller
+        for (String header : CONDITIONAL_HEADERS) {
+            if (getHeader(request.getHeaders(), header) != null) {
+                return false;
+            }
+        }
+        String cacheControl = getHeader(request.getHeaders(), HttpHeaders.CACHE_CONTROL);
+        if (cacheControl != null) {
+            CacheControl parsed;
+            try {
+                parsed = CacheControl.valueOf(cacheControl);
+            }
+            catch (RuntimeException e) {
+                // the request is sent as is, and the server can make sense of the header or reject it
+                return false;
+            }
+            if (parsed.isNoStore() || parsed.isNoCache()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getKey(Request request)
+    {
+        return request.getUri().toString();
+    }
+
+    @Override
+    public RequestStats getStats()
+    {
+        return httpClient.getStats();
+    }
+
+    @Managed
+    @Nested
+    public ResponseCache getCache()
+    {
+        return cache;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getHits()
+    {
+        return hits;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getStaleHits()
+    {
+        return staleHits;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getMisses()
+    {
+        return misses;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRevalidations()
+    {
+        return revalidations;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getNotModified()
+    {
+        return notModified;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getUncacheable()
+    {
+        return uncacheable;
+    }
+
+    /**
+     * Clears the cache. The underlying client is not closed.
+     */
+    @Override
+    public void close()
+    {
+        cache.invalidateAll();
+    }
+
+    private static class FetchResult
+    {
+        private final CachedResponse response;
+        private final Exception failure;
+
+        private FetchResult(@Nullable CachedResponse response, @Nullable Exception failure)
+        {
+            this.response = response;
+            this.failure = failure;
+        }
+
+        public CachedResponse getResponse()
+        {
+            return response;
+        }
+
+        public Exception getFailure()
+        {
+            return failure;
+        }
+    }
+
+    private static class BufferingResponseHandler
+            implements ResponseHandler<FetchResult, RuntimeException>
+    {
+        @Override
+        public FetchResult handleException(Request request, Exception exception)
+        {
+            return new FetchResult(null, exception);
+        }
+
+        @Override
+        public FetchResult handle(Request request, Response response)
+        {
+            try {
+                byte[] body = ByteStreams.toByteArray(response.getInputStream());
+                return new FetchResult(new CachedResponse(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), body), null);
+            }
+            catch (IOException e) {
+                return new FetchResult(null, e);
+            }
+        }
+    }
+
+    private static class CachingResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private final HttpResponseFuture<?> fetch;
+
+        private CachingResponseFuture(@Nullable HttpResponseFuture<?> fetch)
+        {
+            this.fetch = fetch;
+        }
+
+        public <E extends Exception> void complete(Request request, ResponseHandler<T, E> responseHandler, @Nullable Response response, @Nullable Exception failure)
+        {
+            try {
+                if (failure != null) {
+                    set(responseHandler.handleException(request, failure));
+                }
+                else {
+                    set(responseHandler.handle(request, response));
+                }
+            }
+            catch (Throwable t) {
+                setException(t);
+            }
+        }
+
+        public void fail(Throwable throwable)
+        {
+            setException(throwable);
+        }
+
+        @Override
+        public String getState()
+        {
+            if (fetch == null) {
+                return "CACHED";
+            }
+            return fetch.getState();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (fetch != null) {
+                fetch.cancel(mayInterruptIfRunning);
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.DataSize;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+
+/**
+ * Storage for {@link CachingHttpClient}: an in-memory LRU cache bounded by
+ * the size of the stored responses, which optionally spills evicted
+ * responses to files in a directory, also bounded by size.
+ * <p>
+ * Spills are written by a background thread, so the thread that caused the
+ * eviction (often an HTTP client I/O thread) never writes files. Until its
+ * spill completes, an evicted response is still served from memory. File
+ * reads, writes and deletes never happen while holding the lock on the
+ * index of spilled files.
+ */
+@Beta
+public class ResponseCache
+{
+    private static final Logger log = Logger.get(ResponseCache.class);
+
+    private final Cache<String, CacheEntry> memory;
+    private final DiskStore disk;
+    private final Executor spillExecutor;
+    private final ConcurrentMap<String, CacheEntry> spilling = new ConcurrentHashMap<>();
+    private final AtomicLong spillingBytes = new AtomicLong();
+    private final long maxSpillingBytes;
+    private final CounterStat evictions = new CounterStat();
+    private final CounterStat spillsDropped = new CounterStat();
+
+    public ResponseCache(DataSize maxMemorySize)
+    {
+        this(maxMemorySize, null, new DataSize(0, DataSize.Unit.BYTE));
+    }
+
+    /**
+     * @param spillDirectory directory for responses evicted from memory, or null to discard them
+     */
+    public ResponseCache(DataSize maxMemorySize, @Nullable File spillDirectory, DataSize maxDiskSize)
+    {
+        this(maxMemorySize, spillDirectory, maxDiskSize, createSpillExecutor());
+    }
+
+    /**
+     * @param spillExecutor runs spills; it must run one task at a time, in submission order
+     */
+    @VisibleForTesting
+    ResponseCache(DataSize maxMemorySize, @Nullable File spillDirectory, DataSize maxDiskSize, Executor spillExecutor)
+    {
+        checkNotNull(maxMemorySize, "maxMemorySize is null");
+        checkNotNull(maxDiskSize, "maxDiskSize is null");
+        this.spillExecutor = checkNotNull(spillExecutor, "spillExecutor is null");
+
+        // responses waiting to be spilled may use as much memory again as the cache
+        maxSpillingBytes = maxMemorySize.toBytes();
+        disk = (spillDirectory == null) ? null : new DiskStore(spillDirectory, maxDiskSize.toBytes());
+        memory = CacheBuilder.newBuilder()
+                .maximumWeight(maxMemorySize.toBytes())
+                .weigher(new Weigher<String, CacheEntry>()
+                {
+                    @Override
+                    public int weigh(String key, CacheEntry entry)
+                    {
+                        return entry.getWeight();
+                    }
+                })
+                .removalListener(new RemovalListener<String, CacheEntry>()
+                {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CacheEntry> notification)
+                    {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            evictions.update(1);
+                            if (disk != null) {
+                                spill(notification.getKey(), notification.getValue());
+                            }
+                        }
+                    }
+                })
+                .build();
+    }
+
+    private static Executor createSpillExecutor()
+    {
+        // a single thread keeps spills in order and exits when there is nothing to spill
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), daemonThreadsNamed("response-cache-spill-%s"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Nullable
+    CacheEntry get(String key)
+    {
+        CacheEntry entry = memory.getIfPresent(key);
+        if (entry == null && disk != null) {
+            entry = takeSpilling(key);
+            if (entry == null) {
+                entry = disk.take(key);
+            }
+            if (entry != null) {
+                memory.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    void put(String key, CacheEntry entry)
+    {
+        if (disk != null) {
+            takeSpilling(key);
+            disk.delete(key);
+        }
+        memory.put(key, entry);
+    }
+
+    void invalidate(String key)
+    {
+        memory.invalidate(key);
+        if (disk != null) {
+            takeSpilling(key);
+            disk.delete(key);
+        }
+    }
+
+    public void invalidateAll()
+    {
+        memory.invalidateAll();
+        if (disk != null) {
+            for (String key : spilling.keySet()) {
+                takeSpilling(key);
+            }
+            disk.clear();
+        }
+    }
+
+    private void spill(final String key, final CacheEntry entry)
+    {
+        final int weight = entry.getWeight();
+        long total = spillingBytes.addAndGet(weight);
+        if (total > maxSpillingBytes && total != weight) {
+            // the disk cannot keep up, so drop the response
+            spillingBytes.addAndGet(-weight);
+            spillsDropped.update(1);
+            return;
+        }
+        CacheEntry previous = spilling.put(key, entry);
+        if (previous != null) {
+            spillingBytes.addAndGet(-previous.getWeight());
+        }
+
+        try {
+            spillExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // the entry may have been read back or replaced while waiting
+                    if (spilling.get(key) != entry) {
+                        return;
+                    }
+                    disk.write(key, entry);
+                    if (spilling.remove(key, entry)) {
+                        spillingBytes.addAndGet(-weight);
+                    }
+                    else {
+                        // the entry was read back or replaced during the write
+                        disk.delete(key);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            if (spilling.remove(key, entry)) {
+                spillingBytes.addAndGet(-weight);
+            }
+            spillsDropped.update(1);
+        }
+    }
+
+    @Nullable
+    private CacheEntry takeSpilling(String key)
+    {
+        CacheEntry entry = spilling.remove(key);
+        if (entry != null) {
+            spillingBytes.addAndGet(-entry.getWeight());
+        }
+        return entry;
+    }
+
+    @Managed
+    public long getEntryCount()
+    {
+        return memory.size();
+    }
+
+    @Managed
+    public long getDiskEntryCount()
+    {
+        return (disk == null) ? 0 : disk.getEntryCount();
+    }
+
+    @Managed
+    public long getDiskBytes()
+    {
+        return (disk == null) ? 0 : disk.getBytes();
+    }
+
+    @Managed
+    public long getSpillingEntryCount()
+    {
+        return spilling.size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getEvictions()
+    {
+        return evictions;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSpillsDropped()
+    {
+        return spillsDropped;
+    }
+
+    private static class DiskStore
+    {
+        private final File directory;
+        private final long maxBytes;
+        private final AtomicLong fileCounter = new AtomicLong();
+
+        @GuardedBy("this")
+        private final LinkedHashMap<String, SpillFile> files = new LinkedHashMap<>(16, 0.75f, true);
+        @GuardedBy("this")
+        private long bytes;
+
+        private DiskStore(File directory, long maxBytes)
+        {
+            checkArgument(maxBytes >= 0, "maxBytes is negative");
+            this.directory = checkNotNull(directory, "directory is null");
+            this.maxBytes = maxBytes;
+            checkArgument(directory.isDirectory() || directory.mkdirs(), "cannot create directory %s", directory);
+        }
+
+        public void write(String key, CacheEntry entry)
+        {
+            // every write gets a new file, so the write needs no lock
+            File file = newFile(key);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeUTF(key);
+                entry.writeTo(out);
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to spill cached response to %s", file);
+                file.delete();
+                return;
+            }
+
+            List<File> obsolete = new ArrayList<>();
+            synchronized (this) {
+                SpillFile spillFile = new SpillFile(file, file.length());
+                SpillFile previous = files.put(key, spillFile);
+                if (previous != null) {
+                    bytes -= previous.getSize();
+                    obsolete.add(previous.getFile());
+                }
+                bytes += spillFile.getSize();
+
+                Iterator<SpillFile> iterator = files.values().iterator();
+                while (bytes > maxBytes && iterator.hasNext()) {
+                    SpillFile eldest = iterator.next();
+                    bytes -= eldest.getSize();
+                    obsolete.add(eldest.getFile());
+                    iterator.remove();
+                }
+            }
+            for (File obsoleteFile : obsolete) {
+                obsoleteFile.delete();
+            }
+        }
+
+        /**
+         * Removes the spilled response for the key and reads it back.
+         */
+        @Nullable
+        public CacheEntry take(String key)
+        {
+            SpillFile spillFile = removeFile(key);
+            if (spillFile == null) {
+                return null;
+            }
+
+            File file = spillFile.getFile();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                // guard against a file left over from another cache using the directory
+                if (!in.readUTF().equals(key)) {
+                    return null;
+                }
+                return CacheEntry.readFrom(in);
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to read spilled response from %s", file);
+                return null;
+            }
+            finally {
+                file.delete();
+            }
+        }
+
+        /**
+         * Removes the spilled response for the key without reading it.
+         */
+        public void delete(String key)
+        {
+            SpillFile spillFile = removeFile(key);
+            if (spillFile != null) {
+                spillFile.getFile().delete();
+            }
+        }
+
+        public void clear()
+        {
+            List<SpillFile> removed;
+            synchronized (this) {
+                removed = new ArrayList<>(files.values());
+                files.clear();
+                bytes = 0;
+            }
+            for (SpillFile spillFile : removed) {
+                spillFile.getFile().delete();
+            }
+        }
+
+        public synchronized int getEntryCount()
+        {
+            return files.size();
+        }
+
+        public synchronized long getBytes()
+        {
+            return bytes;
+        }
+
+        @Nullable
+        private synchronized SpillFile removeFile(String key)
+        {
+            SpillFile spillFile = files.remove(key);
+            if (spillFile != null) {
+                bytes -= spillFile.getSize();
+            }
+            return spillFile;
+        }
+
+        private File newFile(String key)
+        {
+            return new File(directory, Hashing.sha1().hashString(key, UTF_8) + "-" + fileCounter.incrementAndGet());
+        }
+    }
+
+    private static class SpillFile
+    {
+        private final File file;
+        private final long size;
+
+        private SpillFile(File file, long size)
+        {
+            this.file = file;
+            this.size = size;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+    }
+}
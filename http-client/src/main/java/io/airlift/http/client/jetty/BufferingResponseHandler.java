@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.io.ByteStreams;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.cache.CachedResponse;
+
+/**
+ * Reads the entire response body into memory so the response can be
+ * processed after the exchange has completed and its connection released.
+ */
+class BufferingResponseHandler
+        implements ResponseHandler<CachedResponse, Exception>
+{
+    @Override
+    public CachedResponse handleException(Request request, Exception exception)
+            throws Exception
+    {
+        throw exception;
+    }
+
+    @Override
+    public CachedResponse handle(Request request, Response response)
+            throws Exception
+    {
+        byte[] body = ByteStreams.toByteArray(response.getInputStream());
+        return new CachedResponse(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), body);
+    }
+}
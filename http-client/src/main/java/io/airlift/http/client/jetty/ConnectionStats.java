@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.annotations.Beta;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connections opened and closed by a client, and how often exchanges are
+ * sent on a connection that was already open. Application requests and
+ * connection warm-up probes are counted separately.
+ */
+@Beta
+public class ConnectionStats
+{
+    private final CounterStat created = new CounterStat();
+    private final CounterStat closed = new CounterStat();
+    private final CounterStat requests = new CounterStat();
+    private final CounterStat probes = new CounterStat();
+    private final AtomicLong open = new AtomicLong();
+
+    void connectionOpened()
+    {
+        created.update(1);
+        open.incrementAndGet();
+    }
+
+    void connectionClosed()
+    {
+        closed.update(1);
+        open.decrementAndGet();
+    }
+
+    void requestSent()
+    {
+        requests.update(1);
+    }
+
+    void probeSent()
+    {
+        probes.update(1);
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCreated()
+    {
+        return created;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getClosed()
+    {
+        return closed;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRequests()
+    {
+        return requests;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getProbes()
+    {
+        return probes;
+    }
+
+    @Managed
+    public long getOpen()
+    {
+        return open.get();
+    }
+
+    /**
+     * Returns the number of requests and probes sent on a connection that
+     * was already open, assuming each new connection carried one exchange first.
+     */
+    @Managed
+    public long getReused()
+    {
+        return Math.max(getExchanges() - created.getTotalCount(), 0);
+    }
+
+    @Managed
+    public double getReusedRatio()
+    {
+        long total = getExchanges();
+        if (total == 0) {
+            return 0.0;
+        }
+        return ((double) getReused()) / total;
+    }
+
+    private long getExchanges()
+    {
+        return requests.getTotalCount() + probes.getTotalCount();
+    }
+}
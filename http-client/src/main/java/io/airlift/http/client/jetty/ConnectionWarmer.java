@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps a minimum number of connections open to each known destination.
+ * Warm-up is enabled only when a probe path is configured, so a client never
+ * sends requests to a path the application did not choose.
+ * <p>
+ * Every interval, the warmer sends {@code minConnections} concurrent probe
+ * requests to each destination. Each probe needs its own connection, so
+ * missing connections are opened and the existing ones are used, which keeps
+ * them from reaching the idle timeout. The probe responses are discarded;
+ * any response, including an error status, means the connection is usable.
+ */
+public class ConnectionWarmer
+{
+    private static final Logger log = Logger.get(ConnectionWarmer.class);
+
+    private final HttpClient httpClient;
+    private final int minConnections;
+    private final long intervalNanos;
+    @Nullable
+    private final String probePath;
+    private final ConnectionStats connectionStats;
+    private final List<Supplier<? extends Iterable<URI>>> destinationSources = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean stopped;
+    @Nullable
+    private volatile Scheduler.Task nextRun;
+
+    private final CounterStat probeFailures = new CounterStat();
+
+    ConnectionWarmer(HttpClient httpClient, int minConnections, Duration interval, @Nullable String probePath, ConnectionStats connectionStats)
+    {
+        this.httpClient = checkNotNull(httpClient, "httpClient is null");
+        checkArgument(minConnections >= 0, "minConnections is negative");
+        checkArgument(minConnections == 0 || probePath != null, "probePath is required when minConnections is set");
+        this.minConnections = minConnections;
+        this.intervalNanos = checkNotNull(interval, "interval is null").roundTo(TimeUnit.NANOSECONDS);
+        this.probePath = probePath;
+        this.connectionStats = checkNotNull(connectionStats, "connectionStats is null");
+    }
+
+    public boolean isEnabled()
+    {
+        return minConnections > 0;
+    }
+
+    /**
+     * Adds a source of destinations to keep connections open to. Only the
+     * scheme, host and port of the returned URIs are used. The source is
+     * called each interval, so it may return a changing set of destinations.
+     */
+    public void addDestinations(Supplier<? extends Iterable<URI>> destinations)
+    {
+        destinationSources.add(checkNotNull(destinations, "destinations is null"));
+        if (isEnabled() && started.get() && !stopped) {
+            // warm the new destinations now rather than at the next interval
+            httpClient.getExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    warm();
+                }
+            });
+        }
+    }
+
+    void start()
+    {
+        if (isEnabled() && started.compareAndSet(false, true)) {
+            run();
+        }
+    }
+
+    void stop()
+    {
+        stopped = true;
+        Scheduler.Task task = nextRun;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private void run()
+    {
+        if (stopped) {
+            return;
+        }
+        warm();
+        Scheduler.Task task = httpClient.getScheduler().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ConnectionWarmer.this.run();
+            }
+        }, intervalNanos, TimeUnit.NANOSECONDS);
+        nextRun = task;
+        if (stopped) {
+            // stop raced with scheduling and may have missed this task
+            task.cancel();
+        }
+    }
+
+    private void warm()
+    {
+        try {
+            for (URI destination : getDestinations()) {
+                for (int i = 0; i < minConnections && !stopped; i++) {
+                    probe(destination);
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn(e, "Error warming connections");
+        }
+    }
+
+    private List<URI> getDestinations()
+    {
+        Set<URI> destinations = new LinkedHashSet<>();
+        for (Supplier<? extends Iterable<URI>> source : destinationSources) {
+            Iterable<URI> uris;
+            try {
+                uris = source.get();
+            }
+            catch (RuntimeException e) {
+                log.warn(e, "Error getting destinations from %s", source);
+                continue;
+            }
+            for (URI uri : uris) {
+                if (uri.getHost() != null) {
+                    destinations.add(URI.create(uri.getScheme() + "://" + uri.getHost() + ((uri.getPort() == -1) ? "" : ":" + uri.getPort())));
+                }
+            }
+        }
+        return ImmutableList.copyOf(destinations);
+    }
+
+    private void probe(URI destination)
+    {
+        // probes are counted apart from requests, so they do not inflate the request count
+        connectionStats.probeSent();
+        Request request = httpClient.newRequest(destination.resolve(probePath))
+                .method(HttpMethod.HEAD);
+        request.send(new Response.CompleteListener()
+        {
+            @Override
+            public void onComplete(Result result)
+            {
+                if (result.getResponse() == null || result.getResponse().getStatus() == 0) {
+                    probeFailures.update(1);
+                }
+            }
+        });
+    }
+
+    @Managed
+    public int getMinConnections()
+    {
+        return minConnections;
+    }
+
+    @Managed
+    public int getDestinationCount()
+    {
+        return getDestinations().size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getProbes()
+    {
+        return connectionStats.getProbes();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getProbeFailures()
+    {
+        return probeFailures;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The default HTTP/1.1 transport, counting the connections it opens and closes.
+ */
+class CountingHttpClientTransport
+        extends HttpClientTransportOverHTTP
+{
+    private final ConnectionStats stats;
+
+    public CountingHttpClientTransport(ConnectionStats stats)
+    {
+        this.stats = checkNotNull(stats, "stats is null");
+    }
+
+    @Override
+    public Connection newConnection(EndPoint endPoint, Map<String, Object> context)
+            throws IOException
+    {
+        Connection connection = super.newConnection(endPoint, context);
+        connection.addListener(new Connection.Listener()
+        {
+            @Override
+            public void onOpened(Connection connection)
+            {
+                stats.connectionOpened();
+            }
+
+            @Override
+            public void onClosed(Connection connection)
+            {
+                stats.connectionClosed();
+            }
+        });
+        return connection;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import io.airlift.http.client.CachingDnsResolver;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.io.ClientConnectionFactory;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A Jetty client that resolves the address of new connections with a
+ * {@link CachingDnsResolver} instead of Jetty's resolver, which does a
+ * blocking lookup on the executor for every connection. Cached addresses
+ * are used on the calling thread; only cache misses are resolved on the
+ * executor. When a host has several addresses, a connection that fails is
+ * retried on the next address.
+ */
+class DnsCachingHttpClient
+        extends HttpClient
+{
+    private final CachingDnsResolver resolver;
+
+    public DnsCachingHttpClient(HttpClientTransport transport, SslContextFactory sslContextFactory, CachingDnsResolver resolver)
+    {
+        super(transport, sslContextFactory);
+        this.resolver = checkNotNull(resolver, "resolver is null");
+    }
+
+    @Override
+    protected void newConnection(final HttpDestination destination, final Promise<Connection> promise)
+    {
+        final Origin.Address address = destination.getConnectAddress();
+        if (resolver.isCached(address.getHost())) {
+            connect(destination, address, promise);
+            return;
+        }
+
+        try {
+            getExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    connect(destination, address, promise);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            promise.failed(e);
+        }
+    }
+
+    private void connect(HttpDestination destination, Origin.Address address, Promise<Connection> promise)
+    {
+        List<InetAddress> addresses;
+        try {
+            addresses = resolver.resolve(address.getHost());
+        }
+        catch (UnknownHostException e) {
+            promise.failed(e);
+            return;
+        }
+        connect(destination, addresses, 0, address.getPort(), promise);
+    }
+
+    private void connect(final HttpDestination destination, final List<InetAddress> addresses, final int index, final int port, final Promise<Connection> promise)
+    {
+        Promise<Connection> fallback = promise;
+        if (index + 1 < addresses.size()) {
+            fallback = new Promise<Connection>()
+            {
+                @Override
+                public void succeeded(Connection connection)
+                {
+                    promise.succeeded(connection);
+                }
+
+                @Override
+                public void failed(Throwable failure)
+                {
+                    connect(destination, addresses, index + 1, port, promise);
+                }
+            };
+        }
+
+        Map<String, Object> context = new HashMap<>();
+        context.put(ClientConnectionFactory.CONNECTOR_CONTEXT_KEY, this);
+        context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
+        context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, fallback);
+        getTransport().connect(new InetSocketAddress(addresses.get(index), port), context);
+    }
+}
@@ -3,6 +3,9 @@ package io.airlift.http.client.jetty;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
@@ -14,14 +17,26 @@ import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.AbstractFuture;
 import io.airlift.http.client.AsyncHttpClient;
 import io.airlift.http.client.BodyGenerator;
+import io.airlift.http.client.CachingDnsResolver;
+import io.airlift.http.client.CircuitBreaker;
+import io.airlift.http.client.CircuitBreakers;
+import io.airlift.http.client.ConcurrencyLimiter;
+import io.airlift.http.client.ConcurrencyLimiters;
+import io.airlift.http.client.DestinationStats;
 import io.airlift.http.client.HttpClientConfig;
 import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.PerDestinationStats;
 import io.airlift.http.client.Request;
+import io.airlift.http.client.RequestBudget;
 import io.airlift.http.client.RequestStats;
 import io.airlift.http.client.ResponseHandler;
 import io.airlift.http.client.ResponseTooLargeException;
+import io.airlift.http.client.RetryPolicy;
 import io.airlift.http.client.StaticBodyGenerator;
+import io.airlift.http.client.SystemDnsResolver;
+import io.airlift.http.client.cache.CachedResponse;
 import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
@@ -40,7 +55,9 @@ import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 import java.io.ByteArrayInputStream;
@@ -48,6 +65,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -58,6 +76,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -70,10 +89,32 @@ public class JettyHttpClient
         implements AsyncHttpClient
 {
     private final static AtomicLong nameCounter = new AtomicLong();
+    private static final BufferingResponseHandler BUFFERING_RESPONSE_HANDLER = new BufferingResponseHandler();
+    private static final int MAX_RETRY_BURST = 10;
 
     private final HttpClient httpClient;
     private final long maxContentLength;
     private final RequestStats stats = new RequestStats();
+    private final RetryPolicy retryPolicy;
+    private final RequestBudget retryBudget;
+    private final CounterStat retries = new CounterStat();
+    private final CounterStat retriesExhausted = new CounterStat();
+    private final CounterStat retriesOverBudget = new CounterStat();
+    private final boolean circuitBreakerEnabled;
+    private final CircuitBreakers circuitBreakers;
+    private final boolean concurrencyLimitEnabled;
+    private final ConcurrencyLimiters concurrencyLimiters;
+    private final RequestCoalescer coalescer;
+    private final boolean perDestinationStatsEnabled;
+    private final PerDestinationStats perDestinationStats;
+    private final ConnectionStats connectionStats = new ConnectionStats();
+    private final ConnectionWarmer connectionWarmer;
+    private final boolean dnsCacheEnabled;
+    @Nullable
+    private final CachingDnsResolver dnsResolver;
+    private final boolean bufferedExecuteEnabled;
+    private final long bufferedTimeoutMillis;
+    private final Executor callbackExecutor;
     private final List<HttpRequestFilter> requestFilters;
     private final Exception creationLocation = new Exception();
     private final String name;
@@ -105,14 +146,31 @@ public class JettyHttpClient
         checkNotNull(requestFilters, "requestFilters is null");
 
         maxContentLength = config.getMaxContentLength().toBytes();
-        httpClient = createHttpClient(config, creationLocation);
+        retryPolicy = new RetryPolicy(config.getMaxAttempts(), config.getInitialRetryBackoff(), config.getMaxRetryBackoff());
+        retryBudget = new RequestBudget(config.getRetryBudgetRatio(), MAX_RETRY_BURST);
+        circuitBreakerEnabled = config.isCircuitBreakerEnabled();
+        circuitBreakers = new CircuitBreakers(config);
+        concurrencyLimitEnabled = config.isConcurrencyLimitEnabled();
+        concurrencyLimiters = new ConcurrencyLimiters(config);
+        perDestinationStatsEnabled = config.isPerDestinationStatsEnabled();
+        perDestinationStats = new PerDestinationStats(config.getPerDestinationStatsMaxDestinations());
+        coalescer = config.isCoalescingEnabled() ? new RequestCoalescer(this, config.getCoalescingKeyHeaders(), stats) : null;
 
         JettyIoPool pool = jettyIoPool.orNull();
         if (pool == null) {
             pool = new JettyIoPool("anonymous" + nameCounter.incrementAndGet(), new JettyIoPoolConfig());
         }
 
+        dnsCacheEnabled = config.isDnsCacheEnabled();
+        dnsResolver = dnsCacheEnabled ? new CachingDnsResolver(new SystemDnsResolver(), config.getDnsCacheTtl(), config.getDnsCacheNegativeTtl(), config.getDnsCacheMaxEntries(), pool.getExecutor()) : null;
+        httpClient = createHttpClient(config, creationLocation);
+
         name = pool.getName();
+        callbackExecutor = pool.getCallbackExecutor();
+        bufferedExecuteEnabled = config.isBufferedExecuteEnabled();
+        // every attempt may use the connect and idle timeouts and wait for the longest backoff
+        long attemptTimeoutMillis = httpClient.getConnectTimeout() + httpClient.getIdleTimeout() + config.getMaxRetryBackoff().toMillis();
+        bufferedTimeoutMillis = (httpClient.getIdleTimeout() > 0) ? attemptTimeoutMillis * config.getMaxAttempts() : 0;
         httpClient.setExecutor(pool.getExecutor());
         httpClient.setByteBufferPool(pool.setByteBufferPool());
         httpClient.setScheduler(pool.setScheduler());
@@ -132,6 +190,16 @@ public class JettyHttpClient
         }
 
         this.requestFilters = ImmutableList.copyOf(requestFilters);
+
+        connectionWarmer = new ConnectionWarmer(httpClient, config.getWarmUpMinConnections(), config.getWarmUpInterval(), config.getWarmUpProbePath(), connectionStats);
+        if (config.getWarmUpDestinations() != null) {
+            ImmutableList.Builder<URI> destinations = ImmutableList.builder();
+            for (String destination : Splitter.on(',').trimResults().omitEmptyStrings().split(config.getWarmUpDestinations())) {
+                destinations.add(URI.create(destination));
+            }
+            connectionWarmer.addDestinations(Suppliers.ofInstance(destinations.build()));
+        }
+        connectionWarmer.start();
     }
 
     private HttpClient createHttpClient(HttpClientConfig config, Exception created)
@@ -144,7 +212,13 @@ public class JettyHttpClient
             sslContextFactory.setKeyStorePassword(config.getKeyStorePassword());
         }
 
-        HttpClient httpClient = new HttpClient(sslContextFactory);
+        HttpClient httpClient;
+        if (dnsCacheEnabled) {
+            httpClient = new DnsCachingHttpClient(new CountingHttpClientTransport(connectionStats), sslContextFactory, dnsResolver);
+        }
+        else {
+            httpClient = new HttpClient(new CountingHttpClientTransport(connectionStats), sslContextFactory);
+        }
         httpClient.setMaxConnectionsPerDestination(config.getMaxConnectionsPerServer());
         httpClient.setMaxRequestsQueuedPerDestination(config.getMaxRequestsQueuedPerDestination());
 
@@ -181,35 +255,141 @@ public class JettyHttpClient
 
         // apply filters
         request = applyRequestFilters(request);
+        if (coalescer != null && RequestCoalescer.isCoalescable(request)) {
+            return coalescer.execute(request, responseHandler);
+        }
+        if (bufferedExecuteEnabled) {
+            return executeBuffered(request, responseHandler);
+        }
+        if (retryPolicy.isEnabled()) {
+            retryBudget.requestSent();
+        }
 
-        // create jetty request and response listener
-        HttpRequest jettyRequest = buildJettyRequest(request);
-        InputStreamResponseListener listener = new InputStreamResponseListener(maxContentLength)
-        {
-            @Override
-            public void onContent(Response response, ByteBuffer content)
+        CircuitBreaker breaker = getCircuitBreaker(request);
+        ConcurrencyLimiter limiter = getConcurrencyLimiter(request);
+        int attempt = 1;
+        long backoffNanos = 0;
+        while (true) {
+            // fail fast while the destination is unhealthy or overloaded
+            CircuitBreaker.Permit permit = (breaker == null) ? null : breaker.tryAcquire();
+            RuntimeException rejection = tryAcquire(request, breaker, permit, limiter);
+            if (rejection != null) {
+                return responseHandler.handleException(request, rejection);
+            }
+            long attemptStart = System.nanoTime() + backoffNanos;
+
+            // create jetty request and response listener
+            HttpRequest jettyRequest = buildJettyRequest(request);
+            InputStreamResponseListener listener = new InputStreamResponseListener(maxContentLength)
             {
-                // ignore empty blocks
-                if (content.remaining() == 0) {
-                    return;
+                @Override
+                public void onContent(Response response, ByteBuffer content)
+                {
+                    // ignore empty blocks
+                    if (content.remaining() == 0) {
+                        return;
+                    }
+                    super.onContent(response, content);
+                }
+            };
+
+            // fire the request, after the backoff delay when retrying
+            send(jettyRequest, listener, backoffNanos);
+
+            // wait for response to begin
+            Response response;
+            try {
+                response = listener.get(httpClient.getIdleTimeout() + TimeUnit.NANOSECONDS.toMillis(backoffNanos), TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                jettyRequest.abort(e);
+                recordFailure(permit, limiter, new CancellationException());
+                Thread.currentThread().interrupt();
+                return responseHandler.handleException(request, e);
+            }
+            catch (TimeoutException e) {
+                recordFailure(permit, limiter, e);
+                long retryBackoffNanos = getRetryBackoffNanos(attempt, e);
+                if (shouldRetry(request, attempt, retryBackoffNanos >= 0)) {
+                    jettyRequest.abort(e);
+                    backoffNanos = retryBackoffNanos;
+                    attempt++;
+                    continue;
+                }
+                return responseHandler.handleException(request, e);
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                recordFailure(permit, limiter, cause);
+                long retryBackoffNanos = getRetryBackoffNanos(attempt, cause);
+                if (shouldRetry(request, attempt, retryBackoffNanos >= 0)) {
+                    backoffNanos = retryBackoffNanos;
+                    attempt++;
+                    continue;
+                }
+                if (cause instanceof Exception) {
+                    return responseHandler.handleException(request, (Exception) cause);
+                }
+                else {
+                    return responseHandler.handleException(request, new RuntimeException(cause));
                 }
-                super.onContent(response, content);
             }
-        };
 
-        // fire the request
-        jettyRequest.send(listener);
+            recordResponse(permit, limiter, response.getStatus(), attemptStart);
+            long retryBackoffNanos = getRetryBackoffNanos(attempt, response);
+            if (shouldRetry(request, attempt, retryBackoffNanos >= 0)) {
+                // discard the response and the connection it arrived on
+                jettyRequest.abort(new CancellationException("Request is being retried"));
+                backoffNanos = retryBackoffNanos;
+                attempt++;
+                continue;
+            }
 
-        // wait for response to begin
-        Response response;
+            // process response
+            long responseStart = System.nanoTime();
+
+            JettyResponse jettyResponse = null;
+            T value;
+            try {
+                jettyResponse = new JettyResponse(response, listener.getInputStream());
+                value = responseHandler.handle(request, jettyResponse);
+            }
+            finally {
+                recordRequestComplete(stats, request, requestStart, RequestTimingListener.getBytesWritten(jettyRequest), jettyResponse, responseStart);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Sends the request asynchronously, buffering the response on the I/O
+     * threads, and processes it on the calling thread once the exchange has
+     * completed. The caller never holds a connection or an I/O thread while
+     * it waits or while its handler runs, and the wait parks the thread
+     * without holding a monitor, so a virtual thread is not pinned to its
+     * carrier.
+     */
+    private <T, E extends Exception> T executeBuffered(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        HttpResponseFuture<CachedResponse> future = submit(request, BUFFERING_RESPONSE_HANDLER);
+        CachedResponse response;
         try {
-            response = listener.get(httpClient.getIdleTimeout(), TimeUnit.MILLISECONDS);
+            if (bufferedTimeoutMillis > 0) {
+                response = future.get(bufferedTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            else {
+                response = future.get();
+            }
         }
         catch (InterruptedException e) {
+            future.cancel(true);
             Thread.currentThread().interrupt();
             return responseHandler.handleException(request, e);
         }
         catch (TimeoutException e) {
+            // a response that trickles in never reaches the idle timeout
+            future.cancel(true);
             return responseHandler.handleException(request, e);
         }
         catch (ExecutionException e) {
@@ -217,24 +397,26 @@ public class JettyHttpClient
             if (cause instanceof Exception) {
                 return responseHandler.handleException(request, (Exception) cause);
             }
-            else {
-                return responseHandler.handleException(request, new RuntimeException(cause));
-            }
+            return responseHandler.handleException(request, new RuntimeException(cause));
         }
+        return responseHandler.handle(request, response);
+    }
 
-        // process response
-        long responseStart = System.nanoTime();
-
-        JettyResponse jettyResponse = null;
-        T value;
-        try {
-            jettyResponse = new JettyResponse(response, listener.getInputStream());
-            value = responseHandler.handle(request, jettyResponse);
-        }
-        finally {
-            recordRequestComplete(stats, request, requestStart, jettyResponse, responseStart);
+    private void send(final HttpRequest jettyRequest, final Response.CompleteListener listener, long delayNanos)
+    {
+        connectionStats.requestSent();
+        if (delayNanos <= 0) {
+            jettyRequest.send(listener);
+            return;
         }
-        return value;
+        httpClient.getScheduler().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                jettyRequest.send(listener);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -244,21 +426,211 @@ public class JettyHttpClient
         checkNotNull(responseHandler, "responseHandler is null");
 
         request = applyRequestFilters(request);
+        if (coalescer != null && RequestCoalescer.isCoalescable(request)) {
+            return coalescer.executeAsync(request, responseHandler);
+        }
+        return submit(request, responseHandler);
+    }
 
-        HttpRequest jettyRequest = buildJettyRequest(request);
+    /**
+     * Sends a request that has already been filtered.
+     */
+    <T, E extends Exception> HttpResponseFuture<T> submit(Request request, ResponseHandler<T, E> responseHandler)
+    {
+        if (retryPolicy.isEnabled()) {
+            retryBudget.requestSent();
+        }
 
-        JettyResponseFuture<T, E> future = new JettyResponseFuture<>(request, jettyRequest, responseHandler, stats);
+        JettyResponseFuture<T, E> future = new JettyResponseFuture<>(request, responseHandler, stats);
+        sendAsync(future, 1, 0);
+        return future;
+    }
 
-        BufferingResponseListener listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength));
+    private void sendAsync(JettyResponseFuture<?, ?> future, int attempt, long delayNanos)
+    {
+        // fail fast while the destination is unhealthy
+        CircuitBreaker breaker = getCircuitBreaker(future.getRequest());
+        ConcurrencyLimiter limiter = getConcurrencyLimiter(future.getRequest());
+        CircuitBreaker.Permit permit = (breaker == null) ? null : breaker.tryAcquire();
+        RuntimeException rejection = tryAcquire(future.getRequest(), breaker, permit, limiter);
+        if (rejection != null) {
+            future.failed(rejection);
+            return;
+        }
 
         try {
-            jettyRequest.send(listener);
+            HttpRequest jettyRequest = buildJettyRequest(future.getRequest());
+            if (!future.setJettyRequest(jettyRequest)) {
+                // future was cancelled while waiting to retry
+                recordFailure(permit, limiter, new CancellationException());
+                return;
+            }
+
+            BufferingResponseListener listener = new BufferingResponseListener(this, future, permit, limiter, attempt, System.nanoTime() + delayNanos, Ints.saturatedCast(maxContentLength));
+            send(jettyRequest, listener, delayNanos);
         }
         catch (RuntimeException e) {
             // normally this is a rejected execution exception because the client has been closed
+            recordFailure(permit, limiter, new CancellationException());
             future.failed(e);
         }
-        return future;
+    }
+
+    @Nullable
+    private CircuitBreaker getCircuitBreaker(Request request)
+    {
+        if (!circuitBreakerEnabled) {
+            return null;
+        }
+        return circuitBreakers.getCircuitBreaker(request.getUri());
+    }
+
+    @Nullable
+    private ConcurrencyLimiter getConcurrencyLimiter(Request request)
+    {
+        if (!concurrencyLimitEnabled) {
+            return null;
+        }
+        return concurrencyLimiters.getConcurrencyLimiter(request.getUri());
+    }
+
+    /**
+     * Acquires a permit from the concurrency limiter of the request destination,
+     * after the permit from its circuit breaker has been requested.
+     *
+     * @param permit the circuit breaker permit, which is null if the breaker rejected the request
+     * @return the exception to fail the request with, or null if the request may be sent
+     */
+    @Nullable
+    private RuntimeException tryAcquire(Request request, @Nullable CircuitBreaker breaker, @Nullable CircuitBreaker.Permit permit, @Nullable ConcurrencyLimiter limiter)
+    {
+        if (breaker != null && permit == null) {
+            return circuitBreakers.rejected(request.getUri());
+        }
+        if (limiter != null && !limiter.tryAcquire()) {
+            if (permit != null) {
+                permit.release();
+            }
+            return concurrencyLimiters.rejected(request.getUri(), limiter);
+        }
+        return null;
+    }
+
+    private static void recordFailure(@Nullable CircuitBreaker.Permit permit, @Nullable ConcurrencyLimiter limiter, Throwable failure)
+    {
+        // a request abandoned by the caller says nothing about the destination
+        boolean cancelled = failure instanceof CancellationException;
+        if (permit != null) {
+            if (cancelled) {
+                permit.release();
+            }
+            else {
+                permit.recordFailure();
+            }
+        }
+        if (limiter != null) {
+            if (cancelled) {
+                limiter.release();
+            }
+            else {
+                limiter.onDropped();
+            }
+        }
+    }
+
+    private static void recordResponse(@Nullable CircuitBreaker.Permit permit, @Nullable ConcurrencyLimiter limiter, int statusCode, long attemptStart)
+    {
+        long elapsed = System.nanoTime() - attemptStart;
+        boolean failed = statusCode >= 500;
+        if (permit != null) {
+            if (failed) {
+                permit.recordFailure();
+            }
+            else {
+                permit.recordSuccess(elapsed);
+            }
+        }
+        if (limiter != null) {
+            if (failed) {
+                limiter.onDropped();
+            }
+            else {
+                limiter.onSuccess(elapsed);
+            }
+        }
+    }
+
+    /**
+     * Sends the request of the future again if the failed attempt can be retried.
+     *
+     * @param backoffNanos the wait before the retry, or -1 if the attempt is not retriable
+     * @return true if the request was retried
+     */
+    private boolean retryAsync(JettyResponseFuture<?, ?> future, int attempt, long backoffNanos)
+    {
+        if (future.isDone() || !shouldRetry(future.getRequest(), attempt, backoffNanos >= 0)) {
+            return false;
+        }
+        sendAsync(future, attempt + 1, backoffNanos);
+        return true;
+    }
+
+    /**
+     * @return the wait before retrying an attempt that failed, or -1 if the failure is not retriable
+     */
+    private long getRetryBackoffNanos(int attempt, Throwable failure)
+    {
+        if (!retryPolicy.isRetriable(failure)) {
+            return -1;
+        }
+        return retryPolicy.getBackoffNanos(attempt);
+    }
+
+    /**
+     * @return the wait before retrying an attempt that received the response,
+     * or -1 if the response is not retriable
+     */
+    private long getRetryBackoffNanos(int attempt, Response response)
+    {
+        if (!retryPolicy.isRetriable(response.getStatus())) {
+            return -1;
+        }
+        return retryPolicy.getBackoffNanos(attempt, response.getHeaders().get(HttpHeader.RETRY_AFTER));
+    }
+
+    /**
+     * Runs a completion callback on the callback executor, if one is
+     * configured, so response handlers do not occupy the I/O threads.
+     */
+    private void dispatchCallback(Runnable callback)
+    {
+        if (callbackExecutor != null) {
+            try {
+                callbackExecutor.execute(callback);
+                return;
+            }
+            catch (RejectedExecutionException ignored) {
+                // the pool is shutting down
+            }
+        }
+        callback.run();
+    }
+
+    private boolean shouldRetry(Request request, int attempt, boolean retriable)
+    {
+        if (!retriable || !retryPolicy.isEnabled() || !retryPolicy.canRetry(request)) {
+            return false;
+        }
+        if (attempt >= retryPolicy.getMaxAttempts()) {
+            retriesExhausted.update(1);
+            return false;
+        }
+        if (!retryBudget.tryAcquire()) {
+            retriesOverBudget.update(1);
+            return false;
+        }
+        retries.update(1);
+        return true;
     }
 
     private Request applyRequestFilters(Request request)
@@ -293,6 +665,12 @@ public class JettyHttpClient
                 jettyRequest.content(new BodyGeneratorContentProvider(bodyGenerator, httpClient.getExecutor()));
             }
         }
+
+        DestinationStats destinationStats = null;
+        if (perDestinationStatsEnabled) {
+            destinationStats = perDestinationStats.getDestinationStats(finalRequest.getUri());
+        }
+        RequestTimingListener.install(jettyRequest, stats, destinationStats);
         return jettyRequest;
     }
 
@@ -309,9 +687,90 @@ public class JettyHttpClient
         return stats;
     }
 
+    /**
+     * Keeps {@code http-client.warm-up.min-connections} connections open to
+     * each destination returned by the supplier, for example the URIs of an
+     * {@code HttpServiceSelector}.
+     */
+    public void addWarmDestinations(Supplier<? extends Iterable<URI>> destinations)
+    {
+        connectionWarmer.addDestinations(destinations);
+    }
+
+    @Managed
+    @Nested
+    @Nullable
+    public CachingDnsResolver getDnsCache()
+    {
+        return dnsResolver;
+    }
+
+    @Managed
+    @Nested
+    public ConnectionStats getConnectionStats()
+    {
+        return connectionStats;
+    }
+
+    @Managed
+    @Nested
+    public ConnectionWarmer getConnectionWarmer()
+    {
+        return connectionWarmer;
+    }
+
+    @Managed
+    @Nested
+    public PerDestinationStats getPerDestinationStats()
+    {
+        return perDestinationStats;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetries()
+    {
+        return retries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetriesExhausted()
+    {
+        return retriesExhausted;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetriesOverBudget()
+    {
+        return retriesOverBudget;
+    }
+
+    @Managed
+    @Nested
+    public CircuitBreakers getCircuitBreakers()
+    {
+        return circuitBreakers;
+    }
+
+    @Managed
+    @Nested
+    public ConcurrencyLimiters getConcurrencyLimiters()
+    {
+        return concurrencyLimiters;
+    }
+
+    @Managed
+    public String getRetryPolicy()
+    {
+        return retryPolicy.toString();
+    }
+
     @Override
     public void close()
     {
+        connectionWarmer.stop();
         try {
             httpClient.stop();
         }
@@ -423,18 +882,37 @@ public class JettyHttpClient
         private final long requestStart = System.nanoTime();
         private final AtomicReference<JettyAsyncHttpState> state = new AtomicReference<>(JettyAsyncHttpState.WAITING_FOR_CONNECTION);
         private final Request request;
-        private final org.eclipse.jetty.client.api.Request jettyRequest;
         private final ResponseHandler<T, E> responseHandler;
         private final RequestStats stats;
+        private volatile org.eclipse.jetty.client.api.Request jettyRequest;
 
-        public JettyResponseFuture(Request request, org.eclipse.jetty.client.api.Request jettyRequest, ResponseHandler<T, E> responseHandler, RequestStats stats)
+        public JettyResponseFuture(Request request, ResponseHandler<T, E> responseHandler, RequestStats stats)
         {
             this.request = request;
-            this.jettyRequest = jettyRequest;
             this.responseHandler = responseHandler;
             this.stats = stats;
         }
 
+        public Request getRequest()
+        {
+            return request;
+        }
+
+        /**
+         * Sets the Jetty request of the current attempt.
+         *
+         * @return false if this future has been cancelled
+         */
+        public boolean setJettyRequest(org.eclipse.jetty.client.api.Request jettyRequest)
+        {
+            this.jettyRequest = jettyRequest;
+            if (state.get() == JettyAsyncHttpState.CANCELED) {
+                jettyRequest.abort(new CancellationException());
+                return false;
+            }
+            return true;
+        }
+
         @Override
         public String getState()
         {
@@ -445,7 +923,10 @@ public class JettyHttpClient
         public boolean cancel(boolean mayInterruptIfRunning)
         {
             state.set(JettyAsyncHttpState.CANCELED);
-            jettyRequest.abort(new CancellationException());
+            org.eclipse.jetty.client.api.Request jettyRequest = this.jettyRequest;
+            if (jettyRequest != null) {
+                jettyRequest.abort(new CancellationException());
+            }
             return super.cancel(mayInterruptIfRunning);
         }
 
@@ -483,7 +964,7 @@ public class JettyHttpClient
                 value = responseHandler.handle(request, jettyResponse);
             }
             finally {
-                recordRequestComplete(stats, request, requestStart, jettyResponse, responseStart);
+                recordRequestComplete(stats, request, requestStart, RequestTimingListener.getBytesWritten(jettyRequest), jettyResponse, responseStart);
             }
             return value;
         }
@@ -540,7 +1021,7 @@ public class JettyHttpClient
         }
     }
 
-    private static void recordRequestComplete(RequestStats requestStats, Request request, long requestStart, JettyResponse response, long responseStart)
+    private static void recordRequestComplete(RequestStats requestStats, Request request, long requestStart, long requestBytes, JettyResponse response, long responseStart)
     {
         if (response == null) {
             return;
@@ -551,7 +1032,7 @@ public class JettyHttpClient
 
         requestStats.record(request.getMethod(),
                 response.getStatusCode(),
-                response.getBytesRead(),
+                requestBytes,
                 response.getBytesRead(),
                 requestProcessingTime,
                 responseProcessingTime);
@@ -680,7 +1161,12 @@ public class JettyHttpClient
     private static class BufferingResponseListener
             extends Listener.Adapter
     {
+        private final JettyHttpClient client;
         private final JettyResponseFuture<?, ?> future;
+        private final CircuitBreaker.Permit permit;
+        private final ConcurrencyLimiter limiter;
+        private final int attempt;
+        private final long attemptStart;
         private final int maxLength;
 
         @GuardedBy("this")
@@ -688,9 +1174,14 @@ public class JettyHttpClient
         @GuardedBy("this")
         private int size;
 
-        public BufferingResponseListener(JettyResponseFuture<?, ?> future, int maxLength)
+        public BufferingResponseListener(JettyHttpClient client, JettyResponseFuture<?, ?> future, @Nullable CircuitBreaker.Permit permit, @Nullable ConcurrencyLimiter limiter, int attempt, long attemptStart, int maxLength)
         {
+            this.client = checkNotNull(client, "client is null");
             this.future = checkNotNull(future, "future is null");
+            this.permit = permit;
+            this.limiter = limiter;
+            this.attempt = attempt;
+            this.attemptStart = attemptStart;
             Preconditions.checkArgument(maxLength > 0, "maxLength must be greater than zero");
             this.maxLength = maxLength;
         }
@@ -729,14 +1220,40 @@ public class JettyHttpClient
         }
 
         @Override
-        public synchronized void onComplete(Result result)
+        public void onComplete(Result result)
         {
-            Throwable throwable = result.getFailure();
+            final Throwable throwable = result.getFailure();
             if (throwable != null) {
-                future.failed(throwable);
+                recordFailure(permit, limiter, throwable);
+                if (!client.retryAsync(future, attempt, client.getRetryBackoffNanos(attempt, throwable))) {
+                    client.dispatchCallback(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            future.failed(throwable);
+                        }
+                    });
+                }
             }
             else {
-                future.completed(result.getResponse(), new ByteArrayInputStream(buffer, 0, size));
+                final Response response = result.getResponse();
+                recordResponse(permit, limiter, response.getStatus(), attemptStart);
+                if (!client.retryAsync(future, attempt, client.getRetryBackoffNanos(attempt, response))) {
+                    final InputStream content;
+                    synchronized (this) {
+                        content = new ByteArrayInputStream(buffer, 0, size);
+                    }
+                    // the response handler may block, so it must not run while holding this listener's lock
+                    client.dispatchCallback(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            future.completed(response, content);
+                        }
+                    });
+                }
             }
         }
     }
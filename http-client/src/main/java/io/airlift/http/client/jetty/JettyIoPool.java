@@ -2,6 +2,7 @@ package io.airlift.http.client.jetty;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
+import io.airlift.log.Logger;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
@@ -9,22 +10,34 @@ import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.Scheduler;
 
+import javax.annotation.Nullable;
+
 import java.io.Closeable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.concurrent.Threads.isVirtualThreadSupported;
+import static io.airlift.concurrent.Threads.threadPerTaskExecutor;
+import static io.airlift.concurrent.Threads.virtualThreadsNamed;
 
 public class JettyIoPool
         implements Closeable
 {
+    private static final Logger log = Logger.get(JettyIoPool.class);
+
     private final String name;
     private final QueuedThreadPool executor;
     private final ByteBufferPool byteBufferPool;
     private final Scheduler scheduler;
+    private final Executor callbackExecutor;
+    private final ExecutorService callbackExecutorService;
 
     public JettyIoPool(String name, JettyIoPoolConfig config)
     {
@@ -44,6 +57,20 @@ public class JettyIoPool
             scheduler.start();
 
             byteBufferPool = new MappedByteBufferPool();
+
+            if (!config.isVirtualThreadCallbacksEnabled()) {
+                callbackExecutor = null;
+                callbackExecutorService = null;
+            }
+            else if (isVirtualThreadSupported()) {
+                callbackExecutor = threadPerTaskExecutor(virtualThreadsNamed(baseName + "-callback-"));
+                callbackExecutorService = null;
+            }
+            else {
+                log.warn("Virtual threads are not supported by this JVM: response handlers for %s will run on a cached daemon thread pool", baseName);
+                callbackExecutorService = Executors.newCachedThreadPool(daemonThreadsNamed(baseName + "-callback-%s"));
+                callbackExecutor = callbackExecutorService;
+            }
         }
         catch (Exception e) {
             close();
@@ -58,7 +85,14 @@ public class JettyIoPool
             closeQuietly(executor);
         }
         finally {
-            closeQuietly(scheduler);
+            try {
+                closeQuietly(scheduler);
+            }
+            finally {
+                if (callbackExecutorService != null) {
+                    callbackExecutorService.shutdownNow();
+                }
+            }
         }
     }
 
@@ -83,6 +117,16 @@ public class JettyIoPool
         return executor;
     }
 
+    /**
+     * Returns the executor response handlers are dispatched to, or null if
+     * handlers run directly on the I/O threads.
+     */
+    @Nullable
+    public Executor getCallbackExecutor()
+    {
+        return callbackExecutor;
+    }
+
     public ByteBufferPool setByteBufferPool()
     {
         return byteBufferPool;
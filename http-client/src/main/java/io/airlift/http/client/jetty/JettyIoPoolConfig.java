@@ -1,6 +1,7 @@
 package io.airlift.http.client.jetty;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.configuration.LegacyConfig;
 
 import javax.validation.constraints.Min;
@@ -9,6 +10,7 @@ public class JettyIoPoolConfig
 {
     private int maxThreads = 200;
     private int minThreads = 8;
+    private boolean virtualThreadCallbacksEnabled;
 
     @Min(1)
     public int getMaxThreads()
@@ -36,4 +38,17 @@ public class JettyIoPoolConfig
         this.minThreads = minThreads;
         return this;
     }
+
+    public boolean isVirtualThreadCallbacksEnabled()
+    {
+        return virtualThreadCallbacksEnabled;
+    }
+
+    @Config("http-client.virtual-thread-callbacks.enabled")
+    @ConfigDescription("Run response handlers on virtual threads (a cached daemon pool if unsupported) instead of the I/O threads")
+    public JettyIoPoolConfig setVirtualThreadCallbacksEnabled(boolean virtualThreadCallbacksEnabled)
+    {
+        this.virtualThreadCallbacksEnabled = virtualThreadCallbacksEnabled;
+        return this;
+    }
 }
@@ -0,0 +1,286 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.http.client.HttpClient.HttpResponseFuture;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.RequestStats;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.cache.CachedResponse;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shares a single exchange between concurrent identical GET and HEAD requests.
+ * <p>
+ * Requests are identical when they have the same method, URI and values for
+ * the key headers. The first request (the leader) is sent and its response is
+ * buffered; requests that arrive while it is in flight wait for the same
+ * response, and each of them passes it to its own response handler. If the
+ * exchange fails, every waiter gets the failure. The exchange is only
+ * cancelled once every waiter has cancelled.
+ */
+class RequestCoalescer
+{
+    private static final BufferingResponseHandler BUFFERING_RESPONSE_HANDLER = new BufferingResponseHandler();
+
+    private final JettyHttpClient client;
+    private final Set<String> keyHeaders;
+    private final RequestStats stats;
+    private final ConcurrentMap<List<String>, Exchange> exchanges = new ConcurrentHashMap<>();
+
+    RequestCoalescer(JettyHttpClient client, String keyHeaders, RequestStats stats)
+    {
+        this.client = checkNotNull(client, "client is null");
+        this.keyHeaders = ImmutableSortedSet.copyOf(String.CASE_INSENSITIVE_ORDER, Splitter.on(',').trimResults().omitEmptyStrings().split(checkNotNull(keyHeaders, "keyHeaders is null")));
+        this.stats = checkNotNull(stats, "stats is null");
+    }
+
+    public static boolean isCoalescable(Request request)
+    {
+        return (request.getMethod().equals("GET") || request.getMethod().equals("HEAD")) && request.getBodyGenerator() == null;
+    }
+
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        Exchange exchange = join(request);
+        CachedResponse response;
+        try {
+            response = exchange.getResult().get();
+        }
+        catch (InterruptedException e) {
+            exchange.leave();
+            Thread.currentThread().interrupt();
+            return responseHandler.handleException(request, e);
+        }
+        catch (ExecutionException e) {
+            return responseHandler.handleException(request, toException(e.getCause()));
+        }
+        return responseHandler.handle(request, response);
+    }
+
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(final Request request, final ResponseHandler<T, E> responseHandler)
+    {
+        final Exchange exchange = join(request);
+        final CoalescedResponseFuture<T> future = new CoalescedResponseFuture<>(exchange);
+        Futures.addCallback(exchange.getResult(), new FutureCallback<CachedResponse>()
+        {
+            @Override
+            public void onSuccess(CachedResponse response)
+            {
+                try {
+                    future.set(responseHandler.handle(request, response));
+                }
+                catch (Throwable t) {
+                    future.setException(t);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.set(responseHandler.handleException(request, toException(t)));
+                }
+                catch (Throwable e) {
+                    future.setException(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private Exchange join(Request request)
+    {
+        List<String> key = getKey(request);
+        while (true) {
+            Exchange existing = exchanges.get(key);
+            if (existing != null && existing.join()) {
+                stats.recordCoalesced();
+                return existing;
+            }
+
+            Exchange exchange = new Exchange();
+            boolean installed;
+            if (existing == null) {
+                installed = exchanges.putIfAbsent(key, exchange) == null;
+            }
+            else {
+                installed = exchanges.replace(key, existing, exchange);
+            }
+            if (installed) {
+                start(key, request, exchange);
+                return exchange;
+            }
+        }
+    }
+
+    private void start(final List<String> key, Request request, final Exchange exchange)
+    {
+        HttpResponseFuture<CachedResponse> upstream = client.submit(request, BUFFERING_RESPONSE_HANDLER);
+        exchange.setUpstream(upstream);
+        Futures.addCallback(upstream, new FutureCallback<CachedResponse>()
+        {
+            @Override
+            public void onSuccess(CachedResponse response)
+            {
+                // later requests must not get this response, so stop sharing before completing
+                exchanges.remove(key, exchange);
+                exchange.getResult().set(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                exchanges.remove(key, exchange);
+                exchange.getResult().setException(t);
+            }
+        });
+    }
+
+    private List<String> getKey(Request request)
+    {
+        ImmutableList.Builder<String> key = ImmutableList.builder();
+        key.add(request.getMethod());
+        key.add(request.getUri().toString());
+        for (Entry<String, String> header : request.getHeaders().entries()) {
+            if (keyHeaders.contains(header.getKey())) {
+                key.add(header.getKey().toLowerCase() + ": " + header.getValue());
+            }
+        }
+        return key.build();
+    }
+
+    private static Exception toException(Throwable throwable)
+    {
+        if (throwable instanceof Exception) {
+            return (Exception) throwable;
+        }
+        return new RuntimeException(throwable);
+    }
+
+    private static class Exchange
+    {
+        private final SettableFuture<CachedResponse> result = SettableFuture.create();
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private volatile HttpResponseFuture<?> upstream;
+
+        public SettableFuture<CachedResponse> getResult()
+        {
+            return result;
+        }
+
+        public void setUpstream(HttpResponseFuture<?> upstream)
+        {
+            this.upstream = upstream;
+            if (waiters.get() == 0) {
+                upstream.cancel(true);
+            }
+        }
+
+        public String getState()
+        {
+            HttpResponseFuture<?> upstream = this.upstream;
+            return (upstream == null) ? "SENDING_REQUEST" : upstream.getState();
+        }
+
+        /**
+         * @return false if the exchange is complete or abandoned and can no longer be shared
+         */
+        public boolean join()
+        {
+            while (true) {
+                int current = waiters.get();
+                if (current == 0 || result.isDone()) {
+                    return false;
+                }
+                if (waiters.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void leave()
+        {
+            if (waiters.decrementAndGet() == 0) {
+                HttpResponseFuture<?> upstream = this.upstream;
+                if (upstream != null) {
+                    upstream.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static class CoalescedResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private final Exchange exchange;
+        private final AtomicBoolean left = new AtomicBoolean();
+
+        private CoalescedResponseFuture(Exchange exchange)
+        {
+            this.exchange = exchange;
+        }
+
+        @Override
+        protected boolean set(T value)
+        {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable)
+        {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public String getState()
+        {
+            return exchange.getState();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && left.compareAndSet(false, true)) {
+                exchange.leave();
+            }
+            return cancelled;
+        }
+    }
+}
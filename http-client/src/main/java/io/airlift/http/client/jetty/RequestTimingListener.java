@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import io.airlift.http.client.DestinationStats;
+import io.airlift.http.client.RequestStats;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
+import javax.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Records the time at which each phase of a Jetty exchange ends and the
+ * number of request content bytes written.
+ */
+class RequestTimingListener
+        extends Request.Listener.Adapter
+        implements Response.BeginListener, Response.CompleteListener
+{
+    private static final String ATTRIBUTE = RequestTimingListener.class.getName();
+
+    private final RequestStats stats;
+    private final DestinationStats destinationStats;
+
+    private volatile long queuedNanos;
+    private volatile long beginNanos;
+    private volatile long headersSentNanos;
+    private volatile long contentSentNanos;
+    private volatile long responseBeginNanos;
+    private volatile long bytesWritten;
+
+    private RequestTimingListener(RequestStats stats, @Nullable DestinationStats destinationStats)
+    {
+        this.stats = stats;
+        this.destinationStats = destinationStats;
+    }
+
+    public static void install(Request jettyRequest, RequestStats stats, @Nullable DestinationStats destinationStats)
+    {
+        RequestTimingListener listener = new RequestTimingListener(stats, destinationStats);
+        jettyRequest.attribute(ATTRIBUTE, listener);
+        jettyRequest.listener(listener);
+        jettyRequest.onResponseBegin(listener);
+        jettyRequest.onComplete(listener);
+    }
+
+    /**
+     * Returns the number of request content bytes written so far for the given request.
+     */
+    public static long getBytesWritten(@Nullable Request jettyRequest)
+    {
+        if (jettyRequest == null) {
+            return 0;
+        }
+        Object listener = jettyRequest.getAttributes().get(ATTRIBUTE);
+        if (!(listener instanceof RequestTimingListener)) {
+            return 0;
+        }
+        return ((RequestTimingListener) listener).bytesWritten;
+    }
+
+    @Override
+    public void onQueued(Request request)
+    {
+        queuedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onBegin(Request request)
+    {
+        beginNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onCommit(Request request)
+    {
+        headersSentNanos = System.nanoTime();
+    }
+
+    @Override
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void onContent(Request request, ByteBuffer content)
+    {
+        // content callbacks for a request are never concurrent
+        bytesWritten += content.remaining();
+    }
+
+    @Override
+    public void onSuccess(Request request)
+    {
+        contentSentNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onBegin(Response response)
+    {
+        responseBeginNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onComplete(Result result)
+    {
+        long completeNanos = System.nanoTime();
+        int statusCode = 0;
+        if (responseBeginNanos != 0 && result.getResponse() != null) {
+            // a response that is aborted, e.g. to retry, is still counted by its status
+            statusCode = result.getResponse().getStatus();
+        }
+        stats.getPhases().record(queuedNanos, beginNanos, headersSentNanos, contentSentNanos, responseBeginNanos, completeNanos);
+        stats.getStatusClasses().record(statusCode, (queuedNanos == 0) ? 0 : completeNanos - queuedNanos);
+        if (destinationStats != null) {
+            destinationStats.record(statusCode, queuedNanos, beginNanos, headersSentNanos, contentSentNanos, responseBeginNanos, completeNanos);
+        }
+    }
+}
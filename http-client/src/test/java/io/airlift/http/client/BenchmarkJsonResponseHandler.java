@@ -0,0 +1,200 @@
+package io.airlift.http.client;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.json.JsonCodec;
+import io.airlift.units.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static io.airlift.http.client.HttpStatus.OK;
+import static io.airlift.http.client.JsonResponseHandler.createJsonResponseHandler;
+import static io.airlift.http.client.StreamingJsonResponseHandler.createStreamingJsonResponseHandler;
+import static io.airlift.http.client.testing.TestingResponse.contentType;
+import static io.airlift.json.JsonCodec.listJsonCodec;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+
+/**
+ * Compares {@link JsonResponseHandler}, which copies the body into a byte
+ * array before parsing, with {@link StreamingJsonResponseHandler} on 1MB and
+ * 50MB responses. For each handler it reports the peak heap used while
+ * handling a response and the latency when the body arrives at a fixed rate,
+ * as it would from a socket, so the streaming handler can parse while the
+ * body is still arriving.
+ */
+public class BenchmarkJsonResponseHandler
+{
+    private static final JsonCodec<List<Item>> CODEC = listJsonCodec(Item.class);
+    private static final long BYTES_PER_SECOND = new DataSize(200, MEGABYTE).toBytes();
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        for (DataSize size : ImmutableList.of(new DataSize(1, MEGABYTE), new DataSize(50, MEGABYTE))) {
+            byte[] json = createJson(size);
+            System.out.printf("response size: %s%n", new DataSize(json.length, DataSize.Unit.BYTE).convertToMostSuccinctDataSize());
+            run("buffered", createJsonResponseHandler(CODEC), json);
+            run("streaming", createStreamingJsonResponseHandler(CODEC), json);
+        }
+    }
+
+    private static void run(String name, ResponseHandler<List<Item>, RuntimeException> handler, byte[] json)
+            throws Exception
+    {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            handler.handle(null, new TestingResponse(OK, contentType(JSON_UTF_8), json));
+        }
+
+        long peakHeap = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            // the response is already in memory, which is not counted
+            TestingResponse response = new TestingResponse(OK, contentType(JSON_UTF_8), new ThrottledInputStream(new ByteArrayInputStream(json)));
+            long baseline = resetPeakHeap();
+            long start = System.nanoTime();
+            List<Item> items = handler.handle(null, response);
+            totalNanos += System.nanoTime() - start;
+            peakHeap = Math.max(peakHeap, getPeakHeap() - baseline);
+            if (items.isEmpty()) {
+                throw new AssertionError();
+            }
+        }
+
+        System.out.printf("  %-10s latency: %6.1f ms  peak heap: %s%n",
+                name,
+                totalNanos / 1.0e6 / ITERATIONS,
+                new DataSize(Math.max(peakHeap, 0), DataSize.Unit.BYTE).convertToMostSuccinctDataSize());
+    }
+
+    private static long resetPeakHeap()
+    {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long getPeakHeap()
+    {
+        // the pools peak at different times, so this is an upper bound
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static byte[] createJson(DataSize size)
+    {
+        ImmutableList.Builder<Item> items = ImmutableList.builder();
+        String description = Strings.repeat("x", 100);
+        int itemSize = CODEC.toJsonBytes(ImmutableList.of(new Item(0, "item-0", description))).length;
+        for (int i = 0; i < size.toBytes() / itemSize; i++) {
+            items.add(new Item(i, "item-" + i, description));
+        }
+        return CODEC.toJsonBytes(items.build());
+    }
+
+    /**
+     * Returns the data in chunks at a fixed rate, like a socket receiving a large response.
+     */
+    private static class ThrottledInputStream
+            extends FilterInputStream
+    {
+        private final long start = System.nanoTime();
+        private long position;
+
+        private ThrottledInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return (count == -1) ? -1 : (buffer[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            // the chunk is available once all of its bytes have arrived
+            length = Math.min(length, CHUNK_SIZE);
+            long availableAt = start + TimeUnit.SECONDS.toNanos(position + length) / BYTES_PER_SECOND;
+            long waitNanos = availableAt - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+    }
+
+    public static class Item
+    {
+        private final long id;
+        private final String name;
+        private final String description;
+
+        @JsonCreator
+        public Item(@JsonProperty("id") long id, @JsonProperty("name") String name, @JsonProperty("description") String description)
+        {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+        }
+
+        @JsonProperty
+        public long getId()
+        {
+            return id;
+        }
+
+        @JsonProperty
+        public String getName()
+        {
+            return name;
+        }
+
+        @JsonProperty
+        public String getDescription()
+        {
+            return description;
+        }
+    }
+}
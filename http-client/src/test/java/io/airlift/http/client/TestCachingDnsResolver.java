@@ -0,0 +1,186 @@
+package io.airlift.http.client;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestCachingDnsResolver
+{
+    private TestingTicker ticker;
+    private TestingDnsResolver delegate;
+    private Queue<Runnable> refreshTasks;
+    private CachingDnsResolver resolver;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        ticker = new TestingTicker();
+        delegate = new TestingDnsResolver();
+        refreshTasks = new ArrayDeque<>();
+        Executor refreshExecutor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                refreshTasks.add(command);
+            }
+        };
+        resolver = new CachingDnsResolver(delegate, new Duration(60, SECONDS), new Duration(5, SECONDS), 100, refreshExecutor, ticker);
+    }
+
+    @Test
+    public void testPositiveCache()
+            throws Exception
+    {
+        delegate.set("example.com", address(1));
+        assertFalse(resolver.isCached("example.com"));
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+        assertTrue(resolver.isCached("example.com"));
+
+        delegate.set("example.com", address(2));
+        ticker.increment(30, SECONDS);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+        assertEquals(delegate.getLookups(), 1);
+        assertEquals(resolver.getHitCount(), 1);
+        assertEquals(resolver.getMissCount(), 1);
+        assertEquals(resolver.getHitRate(), 0.5);
+    }
+
+    @Test
+    public void testRefreshBeforeExpiry()
+            throws Exception
+    {
+        delegate.set("example.com", address(1));
+        resolver.resolve("example.com");
+
+        // after three quarters of the ttl the cached value is returned and refreshed
+        delegate.set("example.com", address(2));
+        ticker.increment(50, SECONDS);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+        assertEquals(resolver.getRefreshes().getTotalCount(), 1);
+        assertEquals(delegate.getLookups(), 1);
+
+        runRefreshTasks();
+        assertEquals(delegate.getLookups(), 2);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(2)));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsAddressesUntilExpiry()
+            throws Exception
+    {
+        delegate.set("example.com", address(1));
+        resolver.resolve("example.com");
+
+        delegate.remove("example.com");
+        ticker.increment(50, SECONDS);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+        runRefreshTasks();
+        assertEquals(delegate.getLookups(), 2);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+
+        ticker.increment(11, SECONDS);
+        assertUnknownHost("example.com");
+    }
+
+    @Test
+    public void testNegativeCache()
+            throws Exception
+    {
+        assertUnknownHost("example.com");
+        assertUnknownHost("example.com");
+        assertEquals(delegate.getLookups(), 1);
+        assertEquals(resolver.getFailures().getTotalCount(), 1);
+
+        delegate.set("example.com", address(1));
+        ticker.increment(5, SECONDS);
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1)));
+        assertEquals(delegate.getLookups(), 2);
+    }
+
+    @Test
+    public void testMultipleAddressesAreRotated()
+            throws Exception
+    {
+        delegate.set("example.com", address(1), address(2), address(3));
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1), address(2), address(3)));
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(2), address(3), address(1)));
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(3), address(1), address(2)));
+        assertEquals(resolver.resolve("example.com"), ImmutableList.of(address(1), address(2), address(3)));
+    }
+
+    private void runRefreshTasks()
+    {
+        while (!refreshTasks.isEmpty()) {
+            refreshTasks.poll().run();
+        }
+    }
+
+    private void assertUnknownHost(String host)
+    {
+        try {
+            resolver.resolve(host);
+            fail("expected UnknownHostException");
+        }
+        catch (UnknownHostException expected) {
+        }
+    }
+
+    private static InetAddress address(int lastOctet)
+            throws UnknownHostException
+    {
+        return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) lastOctet});
+    }
+
+    private static class TestingDnsResolver
+            implements DnsResolver
+    {
+        private final Map<String, List<InetAddress>> hosts = new HashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        public synchronized void set(String host, InetAddress... addresses)
+        {
+            hosts.put(host, ImmutableList.copyOf(addresses));
+        }
+
+        public synchronized void remove(String host)
+        {
+            hosts.remove(host);
+        }
+
+        public int getLookups()
+        {
+            return lookups.get();
+        }
+
+        @Override
+        public synchronized List<InetAddress> resolve(String host)
+                throws UnknownHostException
+        {
+            lookups.incrementAndGet();
+            List<InetAddress> addresses = hosts.get(host);
+            if (addresses == null) {
+                throw new UnknownHostException(host);
+            }
+            return addresses;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.airlift.http.client;
+
+import io.airlift.http.client.CircuitBreaker.Permit;
+import io.airlift.http.client.CircuitBreaker.State;
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestCircuitBreaker
+{
+    private TestingTicker ticker;
+    private CircuitBreaker breaker;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        ticker = new TestingTicker();
+        breaker = new CircuitBreaker(0.5, 10, new Duration(10, SECONDS), new Duration(5, SECONDS), new Duration(1, SECONDS), ticker);
+    }
+
+    @Test
+    public void testOpensOnFailureRatio()
+    {
+        for (int i = 0; i < 5; i++) {
+            acquire().recordSuccess(MILLISECONDS.toNanos(10));
+        }
+        for (int i = 0; i < 4; i++) {
+            acquire().recordFailure();
+        }
+        // not enough requests yet
+        assertEquals(breaker.getState(), State.CLOSED);
+
+        acquire().recordFailure();
+        assertEquals(breaker.getState(), State.OPEN);
+        assertNull(breaker.tryAcquire());
+        assertEquals(breaker.getTimesOpened(), 1);
+    }
+
+    @Test
+    public void testSlowRequestsAreFailures()
+    {
+        for (int i = 0; i < 10; i++) {
+            acquire().recordSuccess(SECONDS.toNanos(2));
+        }
+        assertEquals(breaker.getState(), State.OPEN);
+    }
+
+    @Test
+    public void testOldFailuresExpire()
+    {
+        for (int i = 0; i < 9; i++) {
+            acquire().recordFailure();
+        }
+        ticker.increment(11, SECONDS);
+        assertEquals(breaker.getRequestCount(), 0);
+
+        acquire().recordFailure();
+        assertEquals(breaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testHalfOpenProbe()
+    {
+        open();
+
+        ticker.increment(5, SECONDS);
+        assertEquals(breaker.getState(), State.HALF_OPEN);
+
+        // only a single probe is allowed
+        Permit probe = acquire();
+        assertNull(breaker.tryAcquire());
+
+        // failed probe opens the breaker again
+        probe.recordFailure();
+        assertEquals(breaker.getState(), State.OPEN);
+        assertNull(breaker.tryAcquire());
+
+        // cancelled probe allows another probe
+        ticker.increment(5, SECONDS);
+        acquire().release();
+        probe = acquire();
+
+        // successful probe closes the breaker
+        probe.recordSuccess(MILLISECONDS.toNanos(10));
+        assertEquals(breaker.getState(), State.CLOSED);
+        assertEquals(breaker.getRequestCount(), 0);
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testStragglersDoNotActAsProbe()
+    {
+        // requests sent while the breaker was closed complete after it opened
+        Permit success = acquire();
+        Permit failure = acquire();
+        Permit cancelled = acquire();
+        open();
+
+        ticker.increment(5, SECONDS);
+        Permit probe = acquire();
+
+        success.recordSuccess(MILLISECONDS.toNanos(10));
+        assertEquals(breaker.getState(), State.HALF_OPEN);
+        failure.recordFailure();
+        assertEquals(breaker.getState(), State.HALF_OPEN);
+        cancelled.release();
+        assertNull(breaker.tryAcquire());
+
+        probe.recordSuccess(MILLISECONDS.toNanos(10));
+        assertEquals(breaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testCircuitBreakerPerDestination()
+    {
+        CircuitBreakers breakers = new CircuitBreakers(new HttpClientConfig());
+        CircuitBreaker first = breakers.getCircuitBreaker(URI.create("http://example.com/foo"));
+        assertSame(breakers.getCircuitBreaker(URI.create("http://example.com:80/bar")), first);
+        assertTrue(breakers.getCircuitBreaker(URI.create("https://example.com/foo")) != first);
+        assertEquals(breakers.getDestinationCount(), 2);
+        assertEquals(breakers.getOpenCount(), 0);
+
+        for (int i = 0; i < 20; i++) {
+            first.tryAcquire().recordFailure();
+        }
+        assertEquals(breakers.getOpenCount(), 1);
+        assertEquals(breakers.getOpenDestinations().get("example.com:80"), "OPEN");
+        assertEquals(breakers.getState("example.com:80"), "OPEN");
+        assertEquals(breakers.getState("example.com:443"), "CLOSED");
+
+        CircuitBreakerOpenException exception = breakers.rejected(URI.create("http://example.com/foo"));
+        assertEquals(exception.getDestination().toString(), "example.com:80");
+        assertEquals(breakers.getRejected().getTotalCount(), 1);
+    }
+
+    private void open()
+    {
+        for (int i = 0; i < 10; i++) {
+            acquire().recordFailure();
+        }
+        assertEquals(breaker.getState(), State.OPEN);
+    }
+
+    private Permit acquire()
+    {
+        Permit permit = breaker.tryAcquire();
+        assertNotNull(permit);
+        return permit;
+    }
+}
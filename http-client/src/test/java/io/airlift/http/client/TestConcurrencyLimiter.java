@@ -0,0 +1,100 @@
+package io.airlift.http.client;
+
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestConcurrencyLimiter
+{
+    @Test
+    public void testLimitIsEnforced()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2.0, 0.5);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(limiter.getInFlight(), 2);
+
+        limiter.release();
+        assertEquals(limiter.getInFlight(), 1);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAdditiveIncrease()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2.0, 0.5);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire());
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(MILLISECONDS.toNanos(10));
+            limiter.onSuccess(MILLISECONDS.toNanos(10));
+        }
+        assertTrue(limiter.getLimit() > 2, "limit " + limiter.getLimit());
+        assertTrue(limiter.getLimit() <= 10, "limit " + limiter.getLimit());
+        assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testIdleLimiterDoesNotGrow()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100, 2.0, 0.5);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(MILLISECONDS.toNanos(10));
+        }
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void testMultiplicativeDecrease()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 2, 10, 2.0, 0.5);
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        assertEquals(limiter.getLimit(), 4);
+
+        limiter.tryAcquire();
+        limiter.onDropped();
+        limiter.tryAcquire();
+        limiter.onDropped();
+        assertEquals(limiter.getLimit(), 2);
+    }
+
+    @Test
+    public void testSlowResponseDecreasesLimit()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 10, 2.0, 0.5);
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(1);
+        assertEquals(limiter.getLimit(), 8);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(MILLISECONDS.toNanos(100));
+        assertEquals(limiter.getLimit(), 4);
+    }
+
+    @Test
+    public void testLimiterPerDestination()
+    {
+        ConcurrencyLimiters limiters = new ConcurrencyLimiters(new HttpClientConfig().setConcurrencyLimitInitial(1));
+        ConcurrencyLimiter limiter = limiters.getConcurrencyLimiter(URI.create("http://example.com/foo"));
+        assertSame(limiters.getConcurrencyLimiter(URI.create("http://example.com:80/bar")), limiter);
+        assertEquals(limiters.getDestinationCount(), 1);
+
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(limiters.getInFlight(), 1);
+        assertEquals(limiters.getLimits().get("example.com:80"), (Integer) 1);
+
+        ConcurrencyLimitExceededException exception = limiters.rejected(URI.create("http://example.com/foo"), limiter);
+        assertEquals(exception.getDestination().toString(), "example.com:80");
+        assertEquals(limiters.getRejected().getTotalCount(), 1);
+    }
+}
@@ -23,6 +23,7 @@ import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
 import org.testng.annotations.Test;
 
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
 
 import java.util.Map;
@@ -47,7 +48,36 @@ public class TestHttpClientConfig
                 .setMaxContentLength(new DataSize(16, Unit.MEGABYTE))
                 .setSocksProxy(null)
                 .setKeyStorePath(System.getProperty(JAVAX_NET_SSL_KEY_STORE))
-                .setKeyStorePassword(System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD)));
+                .setKeyStorePassword(System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD))
+                .setMaxAttempts(1)
+                .setInitialRetryBackoff(new Duration(100, TimeUnit.MILLISECONDS))
+                .setMaxRetryBackoff(new Duration(10, TimeUnit.SECONDS))
+                .setRetryBudgetRatio(0.1)
+                .setCircuitBreakerEnabled(false)
+                .setCircuitBreakerFailureRatio(0.5)
+                .setCircuitBreakerMinRequests(20)
+                .setCircuitBreakerWindow(new Duration(10, TimeUnit.SECONDS))
+                .setCircuitBreakerOpenDuration(new Duration(5, TimeUnit.SECONDS))
+                .setCircuitBreakerSlowRequestThreshold(null)
+                .setConcurrencyLimitEnabled(false)
+                .setConcurrencyLimitInitial(20)
+                .setConcurrencyLimitMin(1)
+                .setConcurrencyLimitMax(1000)
+                .setConcurrencyLimitRttTolerance(2.0)
+                .setConcurrencyLimitBackoffRatio(0.9)
+                .setCoalescingEnabled(false)
+                .setCoalescingKeyHeaders("Accept,Accept-Encoding,Accept-Language,Authorization,Cookie")
+                .setPerDestinationStatsEnabled(false)
+                .setPerDestinationStatsMaxDestinations(100)
+                .setWarmUpMinConnections(0)
+                .setWarmUpDestinations(null)
+                .setWarmUpInterval(new Duration(30, TimeUnit.SECONDS))
+                .setWarmUpProbePath(null)
+                .setDnsCacheEnabled(false)
+                .setDnsCacheTtl(new Duration(1, TimeUnit.MINUTES))
+                .setDnsCacheNegativeTtl(new Duration(5, TimeUnit.SECONDS))
+                .setDnsCacheMaxEntries(10_000)
+                .setBufferedExecuteEnabled(false));
     }
 
     @Test
@@ -64,6 +94,35 @@ public class TestHttpClientConfig
                 .put("http-client.socks-proxy", "localhost:1080")
                 .put("http-client.key-store-path", "key-store")
                 .put("http-client.key-store-password", "key-store-password")
+                .put("http-client.retry.max-attempts", "3")
+                .put("http-client.retry.initial-backoff", "50ms")
+                .put("http-client.retry.max-backoff", "2s")
+                .put("http-client.retry.budget-ratio", "0.2")
+                .put("http-client.circuit-breaker.enabled", "true")
+                .put("http-client.circuit-breaker.failure-ratio", "0.3")
+                .put("http-client.circuit-breaker.min-requests", "50")
+                .put("http-client.circuit-breaker.window", "30s")
+                .put("http-client.circuit-breaker.open-duration", "15s")
+                .put("http-client.circuit-breaker.slow-request-threshold", "2s")
+                .put("http-client.concurrency-limit.enabled", "true")
+                .put("http-client.concurrency-limit.initial", "10")
+                .put("http-client.concurrency-limit.min", "5")
+                .put("http-client.concurrency-limit.max", "100")
+                .put("http-client.concurrency-limit.rtt-tolerance", "1.5")
+                .put("http-client.concurrency-limit.backoff-ratio", "0.7")
+                .put("http-client.coalescing.enabled", "true")
+                .put("http-client.coalescing.key-headers", "Accept")
+                .put("http-client.per-destination-stats.enabled", "true")
+                .put("http-client.per-destination-stats.max-destinations", "10")
+                .put("http-client.warm-up.min-connections", "2")
+                .put("http-client.warm-up.destinations", "http://a.example.com,https://b.example.com:8443")
+                .put("http-client.warm-up.interval", "10s")
+                .put("http-client.warm-up.probe-path", "/v1/status")
+                .put("http-client.dns-cache.enabled", "true")
+                .put("http-client.dns-cache.ttl", "5m")
+                .put("http-client.dns-cache.negative-ttl", "1s")
+                .put("http-client.dns-cache.max-entries", "100")
+                .put("http-client.buffered-execute.enabled", "true")
                 .build();
 
         HttpClientConfig expected = new HttpClientConfig()
@@ -76,7 +135,36 @@ public class TestHttpClientConfig
                 .setMaxContentLength(new DataSize(1, Unit.MEGABYTE))
                 .setSocksProxy(HostAndPort.fromParts("localhost", 1080))
                 .setKeyStorePath("key-store")
-                .setKeyStorePassword("key-store-password");
+                .setKeyStorePassword("key-store-password")
+                .setMaxAttempts(3)
+                .setInitialRetryBackoff(new Duration(50, TimeUnit.MILLISECONDS))
+                .setMaxRetryBackoff(new Duration(2, TimeUnit.SECONDS))
+                .setRetryBudgetRatio(0.2)
+                .setCircuitBreakerEnabled(true)
+                .setCircuitBreakerFailureRatio(0.3)
+                .setCircuitBreakerMinRequests(50)
+                .setCircuitBreakerWindow(new Duration(30, TimeUnit.SECONDS))
+                .setCircuitBreakerOpenDuration(new Duration(15, TimeUnit.SECONDS))
+                .setCircuitBreakerSlowRequestThreshold(new Duration(2, TimeUnit.SECONDS))
+                .setConcurrencyLimitEnabled(true)
+                .setConcurrencyLimitInitial(10)
+                .setConcurrencyLimitMin(5)
+                .setConcurrencyLimitMax(100)
+                .setConcurrencyLimitRttTolerance(1.5)
+                .setConcurrencyLimitBackoffRatio(0.7)
+                .setCoalescingEnabled(true)
+                .setCoalescingKeyHeaders("Accept")
+                .setPerDestinationStatsEnabled(true)
+                .setPerDestinationStatsMaxDestinations(10)
+                .setWarmUpMinConnections(2)
+                .setWarmUpDestinations("http://a.example.com,https://b.example.com:8443")
+                .setWarmUpInterval(new Duration(10, TimeUnit.SECONDS))
+                .setWarmUpProbePath("/v1/status")
+                .setDnsCacheEnabled(true)
+                .setDnsCacheTtl(new Duration(5, TimeUnit.MINUTES))
+                .setDnsCacheNegativeTtl(new Duration(1, TimeUnit.SECONDS))
+                .setDnsCacheMaxEntries(100)
+                .setBufferedExecuteEnabled(true);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -86,5 +174,13 @@ public class TestHttpClientConfig
     {
         assertFailsValidation(new HttpClientConfig().setConnectTimeout(null), "connectTimeout", "may not be null", NotNull.class);
         assertFailsValidation(new HttpClientConfig().setReadTimeout(null), "readTimeout", "may not be null", NotNull.class);
+        assertFailsValidation(new HttpClientConfig().setMaxConnectionsPerServer(2).setWarmUpMinConnections(3).setWarmUpProbePath("/status"),
+                "warmUpMinConnectionsValid",
+                "warm-up min connections must not be greater than max connections per server",
+                AssertTrue.class);
+        assertFailsValidation(new HttpClientConfig().setWarmUpMinConnections(1),
+                "warmUpProbePathValid",
+                "warm-up probe path is required when warm-up min connections is set",
+                AssertTrue.class);
     }
 }
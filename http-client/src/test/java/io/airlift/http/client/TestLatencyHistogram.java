@@ -0,0 +1,74 @@
+package io.airlift.http.client;
+
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestLatencyHistogram
+{
+    @Test
+    public void testBuckets()
+    {
+        for (long micros = 0; micros < 1_000_000; micros++) {
+            int bucket = LatencyHistogram.getBucket(micros);
+            assertTrue(micros < LatencyHistogram.getUpperBoundMicros(bucket), "micros " + micros);
+            if (bucket > 0) {
+                assertTrue(micros >= LatencyHistogram.getUpperBoundMicros(bucket - 1), "micros " + micros);
+            }
+        }
+        // latencies beyond the last bucket are clamped
+        assertEquals(LatencyHistogram.getBucket(Long.MAX_VALUE), LatencyHistogram.getBucket(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertTrue(Double.isNaN(histogram.getP50()));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.add(MILLISECONDS.toNanos(i));
+        }
+        assertEquals(histogram.getCount(), 100);
+        assertEquals(histogram.getP50(), 50.0, 50.0 * 0.2);
+        assertEquals(histogram.getP90(), 90.0, 90.0 * 0.2);
+        assertEquals(histogram.getP99(), 99.0, 99.0 * 0.2);
+
+        // negative latencies from clock skew count as zero
+        histogram.add(-MICROSECONDS.toNanos(5));
+        assertEquals(histogram.getPercentile(0.0), 0.001);
+    }
+
+    @Test
+    public void testWindow()
+    {
+        TestingTicker ticker = new TestingTicker();
+        LatencyHistogram histogram = new LatencyHistogram(new Duration(10, SECONDS), ticker);
+        histogram.add(MILLISECONDS.toNanos(1000));
+        assertEquals(histogram.getP99(), 1000.0, 1000.0 * 0.2);
+
+        // the previous window is still reported after a rotation
+        ticker.increment(10, SECONDS);
+        histogram.add(MILLISECONDS.toNanos(10));
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getP99(), 1000.0, 1000.0 * 0.2);
+
+        // old latencies stop affecting the percentiles
+        ticker.increment(10, SECONDS);
+        histogram.add(MILLISECONDS.toNanos(10));
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getP99(), 10.0, 10.0 * 0.2);
+
+        // an idle histogram forgets everything
+        ticker.increment(1, MINUTES);
+        assertEquals(histogram.getCount(), 0);
+        assertTrue(Double.isNaN(histogram.getP99()));
+    }
+}
@@ -0,0 +1,50 @@
+package io.airlift.http.client;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestRequestBudget
+{
+    @Test
+    public void testStartsFull()
+    {
+        RequestBudget budget = new RequestBudget(0.1, 2);
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void testRefillsWithRequests()
+    {
+        RequestBudget budget = new RequestBudget(0.1, 1);
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        for (int i = 0; i < 9; i++) {
+            budget.requestSent();
+            assertFalse(budget.tryAcquire());
+        }
+        budget.requestSent();
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        RequestBudget budget = new RequestBudget(0.5, 3);
+        for (int i = 0; i < 100; i++) {
+            budget.requestSent();
+        }
+        assertEquals(budget.getAvailableTokens(), 3.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRatio()
+    {
+        new RequestBudget(1.5, 1);
+    }
+}
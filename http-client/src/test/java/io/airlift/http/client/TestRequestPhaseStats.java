@@ -0,0 +1,86 @@
+package io.airlift.http.client;
+
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class TestRequestPhaseStats
+{
+    private static final long MILLIS = MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRecord()
+    {
+        RequestPhaseStats stats = new RequestPhaseStats();
+        stats.record(1 * MILLIS, 3 * MILLIS, 4 * MILLIS, 10 * MILLIS, 30 * MILLIS, 35 * MILLIS);
+
+        assertEquals(stats.getQueuedTime().getAllTime().getMax(), 2.0);
+        assertEquals(stats.getRequestHeadersTime().getAllTime().getMax(), 1.0);
+        assertEquals(stats.getRequestContentTime().getAllTime().getMax(), 6.0);
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getMax(), 20.0);
+        assertEquals(stats.getResponseContentTime().getAllTime().getMax(), 5.0);
+        assertEquals(stats.getTotalTime().getAllTime().getMax(), 34.0);
+    }
+
+    @Test
+    public void testFailedExchange()
+    {
+        // connect failed: only the queued and total times are known
+        RequestPhaseStats stats = new RequestPhaseStats();
+        stats.record(1 * MILLIS, 0, 0, 0, 0, 5 * MILLIS);
+
+        assertEquals(stats.getQueuedTime().getAllTime().getCount(), 0.0);
+        assertEquals(stats.getRequestHeadersTime().getAllTime().getCount(), 0.0);
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getCount(), 0.0);
+        assertEquals(stats.getResponseContentTime().getAllTime().getCount(), 0.0);
+        assertEquals(stats.getTotalTime().getAllTime().getCount(), 1.0);
+        assertEquals(stats.getTotalTime().getAllTime().getMax(), 4.0);
+    }
+
+    @Test
+    public void testEarlyResponse()
+    {
+        // server responded before the request content was sent
+        RequestPhaseStats stats = new RequestPhaseStats();
+        stats.record(1 * MILLIS, 2 * MILLIS, 3 * MILLIS, 20 * MILLIS, 10 * MILLIS, 25 * MILLIS);
+
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getMax(), 0.0);
+        assertEquals(stats.getTotalTime().getAllTime().getMax(), 24.0);
+    }
+
+    @Test
+    public void testPerDestinationStats()
+    {
+        PerDestinationStats stats = new PerDestinationStats(2);
+        DestinationStats a = stats.getDestinationStats(URI.create("http://a.example.com/foo"));
+        assertSame(stats.getDestinationStats(URI.create("http://a.example.com:80/bar")), a);
+        DestinationStats b = stats.getDestinationStats(URI.create("https://b.example.com/"));
+        assertNotSame(b, a);
+
+        // destinations over the limit share a single entry
+        DestinationStats c = stats.getDestinationStats(URI.create("http://c.example.com/"));
+        assertSame(stats.getDestinationStats(URI.create("http://d.example.com/")), c);
+        assertSame(stats.getDestinations().get(PerDestinationStats.OTHER), c);
+        assertEquals(stats.getDestinationCount(), 2);
+
+        a.record(200, 1 * MILLIS, 3 * MILLIS, 4 * MILLIS, 10 * MILLIS, 30 * MILLIS, 35 * MILLIS);
+        a.record(503, 1 * MILLIS, 3 * MILLIS, 4 * MILLIS, 10 * MILLIS, 30 * MILLIS, 35 * MILLIS);
+        a.record(0, 1 * MILLIS, 0, 0, 0, 0, 35 * MILLIS);
+        assertEquals(stats.getRequestCounts().get("a.example.com:80"), (Long) 3L);
+        assertEquals(stats.getRequestCounts().get("b.example.com:443"), (Long) 0L);
+        assertEquals(stats.getServerErrorCounts().get("a.example.com:80"), (Long) 1L);
+        assertEquals(stats.getFailedCounts().get("a.example.com:80"), (Long) 1L);
+        assertEquals(stats.getStatusClassCounts("a.example.com:80").get("2xx"), (Long) 1L);
+        assertEquals(a.getTotalTime().getCount(), 3);
+        assertEquals(a.getTimeToFirstByte().getCount(), 2);
+        assertEquals(stats.getTotalTimeP99().get("a.example.com:80"), 34.0, 34.0 * 0.2);
+        assertEquals(stats.getPhaseTimes("a.example.com:80").get("timeToFirstByte.p50"), 20.0, 20.0 * 0.2);
+        assertEquals(stats.getPhaseTimes("a.example.com:80").get("total.p99"), 34.0, 34.0 * 0.2);
+        assertEquals(stats.getPhaseTimes("unknown:80").size(), 0);
+    }
+}
@@ -0,0 +1,83 @@
+package io.airlift.http.client;
+
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.Request.Builder.preparePut;
+import static io.airlift.http.client.StaticBodyGenerator.createStaticBodyGenerator;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestRetryPolicy
+{
+    private static final URI EXAMPLE = URI.create("http://example.com/");
+
+    @Test
+    public void testCanRetry()
+    {
+        RetryPolicy policy = new RetryPolicy(3, new Duration(10, MILLISECONDS), new Duration(100, MILLISECONDS));
+        assertTrue(policy.isEnabled());
+        assertTrue(policy.canRetry(prepareGet().setUri(EXAMPLE).build()));
+        assertTrue(policy.canRetry(preparePut().setUri(EXAMPLE).setBodyGenerator(createStaticBodyGenerator(new byte[1])).build()));
+        assertFalse(policy.canRetry(preparePost().setUri(EXAMPLE).build()));
+        assertFalse(policy.canRetry(preparePut().setUri(EXAMPLE).setBodyGenerator(new BodyGenerator()
+        {
+            @Override
+            public void write(OutputStream out)
+            {
+            }
+        }).build()));
+    }
+
+    @Test
+    public void testRetriableFailures()
+    {
+        RetryPolicy policy = RetryPolicy.noRetries();
+        assertFalse(policy.isEnabled());
+        assertTrue(policy.isRetriable(new IOException()));
+        assertTrue(policy.isRetriable(new TimeoutException()));
+        assertFalse(policy.isRetriable(new ResponseTooLargeException()));
+        assertFalse(policy.isRetriable(new IllegalStateException()));
+        assertTrue(policy.isRetriable(503));
+        assertFalse(policy.isRetriable(500));
+        assertFalse(policy.isRetriable(200));
+    }
+
+    @Test
+    public void testBackoff()
+    {
+        RetryPolicy policy = new RetryPolicy(10, new Duration(10, MILLISECONDS), new Duration(100, MILLISECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoffNanos(1) <= MILLISECONDS.toNanos(10));
+            assertTrue(policy.getBackoffNanos(2) <= MILLISECONDS.toNanos(20));
+            assertTrue(policy.getBackoffNanos(9) <= MILLISECONDS.toNanos(100));
+            assertTrue(policy.getBackoffNanos(9) >= 0);
+        }
+        assertEquals(RetryPolicy.noRetries().getBackoffNanos(5), 0);
+    }
+
+    @Test
+    public void testRetryAfter()
+    {
+        RetryPolicy policy = new RetryPolicy(3, new Duration(10, MILLISECONDS), new Duration(5, SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoffNanos(1, null) <= MILLISECONDS.toNanos(10));
+            assertTrue(policy.getBackoffNanos(1, "bogus") <= MILLISECONDS.toNanos(10));
+            assertTrue(policy.getBackoffNanos(1, "Fri, 31 Dec 1999 23:59:59 GMT") <= MILLISECONDS.toNanos(10));
+            assertEquals(policy.getBackoffNanos(1, "2"), SECONDS.toNanos(2));
+            assertEquals(policy.getBackoffNanos(1, " 5 "), SECONDS.toNanos(5));
+        }
+        // the server asks for a longer wait than the client will back off
+        assertEquals(policy.getBackoffNanos(1, "6"), -1);
+    }
+}
@@ -0,0 +1,105 @@
+package io.airlift.http.client;
+
+import com.google.common.collect.ImmutableListMultimap;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.http.client.HttpStatus.OK;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.SmileOrJsonResponseHandler.createSmileOrJsonResponseHandler;
+import static io.airlift.http.client.SmileSupport.ACCEPT_SMILE_OR_JSON;
+import static io.airlift.http.client.SmileSupport.SMILE;
+import static io.airlift.http.client.TestFullJsonResponseHandler.User;
+import static io.airlift.http.client.testing.TestingResponse.contentType;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestSmileOrJsonResponseHandler
+{
+    private static final URI SERVICE_URI = URI.create("http://example.com:8080/v1/user");
+
+    private JsonCodec<User> codec;
+    private SmileSupport smileSupport;
+    private SmileOrJsonResponseHandler<User> handler;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        codec = JsonCodec.jsonCodec(User.class);
+        smileSupport = new SmileSupport();
+        handler = createSmileOrJsonResponseHandler(codec, smileSupport);
+    }
+
+    @Test
+    public void testJsonResponse()
+    {
+        User user = handler.handle(prepareGet().setUri(SERVICE_URI).build(), mockResponse(OK, JSON_UTF_8, codec.toJson(new User("Joe", 25))));
+        assertEquals(user.getName(), "Joe");
+        assertEquals(user.getAge(), 25);
+        assertFalse(smileSupport.isSmileSupported(SERVICE_URI));
+    }
+
+    @Test
+    public void testSmileResponse()
+    {
+        byte[] smile = codec.toJsonBytes(SmileSupport.getSmileFactory(), new User("Joe", 25));
+        User user = handler.handle(prepareGet().setUri(SERVICE_URI).build(), new TestingResponse(OK, contentType(SMILE), smile));
+        assertEquals(user.getName(), "Joe");
+        assertEquals(user.getAge(), 25);
+        assertTrue(smileSupport.isSmileSupported(SERVICE_URI));
+        assertTrue(smileSupport.isSmileSupported(SERVICE_URI.resolve("/v1/other")));
+        assertFalse(smileSupport.isSmileSupported(URI.create("http://example.com/")));
+
+        // a later JSON response means the destination no longer supports Smile
+        handler.handle(prepareGet().setUri(SERVICE_URI).build(), mockResponse(OK, JSON_UTF_8, codec.toJson(new User("Joe", 25))));
+        assertFalse(smileSupport.isSmileSupported(SERVICE_URI));
+    }
+
+    @Test
+    public void testRequestBodyFollowsDestinationSupport()
+    {
+        User user = new User("Joe", 25);
+        Request request = smileSupport.prepareRequest(preparePost(), SERVICE_URI, codec, user).build();
+        assertEquals(request.getUri(), SERVICE_URI);
+        assertEquals(request.getHeader(ACCEPT), ACCEPT_SMILE_OR_JSON);
+        assertEquals(request.getHeader(CONTENT_TYPE), "application/json");
+        assertTrue(request.getBodyGenerator() instanceof JsonBodyGenerator);
+
+        byte[] smile = codec.toJsonBytes(SmileSupport.getSmileFactory(), user);
+        handler.handle(request, new TestingResponse(OK, contentType(SMILE), smile));
+
+        request = smileSupport.prepareRequest(preparePost(), SERVICE_URI, codec, user).build();
+        assertEquals(request.getHeader(CONTENT_TYPE), "application/x-jackson-smile");
+        assertTrue(request.getBodyGenerator() instanceof SmileBodyGenerator);
+        assertEquals(((StaticBodyGenerator) request.getBodyGenerator()).getBody(), smile);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSmile()
+    {
+        handler.handle(null, new TestingResponse(OK, contentType(SMILE), "{\"name\": \"Joe\"}".getBytes()));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Expected application/x-jackson-smile or application/json response from server but got text/plain; charset=utf-8")
+    public void testUnexpectedContentType()
+    {
+        handler.handle(null, mockResponse(OK, PLAIN_TEXT_UTF_8, "hello"));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Content-Type is not set for response")
+    public void testMissingContentType()
+    {
+        handler.handle(null, new TestingResponse(OK, ImmutableListMultimap.<String, String>of(), new byte[0]));
+    }
+}
@@ -0,0 +1,43 @@
+package io.airlift.http.client;
+
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+
+public class TestStatusClassStats
+{
+    @Test
+    public void testRecord()
+    {
+        StatusClassStats stats = new StatusClassStats();
+        stats.record(100, MILLISECONDS.toNanos(1));
+        stats.record(200, MILLISECONDS.toNanos(10));
+        stats.record(204, MILLISECONDS.toNanos(20));
+        stats.record(304, MILLISECONDS.toNanos(1));
+        stats.record(404, MILLISECONDS.toNanos(1));
+        stats.record(503, MILLISECONDS.toNanos(100));
+        stats.record(0, MILLISECONDS.toNanos(1000));
+        stats.record(999, MILLISECONDS.toNanos(1000));
+
+        assertEquals(stats.getInformational(), 1);
+        assertEquals(stats.getSuccess(), 2);
+        assertEquals(stats.getRedirection(), 1);
+        assertEquals(stats.getClientError(), 1);
+        assertEquals(stats.getServerError(), 1);
+        assertEquals(stats.getFailed(), 2);
+        assertEquals(stats.getCounts().get("2xx"), (Long) 2L);
+
+        assertEquals(stats.getAverageTimes().get("2xx"), 15.0, 0.001);
+        assertEquals(stats.getAverageTimes().get("5xx"), 100.0, 0.001);
+        assertEquals(stats.getAverageTimes().get("failed"), 1000.0, 0.001);
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        StatusClassStats stats = new StatusClassStats();
+        assertEquals(stats.getAverageTimes().get("2xx"), 0.0);
+        assertEquals(stats.getCounts().get("failed"), (Long) 0L);
+    }
+}
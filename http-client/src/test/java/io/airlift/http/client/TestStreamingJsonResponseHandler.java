@@ -0,0 +1,109 @@
+package io.airlift.http.client;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableListMultimap;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.http.client.HttpStatus.INTERNAL_SERVER_ERROR;
+import static io.airlift.http.client.HttpStatus.OK;
+import static io.airlift.http.client.StreamingJsonResponseHandler.createStreamingJsonResponseHandler;
+import static io.airlift.http.client.TestFullJsonResponseHandler.User;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestStreamingJsonResponseHandler
+{
+    private JsonCodec<User> codec;
+    private StreamingJsonResponseHandler<User> handler;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        codec = JsonCodec.jsonCodec(User.class);
+        handler = createStreamingJsonResponseHandler(codec);
+    }
+
+    @Test
+    public void testValidJson()
+    {
+        User user = new User("Joe", 25);
+        User response = handler.handle(null, mockResponse(OK, JSON_UTF_8, codec.toJson(user)));
+
+        assertEquals(response.getName(), user.getName());
+        assertEquals(response.getAge(), user.getAge());
+    }
+
+    @Test
+    public void testInvalidJson()
+    {
+        String json = "{\"age\": \"foo\"}";
+        try {
+            handler.handle(null, mockResponse(OK, JSON_UTF_8, json));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(e.getMessage(), String.format("Unable to create %s from JSON response (bytes 0 to %d):%n%s", User.class, json.length(), json));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testInvalidJsonShowsRecentBytes()
+    {
+        String padding = Strings.repeat(" ", 10_000);
+        String json = "{\"name\": \"Joe\"," + padding + "\"age\": \"foo\"}";
+        try {
+            handler.handle(null, mockResponse(OK, JSON_UTF_8, json));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().endsWith("\"age\": \"foo\"}"), e.getMessage());
+            assertFalse(e.getMessage().contains("Joe"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidJsonShowsErrorPosition()
+    {
+        // the parser reads far past the error before it reports it
+        String padding = Strings.repeat("x", 20_000);
+        String json = "{\"age\": \"foo\", \"name\": \"" + padding + "\"}";
+        try {
+            handler.handle(null, mockResponse(OK, JSON_UTF_8, json));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("(bytes 0 to "), e.getMessage());
+            assertTrue(e.getMessage().contains("{\"age\": \"foo\""), e.getMessage());
+            assertTrue(e.getMessage().length() < 1000, e.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Expected application/json response from server but got text/plain; charset=utf-8")
+    public void testNonJsonResponse()
+    {
+        handler.handle(null, mockResponse(OK, PLAIN_TEXT_UTF_8, "hello"));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Content-Type is not set for response")
+    public void testMissingContentType()
+    {
+        handler.handle(null, new TestingResponse(OK, ImmutableListMultimap.<String, String>of(), "hello".getBytes(UTF_8)));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class)
+    public void testJsonErrorResponse()
+    {
+        String json = "{\"error\": true}";
+        handler.handle(null, mockResponse(INTERNAL_SERVER_ERROR, JSON_UTF_8, json));
+    }
+}
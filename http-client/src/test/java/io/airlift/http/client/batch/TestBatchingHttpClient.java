@@ -0,0 +1,218 @@
+package io.airlift.http.client.batch;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.MediaType;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.StaticBodyGenerator;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.json.JsonCodec;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.client.batch.JsonArrayBatchCodec.jsonArrayBatchCodec;
+import static io.airlift.http.client.testing.TestingResponse.contentType;
+import static io.airlift.json.JsonCodec.listJsonCodec;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBatchingHttpClient
+{
+    private static final URI EVENTS_URI = URI.create("http://example.com/events");
+    private static final URI ACKS_URI = URI.create("http://example.com/acks");
+    private static final JsonCodec<List<Integer>> CODEC = listJsonCodec(Integer.class);
+
+    private ExecutorService executor;
+    private Server server;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        server = new Server();
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchIsSentWhenFull()
+            throws Exception
+    {
+        try (BatchingHttpClient<Integer, Integer> client = createClient(3, new Duration(1, HOURS), 100)) {
+            ListenableFuture<Integer> first = client.submit(EVENTS_URI, 1);
+            ListenableFuture<Integer> second = client.submit(EVENTS_URI, 2);
+            assertEquals(server.batches.size(), 0);
+            ListenableFuture<Integer> third = client.submit(EVENTS_URI, 3);
+
+            assertEquals(first.get(1, SECONDS), (Integer) 2);
+            assertEquals(second.get(1, SECONDS), (Integer) 4);
+            assertEquals(third.get(1, SECONDS), (Integer) 6);
+            assertEquals(server.batches, ImmutableList.of(ImmutableList.of(1, 2, 3)));
+            assertEquals(client.getBatchSize().getMax(), 3);
+            assertEquals(client.getPendingItems(), 0);
+        }
+    }
+
+    @Test
+    public void testBatchIsSentAfterDelay()
+            throws Exception
+    {
+        try (BatchingHttpClient<Integer, Integer> client = createClient(100, new Duration(10, MILLISECONDS), 100)) {
+            ListenableFuture<Integer> first = client.submit(EVENTS_URI, 1);
+            ListenableFuture<Integer> second = client.submit(EVENTS_URI, 2);
+
+            assertEquals(first.get(5, SECONDS), (Integer) 2);
+            assertEquals(second.get(5, SECONDS), (Integer) 4);
+            assertEquals(server.batches, ImmutableList.of(ImmutableList.of(1, 2)));
+            assertTrue(client.getBatchDelay().getAllTime().getMax() >= 10);
+        }
+    }
+
+    @Test
+    public void testBatchesArePerUri()
+            throws Exception
+    {
+        try (BatchingHttpClient<Integer, Integer> client = createClient(100, new Duration(1, HOURS), 100)) {
+            ListenableFuture<Integer> event = client.submit(EVENTS_URI, 1);
+            ListenableFuture<Integer> ack = client.submit(ACKS_URI, 2);
+            client.flush();
+
+            assertEquals(event.get(1, SECONDS), (Integer) 2);
+            assertEquals(ack.get(1, SECONDS), (Integer) 4);
+            assertEquals(server.uris.size(), 2);
+            assertTrue(server.uris.contains(EVENTS_URI));
+            assertTrue(server.uris.contains(ACKS_URI));
+        }
+    }
+
+    @Test
+    public void testCallsAreRejectedWhenTooManyArePending()
+            throws Exception
+    {
+        server.blocked = new CountDownLatch(1);
+        try (BatchingHttpClient<Integer, Integer> client = createClient(2, new Duration(1, HOURS), 2)) {
+            ListenableFuture<Integer> first = client.submit(EVENTS_URI, 1);
+            ListenableFuture<Integer> second = client.submit(EVENTS_URI, 2);
+            assertEquals(client.getPendingItems(), 2);
+
+            assertFailure(client.submit(EVENTS_URI, 3), RejectedExecutionException.class);
+            assertEquals(client.getRejected().getTotalCount(), 1);
+
+            server.blocked.countDown();
+            assertEquals(first.get(1, SECONDS), (Integer) 2);
+            assertEquals(second.get(1, SECONDS), (Integer) 4);
+            assertEquals(client.getPendingItems(), 0);
+
+            ListenableFuture<Integer> fourth = client.submit(EVENTS_URI, 4);
+            client.flush();
+            assertEquals(fourth.get(1, SECONDS), (Integer) 8);
+        }
+    }
+
+    @Test
+    public void testMissingResultsFailEveryCall()
+            throws Exception
+    {
+        server.dropLastResult = true;
+        try (BatchingHttpClient<Integer, Integer> client = createClient(2, new Duration(1, HOURS), 100)) {
+            ListenableFuture<Integer> first = client.submit(EVENTS_URI, 1);
+            ListenableFuture<Integer> second = client.submit(EVENTS_URI, 2);
+
+            assertFailure(first, IllegalStateException.class);
+            assertFailure(second, IllegalStateException.class);
+            assertEquals(client.getFailedBatches().getTotalCount(), 1);
+            assertEquals(client.getPendingItems(), 0);
+        }
+    }
+
+    @Test
+    public void testCloseSendsBufferedItems()
+            throws Exception
+    {
+        BatchingHttpClient<Integer, Integer> client = createClient(100, new Duration(1, HOURS), 100);
+        ListenableFuture<Integer> first = client.submit(EVENTS_URI, 1);
+        client.close();
+
+        assertEquals(first.get(1, SECONDS), (Integer) 2);
+        assertFailure(client.submit(EVENTS_URI, 2), RejectedExecutionException.class);
+    }
+
+    private BatchingHttpClient<Integer, Integer> createClient(int maxBatchSize, Duration maxDelay, int maxPendingItems)
+    {
+        return new BatchingHttpClient<>(new TestingHttpClient(server, executor), jsonArrayBatchCodec(Integer.class, Integer.class), maxBatchSize, maxDelay, maxPendingItems);
+    }
+
+    private static void assertFailure(ListenableFuture<?> future, Class<? extends Throwable> expected)
+            throws Exception
+    {
+        try {
+            future.get(1, SECONDS);
+            fail("expected exception");
+        }
+        catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()), "unexpected exception: " + e.getCause());
+        }
+    }
+
+    private static class Server
+            implements Function<Request, Response>
+    {
+        private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        private final List<URI> uris = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch blocked;
+        private volatile boolean dropLastResult;
+
+        @Override
+        public Response apply(Request request)
+        {
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+
+            assertEquals(request.getMethod(), "POST");
+            List<Integer> items = CODEC.fromJson(((StaticBodyGenerator) request.getBodyGenerator()).getBody());
+            batches.add(items);
+            uris.add(request.getUri());
+
+            List<Integer> results = new ArrayList<>();
+            for (int item : items) {
+                results.add(item * 2);
+            }
+            if (dropLastResult) {
+                results.remove(results.size() - 1);
+            }
+            return new TestingResponse(HttpStatus.OK, contentType(MediaType.JSON_UTF_8), CODEC.toJsonBytes(results));
+        }
+    }
+}
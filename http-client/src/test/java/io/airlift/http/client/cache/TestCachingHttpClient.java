@@ -0,0 +1,287 @@
+package io.airlift.http.client.cache;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.io.Files;
+import com.google.common.net.HttpHeaders;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.StringResponseHandler.StringResponse;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.testing.FileUtils;
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.DataSize;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestCachingHttpClient
+{
+    private static final URI CONFIG_URI = URI.create("http://example.com/config");
+
+    private TestingTicker ticker;
+    private Server server;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        ticker = new TestingTicker();
+        server = new Server();
+    }
+
+    @Test
+    public void testFreshResponseIsCached()
+            throws Exception
+    {
+        server.cacheControl = "max-age=60";
+        CachingHttpClient client = createClient();
+
+        assertEquals(get(client), "body-1");
+        assertEquals(get(client), "body-1");
+        assertEquals(client.executeAsync(prepareGet().setUri(CONFIG_URI).build(), createStringResponseHandler()).get().getBody(), "body-1");
+        assertEquals(server.requests.size(), 1);
+        assertEquals(client.getHits().getTotalCount(), 2);
+        assertEquals(client.getMisses().getTotalCount(), 1);
+
+        // expires after max-age
+        ticker.increment(61, SECONDS);
+        assertEquals(get(client), "body-2");
+        assertEquals(server.requests.size(), 2);
+    }
+
+    @Test
+    public void testNoStoreAndPrivateAreNotCached()
+    {
+        server.cacheControl = "no-store, max-age=60";
+        CachingHttpClient client = createClient();
+        get(client);
+        get(client);
+        assertEquals(server.requests.size(), 2);
+
+        server.cacheControl = "private, max-age=60";
+        get(client);
+        get(client);
+        assertEquals(server.requests.size(), 4);
+        assertEquals(client.getHits().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testWritesAreNotCached()
+    {
+        server.cacheControl = "max-age=60";
+        CachingHttpClient client = createClient();
+        client.execute(preparePost().setUri(CONFIG_URI).build(), createStringResponseHandler());
+        client.execute(preparePost().setUri(CONFIG_URI).build(), createStringResponseHandler());
+        assertEquals(server.requests.size(), 2);
+        assertEquals(client.getUncacheable().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testMalformedRequestCacheControlIsNotCached()
+    {
+        server.cacheControl = "max-age=60";
+        CachingHttpClient client = createClient();
+        Request request = prepareGet()
+                .setUri(CONFIG_URI)
+                .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=soon")
+                .build();
+        assertEquals(client.execute(request, createStringResponseHandler()).getBody(), "body-1");
+        assertEquals(client.execute(request, createStringResponseHandler()).getBody(), "body-2");
+        assertEquals(server.requests.size(), 2);
+        assertEquals(client.getUncacheable().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testRevalidationWithETag()
+    {
+        server.cacheControl = "no-cache";
+        server.etag = "\"v1\"";
+        CachingHttpClient client = createClient();
+
+        assertEquals(get(client), "body-1");
+        assertNull(server.requests.get(0).getHeader(HttpHeaders.IF_NONE_MATCH));
+
+        assertEquals(get(client), "body-1");
+        assertEquals(server.requests.size(), 2);
+        assertEquals(server.requests.get(1).getHeader(HttpHeaders.IF_NONE_MATCH), "\"v1\"");
+        assertEquals(client.getRevalidations().getTotalCount(), 1);
+        assertEquals(client.getNotModified().getTotalCount(), 1);
+
+        // changed resource replaces the entry
+        server.etag = "\"v2\"";
+        assertEquals(get(client), "body-3");
+        assertEquals(get(client), "body-3");
+        assertEquals(client.getNotModified().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testStaleWhileRevalidate()
+    {
+        server.cacheControl = "max-age=10, stale-while-revalidate=60";
+        CachingHttpClient client = createClient();
+
+        assertEquals(get(client), "body-1");
+        ticker.increment(20, SECONDS);
+
+        // stale response is served while the entry is refreshed in the background
+        assertEquals(get(client), "body-1");
+        assertEquals(server.requests.size(), 2);
+        assertEquals(client.getStaleHits().getTotalCount(), 1);
+
+        assertEquals(get(client), "body-2");
+        assertEquals(server.requests.size(), 2);
+
+        // too stale to serve
+        ticker.increment(100, SECONDS);
+        assertEquals(get(client), "body-3");
+    }
+
+    @Test
+    public void testVary()
+    {
+        server.cacheControl = "max-age=60";
+        server.vary = "Accept";
+        CachingHttpClient client = createClient();
+
+        client.execute(prepareGet().setUri(CONFIG_URI).setHeader("Accept", "application/json").build(), createStringResponseHandler());
+        client.execute(prepareGet().setUri(CONFIG_URI).setHeader("Accept", "application/json").build(), createStringResponseHandler());
+        assertEquals(server.requests.size(), 1);
+
+        client.execute(prepareGet().setUri(CONFIG_URI).setHeader("Accept", "text/plain").build(), createStringResponseHandler());
+        assertEquals(server.requests.size(), 2);
+    }
+
+    @Test
+    public void testSpillToDisk()
+            throws Exception
+    {
+        File directory = Files.createTempDir();
+        try {
+            server.cacheControl = "max-age=60";
+            // every entry is larger than the memory budget, so it goes straight to disk
+            ResponseCache cache = new ResponseCache(new DataSize(100, BYTE), directory, new DataSize(1, MEGABYTE), sameThreadExecutor());
+            CachingHttpClient client = new CachingHttpClient(new TestingHttpClient(server), cache, ticker);
+
+            assertEquals(get(client), "body-1");
+            assertEquals(cache.getDiskEntryCount(), 1);
+
+            assertEquals(get(client), "body-1");
+            assertEquals(server.requests.size(), 1);
+            assertEquals(client.getHits().getTotalCount(), 1);
+
+            client.close();
+            assertEquals(cache.getDiskEntryCount(), 0);
+            assertEquals(directory.list().length, 0);
+        }
+        finally {
+            FileUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testSpillIsWrittenInBackground()
+            throws Exception
+    {
+        File directory = Files.createTempDir();
+        try {
+            server.cacheControl = "max-age=60";
+            final List<Runnable> spills = new ArrayList<>();
+            ResponseCache cache = new ResponseCache(new DataSize(100, BYTE), directory, new DataSize(1, MEGABYTE), new Executor()
+            {
+                @Override
+                public void execute(Runnable command)
+                {
+                    spills.add(command);
+                }
+            });
+            CachingHttpClient client = new CachingHttpClient(new TestingHttpClient(server), cache, ticker);
+
+            // the evicted response is served from memory until the spill runs
+            assertEquals(get(client), "body-1");
+            assertEquals(spills.size(), 1);
+            assertEquals(cache.getSpillingEntryCount(), 1);
+            assertEquals(directory.list().length, 0);
+
+            // reading the response back evicts it again, and it is spilled once
+            assertEquals(get(client), "body-1");
+            assertEquals(server.requests.size(), 1);
+            assertEquals(spills.size(), 2);
+            spills.remove(0).run();
+            spills.remove(0).run();
+            assertEquals(cache.getSpillingEntryCount(), 0);
+            assertEquals(cache.getDiskEntryCount(), 1);
+            assertEquals(directory.list().length, 1);
+
+            // clearing the cache cancels a pending spill
+            assertEquals(get(client), "body-1");
+            assertEquals(cache.getDiskEntryCount(), 0);
+            assertEquals(spills.size(), 1);
+            client.close();
+            spills.remove(0).run();
+            assertEquals(cache.getSpillingEntryCount(), 0);
+            assertEquals(directory.list().length, 0);
+        }
+        finally {
+            FileUtils.deleteRecursively(directory);
+        }
+    }
+
+    private CachingHttpClient createClient()
+    {
+        return new CachingHttpClient(new TestingHttpClient(server), new ResponseCache(new DataSize(1, MEGABYTE)), ticker);
+    }
+
+    private static String get(CachingHttpClient client)
+    {
+        StringResponse response = client.execute(prepareGet().setUri(CONFIG_URI).build(), createStringResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        return response.getBody();
+    }
+
+    private static class Server
+            implements Function<Request, Response>
+    {
+        private final List<Request> requests = new ArrayList<>();
+        private String cacheControl;
+        private String etag;
+        private String vary;
+
+        @Override
+        public Response apply(Request request)
+        {
+            requests.add(request);
+            ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+            if (cacheControl != null) {
+                headers.put(HttpHeaders.CACHE_CONTROL, cacheControl);
+            }
+            if (etag != null) {
+                headers.put(HttpHeaders.ETAG, etag);
+                if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                    return new TestingResponse(HttpStatus.NOT_MODIFIED, headers.build(), new byte[0]);
+                }
+            }
+            if (vary != null) {
+                headers.put(HttpHeaders.VARY, vary);
+            }
+            return new TestingResponse(HttpStatus.OK, headers.build(), ("body-" + requests.size()).getBytes(UTF_8));
+        }
+    }
+}
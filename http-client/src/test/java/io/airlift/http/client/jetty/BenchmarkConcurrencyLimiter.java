@@ -0,0 +1,175 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.ConcurrencyLimitExceededException;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares the goodput of a client with and without the adaptive concurrency
+ * limiter against a server that can process only a few requests at a time.
+ * Requests beyond the server capacity queue, and requests that queue longer
+ * than the server deadline are answered with 503, so an unlimited client
+ * spends most of its requests on responses that are useless.
+ */
+public class BenchmarkConcurrencyLimiter
+{
+    private static final int SERVER_CAPACITY = 8;
+    private static final long SERVICE_TIME_MILLIS = 5;
+    private static final long SERVER_DEADLINE_MILLIS = 100;
+    private static final int CLIENT_THREADS = 256;
+    private static final Duration WARMUP_TIME = new Duration(3, SECONDS);
+    private static final Duration BENCHMARK_TIME = new Duration(10, SECONDS);
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        Server server = createSaturatingServer();
+        server.start();
+        try {
+            URI uri = URI.create("http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+            run("unlimited", new HttpClientConfig(), uri);
+            run("adaptive limit", new HttpClientConfig().setConcurrencyLimitEnabled(true).setConcurrencyLimitInitial(SERVER_CAPACITY), uri);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static void run(String name, HttpClientConfig config, URI uri)
+            throws Exception
+    {
+        config.setMaxConnectionsPerServer(CLIENT_THREADS)
+                .setReadTimeout(new Duration(30, SECONDS));
+
+        try (JettyIoPool pool = new JettyIoPool("benchmark", new JettyIoPoolConfig());
+                JettyHttpClient client = new JettyHttpClient(config, pool, ImmutableList.<HttpRequestFilter>of())) {
+            runClients(client, uri, WARMUP_TIME);
+            Results results = runClients(client, uri, BENCHMARK_TIME);
+
+            System.out.println(String.format("%-15s goodput = %6.0f/s, late (503) = %6.0f/s, rejected by client = %8.0f/s, final limit = %s",
+                    name,
+                    results.ok.get() / BENCHMARK_TIME.getValue(SECONDS),
+                    results.late.get() / BENCHMARK_TIME.getValue(SECONDS),
+                    results.rejected.get() / BENCHMARK_TIME.getValue(SECONDS),
+                    client.getConcurrencyLimiters().getLimits()));
+        }
+    }
+
+    private static Results runClients(final JettyHttpClient client, URI uri, Duration duration)
+            throws InterruptedException
+    {
+        final Request request = prepareGet().setUri(uri).build();
+        final Results results = new Results();
+        final long end = System.nanoTime() + duration.roundTo(TimeUnit.NANOSECONDS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CLIENT_THREADS; i++) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while (System.nanoTime() < end) {
+                        try {
+                            StatusResponse response = client.execute(request, createStatusResponseHandler());
+                            if (response.getStatusCode() == 200) {
+                                results.ok.incrementAndGet();
+                            }
+                            else {
+                                results.late.incrementAndGet();
+                            }
+                        }
+                        catch (ConcurrencyLimitExceededException e) {
+                            // a real caller would fall back or fail the request; give the limiter a moment
+                            results.rejected.incrementAndGet();
+                            try {
+                                MILLISECONDS.sleep(1);
+                            }
+                            catch (InterruptedException interrupted) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    private static Server createSaturatingServer()
+    {
+        QueuedThreadPool threadPool = new QueuedThreadPool(CLIENT_THREADS * 2);
+        Server server = new Server(threadPool);
+
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        final Semaphore workers = new Semaphore(SERVER_CAPACITY, true);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                baseRequest.setHandled(true);
+                long start = System.nanoTime();
+                try {
+                    workers.acquire();
+                    try {
+                        MILLISECONDS.sleep(SERVICE_TIME_MILLIS);
+                    }
+                    finally {
+                        workers.release();
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                if (System.nanoTime() - start > MILLISECONDS.toNanos(SERVER_DEADLINE_MILLIS)) {
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                }
+                else {
+                    response.setStatus(HttpServletResponse.SC_OK);
+                }
+            }
+        });
+        return server;
+    }
+
+    private static class Results
+    {
+        private final AtomicLong ok = new AtomicLong();
+        private final AtomicLong late = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+    }
+}
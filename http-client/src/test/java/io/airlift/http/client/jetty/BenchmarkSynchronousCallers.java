@@ -0,0 +1,182 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.StringResponseHandler.StringResponse;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.concurrent.Threads.isVirtualThreadSupported;
+import static io.airlift.concurrent.Threads.virtualOrDaemonThreadsNamed;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Runs 10,000 concurrent synchronous callers against a local server that
+ * takes a few milliseconds per request. The callers are virtual threads when
+ * the JVM supports them and platform threads otherwise. Compares the default
+ * streaming execute path with the buffered path, with and without response
+ * handler callbacks on virtual threads, and reports throughput, latency and
+ * the peak number of platform threads.
+ */
+public class BenchmarkSynchronousCallers
+{
+    private static final int CALLERS = 10_000;
+    private static final int CONNECTIONS = 512;
+    private static final long SERVICE_TIME_MILLIS = 5;
+    private static final String BODY = "hello world";
+    private static final Duration WARMUP_TIME = new Duration(5, SECONDS);
+    private static final Duration BENCHMARK_TIME = new Duration(15, SECONDS);
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        System.out.println("callers are " + (isVirtualThreadSupported() ? "virtual threads" : "platform threads"));
+
+        Server server = createServer();
+        server.start();
+        try {
+            URI uri = URI.create("http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+            run("streaming", new HttpClientConfig(), new JettyIoPoolConfig(), uri);
+            run("buffered", new HttpClientConfig().setBufferedExecuteEnabled(true), new JettyIoPoolConfig(), uri);
+            run("buffered + vt callbacks", new HttpClientConfig().setBufferedExecuteEnabled(true), new JettyIoPoolConfig().setVirtualThreadCallbacksEnabled(true), uri);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static void run(String name, HttpClientConfig config, JettyIoPoolConfig poolConfig, URI uri)
+            throws Exception
+    {
+        config.setMaxConnectionsPerServer(CONNECTIONS)
+                .setMaxRequestsQueuedPerDestination(CALLERS * 2)
+                .setReadTimeout(new Duration(1, TimeUnit.MINUTES));
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        try (JettyIoPool pool = new JettyIoPool("benchmark", poolConfig);
+                JettyHttpClient client = new JettyHttpClient(config, pool, ImmutableList.<HttpRequestFilter>of())) {
+            runCallers(client, uri, WARMUP_TIME);
+            threadMXBean.resetPeakThreadCount();
+            Results results = runCallers(client, uri, BENCHMARK_TIME);
+
+            long completed = results.completed.get();
+            System.out.println(String.format("%-25s throughput = %8.0f/s, mean latency = %6.1fms, max latency = %7.1fms, failed = %6d, peak platform threads = %5d",
+                    name,
+                    completed / BENCHMARK_TIME.getValue(SECONDS),
+                    completed == 0 ? 0.0 : results.totalNanos.get() / 1.0e6 / completed,
+                    results.maxNanos.get() / 1.0e6,
+                    results.failed.get(),
+                    threadMXBean.getPeakThreadCount()));
+        }
+    }
+
+    private static Results runCallers(final JettyHttpClient client, URI uri, Duration duration)
+            throws InterruptedException
+    {
+        final Request request = prepareGet().setUri(uri).build();
+        final Results results = new Results();
+        final long end = System.nanoTime() + duration.roundTo(TimeUnit.NANOSECONDS);
+
+        ThreadFactory threadFactory = virtualOrDaemonThreadsNamed("caller-");
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Thread thread = threadFactory.newThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        try {
+                            StringResponse response = client.execute(request, createStringResponseHandler());
+                            if (response.getStatusCode() != 200 || !response.getBody().equals(BODY)) {
+                                results.failed.incrementAndGet();
+                                continue;
+                            }
+                        }
+                        catch (RuntimeException e) {
+                            results.failed.incrementAndGet();
+                            continue;
+                        }
+                        results.record(System.nanoTime() - start);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    private static Server createServer()
+    {
+        QueuedThreadPool threadPool = new QueuedThreadPool(CONNECTIONS * 2);
+        Server server = new Server(threadPool);
+
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        connector.setAcceptQueueSize(CALLERS);
+        server.addConnector(connector);
+
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException
+            {
+                baseRequest.setHandled(true);
+                try {
+                    MILLISECONDS.sleep(SERVICE_TIME_MILLIS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().write(BODY);
+            }
+        });
+        return server;
+    }
+
+    private static class Results
+    {
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos)
+        {
+            completed.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.AbstractHttpClientTest;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.TestingRequestFilter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+
+import static io.airlift.testing.Closeables.closeQuietly;
+
+public class TestBufferedJettyHttpClient
+        extends AbstractHttpClientTest
+{
+    private JettyHttpClient httpClient;
+    private JettyIoPool jettyIoPool;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        jettyIoPool = new JettyIoPool("test-shared", new JettyIoPoolConfig().setVirtualThreadCallbacksEnabled(true));
+        httpClient = new JettyHttpClient(new HttpClientConfig().setBufferedExecuteEnabled(true), jettyIoPool, ImmutableList.<HttpRequestFilter>of(new TestingRequestFilter()));
+    }
+
+    @Override
+    @AfterMethod
+    public void tearDown()
+            throws Exception
+    {
+        closeQuietly(httpClient);
+        closeQuietly(jettyIoPool);
+    }
+
+    @Override
+    public <T, E extends Exception> T executeRequest(Request request, ResponseHandler<T, E> responseHandler)
+            throws Exception
+    {
+        return httpClient.execute(request, responseHandler);
+    }
+
+    @Override
+    public <T, E extends Exception> T executeRequest(HttpClientConfig config, Request request, ResponseHandler<T, E> responseHandler)
+            throws Exception
+    {
+        try (
+                JettyIoPool jettyIoPool = new JettyIoPool("test-private", new JettyIoPoolConfig().setVirtualThreadCallbacksEnabled(true));
+                JettyHttpClient client = new JettyHttpClient(config.setBufferedExecuteEnabled(true), jettyIoPool, ImmutableList.<HttpRequestFilter>of(new TestingRequestFilter()))
+        ) {
+            return client.execute(request, responseHandler);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.airlift.testing.Closeables.closeQuietly;
+import static java.util.Collections.newSetFromMap;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestConnectionWarmer
+{
+    private final AtomicInteger probes = new AtomicInteger();
+    private final Set<Integer> clientPorts = newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private Server server;
+    private URI uri;
+    private JettyIoPool jettyIoPool;
+
+    @BeforeMethod
+    public void setUp()
+            throws Exception
+    {
+        probes.set(0);
+        clientPorts.clear();
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                if (request.getMethod().equals("HEAD")) {
+                    probes.incrementAndGet();
+                }
+                clientPorts.add(request.getRemotePort());
+                baseRequest.setHandled(true);
+                response.setStatus(204);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+        jettyIoPool = new JettyIoPool("test-warmer", new JettyIoPoolConfig());
+    }
+
+    @AfterMethod
+    public void tearDown()
+            throws Exception
+    {
+        closeQuietly(jettyIoPool);
+        server.stop();
+    }
+
+    @Test
+    public void testConnectionsAreWarmedAndReused()
+            throws Exception
+    {
+        HttpClientConfig config = new HttpClientConfig()
+                .setWarmUpMinConnections(3)
+                .setWarmUpProbePath("/status")
+                .setWarmUpDestinations(uri.toString())
+                .setWarmUpInterval(new Duration(1, SECONDS));
+
+        try (JettyHttpClient client = new JettyHttpClient(config, jettyIoPool, ImmutableList.<HttpRequestFilter>of())) {
+            waitFor(client, 3);
+            assertEquals(client.getConnectionStats().getCreated().getTotalCount(), 3);
+            assertEquals(clientPorts.size(), 3);
+
+            // requests use the warm connections
+            for (int i = 0; i < 10; i++) {
+                assertEquals(client.execute(prepareGet().setUri(uri).build(), createStatusResponseHandler()).getStatusCode(), 204);
+            }
+            assertEquals(client.getConnectionStats().getCreated().getTotalCount(), 3);
+            assertEquals(clientPorts.size(), 3);
+            assertEquals(client.getConnectionStats().getRequests().getTotalCount(), 10);
+            assertTrue(client.getConnectionStats().getProbes().getTotalCount() >= 3);
+            assertTrue(client.getConnectionStats().getReused() >= 10);
+
+            // the connections are kept alive by the periodic probes
+            waitFor(client, 6);
+            assertEquals(client.getConnectionStats().getCreated().getTotalCount(), 3);
+        }
+    }
+
+    @Test
+    public void testAddWarmDestinations()
+            throws Exception
+    {
+        HttpClientConfig config = new HttpClientConfig()
+                .setWarmUpMinConnections(2)
+                .setWarmUpProbePath("/status");
+
+        try (JettyHttpClient client = new JettyHttpClient(config, jettyIoPool, ImmutableList.<HttpRequestFilter>of())) {
+            assertEquals(client.getConnectionWarmer().getDestinationCount(), 0);
+            client.addWarmDestinations(new Supplier<Iterable<URI>>()
+            {
+                @Override
+                public Iterable<URI> get()
+                {
+                    return ImmutableList.of(uri.resolve("/foo"), uri.resolve("/bar"));
+                }
+            });
+            assertEquals(client.getConnectionWarmer().getDestinationCount(), 1);
+            waitFor(client, 2);
+            assertEquals(client.getConnectionStats().getCreated().getTotalCount(), 2);
+        }
+    }
+
+    @Test
+    public void testStopCancelsNextRun()
+            throws Exception
+    {
+        TrackingScheduler scheduler = new TrackingScheduler();
+        HttpClient httpClient = new HttpClient();
+        httpClient.setScheduler(scheduler);
+        httpClient.start();
+        try {
+            ConnectionWarmer warmer = new ConnectionWarmer(httpClient, 1, new Duration(1, HOURS), "/status", new ConnectionStats());
+            warmer.start();
+            assertEquals(scheduler.getScheduled(), 1);
+            assertFalse(scheduler.isCancelled());
+
+            warmer.stop();
+            assertTrue(scheduler.isCancelled());
+        }
+        finally {
+            httpClient.stop();
+        }
+    }
+
+    private void waitFor(JettyHttpClient client, int expectedProbes)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (probes.get() < expectedProbes || client.getConnectionStats().getOpen() < client.getConnectionWarmer().getMinConnections()) {
+            if (System.nanoTime() > deadline) {
+                fail("timed out waiting for " + expectedProbes + " probes");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class TrackingScheduler
+            extends ScheduledExecutorScheduler
+    {
+        private final AtomicInteger scheduled = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        @Override
+        public Task schedule(Runnable task, long delay, TimeUnit unit)
+        {
+            scheduled.incrementAndGet();
+            final Task delegate = super.schedule(task, delay, unit);
+            return new Task()
+            {
+                @Override
+                public boolean cancel()
+                {
+                    cancelled = true;
+                    return delegate.cancel();
+                }
+            };
+        }
+
+        public int getScheduled()
+        {
+            return scheduled.get();
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+}
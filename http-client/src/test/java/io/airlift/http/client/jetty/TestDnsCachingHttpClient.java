@@ -0,0 +1,93 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.airlift.http.client.CachingDnsResolver;
+import io.airlift.http.client.DnsResolver;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+
+public class TestDnsCachingHttpClient
+{
+    private Server server;
+    private int port;
+    private HttpClient httpClient;
+
+    @BeforeMethod
+    public void setUp()
+            throws Exception
+    {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                baseRequest.setHandled(true);
+                response.setStatus(204);
+            }
+        });
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @AfterMethod
+    public void tearDown()
+            throws Exception
+    {
+        if (httpClient != null) {
+            httpClient.stop();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testConnectFallsThroughToNextAddress()
+            throws Exception
+    {
+        // the server only listens on 127.0.0.1, so the first address refuses the connection
+        final List<InetAddress> addresses = ImmutableList.of(InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.1"));
+        DnsResolver dnsResolver = new DnsResolver()
+        {
+            @Override
+            public List<InetAddress> resolve(String host)
+                    throws UnknownHostException
+            {
+                return addresses;
+            }
+        };
+        CachingDnsResolver resolver = new CachingDnsResolver(dnsResolver, new Duration(1, SECONDS), new Duration(1, SECONDS), 10, MoreExecutors.sameThreadExecutor());
+
+        httpClient = new DnsCachingHttpClient(new HttpClientTransportOverHTTP(), new SslContextFactory(), resolver);
+        httpClient.setConnectTimeout(SECONDS.toMillis(5));
+        httpClient.start();
+
+        ContentResponse response = httpClient.newRequest("http://example.invalid:" + port + "/")
+                .timeout(10, SECONDS)
+                .send();
+        assertEquals(response.getStatus(), 204);
+    }
+}
@@ -0,0 +1,246 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.airlift.testing.Closeables.closeQuietly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestJettyHttpClientRetries
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int failures;
+    private volatile boolean disconnect;
+    private volatile String retryAfter;
+    private Server server;
+    private URI uri;
+    private JettyIoPool jettyIoPool;
+
+    @BeforeMethod
+    public void setUp()
+            throws Exception
+    {
+        requests.set(0);
+        failures = 0;
+        disconnect = false;
+        retryAfter = null;
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException
+            {
+                baseRequest.setHandled(true);
+                if (requests.incrementAndGet() > failures) {
+                    response.setStatus(200);
+                    return;
+                }
+                if (disconnect) {
+                    baseRequest.getHttpChannel().getEndPoint().close();
+                    return;
+                }
+                if (retryAfter != null) {
+                    response.setHeader("Retry-After", retryAfter);
+                }
+                response.setStatus(503);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+        jettyIoPool = new JettyIoPool("test-retries", new JettyIoPoolConfig());
+    }
+
+    @AfterMethod
+    public void tearDown()
+            throws Exception
+    {
+        closeQuietly(jettyIoPool);
+        server.stop();
+    }
+
+    @DataProvider(name = "async")
+    public Object[][] async()
+    {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @Test(dataProvider = "async")
+    public void testServiceUnavailableIsRetried(boolean async)
+            throws Exception
+    {
+        failures = 2;
+        try (JettyHttpClient client = createClient(3)) {
+            assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 200);
+            assertEquals(requests.get(), 3);
+            assertEquals(client.getRetries().getTotalCount(), 2);
+            assertEquals(client.getRetriesExhausted().getTotalCount(), 0);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testDisconnectIsRetried(boolean async)
+            throws Exception
+    {
+        failures = 1;
+        disconnect = true;
+        try (JettyHttpClient client = createClient(3)) {
+            assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 200);
+            assertEquals(requests.get(), 2);
+            assertEquals(client.getRetries().getTotalCount(), 1);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testConnectFailureIsRetried(boolean async)
+            throws Exception
+    {
+        URI unusedUri;
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(0));
+            unusedUri = URI.create("http://127.0.0.1:" + socket.getLocalPort() + "/");
+        }
+
+        try (JettyHttpClient client = createClient(3)) {
+            try {
+                execute(client, prepareGet().setUri(unusedUri).build(), async);
+                fail("expected exception");
+            }
+            catch (RuntimeException expected) {
+            }
+            assertEquals(client.getRetries().getTotalCount(), 2);
+            assertEquals(client.getRetriesExhausted().getTotalCount(), 1);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testAttemptsAreExhausted(boolean async)
+            throws Exception
+    {
+        failures = Integer.MAX_VALUE;
+        try (JettyHttpClient client = createClient(3)) {
+            assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 503);
+            assertEquals(requests.get(), 3);
+            assertEquals(client.getRetries().getTotalCount(), 2);
+            assertEquals(client.getRetriesExhausted().getTotalCount(), 1);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testNonIdempotentRequestIsNotRetried(boolean async)
+            throws Exception
+    {
+        failures = 1;
+        try (JettyHttpClient client = createClient(3)) {
+            assertEquals(execute(client, preparePost().setUri(uri).build(), async).getStatusCode(), 503);
+            assertEquals(requests.get(), 1);
+            assertEquals(client.getRetries().getTotalCount(), 0);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testRetryAfterIsHonored(boolean async)
+            throws Exception
+    {
+        failures = 1;
+        retryAfter = "1";
+        try (JettyHttpClient client = createClient(2)) {
+            long start = System.nanoTime();
+            assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 200);
+            assertTrue(System.nanoTime() - start >= SECONDS.toNanos(1), "retry did not wait for Retry-After");
+            assertEquals(requests.get(), 2);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testLongRetryAfterIsNotRetried(boolean async)
+            throws Exception
+    {
+        failures = 1;
+        retryAfter = "60";
+        try (JettyHttpClient client = createClient(2)) {
+            assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 503);
+            assertEquals(requests.get(), 1);
+        }
+    }
+
+    @Test(dataProvider = "async")
+    public void testRetryBudget(boolean async)
+            throws Exception
+    {
+        failures = Integer.MAX_VALUE;
+        HttpClientConfig config = createConfig(2).setRetryBudgetRatio(0.0);
+        try (JettyHttpClient client = new JettyHttpClient(config, jettyIoPool, ImmutableList.<HttpRequestFilter>of())) {
+            // the budget starts with ten retries and earns none
+            for (int i = 0; i < 12; i++) {
+                assertEquals(execute(client, prepareGet().setUri(uri).build(), async).getStatusCode(), 503);
+            }
+            assertEquals(requests.get(), 22);
+            assertEquals(client.getRetries().getTotalCount(), 10);
+            assertEquals(client.getRetriesOverBudget().getTotalCount(), 2);
+        }
+    }
+
+    private JettyHttpClient createClient(int maxAttempts)
+    {
+        return new JettyHttpClient(createConfig(maxAttempts), jettyIoPool, ImmutableList.<HttpRequestFilter>of());
+    }
+
+    private static HttpClientConfig createConfig(int maxAttempts)
+    {
+        return new HttpClientConfig()
+                .setMaxAttempts(maxAttempts)
+                .setInitialRetryBackoff(new Duration(1, MILLISECONDS))
+                .setMaxRetryBackoff(new Duration(10, SECONDS))
+                .setRetryBudgetRatio(1.0);
+    }
+
+    private static StatusResponse execute(JettyHttpClient client, Request request, boolean async)
+            throws Exception
+    {
+        if (!async) {
+            return client.execute(request, createStatusResponseHandler());
+        }
+        try {
+            return client.executeAsync(request, createStatusResponseHandler()).get(10, SECONDS);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
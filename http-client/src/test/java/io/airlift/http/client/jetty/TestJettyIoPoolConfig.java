@@ -13,7 +13,8 @@ public class TestJettyIoPoolConfig
     {
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(JettyIoPoolConfig.class)
                 .setMaxThreads(200)
-                .setMinThreads(8));
+                .setMinThreads(8)
+                .setVirtualThreadCallbacksEnabled(false));
     }
 
     @Test
@@ -22,11 +23,13 @@ public class TestJettyIoPoolConfig
         Map<String, String> properties = new ImmutableMap.Builder<String, String>()
                 .put("http-client.max-threads", "33")
                 .put("http-client.min-threads", "11")
+                .put("http-client.virtual-thread-callbacks.enabled", "true")
                 .build();
 
         JettyIoPoolConfig expected = new JettyIoPoolConfig()
                 .setMaxThreads(33)
-                .setMinThreads(11);
+                .setMinThreads(11)
+                .setVirtualThreadCallbacksEnabled(true);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
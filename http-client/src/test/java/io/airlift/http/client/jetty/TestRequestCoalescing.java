@@ -0,0 +1,161 @@
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.HttpClient.HttpResponseFuture;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.StringResponseHandler.StringResponse;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static io.airlift.testing.Closeables.closeQuietly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestRequestCoalescing
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch release;
+    private Server server;
+    private URI uri;
+    private JettyIoPool jettyIoPool;
+
+    @BeforeMethod
+    public void setUp()
+            throws Exception
+    {
+        requests.set(0);
+        release = new CountDownLatch(1);
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException
+            {
+                int count = requests.incrementAndGet();
+                try {
+                    release.await(10, SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                baseRequest.setHandled(true);
+                response.setStatus(200);
+                response.getWriter().print("response " + count);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+        jettyIoPool = new JettyIoPool("test-coalescing", new JettyIoPoolConfig());
+    }
+
+    @AfterMethod
+    public void tearDown()
+            throws Exception
+    {
+        release.countDown();
+        closeQuietly(jettyIoPool);
+        server.stop();
+    }
+
+    @Test
+    public void testIdenticalRequestsAreCoalesced()
+            throws Exception
+    {
+        try (JettyHttpClient client = createClient(new HttpClientConfig())) {
+            List<HttpResponseFuture<StringResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(client.executeAsync(prepareGet().setUri(uri).build(), createStringResponseHandler()));
+            }
+            // a different key header gets its own exchange
+            HttpResponseFuture<StringResponse> other = client.executeAsync(prepareGet().setUri(uri).setHeader("Accept", "text/plain").build(), createStringResponseHandler());
+            // writes are never coalesced
+            HttpResponseFuture<StringResponse> post = client.executeAsync(preparePost().setUri(uri).build(), createStringResponseHandler());
+
+            // one follower giving up does not affect the others
+            futures.get(1).cancel(true);
+
+            waitForRequests(3);
+            release.countDown();
+
+            String body = futures.get(0).get(10, SECONDS).getBody();
+            for (int i = 2; i < futures.size(); i++) {
+                assertEquals(futures.get(i).get(10, SECONDS).getBody(), body);
+            }
+            assertTrue(!other.get(10, SECONDS).getBody().equals(body));
+            post.get(10, SECONDS);
+
+            assertEquals(requests.get(), 3);
+            assertEquals(client.getStats().getCoalesced().getTotalCount(), 9);
+
+            // once the exchange completes, new requests are sent again
+            client.execute(prepareGet().setUri(uri).build(), createStringResponseHandler());
+            assertEquals(requests.get(), 4);
+        }
+    }
+
+    @Test
+    public void testFollowersFailWithLeader()
+            throws Exception
+    {
+        HttpClientConfig config = new HttpClientConfig().setReadTimeout(new Duration(500, MILLISECONDS));
+        try (JettyHttpClient client = createClient(config)) {
+            List<HttpResponseFuture<StringResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(client.executeAsync(prepareGet().setUri(uri).build(), createStringResponseHandler()));
+            }
+
+            for (HttpResponseFuture<StringResponse> future : futures) {
+                try {
+                    future.get(10, SECONDS);
+                    fail("expected exception");
+                }
+                catch (ExecutionException expected) {
+                }
+            }
+            assertEquals(requests.get(), 1);
+        }
+    }
+
+    private JettyHttpClient createClient(HttpClientConfig config)
+    {
+        config.setCoalescingEnabled(true).setCoalescingKeyHeaders("Accept");
+        return new JettyHttpClient(config, jettyIoPool, ImmutableList.<HttpRequestFilter>of());
+    }
+
+    private void waitForRequests(int count)
+            throws InterruptedException
+    {
+        for (int i = 0; i < 1000 && requests.get() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(requests.get(), count);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Worker thread pool queue that hands out jobs in arrival order until more
+ * than {@code lifoThreshold} are waiting, and newest first after that.
+ * When the server falls behind, the newest requests are then served while
+ * their clients are still waiting, rather than every request being served
+ * after its client gave up. The oldest requests wait longest and are shed
+ * by {@link AdmissionControlFilter} or time out.
+ * <p>
+ * The queue records when each job was added, and while the job runs the
+ * time it waited is available from {@link #getCurrentQueueMillis()}. Jetty
+ * only parses a request after its job leaves the queue, so the request
+ * timestamp does not include this wait.
+ */
+class AdaptiveLifoQueue
+        extends LinkedBlockingDeque<Runnable>
+{
+    private static final ThreadLocal<Long> CURRENT_QUEUE_MILLIS = new ThreadLocal<>();
+
+    private final int lifoThreshold;
+
+    public AdaptiveLifoQueue(int lifoThreshold)
+    {
+        checkArgument(lifoThreshold > 0, "lifoThreshold must be greater than zero");
+        this.lifoThreshold = lifoThreshold;
+    }
+
+    /**
+     * Returns how long the job running on the current thread waited in the
+     * queue, or -1 if the thread is not running a job from this queue. Only
+     * the first call for a job returns the wait, and later calls return zero,
+     * so requests a job handles after the first one are not charged for it.
+     */
+    public static long getCurrentQueueMillis()
+    {
+        Long queueMillis = CURRENT_QUEUE_MILLIS.get();
+        if (queueMillis == null) {
+            return -1;
+        }
+        CURRENT_QUEUE_MILLIS.set(0L);
+        return queueMillis;
+    }
+
+    // offer() and add() go through offerLast()
+    @Override
+    public boolean offerLast(Runnable job)
+    {
+        checkNotNull(job, "job is null");
+        return super.offerLast(new QueuedJob(job));
+    }
+
+    @Override
+    public Runnable poll()
+    {
+        return isLifo() ? pollLast() : pollFirst();
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        return isLifo() ? pollLast(timeout, unit) : pollFirst(timeout, unit);
+    }
+
+    @Override
+    public Runnable take()
+            throws InterruptedException
+    {
+        return isLifo() ? takeLast() : takeFirst();
+    }
+
+    private boolean isLifo()
+    {
+        return size() > lifoThreshold;
+    }
+
+    private static class QueuedJob
+            implements Runnable
+    {
+        private final Runnable job;
+        private final long queuedNanos = System.nanoTime();
+
+        private QueuedJob(Runnable job)
+        {
+            this.job = job;
+        }
+
+        @Override
+        public void run()
+        {
+            CURRENT_QUEUE_MILLIS.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNanos));
+            try {
+                job.run();
+            }
+            finally {
+                CURRENT_QUEUE_MILLIS.remove();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return job.toString();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.eclipse.jetty.server.Request;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Rejects requests with 503 and {@code Retry-After} before they do any work
+ * when the server is overloaded, so the requests it does accept still
+ * complete in time.
+ * <p>
+ * The time a request waited for a worker thread is recorded by the
+ * {@link AdaptiveLifoQueue} the server uses for its worker pool when admission
+ * control is enabled. When the request did not come through that queue, as
+ * with virtual threads, the wait is measured from the request timestamp
+ * instead, which Jetty sets when it parses the request on a worker thread,
+ * so time spent waiting for that thread is not seen. Following CoDel, if even the shortest wait during an
+ * interval exceeded the target queue time, there is a standing queue, and
+ * until an interval passes in which some request waited less than the
+ * target, requests that waited longer than the target are rejected. Otherwise
+ * only requests that waited longer than the maximum queue time are rejected.
+ * Requests are also rejected when the number of requests in progress reaches
+ * the concurrency limit.
+ * <p>
+ * Requests for an exempt path prefix, and requests with the priority header
+ * set to {@value #CRITICAL_PRIORITY}, are never rejected.
+ */
+public class AdmissionControlFilter
+        implements Filter
+{
+    public static final String CRITICAL_PRIORITY = "critical";
+
+    private final boolean enabled;
+    private final int maxConcurrentRequests;
+    private final long targetQueueMillis;
+    private final long intervalMillis;
+    private final long maxQueueMillis;
+    private final List<String> exemptPaths;
+    private final String priorityHeader;
+    private final String retryAfterSeconds;
+    private final CurrentTimeMillisProvider currentTimeMillisProvider;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong intervalEnd;
+    private final AtomicLong minQueueMillis = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean overloaded;
+
+    private final TimeStat queueTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final CounterStat rejectedQueueTime = new CounterStat();
+    private final CounterStat rejectedConcurrency = new CounterStat();
+    private final CounterStat exempt = new CounterStat();
+
+    @Inject
+    public AdmissionControlFilter(HttpServerConfig config)
+    {
+        this(config, new SystemCurrentTimeMillisProvider());
+    }
+
+    AdmissionControlFilter(HttpServerConfig config, CurrentTimeMillisProvider currentTimeMillisProvider)
+    {
+        checkNotNull(config, "config is null");
+        this.currentTimeMillisProvider = checkNotNull(currentTimeMillisProvider, "currentTimeMillisProvider is null");
+        enabled = config.isAdmissionControlEnabled();
+        maxConcurrentRequests = config.getAdmissionMaxConcurrentRequests();
+        targetQueueMillis = config.getAdmissionTargetQueueTime().toMillis();
+        intervalMillis = config.getAdmissionInterval().toMillis();
+        maxQueueMillis = config.getAdmissionMaxQueueTime().toMillis();
+        if (config.getAdmissionExemptPaths() == null) {
+            exemptPaths = ImmutableList.of();
+        }
+        else {
+            exemptPaths = ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(config.getAdmissionExemptPaths()));
+        }
+        priorityHeader = config.getAdmissionPriorityHeader();
+        retryAfterSeconds = String.valueOf((long) Math.ceil(config.getAdmissionRetryAfter().getValue(TimeUnit.SECONDS)));
+        intervalEnd = new AtomicLong(currentTimeMillisProvider.getCurrentTimeMillis() + intervalMillis);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+            throws ServletException
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        if (!enabled) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        long now = currentTimeMillisProvider.getCurrentTimeMillis();
+        long queueMillis = getQueueMillis(request, now);
+        queueTime.add(queueMillis, TimeUnit.MILLISECONDS);
+        boolean overloaded = updateOverloaded(queueMillis, now);
+
+        if (isExempt(request)) {
+            exempt.update(1);
+        }
+        else if (queueMillis > (overloaded ? targetQueueMillis : maxQueueMillis)) {
+            rejectedQueueTime.update(1);
+            reject((HttpServletResponse) servletResponse);
+            return;
+        }
+        else if (maxConcurrentRequests > 0 && inFlight.get() >= maxConcurrentRequests) {
+            rejectedConcurrency.update(1);
+            reject((HttpServletResponse) servletResponse);
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        try {
+            chain.doFilter(servletRequest, servletResponse);
+        }
+        finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    private boolean updateOverloaded(long queueMillis, long now)
+    {
+        long min = minQueueMillis.get();
+        while (queueMillis < min && !minQueueMillis.compareAndSet(min, queueMillis)) {
+            min = minQueueMillis.get();
+        }
+
+        // one request per interval decides whether there was a standing queue during it
+        long end = intervalEnd.get();
+        if (now >= end && intervalEnd.compareAndSet(end, now + intervalMillis)) {
+            long intervalMin = minQueueMillis.getAndSet(Long.MAX_VALUE);
+            overloaded = intervalMin != Long.MAX_VALUE && intervalMin > targetQueueMillis;
+        }
+        return overloaded;
+    }
+
+    private boolean isExempt(HttpServletRequest request)
+    {
+        if (priorityHeader != null && CRITICAL_PRIORITY.equalsIgnoreCase(request.getHeader(priorityHeader))) {
+            return true;
+        }
+        if (!exemptPaths.isEmpty()) {
+            String path = request.getRequestURI();
+            for (String exemptPath : exemptPaths) {
+                if (path.startsWith(exemptPath)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void reject(HttpServletResponse response)
+            throws IOException
+    {
+        response.setHeader("Retry-After", retryAfterSeconds);
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    private static long getQueueMillis(ServletRequest request, long now)
+    {
+        long queueMillis = AdaptiveLifoQueue.getCurrentQueueMillis();
+        if (queueMillis >= 0) {
+            return queueMillis;
+        }
+
+        while (request instanceof ServletRequestWrapper) {
+            request = ((ServletRequestWrapper) request).getRequest();
+        }
+        if (!(request instanceof Request)) {
+            return 0;
+        }
+        return Math.max(0, now - ((Request) request).getTimeStamp());
+    }
+
+    @Managed
+    public int getInFlightRequests()
+    {
+        return inFlight.get();
+    }
+
+    @Managed(description = "True while there is a standing queue and requests are rejected after the target queue time")
+    public boolean isOverloaded()
+    {
+        return overloaded;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueueTime()
+    {
+        return queueTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejectedQueueTime()
+    {
+        return rejectedQueueTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejectedConcurrency()
+    {
+        return rejectedConcurrency;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getExempt()
+    {
+        return exempt;
+    }
+}
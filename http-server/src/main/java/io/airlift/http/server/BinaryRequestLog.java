@@ -0,0 +1,319 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.event.client.EventClient;
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
+import io.airlift.log.Logger;
+import io.airlift.tracetoken.TraceTokenManager;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.server.HttpRequestEvent.createHttpRequestEvent;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Writes the request log in the {@link BinaryRequestLogFormat binary format}.
+ * <p>
+ * A new file named {@code <filename>-<date>.<n>.bin} is started every day
+ * and every time the server starts, and files older than the retention time
+ * are deleted. A partially filled block is written once it is a second old,
+ * so an idle server does not hold entries back indefinitely. When entries
+ * are written synchronously, a timer checks the age of the block, since
+ * no request may come along to do it.
+ */
+class BinaryRequestLog
+        implements RequestLog
+{
+    private static final Logger log = Logger.get(BinaryRequestLog.class);
+    static final String FILE_EXTENSION = ".bin";
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long MAX_BLOCK_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd");
+
+    private final File file;
+    private final long retentionMillis;
+    private final TraceTokenManager traceTokenManager;
+    private final EventClient eventClient;
+    private final CurrentTimeMillisProvider currentTimeMillisProvider;
+    private final RequestLogSampler sampler;
+    private final BinarySink sink = new BinarySink();
+    private final RequestLogQueue queue;
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param queueSize the number of entries buffered for the writer thread, or
+     * zero to write entries synchronously on the request threads
+     */
+    public BinaryRequestLog(String filename,
+            int retainDays,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            CurrentTimeMillisProvider currentTimeMillisProvider,
+            int queueSize,
+            LogOverflowPolicy overflowPolicy,
+            RequestLogStats stats)
+            throws IOException
+    {
+        this(filename, retainDays, traceTokenManager, eventClient, currentTimeMillisProvider, queueSize, overflowPolicy, stats, RequestLogSampler.keepAll(stats));
+    }
+
+    /**
+     * @param queueSize the number of entries buffered for the writer thread, or
+     * zero to write entries synchronously on the request threads
+     * @param sampler decides which requests are written and which are posted as events
+     */
+    public BinaryRequestLog(String filename,
+            int retainDays,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            CurrentTimeMillisProvider currentTimeMillisProvider,
+            int queueSize,
+            LogOverflowPolicy overflowPolicy,
+            RequestLogStats stats,
+            RequestLogSampler sampler)
+            throws IOException
+    {
+        checkArgument(queueSize >= 0, "queueSize is negative");
+        this.file = new File(filename).getAbsoluteFile();
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retainDays);
+        this.traceTokenManager = traceTokenManager;
+        this.eventClient = eventClient;
+        this.currentTimeMillisProvider = currentTimeMillisProvider;
+        this.sampler = checkNotNull(sampler, "sampler is null");
+
+        synchronized (sink) {
+            sink.roll(currentTimeMillisProvider.getCurrentTimeMillis());
+        }
+
+        if (queueSize > 0) {
+            queue = new RequestLogQueue(queueSize, overflowPolicy, stats, sink);
+            flusher = null;
+        }
+        else {
+            queue = null;
+            flusher = newSingleThreadScheduledExecutor(daemonThreadsNamed("http-request-log-flusher-%s"));
+            flusher.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        synchronized (sink) {
+                            sink.flush();
+                        }
+                    }
+                    catch (RuntimeException e) {
+                        log.error(e, "Error writing request log %s", file);
+                    }
+                }
+            }, MAX_BLOCK_AGE_NANOS, MAX_BLOCK_AGE_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void log(Request request, Response response)
+    {
+        long currentTime = currentTimeMillisProvider.getCurrentTimeMillis();
+        HttpRequestEvent event = createHttpRequestEvent(request, response, traceTokenManager, currentTime);
+
+        if (sampler.shouldLog(event)) {
+            if (queue == null) {
+                synchronized (sink) {
+                    sink.append(event);
+                    sink.flush();
+                }
+            }
+            else {
+                queue.enqueue(event);
+            }
+        }
+
+        if (sampler.shouldPostEvent(event)) {
+            eventClient.post(event);
+        }
+    }
+
+    public void start()
+            throws Exception
+    {
+    }
+
+    public void stop()
+            throws Exception
+    {
+        if (queue != null) {
+            queue.stop();
+        }
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (sink) {
+            sink.close();
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return true;
+    }
+
+    public boolean isStarted()
+    {
+        return true;
+    }
+
+    public boolean isStarting()
+    {
+        return false;
+    }
+
+    public boolean isStopping()
+    {
+        return false;
+    }
+
+    public boolean isStopped()
+    {
+        return false;
+    }
+
+    public boolean isFailed()
+    {
+        return false;
+    }
+
+    public void addLifeCycleListener(Listener listener)
+    {
+    }
+
+    public void removeLifeCycleListener(Listener listener)
+    {
+    }
+
+    /**
+     * Writes to the current file. Only used by one thread at a time: the
+     * writer thread, or request threads holding its lock.
+     */
+    private class BinarySink
+            implements RequestLogQueue.Sink
+    {
+        private BinaryRequestLogWriter writer;
+        private long nextRollMillis;
+        private long blockStartNanos;
+
+        @Override
+        public void append(HttpRequestEvent event)
+        {
+            try {
+                long now = currentTimeMillisProvider.getCurrentTimeMillis();
+                if (now >= nextRollMillis) {
+                    roll(now);
+                }
+                if (writer == null) {
+                    // the file could not be opened
+                    return;
+                }
+                if (writer.getPendingRecords() == 0) {
+                    blockStartNanos = System.nanoTime();
+                }
+                writer.append(event);
+            }
+            catch (IOException e) {
+                log.error(e, "Error writing request log %s", file);
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+            if (writer == null || writer.getPendingRecords() == 0 || System.nanoTime() - blockStartNanos < MAX_BLOCK_AGE_NANOS) {
+                return;
+            }
+            try {
+                writer.finishBlock();
+            }
+            catch (IOException e) {
+                log.error(e, "Error writing request log %s", file);
+            }
+        }
+
+        public void roll(long now)
+                throws IOException
+        {
+            close();
+            String date = DATE_FORMAT.print(now);
+            nextRollMillis = new DateTime(now).withTimeAtStartOfDay().plusDays(1).getMillis();
+
+            File logFile;
+            int sequence = 0;
+            do {
+                logFile = new File(file.getParentFile(), file.getName() + "-" + date + "." + sequence + FILE_EXTENSION);
+                sequence++;
+            }
+            while (logFile.exists());
+            writer = new BinaryRequestLogWriter(new FileOutputStream(logFile), BLOCK_SIZE);
+
+            deleteExpiredFiles(now);
+        }
+
+        public void close()
+        {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                log.error(e, "Error closing request log %s", file);
+            }
+            writer = null;
+        }
+
+        private void deleteExpiredFiles(long now)
+        {
+            final String prefix = file.getName() + "-";
+            File[] files = file.getParentFile().listFiles(new FilenameFilter()
+            {
+                @Override
+                public boolean accept(File dir, String name)
+                {
+                    return name.startsWith(prefix) && name.endsWith(FILE_EXTENSION);
+                }
+            });
+            if (files == null) {
+                return;
+            }
+            for (File expired : files) {
+                if (expired.lastModified() < now - retentionMillis && !expired.delete()) {
+                    log.warn("Could not delete expired request log %s", expired);
+                }
+            }
+        }
+    }
+}
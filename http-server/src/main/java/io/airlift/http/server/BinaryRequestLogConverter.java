@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.airlift.event.client.JsonEventSerializer;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Converts binary request logs to the tab separated text format or to one
+ * JSON object per line.
+ * <pre>
+ * BinaryRequestLogConverter [--format tsv|json] [--start time] [--end time] file...
+ * </pre>
+ * Times are ISO-8601, and the range includes the start and excludes the end.
+ */
+public final class BinaryRequestLogConverter
+{
+    public enum OutputFormat
+    {
+        TSV, JSON
+    }
+
+    private BinaryRequestLogConverter()
+    {
+    }
+
+    public static void main(String[] args)
+            throws IOException
+    {
+        OutputFormat format = OutputFormat.TSV;
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        List<File> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--format") && i + 1 < args.length) {
+                format = OutputFormat.valueOf(args[++i].toUpperCase());
+            }
+            else if (arg.equals("--start") && i + 1 < args.length) {
+                start = ISODateTimeFormat.dateTimeParser().parseMillis(args[++i]);
+            }
+            else if (arg.equals("--end") && i + 1 < args.length) {
+                end = ISODateTimeFormat.dateTimeParser().parseMillis(args[++i]);
+            }
+            else if (arg.startsWith("--")) {
+                usage();
+                return;
+            }
+            else {
+                files.add(new File(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            usage();
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        for (File file : files) {
+            try (BinaryRequestLogReader reader = new BinaryRequestLogReader(file)) {
+                convert(reader.read(start, end), format, writer);
+            }
+        }
+        writer.flush();
+    }
+
+    public static void convert(Iterator<HttpRequestEvent> events, OutputFormat format, Writer writer)
+            throws IOException
+    {
+        if (format == OutputFormat.TSV) {
+            HttpLogLayout layout = new HttpLogLayout();
+            while (events.hasNext()) {
+                writer.write(layout.doLayout(events.next()));
+            }
+            return;
+        }
+
+        JsonEventSerializer serializer = new JsonEventSerializer(HttpRequestEvent.class);
+        JsonFactory jsonFactory = new JsonFactory();
+        while (events.hasNext()) {
+            JsonGenerator generator = jsonFactory.createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            serializer.serialize(events.next(), generator);
+            generator.flush();
+            writer.write('\n');
+        }
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: BinaryRequestLogConverter [--format tsv|json] [--start time] [--end time] file...");
+    }
+}
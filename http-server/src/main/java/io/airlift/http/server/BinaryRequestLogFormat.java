@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import org.joda.time.DateTime;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The binary request log file format.
+ * <pre>
+ * file   = header block* [index]
+ * header = FILE_MAGIC:int VERSION:int
+ * block  = BLOCK_MAGIC:int uncompressedSize:int compressedSize:int recordCount:int
+ *          minTimestamp:long maxTimestamp:long data:byte[compressedSize]
+ * index  = INDEX_MAGIC:int blockCount:int (offset:long recordCount:int minTimestamp:long maxTimestamp:long)*
+ *          indexOffset:long END_MAGIC:int
+ * </pre>
+ * The data of a block is raw deflate of its records, and each record is a
+ * varint length followed by the fields of the {@link HttpRequestEvent}.
+ * Integers in records are zig-zag varints and strings are a varint of the
+ * UTF-8 length plus one, with zero meaning null. The index is written when
+ * the file is closed; files without an index, for example after a crash, can
+ * still be read by walking the block headers.
+ */
+final class BinaryRequestLogFormat
+{
+    static final int FILE_MAGIC = 0x41524c42; // ARLB
+    static final int VERSION = 1;
+    static final int BLOCK_MAGIC = 0x424c4f4b; // BLOK
+    static final int INDEX_MAGIC = 0x494e4458; // INDX
+    static final int END_MAGIC = 0x41524c45; // ARLE
+
+    static final int FILE_HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 28;
+    static final int FOOTER_SIZE = 12;
+
+    private BinaryRequestLogFormat() {}
+
+    /**
+     * A growable buffer of encoded records.
+     */
+    static class RecordBuffer
+    {
+        private byte[] buffer;
+        private int size;
+
+        RecordBuffer(int initialCapacity)
+        {
+            buffer = new byte[initialCapacity];
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public byte[] getBuffer()
+        {
+            return buffer;
+        }
+
+        public void reset()
+        {
+            size = 0;
+        }
+
+        public void appendRecord(HttpRequestEvent event, RecordBuffer scratch)
+        {
+            scratch.reset();
+            scratch.writeLong(event.getTimeStamp().getMillis());
+            scratch.writeString(event.getTraceToken());
+            scratch.writeString(event.getClientAddress());
+            scratch.writeString(event.getProtocol());
+            scratch.writeString(event.getMethod());
+            scratch.writeString(event.getRequestUri());
+            scratch.writeString(event.getUser());
+            scratch.writeString(event.getAgent());
+            scratch.writeString(event.getReferrer());
+            scratch.writeLong(event.getRequestSize());
+            scratch.writeString(event.getRequestContentType());
+            scratch.writeLong(event.getResponseSize());
+            scratch.writeLong(event.getResponseCode());
+            scratch.writeString(event.getResponseContentType());
+            scratch.writeLong(event.getTimeToDispatch());
+            if (event.getTimeToFirstByte() == null) {
+                scratch.writeVarint(0);
+            }
+            else {
+                scratch.writeVarint(1);
+                scratch.writeLong(event.getTimeToFirstByte());
+            }
+            scratch.writeLong(event.getTimeToLastByte());
+
+            writeVarint(scratch.size);
+            write(scratch.buffer, 0, scratch.size);
+        }
+
+        private void writeLong(long value)
+        {
+            // zig-zag encode so small negative values stay small
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeString(String value)
+        {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void writeVarint(long value)
+        {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void write(byte[] bytes, int offset, int length)
+        {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(int length)
+        {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+    }
+
+    /**
+     * Decodes the record at the position of the buffer and advances past it.
+     */
+    static HttpRequestEvent readRecord(ByteBuffer buffer)
+    {
+        int length = (int) readVarint(buffer);
+        int end = buffer.position() + length;
+
+        DateTime timeStamp = new DateTime(readLong(buffer));
+        String traceToken = readString(buffer);
+        String clientAddress = readString(buffer);
+        String protocol = readString(buffer);
+        String method = readString(buffer);
+        String requestUri = readString(buffer);
+        String user = readString(buffer);
+        String agent = readString(buffer);
+        String referrer = readString(buffer);
+        long requestSize = readLong(buffer);
+        String requestContentType = readString(buffer);
+        long responseSize = readLong(buffer);
+        int responseCode = (int) readLong(buffer);
+        String responseContentType = readString(buffer);
+        long timeToDispatch = readLong(buffer);
+        Long timeToFirstByte = null;
+        if (readVarint(buffer) != 0) {
+            timeToFirstByte = readLong(buffer);
+        }
+        long timeToLastByte = readLong(buffer);
+
+        // skip fields added by later versions
+        buffer.position(end);
+
+        return new HttpRequestEvent(
+                timeStamp,
+                traceToken,
+                clientAddress,
+                protocol,
+                method,
+                requestUri,
+                user,
+                agent,
+                referrer,
+                requestSize,
+                requestContentType,
+                responseSize,
+                responseCode,
+                responseContentType,
+                timeToDispatch,
+                timeToFirstByte,
+                timeToLastByte);
+    }
+
+    /**
+     * Returns the timestamp of the record at the position of the buffer
+     * and advances past the record.
+     */
+    static long skipRecord(ByteBuffer buffer)
+    {
+        int length = (int) readVarint(buffer);
+        int end = buffer.position() + length;
+        long timestamp = readLong(buffer);
+        buffer.position(end);
+        return timestamp;
+    }
+
+    private static long readLong(ByteBuffer buffer)
+    {
+        long value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = (int) readVarint(buffer);
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static long readVarint(ByteBuffer buffer)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
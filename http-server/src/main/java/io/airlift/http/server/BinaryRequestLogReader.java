@@ -0,0 +1,306 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static io.airlift.http.server.BinaryRequestLogFormat.BLOCK_HEADER_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.BLOCK_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.END_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.FILE_HEADER_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.FILE_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.FOOTER_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.INDEX_ENTRY_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.INDEX_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.VERSION;
+import static io.airlift.http.server.BinaryRequestLogFormat.readRecord;
+import static io.airlift.http.server.BinaryRequestLogFormat.skipRecord;
+import static java.lang.String.format;
+
+/**
+ * Reads request log files written by {@link BinaryRequestLogWriter}.
+ * <p>
+ * The block index lets a time range be read without decompressing the
+ * blocks outside it. Files that were not closed, and so have no index, are
+ * read up to the last complete block.
+ */
+public class BinaryRequestLogReader
+        implements Closeable
+{
+    // deflate cannot compress data by more than about 1032 to 1
+    private static final int MAX_COMPRESSION_RATIO = 1032;
+
+    private final File file;
+    private final RandomAccessFile input;
+    private final FileChannel channel;
+    private final boolean indexed;
+    private final List<BlockInfo> blocks;
+
+    public BinaryRequestLogReader(File file)
+            throws IOException
+    {
+        this.file = file;
+        this.input = new RandomAccessFile(file, "r");
+        this.channel = input.getChannel();
+        try {
+            ByteBuffer header = read(0, FILE_HEADER_SIZE);
+            if (header.getInt() != FILE_MAGIC) {
+                throw new IOException(format("%s is not a binary request log", file));
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(format("%s has unsupported version %s", file, version));
+            }
+
+            List<BlockInfo> blocks = readIndex();
+            indexed = blocks != null;
+            this.blocks = indexed ? blocks : scanBlocks();
+        }
+        catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the file has an index, that is, it was closed properly.
+     */
+    public boolean isIndexed()
+    {
+        return indexed;
+    }
+
+    public List<BlockInfo> getBlocks()
+    {
+        return blocks;
+    }
+
+    public Iterator<HttpRequestEvent> read()
+    {
+        return read(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the records with a timestamp in [startMillis, endMillis), in file order.
+     */
+    public Iterator<HttpRequestEvent> read(final long startMillis, final long endMillis)
+    {
+        ImmutableList.Builder<BlockInfo> matching = ImmutableList.builder();
+        for (BlockInfo block : blocks) {
+            if (block.overlaps(startMillis, endMillis)) {
+                matching.add(block);
+            }
+        }
+        final Iterator<BlockInfo> blockIterator = matching.build().iterator();
+
+        return new AbstractIterator<HttpRequestEvent>()
+        {
+            private ByteBuffer records = ByteBuffer.allocate(0);
+
+            @Override
+            protected HttpRequestEvent computeNext()
+            {
+                while (true) {
+                    while (records.hasRemaining()) {
+                        int start = records.position();
+                        long timestamp = skipRecord(records);
+                        if (timestamp >= startMillis && timestamp < endMillis) {
+                            records.position(start);
+                            return readRecord(records);
+                        }
+                    }
+                    if (!blockIterator.hasNext()) {
+                        return endOfData();
+                    }
+                    try {
+                        records = readBlock(blockIterator.next());
+                    }
+                    catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        input.close();
+    }
+
+    private List<BlockInfo> readIndex()
+            throws IOException
+    {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE + FOOTER_SIZE) {
+            return null;
+        }
+        ByteBuffer footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        if (footer.getInt() != END_MAGIC || indexOffset < FILE_HEADER_SIZE || indexOffset > size - FOOTER_SIZE - 8) {
+            return null;
+        }
+
+        ByteBuffer indexHeader = read(indexOffset, 8);
+        if (indexHeader.getInt() != INDEX_MAGIC) {
+            return null;
+        }
+        int blockCount = indexHeader.getInt();
+        if (blockCount < 0 || indexOffset + 8 + ((long) blockCount * INDEX_ENTRY_SIZE) != size - FOOTER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer index = read(indexOffset + 8, blockCount * INDEX_ENTRY_SIZE);
+        ImmutableList.Builder<BlockInfo> blocks = ImmutableList.builder();
+        for (int i = 0; i < blockCount; i++) {
+            blocks.add(new BlockInfo(index.getLong(), index.getInt(), index.getLong(), index.getLong()));
+        }
+        return blocks.build();
+    }
+
+    private List<BlockInfo> scanBlocks()
+            throws IOException
+    {
+        long size = channel.size();
+        ImmutableList.Builder<BlockInfo> blocks = ImmutableList.builder();
+        long position = FILE_HEADER_SIZE;
+        while (position + BLOCK_HEADER_SIZE <= size) {
+            ByteBuffer header = read(position, BLOCK_HEADER_SIZE);
+            if (header.getInt() != BLOCK_MAGIC) {
+                break;
+            }
+            header.getInt();
+            int compressedSize = header.getInt();
+            int recordCount = header.getInt();
+            long minTimestamp = header.getLong();
+            long maxTimestamp = header.getLong();
+            if (compressedSize < 0 || position + BLOCK_HEADER_SIZE + compressedSize > size) {
+                // the last block was not completely written
+                break;
+            }
+            blocks.add(new BlockInfo(position, recordCount, minTimestamp, maxTimestamp));
+            position += BLOCK_HEADER_SIZE + compressedSize;
+        }
+        return blocks.build();
+    }
+
+    private ByteBuffer readBlock(BlockInfo block)
+            throws IOException
+    {
+        ByteBuffer header = read(block.getOffset(), BLOCK_HEADER_SIZE);
+        if (header.getInt() != BLOCK_MAGIC) {
+            throw new IOException(format("%s: no block at offset %s", file, block.getOffset()));
+        }
+        int uncompressedSize = header.getInt();
+        int compressedSize = header.getInt();
+        // check the sizes before allocating, as a corrupt header could ask for any amount of memory
+        if (compressedSize < 0 || uncompressedSize < 0 || uncompressedSize > (compressedSize + 1L) * MAX_COMPRESSION_RATIO) {
+            throw new IOException(format("%s: block at offset %s is corrupt", file, block.getOffset()));
+        }
+
+        // raw inflate may need an extra byte of input to detect the end of the data
+        byte[] compressed = new byte[compressedSize + 1];
+        read(block.getOffset() + BLOCK_HEADER_SIZE, compressedSize).get(compressed, 0, compressedSize);
+
+        byte[] records = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int length = inflater.inflate(records);
+            if (length != uncompressedSize) {
+                throw new IOException(format("%s: block at offset %s is corrupt", file, block.getOffset()));
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException(format("%s: block at offset %s is corrupt", file, block.getOffset()), e);
+        }
+        finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(records);
+    }
+
+    private ByteBuffer read(long position, int length)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(format("%s: unexpected end of file at %s", file, position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The location and time range of a block.
+     */
+    public static class BlockInfo
+    {
+        private final long offset;
+        private final int recordCount;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+
+        public BlockInfo(long offset, int recordCount, long minTimestamp, long maxTimestamp)
+        {
+            this.offset = offset;
+            this.recordCount = recordCount;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        public int getRecordCount()
+        {
+            return recordCount;
+        }
+
+        public long getMinTimestamp()
+        {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp()
+        {
+            return maxTimestamp;
+        }
+
+        public boolean overlaps(long startMillis, long endMillis)
+        {
+            return minTimestamp < endMillis && maxTimestamp >= startMillis;
+        }
+    }
+}
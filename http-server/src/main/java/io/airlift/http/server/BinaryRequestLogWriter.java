@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.http.server.BinaryRequestLogFormat.RecordBuffer;
+import io.airlift.http.server.BinaryRequestLogReader.BlockInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.http.server.BinaryRequestLogFormat.BLOCK_HEADER_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.BLOCK_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.END_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.FILE_HEADER_SIZE;
+import static io.airlift.http.server.BinaryRequestLogFormat.FILE_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.INDEX_MAGIC;
+import static io.airlift.http.server.BinaryRequestLogFormat.VERSION;
+
+/**
+ * Writes request log records in the {@link BinaryRequestLogFormat binary format}.
+ * <p>
+ * Records are collected until the block reaches the block size, and the block
+ * is then compressed and written. The output is buffered with room for the
+ * block header and a compressed block, so a block normally reaches the
+ * underlying stream in a single write. Closing the writer writes the last
+ * block and the index. This class is not thread safe.
+ */
+public class BinaryRequestLogWriter
+        implements Closeable
+{
+    private final DataOutputStream output;
+    private final int blockSize;
+    private final RecordBuffer block;
+    private final RecordBuffer record = new RecordBuffer(1024);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private byte[] compressed;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+
+    private long position;
+    private int recordCount;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private boolean closed;
+
+    public BinaryRequestLogWriter(OutputStream output, int blockSize)
+            throws IOException
+    {
+        checkNotNull(output, "output is null");
+        checkArgument(blockSize > 0, "blockSize must be greater than zero");
+        // room for a block that grew past the block size by a record and did not compress
+        int bufferSize = BLOCK_HEADER_SIZE + blockSize + (blockSize >> 3) + 1024;
+        this.output = new DataOutputStream(new BufferedOutputStream(output, bufferSize));
+        this.blockSize = blockSize;
+        this.block = new RecordBuffer(blockSize + 1024);
+        this.compressed = new byte[blockSize];
+
+        this.output.writeInt(FILE_MAGIC);
+        this.output.writeInt(VERSION);
+        position = FILE_HEADER_SIZE;
+    }
+
+    public void append(HttpRequestEvent event)
+            throws IOException
+    {
+        checkState(!closed, "writer is closed");
+        block.appendRecord(event, record);
+        recordCount++;
+        long timestamp = event.getTimeStamp().getMillis();
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+        if (block.size() >= blockSize) {
+            finishBlock();
+        }
+    }
+
+    /**
+     * Returns the number of records in the current, unwritten block.
+     */
+    public int getPendingRecords()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Compresses and writes the current block, if it has any records.
+     */
+    public void finishBlock()
+            throws IOException
+    {
+        if (recordCount == 0) {
+            return;
+        }
+
+        deflater.reset();
+        deflater.setInput(block.getBuffer(), 0, block.size());
+        deflater.finish();
+        int compressedSize = 0;
+        while (!deflater.finished()) {
+            if (compressedSize == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+        }
+
+        output.writeInt(BLOCK_MAGIC);
+        output.writeInt(block.size());
+        output.writeInt(compressedSize);
+        output.writeInt(recordCount);
+        output.writeLong(minTimestamp);
+        output.writeLong(maxTimestamp);
+        output.write(compressed, 0, compressedSize);
+        output.flush();
+
+        blocks.add(new BlockInfo(position, recordCount, minTimestamp, maxTimestamp));
+        position += BLOCK_HEADER_SIZE + compressedSize;
+
+        block.reset();
+        recordCount = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        try {
+            finishBlock();
+
+            long indexOffset = position;
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(blocks.size());
+            for (BlockInfo block : blocks) {
+                output.writeLong(block.getOffset());
+                output.writeInt(block.getRecordCount());
+                output.writeLong(block.getMinTimestamp());
+                output.writeLong(block.getMaxTimestamp());
+            }
+            output.writeLong(indexOffset);
+            output.writeInt(END_MAGIC);
+            output.flush();
+        }
+        finally {
+            closed = true;
+            deflater.end();
+            output.close();
+        }
+    }
+}
@@ -16,11 +16,19 @@
 package io.airlift.http.server;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.io.WriterOutputStream;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
@@ -29,21 +37,52 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+import static com.google.common.net.HttpHeaders.ACCEPT_RANGES;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.IF_RANGE;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static com.google.common.net.HttpHeaders.VARY;
 
 /**
  * Serves files from a given folder on the classpath through jetty.
  * Intended to serve a couple of static files e.g. for javascript or HTML.
+ * <p>
+ * Resources are loaded once into direct buffers and kept in a cache bounded
+ * by total size; resources too large for the cache are streamed from the
+ * classpath on every request. Responses carry a strong ETag, Last-Modified
+ * and Cache-Control, conditional requests are answered with 304, single byte
+ * ranges are supported, and a precompressed gzip variant of text resources
+ * is served to clients that accept it.
  */
 // Forked from https://github.com/NessComputing/components-ness-httpserver/
 public class ClassPathResourceHandler
         extends AbstractHandler
 {
+    public static final DataSize DEFAULT_MAX_CACHE_SIZE = new DataSize(16, DataSize.Unit.MEGABYTE);
+    public static final Duration DEFAULT_MAX_AGE = new Duration(5, TimeUnit.MINUTES);
+
     private static final MimeTypes MIME_TYPES;
+    private static final int MIN_COMPRESSIBLE_SIZE = 256;
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
 
     static {
         MIME_TYPES = new MimeTypes();
@@ -54,6 +93,9 @@ public class ClassPathResourceHandler
     private final String baseUri;
     private final String classPathResourceBase;
     private final List<String> welcomeFiles;
+    private final long maxCachedResourceSize;
+    private final String cacheControl;
+    private final Cache<String, CachedResource> cache;
 
     public ClassPathResourceHandler(String baseUri, String classPathResourceBase, String... welcomeFiles)
     {
@@ -61,10 +103,21 @@ public class ClassPathResourceHandler
     }
 
     public ClassPathResourceHandler(String baseUri, String classPathResourceBase, List<String> welcomeFiles)
+    {
+        this(baseUri, classPathResourceBase, welcomeFiles, DEFAULT_MAX_CACHE_SIZE, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param maxCacheSize the total size of the cached resources, including their compressed variants
+     * @param maxAge how long clients may use a resource without revalidating it
+     */
+    public ClassPathResourceHandler(String baseUri, String classPathResourceBase, List<String> welcomeFiles, DataSize maxCacheSize, Duration maxAge)
     {
         Preconditions.checkNotNull(baseUri, "baseUri is null");
         Preconditions.checkNotNull(classPathResourceBase, "classPathResourceBase is null");
         Preconditions.checkNotNull(welcomeFiles, "welcomeFiles is null");
+        Preconditions.checkNotNull(maxCacheSize, "maxCacheSize is null");
+        Preconditions.checkNotNull(maxAge, "maxAge is null");
 
         baseUri = baseUri.startsWith("/") ? baseUri : '/' + baseUri;
         baseUri = baseUri.endsWith("/") ? baseUri.substring(baseUri.length() - 1) : baseUri;
@@ -80,6 +133,21 @@ public class ClassPathResourceHandler
             files.add(welcomeFile);
         }
         this.welcomeFiles = files.build();
+
+        // a single resource may use at most a quarter of the cache, so it does not evict everything else
+        this.maxCachedResourceSize = maxCacheSize.toBytes() / 4;
+        this.cacheControl = "public, max-age=" + maxAge.roundTo(TimeUnit.SECONDS);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCacheSize.toBytes())
+                .weigher(new Weigher<String, CachedResource>()
+                {
+                    @Override
+                    public int weigh(String path, CachedResource resource)
+                    {
+                        return resource.getSize();
+                    }
+                })
+                .build();
     }
 
     @Override
@@ -90,11 +158,20 @@ public class ClassPathResourceHandler
             return;
         }
 
-        URL resource = getResourcePath(request);
-        if (resource == null) {
+        String path = getRelativePath(request);
+        if (path == null) {
             return;
         }
 
+        CachedResource cached = cache.getIfPresent(path);
+        URL resource = null;
+        if (cached == null) {
+            resource = getResource(path);
+            if (resource == null) {
+                return;
+            }
+        }
+
         // When a request hits this handler, it will serve something. Either data or an error.
         baseRequest.setHandled(true);
 
@@ -110,6 +187,84 @@ public class ClassPathResourceHandler
             }
         }
 
+        if (cached == null) {
+            cached = load(resource);
+            if (cached == null) {
+                streamResource(resource, response, skipContent);
+                return;
+            }
+            cache.put(path, cached);
+        }
+
+        serve(cached, request, response, skipContent);
+    }
+
+    private void serve(CachedResource resource, HttpServletRequest request, HttpServletResponse response, boolean skipContent)
+            throws IOException
+    {
+        String rangeHeader = request.getHeader(RANGE);
+        boolean gzip = resource.getGzipContent() != null && rangeHeader == null && acceptsGzip(request.getHeader(ACCEPT_ENCODING));
+        String etag = gzip ? resource.getGzipEtag() : resource.getEtag();
+
+        response.setContentType(resource.getContentType());
+        response.setHeader(ETAG, etag);
+        response.setHeader(CACHE_CONTROL, cacheControl);
+        response.setHeader(ACCEPT_RANGES, "bytes");
+        if (resource.getLastModified() > 0) {
+            response.setDateHeader(LAST_MODIFIED, resource.getLastModified());
+        }
+        if (resource.getGzipContent() != null) {
+            response.setHeader(VARY, ACCEPT_ENCODING);
+        }
+
+        if (isNotModified(request, etag, resource.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteBuffer content = gzip ? resource.getGzipContent() : resource.getContent();
+        if (gzip) {
+            response.setHeader(CONTENT_ENCODING, "gzip");
+        }
+
+        String ifRange = request.getHeader(IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            int length = content.remaining();
+            long[] range = parseRange(rangeHeader, length);
+            if (range == UNSATISFIABLE_RANGE) {
+                response.setHeader(CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (range != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length);
+                content.position((int) range[0]);
+                content.limit((int) range[1] + 1);
+            }
+        }
+
+        response.setContentLength(content.remaining());
+        if (skipContent) {
+            return;
+        }
+
+        OutputStream out = getOutputStream(response);
+        if (out instanceof HttpOutput) {
+            ((HttpOutput) out).sendContent(content);
+            return;
+        }
+        byte[] buffer = new byte[Math.min(COPY_BUFFER_SIZE, content.remaining())];
+        while (content.hasRemaining()) {
+            int chunk = Math.min(buffer.length, content.remaining());
+            content.get(buffer, 0, chunk);
+            out.write(buffer, 0, chunk);
+        }
+    }
+
+    private static void streamResource(URL resource, HttpServletResponse response, boolean skipContent)
+            throws IOException
+    {
         InputStream resourceStream = null;
         try {
             resourceStream = resource.openStream();
@@ -121,23 +276,83 @@ public class ClassPathResourceHandler
                 return;
             }
 
-            // Send the content out. Lifted straight out of ResourceHandler.java
-            OutputStream out;
-            try {
-                out = response.getOutputStream();
-            }
-            catch (IllegalStateException e) {
-                out = new WriterOutputStream(response.getWriter());
-            }
-
-            ByteStreams.copy(resourceStream, out);
+            ByteStreams.copy(resourceStream, getOutputStream(response));
         }
         finally {
             closeQuietly(resourceStream);
         }
     }
 
-    private URL getResourcePath(HttpServletRequest request)
+    private static OutputStream getOutputStream(HttpServletResponse response)
+            throws IOException
+    {
+        // Lifted straight out of ResourceHandler.java
+        try {
+            return response.getOutputStream();
+        }
+        catch (IllegalStateException e) {
+            return new WriterOutputStream(response.getWriter());
+        }
+    }
+
+    /**
+     * Loads the resource into memory, or returns null if it is too large to cache.
+     */
+    @Nullable
+    private CachedResource load(URL resource)
+            throws IOException
+    {
+        URLConnection connection = resource.openConnection();
+        long contentLength = connection.getContentLengthLong();
+        if (contentLength > maxCachedResourceSize) {
+            return null;
+        }
+        long lastModified = connection.getLastModified();
+
+        byte[] content;
+        try (InputStream in = connection.getInputStream()) {
+            content = ByteStreams.toByteArray(ByteStreams.limit(in, maxCachedResourceSize + 1));
+        }
+        if (content.length > maxCachedResourceSize) {
+            return null;
+        }
+
+        String contentType = MIME_TYPES.getMimeByExtension(resource.toString());
+        String etag = "\"" + Hashing.sha1().hashBytes(content).toString() + "\"";
+
+        byte[] gzipContent = null;
+        if (content.length >= MIN_COMPRESSIBLE_SIZE && isCompressible(contentType)) {
+            gzipContent = gzip(content);
+            if (gzipContent.length >= content.length) {
+                gzipContent = null;
+            }
+        }
+
+        return new CachedResource(contentType, lastModified, etag, toDirectBuffer(content), (gzipContent == null) ? null : toDirectBuffer(gzipContent));
+    }
+
+    private URL getResource(String path)
+    {
+        if (!"/".equals(path)) {
+            return getClass().getClassLoader().getResource(classPathResourceBase + path);
+        }
+
+        // check welcome files
+        for (String welcomeFile : welcomeFiles) {
+            String resourcePath = classPathResourceBase + welcomeFile;
+            URL resource = getClass().getClassLoader().getResource(resourcePath);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the request path relative to the base uri, or null if the
+     * request is not for this handler.
+     */
+    private String getRelativePath(HttpServletRequest request)
     {
         String pathInfo = request.getPathInfo();
 
@@ -161,22 +376,134 @@ public class ClassPathResourceHandler
         if (!pathInfo.startsWith("/")) {
             pathInfo = "/";
         }
+        return pathInfo;
+    }
 
-        if (!"/".equals(pathInfo)) {
-            String resourcePath = classPathResourceBase + pathInfo;
-            URL resource = getClass().getClassLoader().getResource(resourcePath);
-            return resource;
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified)
+    {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // weak comparison, as allowed for conditional GET
+            for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+                if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
         }
 
-        // check welcome files
-        for (String welcomeFile : welcomeFiles) {
-            String resourcePath = classPathResourceBase + welcomeFile;
-            URL resource = getClass().getClassLoader().getResource(resourcePath);
-            if (resource != null) {
-                return resource;
+        if (lastModified <= 0) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Parses a single byte range into inclusive first and last positions.
+     * Returns null if the header should be ignored, which includes requests
+     * for multiple ranges, or {@link #UNSATISFIABLE_RANGE}.
+     */
+    @Nullable
+    static long[] parseRange(String header, long length)
+    {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        long first;
+        long last;
+        try {
+            if (dash == 0) {
+                // suffix range: the last n bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return UNSATISFIABLE_RANGE;
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            }
+            else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = (dash == spec.length() - 1) ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
             }
         }
-        return null;
+        catch (NumberFormatException e) {
+            return null;
+        }
+        if (first < 0 || last < first) {
+            return (first >= length) ? UNSATISFIABLE_RANGE : null;
+        }
+        if (first >= length) {
+            return UNSATISFIABLE_RANGE;
+        }
+        return new long[] {first, last};
+    }
+
+    static boolean acceptsGzip(@Nullable String acceptEncoding)
+    {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+            List<String> parts = ImmutableList.copyOf(Splitter.on(';').trimResults().split(encoding));
+            String name = parts.get(0);
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (String parameter : parts.subList(1, parts.size())) {
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    }
+                    catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isCompressible(@Nullable String contentType)
+    {
+        if (contentType == null) {
+            return false;
+        }
+        return contentType.startsWith("text/") ||
+                contentType.contains("javascript") ||
+                contentType.contains("json") ||
+                contentType.contains("xml");
+    }
+
+    private static byte[] gzip(byte[] content)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer toDirectBuffer(byte[] bytes)
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
     }
 
     private static void closeQuietly(@Nullable InputStream in)
@@ -190,4 +517,65 @@ public class ClassPathResourceHandler
             }
         }
     }
+
+    private static class CachedResource
+    {
+        private final String contentType;
+        private final long lastModified;
+        private final String etag;
+        private final ByteBuffer content;
+        private final ByteBuffer gzipContent;
+
+        private CachedResource(@Nullable String contentType, long lastModified, String etag, ByteBuffer content, @Nullable ByteBuffer gzipContent)
+        {
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.content = content;
+            this.gzipContent = gzipContent;
+        }
+
+        @Nullable
+        public String getContentType()
+        {
+            return contentType;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        /**
+         * The gzip variant is a different representation, so it needs its own strong ETag.
+         */
+        public String getGzipEtag()
+        {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * Returns a new view of the content, so each response has its own position.
+         */
+        public ByteBuffer getContent()
+        {
+            return content.duplicate();
+        }
+
+        @Nullable
+        public ByteBuffer getGzipContent()
+        {
+            return (gzipContent == null) ? null : gzipContent.duplicate();
+        }
+
+        public int getSize()
+        {
+            return content.capacity() + ((gzipContent == null) ? 0 : gzipContent.capacity());
+        }
+    }
 }
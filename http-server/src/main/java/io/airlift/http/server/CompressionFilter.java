@@ -0,0 +1,743 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import javax.annotation.Nullable;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.http.server.ClassPathResourceHandler.acceptsGzip;
+
+/**
+ * Compresses responses with gzip, replacing Jetty's {@code GzipFilter}.
+ * <p>
+ * A response is compressed when the client accepts gzip, its content type
+ * is compressible, and it has at least the minimum size. The content type
+ * must match the configured MIME types, or if none are configured, it must
+ * not be an already compressed type such as images, audio, video and
+ * archives. Configured excluded MIME types are never compressed.
+ * <p>
+ * Response bytes are held back until the minimum size is reached, so small
+ * responses are sent as is with a {@code Content-Length}. Flushing a response
+ * before it reaches the minimum size sends it uncompressed.
+ * <p>
+ * Requests for an excluded path prefix, and requests on which the
+ * {@value #DISABLED_ATTRIBUTE} attribute is set before the response is
+ * written, are not compressed.
+ */
+public class CompressionFilter
+        implements Filter
+{
+    public static final String DISABLED_ATTRIBUTE = "io.airlift.http.server.compression.disabled";
+
+    private static final List<String> ALREADY_COMPRESSED = ImmutableList.of(
+            "image/*",
+            "audio/*",
+            "video/*",
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-compress",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/pdf",
+            "application/font-woff",
+            "font/woff",
+            "font/woff2");
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final int minSize;
+    private final List<String> mimeTypes;
+    private final List<String> excludedMimeTypes;
+    private final List<String> excludedPaths;
+    private final DeflaterPool deflaterPool;
+    private final CompressionStats stats;
+
+    public CompressionFilter(HttpServerConfig config, CompressionStats stats)
+    {
+        checkNotNull(config, "config is null");
+        this.stats = checkNotNull(stats, "stats is null");
+        minSize = Ints.checkedCast(config.getCompressionMinSize().toBytes());
+        mimeTypes = split(config.getCompressionMimeTypes());
+        excludedMimeTypes = split(config.getCompressionExcludedMimeTypes());
+        excludedPaths = split(config.getCompressionExcludedPaths());
+        deflaterPool = new DeflaterPool(config.getCompressionLevel(), config.getCompressionDeflaterPoolSize(), stats);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+            throws ServletException
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        if ("HEAD".equals(request.getMethod()) || isExcludedPath(request.getRequestURI())) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        final CompressingResponse response = new CompressingResponse(
+                request,
+                (HttpServletResponse) servletResponse,
+                acceptsGzip(request.getHeader("Accept-Encoding")));
+        boolean async = false;
+        try {
+            chain.doFilter(servletRequest, response);
+            if (request.isAsyncStarted()) {
+                // the response is finished when the async request completes
+                async = true;
+                request.getAsyncContext().addListener(new AsyncListener()
+                {
+                    @Override
+                    public void onComplete(AsyncEvent event)
+                            throws IOException
+                    {
+                        // the handler may complete without closing the stream
+                        try {
+                            response.finish();
+                        }
+                        finally {
+                            response.release();
+                        }
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event)
+                    {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event)
+                    {
+                        response.release();
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event)
+                    {
+                    }
+                });
+            }
+            else {
+                response.finish();
+            }
+        }
+        finally {
+            if (!async) {
+                response.release();
+            }
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    private boolean isExcludedPath(@Nullable String path)
+    {
+        if (path == null) {
+            return false;
+        }
+        for (String excludedPath : excludedPaths) {
+            if (path.startsWith(excludedPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isCompressible(@Nullable String contentType)
+    {
+        if (contentType == null) {
+            return false;
+        }
+        String mimeType = contentType;
+        int parameters = mimeType.indexOf(';');
+        if (parameters >= 0) {
+            mimeType = mimeType.substring(0, parameters);
+        }
+        mimeType = mimeType.trim().toLowerCase(Locale.ENGLISH);
+
+        if (matches(excludedMimeTypes, mimeType)) {
+            return false;
+        }
+        if (!mimeTypes.isEmpty()) {
+            return matches(mimeTypes, mimeType);
+        }
+        return mimeType.equals("image/svg+xml") || !matches(ALREADY_COMPRESSED, mimeType);
+    }
+
+    private static boolean matches(List<String> patterns, String mimeType)
+    {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("/*") ? mimeType.startsWith(pattern.substring(0, pattern.length() - 1)) : mimeType.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> split(@Nullable String values)
+    {
+        if (values == null) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(values.toLowerCase(Locale.ENGLISH)));
+    }
+
+    private enum State
+    {
+        UNDECIDED, COMPRESSING, PASS_THROUGH
+    }
+
+    private class CompressingResponse
+            extends HttpServletResponseWrapper
+    {
+        private final HttpServletRequest request;
+        private final boolean acceptsGzip;
+        private State state = State.UNDECIDED;
+        private boolean discarded;
+        private Long contentLength;
+        private CompressingOutputStream outputStream;
+        private PrintWriter printWriter;
+
+        private CompressingResponse(HttpServletRequest request, HttpServletResponse response, boolean acceptsGzip)
+        {
+            super(response);
+            this.request = request;
+            this.acceptsGzip = acceptsGzip;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream()
+                throws IOException
+        {
+            checkState(printWriter == null, "getWriter() has already been called");
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter()
+                throws IOException
+        {
+            checkState(outputStream == null, "getOutputStream() has already been called");
+            if (printWriter == null) {
+                // fixes the charset in the content type, as the container's writer would
+                setCharacterEncoding(getCharacterEncoding());
+                outputStream = new CompressingOutputStream();
+                printWriter = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+            return printWriter;
+        }
+
+        @Override
+        public void setContentLength(int length)
+        {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length)
+        {
+            if (state == State.COMPRESSING) {
+                return;
+            }
+            if (state == State.UNDECIDED) {
+                if (length >= minSize) {
+                    // sent only if the response is not compressed
+                    contentLength = length;
+                    return;
+                }
+                passThrough(true);
+            }
+            super.setContentLengthLong(length);
+        }
+
+        @Override
+        public void setHeader(String name, String value)
+        {
+            if ("Content-Length".equalsIgnoreCase(name) && value != null) {
+                setContentLengthLong(Long.parseLong(value));
+                return;
+            }
+            if ("Content-Encoding".equalsIgnoreCase(name) && state == State.UNDECIDED) {
+                passThrough(false);
+            }
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void addHeader(String name, String value)
+        {
+            if ("Content-Length".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name)) {
+                setHeader(name, value);
+                return;
+            }
+            super.addHeader(name, value);
+        }
+
+        @Override
+        public void setIntHeader(String name, int value)
+        {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+                return;
+            }
+            super.setIntHeader(name, value);
+        }
+
+        @Override
+        public void flushBuffer()
+                throws IOException
+        {
+            if (printWriter != null) {
+                printWriter.flush();
+            }
+            else if (outputStream != null) {
+                outputStream.flush();
+            }
+            else if (state == State.UNDECIDED) {
+                passThrough(false);
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int status)
+                throws IOException
+        {
+            discard();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message)
+                throws IOException
+        {
+            discard();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location)
+                throws IOException
+        {
+            discard();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void reset()
+        {
+            super.reset();
+            if (state != State.COMPRESSING) {
+                state = State.UNDECIDED;
+                contentLength = null;
+                if (outputStream != null) {
+                    outputStream.discardBuffer();
+                }
+            }
+        }
+
+        @Override
+        public void resetBuffer()
+        {
+            super.resetBuffer();
+            if (state == State.UNDECIDED && outputStream != null) {
+                outputStream.discardBuffer();
+            }
+        }
+
+        private void discard()
+        {
+            if (outputStream != null) {
+                outputStream.discardBuffer();
+            }
+            if (state == State.COMPRESSING) {
+                // the error or redirect replaces the body, and is not compressed
+                super.setHeader("Content-Encoding", null);
+                discarded = true;
+                outputStream.abandon();
+            }
+            else if (state == State.UNDECIDED) {
+                state = State.PASS_THROUGH;
+            }
+        }
+
+        /**
+         * Completes the response body after the chain has returned.
+         */
+        private void finish()
+                throws IOException
+        {
+            if (discarded) {
+                return;
+            }
+            if (outputStream == null) {
+                if (state == State.UNDECIDED) {
+                    passThrough(false);
+                }
+                return;
+            }
+            outputStream.finishing = true;
+            if (printWriter != null) {
+                printWriter.flush();
+            }
+            outputStream.finish();
+        }
+
+        private void release()
+        {
+            if (outputStream != null) {
+                outputStream.releaseDeflater();
+            }
+        }
+
+        private boolean shouldCompress()
+        {
+            return request.getAttribute(DISABLED_ATTRIBUTE) == null &&
+                    getHeader("Content-Encoding") == null &&
+                    isCompressible(getContentType());
+        }
+
+        private void passThrough(boolean tooSmall)
+        {
+            if (shouldCompress()) {
+                super.addHeader("Vary", "Accept-Encoding");
+                if (acceptsGzip && tooSmall) {
+                    stats.recordSkippedSize();
+                }
+            }
+            else if (acceptsGzip) {
+                stats.recordSkippedType();
+            }
+            state = State.PASS_THROUGH;
+            if (contentLength != null) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        private boolean startCompressing()
+        {
+            if (!acceptsGzip || !shouldCompress()) {
+                passThrough(false);
+                return false;
+            }
+            super.addHeader("Vary", "Accept-Encoding");
+            super.setHeader("Content-Encoding", "gzip");
+            state = State.COMPRESSING;
+            return true;
+        }
+
+        private class CompressingOutputStream
+                extends ServletOutputStream
+        {
+            private final byte[] single = new byte[1];
+            private byte[] buffer = new byte[Math.min(minSize, 8192)];
+            private int buffered;
+            private boolean finishing;
+            private boolean closed;
+
+            private ServletOutputStream delegate;
+            private Deflater deflater;
+            private CRC32 crc;
+            private byte[] compressed;
+            private long uncompressedSize;
+            private long compressedSize;
+            private long compressionNanos;
+
+            @Override
+            public void write(int b)
+                    throws IOException
+            {
+                single[0] = (byte) b;
+                write(single, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length)
+                    throws IOException
+            {
+                checkState(!closed, "stream is closed");
+                if (state == State.UNDECIDED) {
+                    if (buffered + length < minSize) {
+                        append(bytes, offset, length);
+                        return;
+                    }
+                    decide(false);
+                }
+                if (state == State.COMPRESSING) {
+                    deflate(bytes, offset, length);
+                }
+                else {
+                    // bytes held back before the response was decided not to be compressed
+                    writeBuffer();
+                    delegate().write(bytes, offset, length);
+                }
+            }
+
+            @Override
+            public void flush()
+                    throws IOException
+            {
+                if (finishing || closed) {
+                    return;
+                }
+                if (state == State.UNDECIDED) {
+                    decide(true);
+                }
+                if (state == State.COMPRESSING) {
+                    drain(Deflater.SYNC_FLUSH);
+                }
+                else {
+                    writeBuffer();
+                }
+                delegate().flush();
+            }
+
+            @Override
+            public void close()
+                    throws IOException
+            {
+                if (closed) {
+                    return;
+                }
+                finishing = true;
+                finish();
+                delegate().close();
+            }
+
+            @Override
+            public boolean isReady()
+            {
+                try {
+                    return delegate().isReady();
+                }
+                catch (IOException e) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener)
+            {
+                try {
+                    delegate().setWriteListener(writeListener);
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            private void finish()
+                    throws IOException
+            {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (state == State.UNDECIDED) {
+                    passThrough(buffered > 0);
+                    if (contentLength == null && buffered > 0) {
+                        CompressingResponse.super.setContentLengthLong(buffered);
+                    }
+                    writeBuffer();
+                }
+                else if (state == State.PASS_THROUGH) {
+                    writeBuffer();
+                }
+                else {
+                    long start = System.nanoTime();
+                    deflater.finish();
+                    compressionNanos += System.nanoTime() - start;
+                    drain(Deflater.NO_FLUSH);
+                    writeTrailer();
+                    stats.recordCompressed(uncompressedSize, compressedSize, compressionNanos);
+                    releaseDeflater();
+                }
+            }
+
+            /**
+             * Decides whether to compress once the minimum size is reached,
+             * or when the response is flushed before that.
+             */
+            private void decide(boolean flushed)
+                    throws IOException
+            {
+                if (flushed) {
+                    passThrough(buffered > 0);
+                }
+                else if (startCompressing()) {
+                    deflater = deflaterPool.acquire();
+                    crc = new CRC32();
+                    compressed = new byte[8192];
+                    delegate().write(GZIP_HEADER);
+                    compressedSize = GZIP_HEADER.length;
+                    if (buffered > 0) {
+                        deflate(buffer, 0, buffered);
+                    }
+                    buffered = 0;
+                    return;
+                }
+                writeBuffer();
+            }
+
+            private void append(byte[] bytes, int offset, int length)
+            {
+                if (buffered + length > buffer.length) {
+                    byte[] newBuffer = new byte[Math.min(minSize, Math.max(buffer.length * 2, buffered + length))];
+                    System.arraycopy(buffer, 0, newBuffer, 0, buffered);
+                    buffer = newBuffer;
+                }
+                System.arraycopy(bytes, offset, buffer, buffered, length);
+                buffered += length;
+            }
+
+            private void writeBuffer()
+                    throws IOException
+            {
+                if (buffered > 0) {
+                    delegate().write(buffer, 0, buffered);
+                    buffered = 0;
+                }
+            }
+
+            private void discardBuffer()
+            {
+                buffered = 0;
+            }
+
+            /**
+             * Stops compressing without writing the rest of the gzip stream.
+             */
+            private void abandon()
+            {
+                closed = true;
+                releaseDeflater();
+            }
+
+            private void deflate(byte[] bytes, int offset, int length)
+                    throws IOException
+            {
+                crc.update(bytes, offset, length);
+                uncompressedSize += length;
+                deflater.setInput(bytes, offset, length);
+                while (!deflater.needsInput()) {
+                    writeCompressed(timedDeflate(Deflater.NO_FLUSH));
+                }
+            }
+
+            private void drain(int flushMode)
+                    throws IOException
+            {
+                int length;
+                do {
+                    length = timedDeflate(flushMode);
+                    writeCompressed(length);
+                }
+                while (flushMode == Deflater.SYNC_FLUSH ? length == compressed.length : !deflater.finished());
+            }
+
+            private int timedDeflate(int flushMode)
+            {
+                long start = System.nanoTime();
+                int length = deflater.deflate(compressed, 0, compressed.length, flushMode);
+                compressionNanos += System.nanoTime() - start;
+                return length;
+            }
+
+            private void writeCompressed(int length)
+                    throws IOException
+            {
+                if (length > 0) {
+                    delegate().write(compressed, 0, length);
+                    compressedSize += length;
+                }
+            }
+
+            private void writeTrailer()
+                    throws IOException
+            {
+                byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+                writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+                writeIntLittleEndian(trailer, 4, (int) uncompressedSize);
+                delegate().write(trailer);
+                compressedSize += trailer.length;
+            }
+
+            private void releaseDeflater()
+            {
+                if (deflater != null) {
+                    deflaterPool.release(deflater);
+                    deflater = null;
+                }
+            }
+
+            private ServletOutputStream delegate()
+                    throws IOException
+            {
+                if (delegate == null) {
+                    delegate = CompressingResponse.super.getOutputStream();
+                }
+                return delegate;
+            }
+        }
+    }
+
+    private static void writeIntLittleEndian(byte[] bytes, int offset, int value)
+    {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of response compression by {@link CompressionFilter}.
+ */
+public class CompressionStats
+{
+    private final CounterStat compressed = new CounterStat();
+    private final CounterStat skippedSize = new CounterStat();
+    private final CounterStat skippedType = new CounterStat();
+    private final CounterStat deflatersCreated = new CounterStat();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final TimeStat compressionTime = new TimeStat(TimeUnit.MILLISECONDS);
+
+    void recordCompressed(long uncompressedSize, long compressedSize, long nanos)
+    {
+        compressed.update(1);
+        uncompressedBytes.addAndGet(uncompressedSize);
+        compressedBytes.addAndGet(compressedSize);
+        compressionTime.add(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordSkippedSize()
+    {
+        skippedSize.update(1);
+    }
+
+    void recordSkippedType()
+    {
+        skippedType.update(1);
+    }
+
+    void recordDeflaterCreated()
+    {
+        deflatersCreated.update(1);
+    }
+
+    @Managed
+    public long getUncompressedBytes()
+    {
+        return uncompressedBytes.get();
+    }
+
+    @Managed
+    public long getCompressedBytes()
+    {
+        return compressedBytes.get();
+    }
+
+    @Managed(description = "Uncompressed size divided by compressed size of all compressed responses")
+    public double getCompressionRatio()
+    {
+        long compressed = compressedBytes.get();
+        if (compressed == 0) {
+            return Double.NaN;
+        }
+        return uncompressedBytes.get() / (double) compressed;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCompressed()
+    {
+        return compressed;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSkippedSize()
+    {
+        return skippedSize;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSkippedType()
+    {
+        return skippedType;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDeflatersCreated()
+    {
+        return deflatersCreated;
+    }
+
+    @Managed(description = "Time spent compressing each response")
+    @Nested
+    public TimeStat getCompressionTime()
+    {
+        return compressionTime;
+    }
+}
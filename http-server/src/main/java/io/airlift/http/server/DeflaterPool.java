@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Pool of raw {@link Deflater}s, so compressing a response does not
+ * allocate a deflater and its native buffers every time. When the pool
+ * is full, returned deflaters are ended instead.
+ */
+class DeflaterPool
+{
+    private final int level;
+    private final BlockingQueue<Deflater> pool;
+    private final CompressionStats stats;
+
+    DeflaterPool(int level, int maxSize, CompressionStats stats)
+    {
+        checkArgument(level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION, "level must be between 1 and 9");
+        checkArgument(maxSize > 0, "maxSize must be greater than zero");
+        this.level = level;
+        this.pool = new ArrayBlockingQueue<>(maxSize);
+        this.stats = checkNotNull(stats, "stats is null");
+    }
+
+    public Deflater acquire()
+    {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            stats.recordDeflaterCreated();
+            deflater = new Deflater(level, true);
+        }
+        return deflater;
+    }
+
+    public void release(Deflater deflater)
+    {
+        deflater.reset();
+        if (!pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    public int getPooledCount()
+    {
+        return pool.size();
+    }
+}
@@ -16,10 +16,12 @@
 package io.airlift.http.server;
 
 import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.LayoutBase;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.SizeAndTimeBasedFNATP;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 import io.airlift.event.client.EventClient;
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
 import io.airlift.log.Logger;
 import io.airlift.tracetoken.TraceTokenManager;
 import org.eclipse.jetty.server.Request;
@@ -30,6 +32,8 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static io.airlift.http.server.HttpRequestEvent.createHttpRequestEvent;
 
 class DelimitedRequestLog
@@ -38,13 +42,20 @@ class DelimitedRequestLog
     private static final Logger log = Logger.get(DelimitedRequestLog.class);
     private static final String TEMP_FILE_EXTENSION = ".tmp";
     private static final String LOG_FILE_EXTENSION = ".log";
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
 
     // Tab-separated
     // Time, ip, method, url, user, agent, response code, request length, response length, response time
     private final TraceTokenManager traceTokenManager;
     private final EventClient eventClient;
     private final CurrentTimeMillisProvider currentTimeMillisProvider;
-    private final RollingFileAppender<HttpRequestEvent> fileAppender;
+    private final RequestLogSampler sampler;
+    private final HttpLogLayout httpLogLayout = new HttpLogLayout();
+    private final RollingFileAppender<String> fileAppender;
+
+    // when asynchronous, request threads add entries to the queue and a
+    // single writer thread formats them and writes them in large batches
+    private final RequestLogQueue queue;
 
     public DelimitedRequestLog(String filename, int retainDays, TraceTokenManager traceTokenManager, EventClient eventClient)
             throws IOException
@@ -59,18 +70,55 @@ class DelimitedRequestLog
             CurrentTimeMillisProvider currentTimeMillisProvider)
             throws IOException
     {
+        this(filename, retainDays, traceTokenManager, eventClient, currentTimeMillisProvider, 0, LogOverflowPolicy.BLOCK, new RequestLogStats());
+    }
+
+    /**
+     * @param queueSize the number of entries buffered for the writer thread, or
+     * zero to write entries synchronously on the request threads
+     */
+    public DelimitedRequestLog(String filename,
+            int retainDays,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            CurrentTimeMillisProvider currentTimeMillisProvider,
+            int queueSize,
+            LogOverflowPolicy overflowPolicy,
+            RequestLogStats stats)
+            throws IOException
+    {
+        this(filename, retainDays, traceTokenManager, eventClient, currentTimeMillisProvider, queueSize, overflowPolicy, stats, RequestLogSampler.keepAll(stats));
+    }
+
+    /**
+     * @param queueSize the number of entries buffered for the writer thread, or
+     * zero to write entries synchronously on the request threads
+     * @param sampler decides which requests are written and which are posted as events
+     */
+    public DelimitedRequestLog(String filename,
+            int retainDays,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            CurrentTimeMillisProvider currentTimeMillisProvider,
+            int queueSize,
+            LogOverflowPolicy overflowPolicy,
+            RequestLogStats stats,
+            RequestLogSampler sampler)
+            throws IOException
+    {
+        checkArgument(queueSize >= 0, "queueSize is negative");
         this.traceTokenManager = traceTokenManager;
         this.eventClient = eventClient;
         this.currentTimeMillisProvider = currentTimeMillisProvider;
+        this.sampler = checkNotNull(sampler, "sampler is null");
 
         ContextBase context = new ContextBase();
-        HttpLogLayout httpLogLayout = new HttpLogLayout();
 
         recoverTempFiles(filename);
 
         fileAppender = new RollingFileAppender<>();
-        SizeAndTimeBasedFNATP<HttpRequestEvent> triggeringPolicy = new SizeAndTimeBasedFNATP<>();
-        TimeBasedRollingPolicy<HttpRequestEvent> rollingPolicy = new TimeBasedRollingPolicy<>();
+        SizeAndTimeBasedFNATP<String> triggeringPolicy = new SizeAndTimeBasedFNATP<>();
+        TimeBasedRollingPolicy<String> rollingPolicy = new TimeBasedRollingPolicy<>();
 
         rollingPolicy.setContext(context);
         rollingPolicy.setFileNamePattern(filename + "-%d{yyyy-MM-dd}.%i.log.gz");
@@ -84,12 +132,20 @@ class DelimitedRequestLog
         triggeringPolicy.setMaxFileSize(String.valueOf(Long.MAX_VALUE));
         triggeringPolicy.start();
 
+        // entries are formatted before they are appended, so a single append can carry a whole batch
         fileAppender.setContext(context);
         fileAppender.setFile(filename);
         fileAppender.setAppend(true);
-        fileAppender.setLayout(httpLogLayout);
+        fileAppender.setLayout(new PreformattedLayout());
         fileAppender.setRollingPolicy(rollingPolicy);
         fileAppender.start();
+
+        if (queueSize > 0) {
+            queue = new RequestLogQueue(queueSize, overflowPolicy, stats, new TextSink());
+        }
+        else {
+            queue = null;
+        }
     }
 
     public void log(Request request, Response response)
@@ -97,9 +153,18 @@ class DelimitedRequestLog
         long currentTime = currentTimeMillisProvider.getCurrentTimeMillis();
         HttpRequestEvent event = createHttpRequestEvent(request, response, traceTokenManager, currentTime);
 
-        fileAppender.doAppend(event);
+        if (sampler.shouldLog(event)) {
+            if (queue == null) {
+                fileAppender.doAppend(httpLogLayout.doLayout(event));
+            }
+            else {
+                queue.enqueue(event);
+            }
+        }
 
-        eventClient.post(event);
+        if (sampler.shouldPostEvent(event)) {
+            eventClient.post(event);
+        }
     }
 
     public void start()
@@ -110,6 +175,9 @@ class DelimitedRequestLog
     public void stop()
             throws Exception
     {
+        if (queue != null) {
+            queue.stop();
+        }
         fileAppender.stop();
     }
 
@@ -151,6 +219,47 @@ class DelimitedRequestLog
     {
     }
 
+    private class TextSink
+            implements RequestLogQueue.Sink
+    {
+        private final StringBuilder buffer = new StringBuilder(WRITE_BUFFER_SIZE);
+
+        @Override
+        public void append(HttpRequestEvent event)
+        {
+            buffer.append(httpLogLayout.doLayout(event));
+        }
+
+        @Override
+        public void flush()
+        {
+            if (buffer.length() == 0) {
+                return;
+            }
+            try {
+                fileAppender.doAppend(buffer.toString());
+            }
+            finally {
+                // do not hold on to the memory of an unusually large batch
+                if (buffer.length() > WRITE_BUFFER_SIZE) {
+                    buffer.setLength(WRITE_BUFFER_SIZE);
+                    buffer.trimToSize();
+                }
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    private static class PreformattedLayout
+            extends LayoutBase<String>
+    {
+        @Override
+        public String doLayout(String lines)
+        {
+            return lines;
+        }
+    }
+
     private static void recoverTempFiles(String logPath)
     {
         // logback has a tendency to leave around temp files if it is interrupted
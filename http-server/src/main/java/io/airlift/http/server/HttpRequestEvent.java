@@ -25,6 +25,8 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.joda.time.DateTime;
 
+import javax.servlet.http.HttpServletRequest;
+
 import java.security.Principal;
 import java.util.Enumeration;
 
@@ -59,29 +61,7 @@ public class HttpRequestEvent
 
         long timeToLastByte = max(currentTimeInMillis - request.getTimeStamp(), 0);
 
-        ImmutableList.Builder<String> builder = ImmutableList.builder();
-        if (request.getRemoteAddr() != null) {
-            builder.add(request.getRemoteAddr());
-        }
-        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
-            String forwardedFor = e.nextElement();
-            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(forwardedFor));
-        }
-        String clientAddress = null;
-        ImmutableList<String> clientAddresses = builder.build();
-        for (String address : Lists.reverse(clientAddresses)) {
-            try {
-                if (!Inet4Networks.isPrivateNetworkAddress(address)) {
-                    clientAddress = address;
-                    break;
-                }
-            }
-            catch (IllegalArgumentException ignored) {
-            }
-        }
-        if (clientAddress == null) {
-            clientAddress = request.getRemoteAddr();
-        }
+        String clientAddress = getClientAddress(request);
 
         String requestUri = null;
         if (request.getUri() != null) {
@@ -122,6 +102,39 @@ public class HttpRequestEvent
         );
     }
 
+    /**
+     * Returns the address of the client that sent the request: the last
+     * non-private address in the X-Forwarded-For headers, or else the
+     * remote address.
+     */
+    static String getClientAddress(HttpServletRequest request)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        if (request.getRemoteAddr() != null) {
+            builder.add(request.getRemoteAddr());
+        }
+        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
+            String forwardedFor = e.nextElement();
+            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(forwardedFor));
+        }
+        String clientAddress = null;
+        ImmutableList<String> clientAddresses = builder.build();
+        for (String address : Lists.reverse(clientAddresses)) {
+            try {
+                if (!Inet4Networks.isPrivateNetworkAddress(address)) {
+                    clientAddress = address;
+                    break;
+                }
+            }
+            catch (IllegalArgumentException ignored) {
+            }
+        }
+        if (clientAddress == null) {
+            clientAddress = request.getRemoteAddr();
+        }
+        return clientAddress;
+    }
+
     private final DateTime timeStamp;
     private final String traceToken;
     private final String clientAddress;
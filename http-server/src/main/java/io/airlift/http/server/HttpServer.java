@@ -20,14 +20,18 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
 import io.airlift.event.client.EventClient;
 import io.airlift.http.server.HttpServerBinder.HttpResourceBinding;
+import io.airlift.http.server.HttpServerConfig.LogFormat;
+import io.airlift.log.Logger;
 import io.airlift.node.NodeInfo;
 import io.airlift.tracetoken.TraceTokenManager;
+import io.airlift.units.DataSize;
 import org.eclipse.jetty.jmx.MBeanContainer;
 import org.eclipse.jetty.security.ConstraintMapping;
 import org.eclipse.jetty.security.ConstraintSecurityHandler;
 import org.eclipse.jetty.security.LoginService;
 import org.eclipse.jetty.security.SecurityHandler;
 import org.eclipse.jetty.security.authentication.BasicAuthenticator;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -43,12 +47,12 @@ import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
-import org.eclipse.jetty.servlets.GzipFilter;
 import org.eclipse.jetty.util.security.Constraint;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ThreadPool;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.management.MBeanServer;
@@ -57,6 +61,8 @@ import javax.servlet.Servlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
@@ -68,10 +74,86 @@ import static java.lang.String.format;
 
 public class HttpServer
 {
+    private static final Logger log = Logger.get(HttpServer.class);
+
     private final Server server;
     private final ServerConnector httpConnector;
     private final ServerConnector httpsConnector;
     private final ServerConnector adminConnector;
+    private final VirtualThreadPool virtualThreadPool;
+    private final RequestLogStats requestLogStats;
+
+    public HttpServer(HttpServerInfo httpServerInfo,
+            NodeInfo nodeInfo,
+            HttpServerConfig config,
+            Servlet theServlet,
+            Map<String, String> parameters,
+            Set<Filter> filters,
+            Set<HttpResourceBinding> resources,
+            Servlet theAdminServlet,
+            Map<String, String> adminParameters,
+            Set<Filter> adminFilters,
+            MBeanServer mbeanServer,
+            LoginService loginService,
+            TraceTokenManager tokenManager,
+            RequestStats stats,
+            EventClient eventClient)
+            throws IOException
+    {
+        this(httpServerInfo,
+                nodeInfo,
+                config,
+                theServlet,
+                parameters,
+                filters,
+                resources,
+                theAdminServlet,
+                adminParameters,
+                adminFilters,
+                mbeanServer,
+                loginService,
+                tokenManager,
+                stats,
+                new RequestLogStats(),
+                eventClient);
+    }
+
+    public HttpServer(HttpServerInfo httpServerInfo,
+            NodeInfo nodeInfo,
+            HttpServerConfig config,
+            Servlet theServlet,
+            Map<String, String> parameters,
+            Set<Filter> filters,
+            Set<HttpResourceBinding> resources,
+            Servlet theAdminServlet,
+            Map<String, String> adminParameters,
+            Set<Filter> adminFilters,
+            MBeanServer mbeanServer,
+            LoginService loginService,
+            TraceTokenManager tokenManager,
+            RequestStats stats,
+            RequestLogStats requestLogStats,
+            EventClient eventClient)
+            throws IOException
+    {
+        this(httpServerInfo,
+                nodeInfo,
+                config,
+                theServlet,
+                parameters,
+                filters,
+                resources,
+                theAdminServlet,
+                adminParameters,
+                adminFilters,
+                mbeanServer,
+                loginService,
+                tokenManager,
+                stats,
+                requestLogStats,
+                new CompressionStats(),
+                eventClient);
+    }
 
     @SuppressWarnings({"deprecation"})
     public HttpServer(HttpServerInfo httpServerInfo,
@@ -88,6 +170,8 @@ public class HttpServer
             LoginService loginService,
             TraceTokenManager tokenManager,
             RequestStats stats,
+            RequestLogStats requestLogStats,
+            CompressionStats compressionStats,
             EventClient eventClient)
             throws IOException
     {
@@ -95,11 +179,39 @@ public class HttpServer
         Preconditions.checkNotNull(nodeInfo, "nodeInfo is null");
         Preconditions.checkNotNull(config, "config is null");
         Preconditions.checkNotNull(theServlet, "theServlet is null");
-
-        QueuedThreadPool threadPool = new QueuedThreadPool(config.getMaxThreads());
-        threadPool.setMinThreads(config.getMinThreads());
-        threadPool.setIdleTimeout(Ints.checkedCast(config.getThreadMaxIdleTime().toMillis()));
-        threadPool.setName("http-worker");
+        this.requestLogStats = Preconditions.checkNotNull(requestLogStats, "requestLogStats is null");
+        Preconditions.checkNotNull(compressionStats, "compressionStats is null");
+
+        ThreadPool threadPool;
+        if (config.isVirtualThreadsEnabled()) {
+            virtualThreadPool = new VirtualThreadPool(
+                    "http-worker",
+                    config.getVirtualThreadsPlatformThreads(),
+                    config.getVirtualThreadsMaxConcurrency(),
+                    config.getMaxThreads(),
+                    Ints.checkedCast(config.getThreadMaxIdleTime().toMillis()));
+            threadPool = virtualThreadPool;
+        }
+        else {
+            virtualThreadPool = null;
+            QueuedThreadPool queuedThreadPool;
+            if (config.getLifoQueueThreshold() > 0 || config.isAdmissionControlEnabled()) {
+                // admission control needs the queue to record how long each job waited
+                int lifoThreshold = config.getLifoQueueThreshold() > 0 ? config.getLifoQueueThreshold() : Integer.MAX_VALUE;
+                queuedThreadPool = new QueuedThreadPool(
+                        config.getMaxThreads(),
+                        config.getMinThreads(),
+                        Ints.checkedCast(config.getThreadMaxIdleTime().toMillis()),
+                        new AdaptiveLifoQueue(lifoThreshold));
+            }
+            else {
+                queuedThreadPool = new QueuedThreadPool(config.getMaxThreads());
+                queuedThreadPool.setMinThreads(config.getMinThreads());
+                queuedThreadPool.setIdleTimeout(Ints.checkedCast(config.getThreadMaxIdleTime().toMillis()));
+            }
+            queuedThreadPool.setName("http-worker");
+            threadPool = queuedThreadPool;
+        }
         server = new Server(threadPool);
 
         if (mbeanServer != null) {
@@ -110,12 +222,7 @@ public class HttpServer
 
         // set up HTTP connector
         if (config.isHttpEnabled()) {
-            HttpConfiguration httpConfiguration = new HttpConfiguration();
-            httpConfiguration.setSendServerVersion(false);
-            httpConfiguration.setSendXPoweredBy(false);
-            if (config.getMaxRequestHeaderSize() != null) {
-                httpConfiguration.setRequestHeaderSize(Ints.checkedCast(config.getMaxRequestHeaderSize().toBytes()));
-            }
+            HttpConfiguration httpConfiguration = createHttpConfiguration(config);
 
             // if https is enabled, set the CONFIDENTIAL and INTEGRAL redirection information
             if (config.isHttpsEnabled()) {
@@ -123,11 +230,11 @@ public class HttpServer
                 httpConfiguration.setSecurePort(httpServerInfo.getHttpsUri().getPort());
             }
 
-            httpConnector = new ServerConnector(server, new HttpConnectionFactory(httpConfiguration));
+            httpConnector = new SocketOptionsServerConnector(server, null, config.getHttpAcceptors(), config.getHttpSelectors(), config,
+                    createHttpConnectionFactory(httpConfiguration, config));
             httpConnector.setName("http");
             httpConnector.setPort(httpServerInfo.getHttpUri().getPort());
-            httpConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
-            httpConnector.setHost(nodeInfo.getBindIp().getHostAddress());
+            configureConnector(httpConnector, config, nodeInfo);
             server.addConnector(httpConnector);
         } else {
             httpConnector = null;
@@ -135,23 +242,18 @@ public class HttpServer
 
         // set up NIO-based HTTPS connector
         if (config.isHttpsEnabled()) {
-            HttpConfiguration httpsConfiguration = new HttpConfiguration();
-            httpsConfiguration.setSendServerVersion(false);
-            httpsConfiguration.setSendXPoweredBy(false);
-            if (config.getMaxRequestHeaderSize() != null) {
-                httpsConfiguration.setRequestHeaderSize(Ints.checkedCast(config.getMaxRequestHeaderSize().toBytes()));
-            }
+            HttpConfiguration httpsConfiguration = createHttpConfiguration(config);
             httpsConfiguration.addCustomizer(new SecureRequestCustomizer());
 
             SslContextFactory sslContextFactory = new SslContextFactory(config.getKeystorePath());
             sslContextFactory.setKeyStorePassword(config.getKeystorePassword());
             SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, "http/1.1");
 
-            httpsConnector = new ServerConnector(server, sslConnectionFactory, new HttpConnectionFactory(httpsConfiguration));
+            httpsConnector = new SocketOptionsServerConnector(server, null, config.getHttpsAcceptors(), config.getHttpsSelectors(), config,
+                    sslConnectionFactory, createHttpConnectionFactory(httpsConfiguration, config));
             httpsConnector.setName("https");
             httpsConnector.setPort(httpServerInfo.getHttpsUri().getPort());
-            httpsConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
-            httpsConnector.setHost(nodeInfo.getBindIp().getHostAddress());
+            configureConnector(httpsConnector, config, nodeInfo);
 
             server.addConnector(httpsConnector);
         } else {
@@ -160,12 +262,7 @@ public class HttpServer
 
         // set up NIO-based Admin connector
         if (theAdminServlet != null && config.isAdminEnabled()) {
-            HttpConfiguration adminConfiguration = new HttpConfiguration();
-            adminConfiguration.setSendServerVersion(false);
-            adminConfiguration.setSendXPoweredBy(false);
-            if (config.getMaxRequestHeaderSize() != null) {
-                adminConfiguration.setRequestHeaderSize(Ints.checkedCast(config.getMaxRequestHeaderSize().toBytes()));
-            }
+            HttpConfiguration adminConfiguration = createHttpConfiguration(config);
 
             QueuedThreadPool adminThreadPool = new QueuedThreadPool(config.getAdminMaxThreads());
             adminThreadPool.setName("http-admin-worker");
@@ -178,15 +275,16 @@ public class HttpServer
                 SslContextFactory sslContextFactory = new SslContextFactory(config.getKeystorePath());
                 sslContextFactory.setKeyStorePassword(config.getKeystorePassword());
                 SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, "http/1.1");
-                adminConnector = new ServerConnector(server, adminThreadPool, null, null, 0, -1, sslConnectionFactory, new HttpConnectionFactory(adminConfiguration));
+                adminConnector = new SocketOptionsServerConnector(server, adminThreadPool, config.getAdminAcceptors(), config.getAdminSelectors(), config,
+                        sslConnectionFactory, createHttpConnectionFactory(adminConfiguration, config));
             } else {
-                adminConnector = new ServerConnector(server, adminThreadPool, null, null, 0, -1, new HttpConnectionFactory(adminConfiguration));
+                adminConnector = new SocketOptionsServerConnector(server, adminThreadPool, config.getAdminAcceptors(), config.getAdminSelectors(), config,
+                        createHttpConnectionFactory(adminConfiguration, config));
             }
 
             adminConnector.setName("admin");
             adminConnector.setPort(httpServerInfo.getAdminUri().getPort());
-            adminConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
-            adminConnector.setHost(nodeInfo.getBindIp().getHostAddress());
+            configureConnector(adminConnector, config, nodeInfo);
 
             server.addConnector(adminConnector);
         } else {
@@ -213,10 +311,20 @@ public class HttpServer
         HandlerCollection handlers = new HandlerCollection();
 
         for (HttpResourceBinding resource : resources) {
-            handlers.addHandler(new ClassPathResourceHandler(resource.getBaseUri(), resource.getClassPathResourceBase(), resource.getWelcomeFiles()));
+            handlers.addHandler(new ClassPathResourceHandler(
+                    resource.getBaseUri(),
+                    resource.getClassPathResourceBase(),
+                    resource.getWelcomeFiles(),
+                    config.getResourceCacheSize(),
+                    config.getResourceMaxAge()));
+        }
+
+        CompressionFilter compressionFilter = null;
+        if (config.isCompressionEnabled()) {
+            compressionFilter = new CompressionFilter(config, compressionStats);
         }
 
-        handlers.addHandler(createServletContext(theServlet, parameters, filters, tokenManager, loginService, "http", "https"));
+        handlers.addHandler(createServletContext(theServlet, parameters, filters, compressionFilter, tokenManager, loginService, "http", "https"));
         RequestLogHandler logHandler = createLogHandler(config, tokenManager, eventClient);
         if (logHandler != null) {
             handlers.addHandler(logHandler);
@@ -232,7 +340,7 @@ public class HttpServer
 
         HandlerList rootHandlers = new HandlerList();
         if (theAdminServlet != null && config.isAdminEnabled()) {
-            rootHandlers.addHandler(createServletContext(theAdminServlet, adminParameters, adminFilters, tokenManager, loginService, "admin"));
+            rootHandlers.addHandler(createServletContext(theAdminServlet, adminParameters, adminFilters, compressionFilter, tokenManager, loginService, "admin"));
         }
         rootHandlers.addHandler(statsHandler);
         server.setHandler(rootHandlers);
@@ -241,6 +349,7 @@ public class HttpServer
     private static ServletContextHandler createServletContext(Servlet theServlet,
             Map<String, String> parameters,
             Set<Filter> filters,
+            @Nullable CompressionFilter compressionFilter,
             TraceTokenManager tokenManager,
             LoginService loginService,
             String... connectorNames)
@@ -253,7 +362,9 @@ public class HttpServer
         }
 
         // -- gzip response filter
-        context.addFilter(GzipFilter.class, "/*", null);
+        if (compressionFilter != null) {
+            context.addFilter(new FilterHolder(compressionFilter), "/*", null);
+        }
         // -- security handler
         if (loginService != null) {
             SecurityHandler securityHandler = createSecurityHandler(loginService);
@@ -313,7 +424,38 @@ public class HttpServer
             throw new IOException(format("Cannot create %s and path does not already exist", logPath.getAbsolutePath()));
         }
 
-        RequestLog requestLog = new DelimitedRequestLog(config.getLogPath(), Ints.checkedCast(config.getLogRetentionTime().roundTo(TimeUnit.DAYS)), tokenManager, eventClient);
+        int retainDays = Ints.checkedCast(config.getLogRetentionTime().roundTo(TimeUnit.DAYS));
+        int queueSize = config.isLogAsyncEnabled() ? config.getLogQueueSize() : 0;
+        RequestLogSampler sampler = new RequestLogSampler(
+                RequestLogSampler.parseRules(config.getLogSamplingRules()),
+                RequestLogSampler.parseRules(config.getEventSamplingRules()),
+                config.getSamplingSlowRequestThreshold(),
+                requestLogStats);
+        RequestLog requestLog;
+        if (config.getLogFormat() == LogFormat.BINARY) {
+            requestLog = new BinaryRequestLog(
+                    config.getLogPath(),
+                    retainDays,
+                    tokenManager,
+                    eventClient,
+                    new SystemCurrentTimeMillisProvider(),
+                    queueSize,
+                    config.getLogOverflowPolicy(),
+                    requestLogStats,
+                    sampler);
+        }
+        else {
+            requestLog = new DelimitedRequestLog(
+                    config.getLogPath(),
+                    retainDays,
+                    tokenManager,
+                    eventClient,
+                    new SystemCurrentTimeMillisProvider(),
+                    queueSize,
+                    config.getLogOverflowPolicy(),
+                    requestLogStats,
+                    sampler);
+        }
         logHandler.setRequestLog(requestLog);
 
         return logHandler;
@@ -326,6 +468,11 @@ public class HttpServer
         server.start();
         checkState(server.isStarted(), "server is not started");
 
+        // the acceptors and selectors are running, so everything from now on handles requests
+        if (virtualThreadPool != null) {
+            virtualThreadPool.startDispatching();
+        }
+
         // The combination of an NIO connector and an insufficient number of threads results
         // in a server that hangs after accepting connections. Jetty scales the number of
         // required threads based on the number of available processors in a non-trivial way,
@@ -344,6 +491,39 @@ public class HttpServer
         server.stop();
     }
 
+    private static HttpConfiguration createHttpConfiguration(HttpServerConfig config)
+    {
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setSendServerVersion(false);
+        httpConfiguration.setSendXPoweredBy(false);
+        if (config.getMaxRequestHeaderSize() != null) {
+            httpConfiguration.setRequestHeaderSize(Ints.checkedCast(config.getMaxRequestHeaderSize().toBytes()));
+        }
+        if (config.getMaxResponseHeaderSize() != null) {
+            httpConfiguration.setResponseHeaderSize(Ints.checkedCast(config.getMaxResponseHeaderSize().toBytes()));
+        }
+        if (config.getOutputBufferSize() != null) {
+            httpConfiguration.setOutputBufferSize(Ints.checkedCast(config.getOutputBufferSize().toBytes()));
+        }
+        return httpConfiguration;
+    }
+
+    private static HttpConnectionFactory createHttpConnectionFactory(HttpConfiguration httpConfiguration, HttpServerConfig config)
+    {
+        HttpConnectionFactory connectionFactory = new HttpConnectionFactory(httpConfiguration);
+        if (config.getInputBufferSize() != null) {
+            connectionFactory.setInputBufferSize(Ints.checkedCast(config.getInputBufferSize().toBytes()));
+        }
+        return connectionFactory;
+    }
+
+    private static void configureConnector(ServerConnector connector, HttpServerConfig config, NodeInfo nodeInfo)
+    {
+        connector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
+        connector.setHost(nodeInfo.getBindIp().getHostAddress());
+        connector.setAcceptQueueSize(config.getAcceptQueueSize());
+    }
+
     private static void checkSufficientThreads(Connector connector, String name)
     {
         if (connector == null) {
@@ -356,4 +536,46 @@ public class HttpServer
         }
 
     }
+
+    /**
+     * Applies the configured socket buffer sizes to each accepted connection.
+     */
+    private static class SocketOptionsServerConnector
+            extends ServerConnector
+    {
+        private final Integer receiveBufferSize;
+        private final Integer sendBufferSize;
+
+        public SocketOptionsServerConnector(Server server, Executor executor, int acceptors, int selectors, HttpServerConfig config, ConnectionFactory... factories)
+        {
+            super(server, executor, null, null, acceptors, selectors, factories);
+            receiveBufferSize = toBytes(config.getSocketReceiveBufferSize());
+            sendBufferSize = toBytes(config.getSocketSendBufferSize());
+        }
+
+        @Override
+        protected void configure(Socket socket)
+        {
+            super.configure(socket);
+            try {
+                if (receiveBufferSize != null) {
+                    socket.setReceiveBufferSize(receiveBufferSize);
+                }
+                if (sendBufferSize != null) {
+                    socket.setSendBufferSize(sendBufferSize);
+                }
+            }
+            catch (SocketException e) {
+                log.debug(e, "Failed to set socket buffer sizes");
+            }
+        }
+
+        private static Integer toBytes(DataSize size)
+        {
+            if (size == null) {
+                return null;
+            }
+            return Ints.checkedCast(size.toBytes());
+        }
+    }
 }
@@ -15,12 +15,17 @@
  */
 package io.airlift.http.server;
 
+import com.google.common.base.Splitter;
 import io.airlift.configuration.Config;
 import io.airlift.configuration.DefunctConfig;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import java.util.concurrent.TimeUnit;
 
@@ -52,12 +57,63 @@ public class HttpServerConfig
 
     private String logPath = "var/log/http-request.log";
     private Duration logRetentionTime = new Duration(15, TimeUnit.DAYS);
+    private LogFormat logFormat = LogFormat.TEXT;
+    private boolean logAsyncEnabled = true;
+    private int logQueueSize = 10_000;
+    private LogOverflowPolicy logOverflowPolicy = LogOverflowPolicy.BLOCK;
+    private String logSamplingRules;
+    private String eventSamplingRules;
+    private Duration samplingSlowRequestThreshold;
 
     private int minThreads = 2;
     private int maxThreads = 200;
     private Duration threadMaxIdleTime = new Duration(1, TimeUnit.MINUTES);
     private Duration networkMaxIdleTime = new Duration(200, TimeUnit.SECONDS);
     private DataSize maxRequestHeaderSize;
+    private DataSize resourceCacheSize = new DataSize(16, DataSize.Unit.MEGABYTE);
+    private Duration resourceMaxAge = new Duration(5, TimeUnit.MINUTES);
+    private boolean perRouteStatsEnabled;
+    private String perRouteStatsPathTemplates;
+    private int perRouteStatsMaxRoutes = 100;
+    private boolean admissionControlEnabled;
+    private int admissionMaxConcurrentRequests;
+    private Duration admissionTargetQueueTime = new Duration(50, TimeUnit.MILLISECONDS);
+    private Duration admissionInterval = new Duration(100, TimeUnit.MILLISECONDS);
+    private Duration admissionMaxQueueTime = new Duration(1, TimeUnit.SECONDS);
+    private String admissionExemptPaths;
+    private String admissionPriorityHeader;
+    private Duration admissionRetryAfter = new Duration(1, TimeUnit.SECONDS);
+    private int lifoQueueThreshold;
+    private boolean virtualThreadsEnabled;
+    private int virtualThreadsMaxConcurrency = 10_000;
+    private int virtualThreadsPlatformThreads = 16;
+    private boolean rateLimitEnabled;
+    private RateLimitKey rateLimitKey = RateLimitKey.CLIENT_ADDRESS;
+    private boolean rateLimitPerRoute;
+    private double rateLimitRequestsPerSecond = 100;
+    private int rateLimitBurst = 100;
+    private int rateLimitMaxKeys = 10_000;
+    private Duration rateLimitIdleTimeout = new Duration(5, TimeUnit.MINUTES);
+    private String rateLimitTrustedProxies;
+    private int httpAcceptors = -1;
+    private int httpSelectors = -1;
+    private int httpsAcceptors = -1;
+    private int httpsSelectors = -1;
+    private int adminAcceptors = 0;
+    private int adminSelectors = -1;
+    private int acceptQueueSize;
+    private DataSize socketReceiveBufferSize;
+    private DataSize socketSendBufferSize;
+    private DataSize inputBufferSize;
+    private DataSize outputBufferSize;
+    private DataSize maxResponseHeaderSize;
+    private boolean compressionEnabled = true;
+    private int compressionLevel = 6;
+    private DataSize compressionMinSize = new DataSize(1, DataSize.Unit.KILOBYTE);
+    private String compressionMimeTypes;
+    private String compressionExcludedMimeTypes;
+    private String compressionExcludedPaths;
+    private int compressionDeflaterPoolSize = 64;
 
     private String userAuthFile;
 
@@ -198,6 +254,106 @@ public class HttpServerConfig
         return this;
     }
 
+    @NotNull
+    public LogFormat getLogFormat()
+    {
+        return logFormat;
+    }
+
+    @Config("http-server.log.format")
+    public HttpServerConfig setLogFormat(LogFormat logFormat)
+    {
+        this.logFormat = logFormat;
+        return this;
+    }
+
+    public boolean isLogAsyncEnabled()
+    {
+        return logAsyncEnabled;
+    }
+
+    @Config("http-server.log.async.enabled")
+    public HttpServerConfig setLogAsyncEnabled(boolean logAsyncEnabled)
+    {
+        this.logAsyncEnabled = logAsyncEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getLogQueueSize()
+    {
+        return logQueueSize;
+    }
+
+    @Config("http-server.log.async.queue-size")
+    public HttpServerConfig setLogQueueSize(int logQueueSize)
+    {
+        this.logQueueSize = logQueueSize;
+        return this;
+    }
+
+    @NotNull
+    public LogOverflowPolicy getLogOverflowPolicy()
+    {
+        return logOverflowPolicy;
+    }
+
+    @Config("http-server.log.async.overflow-policy")
+    public HttpServerConfig setLogOverflowPolicy(LogOverflowPolicy logOverflowPolicy)
+    {
+        this.logOverflowPolicy = logOverflowPolicy;
+        return this;
+    }
+
+    public String getLogSamplingRules()
+    {
+        return logSamplingRules;
+    }
+
+    @Config("http-server.log.sampling.rules")
+    public HttpServerConfig setLogSamplingRules(String logSamplingRules)
+    {
+        this.logSamplingRules = logSamplingRules;
+        return this;
+    }
+
+    public String getEventSamplingRules()
+    {
+        return eventSamplingRules;
+    }
+
+    @Config("http-server.log.event-sampling.rules")
+    public HttpServerConfig setEventSamplingRules(String eventSamplingRules)
+    {
+        this.eventSamplingRules = eventSamplingRules;
+        return this;
+    }
+
+    public Duration getSamplingSlowRequestThreshold()
+    {
+        return samplingSlowRequestThreshold;
+    }
+
+    @Config("http-server.log.sampling.slow-request-threshold")
+    public HttpServerConfig setSamplingSlowRequestThreshold(Duration samplingSlowRequestThreshold)
+    {
+        this.samplingSlowRequestThreshold = samplingSlowRequestThreshold;
+        return this;
+    }
+
+    @AssertTrue(message = "sampling rules must be comma separated <path-prefix>[:<status-class>]=<rate>")
+    public boolean isSamplingRulesValid()
+    {
+        try {
+            RequestLogSampler.parseRules(logSamplingRules);
+            RequestLogSampler.parseRules(eventSamplingRules);
+            return true;
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     public String getUserAuthFile()
     {
         return userAuthFile;
@@ -282,4 +438,646 @@ public class HttpServerConfig
         this.maxRequestHeaderSize = maxRequestHeaderSize;
         return this;
     }
+
+    @NotNull
+    public DataSize getResourceCacheSize()
+    {
+        return resourceCacheSize;
+    }
+
+    @Config("http-server.resources.cache-size")
+    public HttpServerConfig setResourceCacheSize(DataSize resourceCacheSize)
+    {
+        this.resourceCacheSize = resourceCacheSize;
+        return this;
+    }
+
+    @NotNull
+    public Duration getResourceMaxAge()
+    {
+        return resourceMaxAge;
+    }
+
+    @Config("http-server.resources.max-age")
+    public HttpServerConfig setResourceMaxAge(Duration resourceMaxAge)
+    {
+        this.resourceMaxAge = resourceMaxAge;
+        return this;
+    }
+
+    public boolean isPerRouteStatsEnabled()
+    {
+        return perRouteStatsEnabled;
+    }
+
+    @Config("http-server.stats.per-route.enabled")
+    public HttpServerConfig setPerRouteStatsEnabled(boolean perRouteStatsEnabled)
+    {
+        this.perRouteStatsEnabled = perRouteStatsEnabled;
+        return this;
+    }
+
+    public String getPerRouteStatsPathTemplates()
+    {
+        return perRouteStatsPathTemplates;
+    }
+
+    @Config("http-server.stats.per-route.path-templates")
+    public HttpServerConfig setPerRouteStatsPathTemplates(String perRouteStatsPathTemplates)
+    {
+        this.perRouteStatsPathTemplates = perRouteStatsPathTemplates;
+        return this;
+    }
+
+    @Min(0)
+    public int getPerRouteStatsMaxRoutes()
+    {
+        return perRouteStatsMaxRoutes;
+    }
+
+    @Config("http-server.stats.per-route.max-routes")
+    public HttpServerConfig setPerRouteStatsMaxRoutes(int perRouteStatsMaxRoutes)
+    {
+        this.perRouteStatsMaxRoutes = perRouteStatsMaxRoutes;
+        return this;
+    }
+
+    @AssertTrue(message = "per-route stats path templates must start with '/'")
+    public boolean isPerRouteStatsPathTemplatesValid()
+    {
+        if (perRouteStatsPathTemplates == null) {
+            return true;
+        }
+        for (String template : Splitter.on(',').trimResults().omitEmptyStrings().split(perRouteStatsPathTemplates)) {
+            if (!template.startsWith("/")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isAdmissionControlEnabled()
+    {
+        return admissionControlEnabled;
+    }
+
+    @Config("http-server.admission.enabled")
+    public HttpServerConfig setAdmissionControlEnabled(boolean admissionControlEnabled)
+    {
+        this.admissionControlEnabled = admissionControlEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public int getAdmissionMaxConcurrentRequests()
+    {
+        return admissionMaxConcurrentRequests;
+    }
+
+    @Config("http-server.admission.max-concurrent-requests")
+    public HttpServerConfig setAdmissionMaxConcurrentRequests(int admissionMaxConcurrentRequests)
+    {
+        this.admissionMaxConcurrentRequests = admissionMaxConcurrentRequests;
+        return this;
+    }
+
+    @NotNull
+    public Duration getAdmissionTargetQueueTime()
+    {
+        return admissionTargetQueueTime;
+    }
+
+    @Config("http-server.admission.target-queue-time")
+    public HttpServerConfig setAdmissionTargetQueueTime(Duration admissionTargetQueueTime)
+    {
+        this.admissionTargetQueueTime = admissionTargetQueueTime;
+        return this;
+    }
+
+    @NotNull
+    public Duration getAdmissionInterval()
+    {
+        return admissionInterval;
+    }
+
+    @Config("http-server.admission.interval")
+    public HttpServerConfig setAdmissionInterval(Duration admissionInterval)
+    {
+        this.admissionInterval = admissionInterval;
+        return this;
+    }
+
+    @NotNull
+    public Duration getAdmissionMaxQueueTime()
+    {
+        return admissionMaxQueueTime;
+    }
+
+    @Config("http-server.admission.max-queue-time")
+    public HttpServerConfig setAdmissionMaxQueueTime(Duration admissionMaxQueueTime)
+    {
+        this.admissionMaxQueueTime = admissionMaxQueueTime;
+        return this;
+    }
+
+    public String getAdmissionExemptPaths()
+    {
+        return admissionExemptPaths;
+    }
+
+    @Config("http-server.admission.exempt-paths")
+    public HttpServerConfig setAdmissionExemptPaths(String admissionExemptPaths)
+    {
+        this.admissionExemptPaths = admissionExemptPaths;
+        return this;
+    }
+
+    public String getAdmissionPriorityHeader()
+    {
+        return admissionPriorityHeader;
+    }
+
+    @Config("http-server.admission.priority-header")
+    public HttpServerConfig setAdmissionPriorityHeader(String admissionPriorityHeader)
+    {
+        this.admissionPriorityHeader = admissionPriorityHeader;
+        return this;
+    }
+
+    @NotNull
+    public Duration getAdmissionRetryAfter()
+    {
+        return admissionRetryAfter;
+    }
+
+    @Config("http-server.admission.retry-after")
+    public HttpServerConfig setAdmissionRetryAfter(Duration admissionRetryAfter)
+    {
+        this.admissionRetryAfter = admissionRetryAfter;
+        return this;
+    }
+
+    @Min(0)
+    public int getLifoQueueThreshold()
+    {
+        return lifoQueueThreshold;
+    }
+
+    @Config("http-server.threads.lifo-queue-threshold")
+    public HttpServerConfig setLifoQueueThreshold(int lifoQueueThreshold)
+    {
+        this.lifoQueueThreshold = lifoQueueThreshold;
+        return this;
+    }
+
+    public boolean isVirtualThreadsEnabled()
+    {
+        return virtualThreadsEnabled;
+    }
+
+    @Config("http-server.threads.virtual.enabled")
+    public HttpServerConfig setVirtualThreadsEnabled(boolean virtualThreadsEnabled)
+    {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getVirtualThreadsMaxConcurrency()
+    {
+        return virtualThreadsMaxConcurrency;
+    }
+
+    @Config("http-server.threads.virtual.max-concurrency")
+    public HttpServerConfig setVirtualThreadsMaxConcurrency(int virtualThreadsMaxConcurrency)
+    {
+        this.virtualThreadsMaxConcurrency = virtualThreadsMaxConcurrency;
+        return this;
+    }
+
+    @Min(1)
+    public int getVirtualThreadsPlatformThreads()
+    {
+        return virtualThreadsPlatformThreads;
+    }
+
+    @Config("http-server.threads.virtual.platform-threads")
+    public HttpServerConfig setVirtualThreadsPlatformThreads(int virtualThreadsPlatformThreads)
+    {
+        this.virtualThreadsPlatformThreads = virtualThreadsPlatformThreads;
+        return this;
+    }
+
+    @AssertTrue(message = "admission target queue time must not exceed max queue time")
+    public boolean isAdmissionQueueTimeValid()
+    {
+        if (admissionTargetQueueTime == null || admissionMaxQueueTime == null) {
+            return true;
+        }
+        return admissionTargetQueueTime.compareTo(admissionMaxQueueTime) <= 0;
+    }
+
+    public boolean isRateLimitEnabled()
+    {
+        return rateLimitEnabled;
+    }
+
+    @Config("http-server.rate-limit.enabled")
+    public HttpServerConfig setRateLimitEnabled(boolean rateLimitEnabled)
+    {
+        this.rateLimitEnabled = rateLimitEnabled;
+        return this;
+    }
+
+    @NotNull
+    public RateLimitKey getRateLimitKey()
+    {
+        return rateLimitKey;
+    }
+
+    @Config("http-server.rate-limit.key")
+    public HttpServerConfig setRateLimitKey(RateLimitKey rateLimitKey)
+    {
+        this.rateLimitKey = rateLimitKey;
+        return this;
+    }
+
+    public boolean isRateLimitPerRoute()
+    {
+        return rateLimitPerRoute;
+    }
+
+    @Config("http-server.rate-limit.per-route")
+    public HttpServerConfig setRateLimitPerRoute(boolean rateLimitPerRoute)
+    {
+        this.rateLimitPerRoute = rateLimitPerRoute;
+        return this;
+    }
+
+    @DecimalMin("0.001")
+    public double getRateLimitRequestsPerSecond()
+    {
+        return rateLimitRequestsPerSecond;
+    }
+
+    @Config("http-server.rate-limit.requests-per-second")
+    public HttpServerConfig setRateLimitRequestsPerSecond(double rateLimitRequestsPerSecond)
+    {
+        this.rateLimitRequestsPerSecond = rateLimitRequestsPerSecond;
+        return this;
+    }
+
+    @Min(1)
+    public int getRateLimitBurst()
+    {
+        return rateLimitBurst;
+    }
+
+    @Config("http-server.rate-limit.burst")
+    public HttpServerConfig setRateLimitBurst(int rateLimitBurst)
+    {
+        this.rateLimitBurst = rateLimitBurst;
+        return this;
+    }
+
+    @Min(0)
+    public int getRateLimitMaxKeys()
+    {
+        return rateLimitMaxKeys;
+    }
+
+    @Config("http-server.rate-limit.max-keys")
+    public HttpServerConfig setRateLimitMaxKeys(int rateLimitMaxKeys)
+    {
+        this.rateLimitMaxKeys = rateLimitMaxKeys;
+        return this;
+    }
+
+    @NotNull
+    public Duration getRateLimitIdleTimeout()
+    {
+        return rateLimitIdleTimeout;
+    }
+
+    @Config("http-server.rate-limit.idle-timeout")
+    public HttpServerConfig setRateLimitIdleTimeout(Duration rateLimitIdleTimeout)
+    {
+        this.rateLimitIdleTimeout = rateLimitIdleTimeout;
+        return this;
+    }
+
+    public String getRateLimitTrustedProxies()
+    {
+        return rateLimitTrustedProxies;
+    }
+
+    @Config("http-server.rate-limit.trusted-proxies")
+    public HttpServerConfig setRateLimitTrustedProxies(String rateLimitTrustedProxies)
+    {
+        this.rateLimitTrustedProxies = rateLimitTrustedProxies;
+        return this;
+    }
+
+    @AssertTrue(message = "rate limit trusted proxies must be comma separated CIDR networks")
+    public boolean isRateLimitTrustedProxiesValid()
+    {
+        try {
+            RateLimitFilter.parseNetworks(rateLimitTrustedProxies);
+            return true;
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Min(-1)
+    public int getHttpAcceptors()
+    {
+        return httpAcceptors;
+    }
+
+    @Config("http-server.http.acceptors")
+    public HttpServerConfig setHttpAcceptors(int httpAcceptors)
+    {
+        this.httpAcceptors = httpAcceptors;
+        return this;
+    }
+
+    @Min(-1)
+    public int getHttpSelectors()
+    {
+        return httpSelectors;
+    }
+
+    @Config("http-server.http.selectors")
+    public HttpServerConfig setHttpSelectors(int httpSelectors)
+    {
+        this.httpSelectors = httpSelectors;
+        return this;
+    }
+
+    @Min(-1)
+    public int getHttpsAcceptors()
+    {
+        return httpsAcceptors;
+    }
+
+    @Config("http-server.https.acceptors")
+    public HttpServerConfig setHttpsAcceptors(int httpsAcceptors)
+    {
+        this.httpsAcceptors = httpsAcceptors;
+        return this;
+    }
+
+    @Min(-1)
+    public int getHttpsSelectors()
+    {
+        return httpsSelectors;
+    }
+
+    @Config("http-server.https.selectors")
+    public HttpServerConfig setHttpsSelectors(int httpsSelectors)
+    {
+        this.httpsSelectors = httpsSelectors;
+        return this;
+    }
+
+    @Min(-1)
+    public int getAdminAcceptors()
+    {
+        return adminAcceptors;
+    }
+
+    @Config("http-server.admin.acceptors")
+    public HttpServerConfig setAdminAcceptors(int adminAcceptors)
+    {
+        this.adminAcceptors = adminAcceptors;
+        return this;
+    }
+
+    @Min(-1)
+    public int getAdminSelectors()
+    {
+        return adminSelectors;
+    }
+
+    @Config("http-server.admin.selectors")
+    public HttpServerConfig setAdminSelectors(int adminSelectors)
+    {
+        this.adminSelectors = adminSelectors;
+        return this;
+    }
+
+    @Min(0)
+    public int getAcceptQueueSize()
+    {
+        return acceptQueueSize;
+    }
+
+    @Config("http-server.accept-queue-size")
+    public HttpServerConfig setAcceptQueueSize(int acceptQueueSize)
+    {
+        this.acceptQueueSize = acceptQueueSize;
+        return this;
+    }
+
+    public DataSize getSocketReceiveBufferSize()
+    {
+        return socketReceiveBufferSize;
+    }
+
+    @Config("http-server.socket.receive-buffer-size")
+    public HttpServerConfig setSocketReceiveBufferSize(DataSize socketReceiveBufferSize)
+    {
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+        return this;
+    }
+
+    public DataSize getSocketSendBufferSize()
+    {
+        return socketSendBufferSize;
+    }
+
+    @Config("http-server.socket.send-buffer-size")
+    public HttpServerConfig setSocketSendBufferSize(DataSize socketSendBufferSize)
+    {
+        this.socketSendBufferSize = socketSendBufferSize;
+        return this;
+    }
+
+    public DataSize getInputBufferSize()
+    {
+        return inputBufferSize;
+    }
+
+    @Config("http-server.input-buffer-size")
+    public HttpServerConfig setInputBufferSize(DataSize inputBufferSize)
+    {
+        this.inputBufferSize = inputBufferSize;
+        return this;
+    }
+
+    public DataSize getOutputBufferSize()
+    {
+        return outputBufferSize;
+    }
+
+    @Config("http-server.output-buffer-size")
+    public HttpServerConfig setOutputBufferSize(DataSize outputBufferSize)
+    {
+        this.outputBufferSize = outputBufferSize;
+        return this;
+    }
+
+    public DataSize getMaxResponseHeaderSize()
+    {
+        return maxResponseHeaderSize;
+    }
+
+    @Config("http-server.max-response-header-size")
+    public HttpServerConfig setMaxResponseHeaderSize(DataSize maxResponseHeaderSize)
+    {
+        this.maxResponseHeaderSize = maxResponseHeaderSize;
+        return this;
+    }
+
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    @Config("http-server.compression.enabled")
+    public HttpServerConfig setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    @Min(1)
+    @Max(9)
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    @Config("http-server.compression.level")
+    public HttpServerConfig setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    @NotNull
+    public DataSize getCompressionMinSize()
+    {
+        return compressionMinSize;
+    }
+
+    @Config("http-server.compression.min-size")
+    public HttpServerConfig setCompressionMinSize(DataSize compressionMinSize)
+    {
+        this.compressionMinSize = compressionMinSize;
+        return this;
+    }
+
+    public String getCompressionMimeTypes()
+    {
+        return compressionMimeTypes;
+    }
+
+    @Config("http-server.compression.mime-types")
+    public HttpServerConfig setCompressionMimeTypes(String compressionMimeTypes)
+    {
+        this.compressionMimeTypes = compressionMimeTypes;
+        return this;
+    }
+
+    public String getCompressionExcludedMimeTypes()
+    {
+        return compressionExcludedMimeTypes;
+    }
+
+    @Config("http-server.compression.excluded-mime-types")
+    public HttpServerConfig setCompressionExcludedMimeTypes(String compressionExcludedMimeTypes)
+    {
+        this.compressionExcludedMimeTypes = compressionExcludedMimeTypes;
+        return this;
+    }
+
+    public String getCompressionExcludedPaths()
+    {
+        return compressionExcludedPaths;
+    }
+
+    @Config("http-server.compression.excluded-paths")
+    public HttpServerConfig setCompressionExcludedPaths(String compressionExcludedPaths)
+    {
+        this.compressionExcludedPaths = compressionExcludedPaths;
+        return this;
+    }
+
+    @Min(1)
+    public int getCompressionDeflaterPoolSize()
+    {
+        return compressionDeflaterPoolSize;
+    }
+
+    @Config("http-server.compression.deflater-pool-size")
+    public HttpServerConfig setCompressionDeflaterPoolSize(int compressionDeflaterPoolSize)
+    {
+        this.compressionDeflaterPoolSize = compressionDeflaterPoolSize;
+        return this;
+    }
+
+    @AssertTrue(message = "selectors must be -1 for the Jetty default or greater than zero")
+    public boolean isSelectorsValid()
+    {
+        return httpSelectors != 0 && httpsSelectors != 0 && adminSelectors != 0;
+    }
+
+    public enum LogFormat
+    {
+        /**
+         * Tab separated text, rotated and compressed by logback.
+         */
+        TEXT,
+        /**
+         * Compressed binary blocks with a time index, see {@link BinaryRequestLogReader}.
+         */
+        BINARY
+    }
+
+    /**
+     * What requests are rate limited by.
+     */
+    public enum RateLimitKey
+    {
+        /**
+         * The client address, resolved through X-Forwarded-For.
+         */
+        CLIENT_ADDRESS,
+        /**
+         * The authenticated user, or the client address of anonymous requests.
+         */
+        USER,
+        /**
+         * The route, so each route has a single limit shared by all clients.
+         */
+        ROUTE
+    }
+
+    /**
+     * What a request thread does when the asynchronous request log queue is full.
+     */
+    public enum LogOverflowPolicy
+    {
+        /**
+         * Wait until the writer has made room, so no entries are lost.
+         */
+        BLOCK,
+        /**
+         * Discard the entry, so requests are never delayed by the log.
+         */
+        DROP
+    }
 }
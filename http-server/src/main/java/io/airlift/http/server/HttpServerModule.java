@@ -61,11 +61,21 @@ public class HttpServerModule
         binder.bind(HttpServer.class).toProvider(HttpServerProvider.class).in(Scopes.SINGLETON);
         binder.bind(HttpServerInfo.class).in(Scopes.SINGLETON);
         binder.bind(RequestStats.class).in(Scopes.SINGLETON);
-        Multibinder.newSetBinder(binder, Filter.class, TheServlet.class);
+        binder.bind(RequestLogStats.class).in(Scopes.SINGLETON);
+        binder.bind(CompressionStats.class).in(Scopes.SINGLETON);
+        binder.bind(AdmissionControlFilter.class).in(Scopes.SINGLETON);
+        binder.bind(RateLimitFilter.class).in(Scopes.SINGLETON);
+        Multibinder<Filter> filterBinder = Multibinder.newSetBinder(binder, Filter.class, TheServlet.class);
+        filterBinder.addBinding().to(AdmissionControlFilter.class);
+        filterBinder.addBinding().to(RateLimitFilter.class);
         Multibinder.newSetBinder(binder, Filter.class, TheAdminServlet.class);
         Multibinder.newSetBinder(binder, HttpResourceBinding.class, TheServlet.class);
 
         newExporter(binder).export(RequestStats.class).withGeneratedName();
+        newExporter(binder).export(RequestLogStats.class).withGeneratedName();
+        newExporter(binder).export(CompressionStats.class).withGeneratedName();
+        newExporter(binder).export(AdmissionControlFilter.class).withGeneratedName();
+        newExporter(binder).export(RateLimitFilter.class).withGeneratedName();
 
         ConfigurationModule.bindConfig(binder).to(HttpServerConfig.class);
 
@@ -52,6 +52,8 @@ public class HttpServerProvider
     private MBeanServer mbeanServer;
     private LoginService loginService;
     private final RequestStats stats;
+    private RequestLogStats requestLogStats = new RequestLogStats();
+    private CompressionStats compressionStats = new CompressionStats();
     private final Set<Filter> filters;
     private final Set<Filter> adminFilters;
     private TraceTokenManager traceTokenManager;
@@ -119,6 +121,18 @@ public class HttpServerProvider
         this.loginService = loginService;
     }
 
+    @Inject(optional = true)
+    public void setRequestLogStats(RequestLogStats requestLogStats)
+    {
+        this.requestLogStats = requestLogStats;
+    }
+
+    @Inject(optional = true)
+    public void setCompressionStats(CompressionStats compressionStats)
+    {
+        this.compressionStats = compressionStats;
+    }
+
     @Inject(optional = true)
     public void setTokenManager(@Nullable TraceTokenManager tokenManager)
     {
@@ -142,6 +156,8 @@ public class HttpServerProvider
                     loginService,
                     traceTokenManager,
                     stats,
+                    requestLogStats,
+                    compressionStats,
                     eventClient);
             httpServer.start();
             return httpServer;
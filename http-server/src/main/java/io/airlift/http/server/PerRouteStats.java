@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link RouteStats} for each route of the server.
+ * <p>
+ * A request's route is the value of the {@value #ROUTE_ATTRIBUTE} request
+ * attribute, which the JAX-RS integration sets to the matched resource
+ * method, or else the first configured path template matching the request
+ * path. Templates are literal paths in which a {@code {name}} segment matches
+ * any single path segment, such as {@code /v1/query/{queryId}}. Requests
+ * with no route are counted under {@value #OTHER}.
+ * <p>
+ * Template routes are registered up front, so looking up a route never
+ * locks. To bound the memory used, once there are {@code maxRoutes} routes,
+ * requests for new routes are also counted under {@value #OTHER}.
+ */
+public class PerRouteStats
+{
+    public static final String ROUTE_ATTRIBUTE = "io.airlift.http.server.route";
+    public static final String OTHER = "other";
+
+    private static final Pattern TEMPLATE_VARIABLE = Pattern.compile("\\{[^/{}]+\\}");
+
+    private final int maxRoutes;
+    private final List<TemplateRoute> templates;
+    private final ConcurrentMap<String, RouteStats> routes = new ConcurrentHashMap<>();
+    private final RouteStats other = new RouteStats();
+
+    public PerRouteStats(List<String> pathTemplates, int maxRoutes)
+    {
+        checkNotNull(pathTemplates, "pathTemplates is null");
+        checkArgument(maxRoutes >= 0, "maxRoutes is negative");
+        this.maxRoutes = maxRoutes;
+
+        ImmutableList.Builder<TemplateRoute> templates = ImmutableList.builder();
+        for (String template : pathTemplates) {
+            RouteStats stats = new RouteStats();
+            if (routes.putIfAbsent(template, stats) == null) {
+                templates.add(new TemplateRoute(compileTemplate(template), stats));
+            }
+        }
+        this.templates = templates.build();
+    }
+
+    /**
+     * Returns the stats of the specified route, or of the template matching
+     * the path when the route is null.
+     */
+    public RouteStats getRouteStats(@Nullable String route, String path)
+    {
+        if (route == null) {
+            for (TemplateRoute template : templates) {
+                if (template.getPattern().matcher(path).matches()) {
+                    return template.getStats();
+                }
+            }
+            return other;
+        }
+
+        RouteStats stats = routes.get(route);
+        if (stats != null) {
+            return stats;
+        }
+        // the bound is approximate under concurrent inserts, which is fine for stats
+        if (routes.size() >= maxRoutes) {
+            return other;
+        }
+        stats = new RouteStats();
+        RouteStats existing = routes.putIfAbsent(route, stats);
+        return (existing == null) ? stats : existing;
+    }
+
+    public Map<String, RouteStats> getRoutes()
+    {
+        return ImmutableMap.<String, RouteStats>builder()
+                .putAll(routes)
+                .put(OTHER, other)
+                .build();
+    }
+
+    @Managed
+    public int getRouteCount()
+    {
+        return routes.size();
+    }
+
+    @Managed(description = "Total request count of each route")
+    public Map<String, Long> getRequestCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, RouteStats> entry : getRoutes().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getRequestCount());
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Client error (4xx) count of each route")
+    public Map<String, Long> getClientErrorCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, RouteStats> entry : getRoutes().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getClientError());
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Server error (5xx) count of each route")
+    public Map<String, Long> getServerErrorCounts()
+    {
+        ImmutableSortedMap.Builder<String, Long> counts = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, RouteStats> entry : getRoutes().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getServerError());
+        }
+        return counts.build();
+    }
+
+    @Managed(description = "Recent p50 of the request time in milliseconds of each route")
+    public Map<String, Double> getRequestTimeP50()
+    {
+        ImmutableSortedMap.Builder<String, Double> times = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, RouteStats> entry : getRoutes().entrySet()) {
+            times.put(entry.getKey(), entry.getValue().getRequestTime().getOneMinute().getP50());
+        }
+        return times.build();
+    }
+
+    @Managed(description = "Recent p99 of the request time in milliseconds of each route")
+    public Map<String, Double> getRequestTimeP99()
+    {
+        ImmutableSortedMap.Builder<String, Double> times = ImmutableSortedMap.naturalOrder();
+        for (Entry<String, RouteStats> entry : getRoutes().entrySet()) {
+            times.put(entry.getKey(), entry.getValue().getRequestTime().getOneMinute().getP99());
+        }
+        return times.build();
+    }
+
+    @Managed(description = "Request count of each status class of a route")
+    public Map<String, Long> getStatusClassCounts(String route)
+    {
+        RouteStats stats = getRoutes().get(route);
+        if (stats == null) {
+            return ImmutableMap.of();
+        }
+        return stats.getStatusClassCounts();
+    }
+
+    static Pattern compileTemplate(String template)
+    {
+        checkArgument(template.startsWith("/"), "path template '%s' must start with '/'", template);
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = TEMPLATE_VARIABLE.matcher(template);
+        int last = 0;
+        while (matcher.find()) {
+            regex.append(Pattern.quote(template.substring(last, matcher.start())));
+            regex.append("[^/]+");
+            last = matcher.end();
+        }
+        regex.append(Pattern.quote(template.substring(last)));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class TemplateRoute
+    {
+        private final Pattern pattern;
+        private final RouteStats stats;
+
+        private TemplateRoute(Pattern pattern, RouteStats stats)
+        {
+            this.pattern = pattern;
+            this.stats = stats;
+        }
+
+        public Pattern getPattern()
+        {
+            return pattern;
+        }
+
+        public RouteStats getStats()
+        {
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.net.InetAddresses;
+import io.airlift.http.server.HttpServerConfig.RateLimitKey;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.security.Principal;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the request rate of each client, user or route with a
+ * {@link TokenBucket}, and rejects requests over the limit with 429 and
+ * {@code Retry-After}.
+ * <p>
+ * Clients are identified by the remote address of the connection.
+ * {@code X-Forwarded-For} is only used when the request comes from a trusted
+ * proxy, a private network address or one of
+ * {@code http-server.rate-limit.trusted-proxies}, since any client can send
+ * the header. The client is then the last address in the header that is not
+ * itself a trusted proxy. Requests without an authenticated user are limited
+ * by client address.
+ * Routes are the path templates of {@code http-server.stats.per-route.path-templates};
+ * requests matching none share the {@value PerRouteStats#OTHER} route.
+ * <p>
+ * Buckets that have been full for the idle timeout are discarded. To bound
+ * the memory used, once there are {@code maxKeys} buckets and none is idle,
+ * requests for new keys share a single overflow bucket.
+ */
+public class RateLimitFilter
+        implements Filter
+{
+    public static final int TOO_MANY_REQUESTS = 429;
+    private static final String OVERFLOW = "overflow";
+    private static final int TOP_KEYS = 20;
+    private static final long MAX_FULL_EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Ordering<Entry<String, Long>> BY_COUNT = new Ordering<Entry<String, Long>>()
+    {
+        @Override
+        public int compare(Entry<String, Long> left, Entry<String, Long> right)
+        {
+            return Long.compare(left.getValue(), right.getValue());
+        }
+    };
+
+    private final boolean enabled;
+    private final RateLimitKey key;
+    private final boolean perRoute;
+    private final List<Pattern> routePatterns;
+    private final List<String> routes;
+    private final List<Inet4Network> trustedProxies;
+    private final long intervalNanos;
+    private final int burst;
+    private final int maxKeys;
+    private final long idleTimeoutNanos;
+    private final long fullEvictionIntervalNanos;
+    private final Ticker ticker;
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final TokenBucket overflow;
+    private final AtomicLong lastEviction;
+
+    private final CounterStat allowed = new CounterStat();
+    private final CounterStat rejected = new CounterStat();
+
+    @Inject
+    public RateLimitFilter(HttpServerConfig config)
+    {
+        this(config, Ticker.systemTicker());
+    }
+
+    RateLimitFilter(HttpServerConfig config, Ticker ticker)
+    {
+        checkNotNull(config, "config is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        enabled = config.isRateLimitEnabled();
+        key = config.getRateLimitKey();
+        perRoute = config.isRateLimitPerRoute();
+
+        ImmutableList.Builder<Pattern> routePatterns = ImmutableList.builder();
+        ImmutableList.Builder<String> routes = ImmutableList.builder();
+        if (config.getPerRouteStatsPathTemplates() != null) {
+            for (String template : Splitter.on(',').trimResults().omitEmptyStrings().split(config.getPerRouteStatsPathTemplates())) {
+                routePatterns.add(PerRouteStats.compileTemplate(template));
+                routes.add(template);
+            }
+        }
+        this.routePatterns = routePatterns.build();
+        this.routes = routes.build();
+        trustedProxies = parseNetworks(config.getRateLimitTrustedProxies());
+
+        intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / config.getRateLimitRequestsPerSecond()));
+        burst = config.getRateLimitBurst();
+        maxKeys = config.getRateLimitMaxKeys();
+        idleTimeoutNanos = config.getRateLimitIdleTimeout().roundTo(TimeUnit.NANOSECONDS);
+        fullEvictionIntervalNanos = Math.min(idleTimeoutNanos, MAX_FULL_EVICTION_INTERVAL_NANOS);
+
+        long now = ticker.read();
+        overflow = new TokenBucket(intervalNanos, burst, now);
+        lastEviction = new AtomicLong(now);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+            throws ServletException
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        if (!enabled) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        long now = ticker.read();
+        long wait = getBucket(getKey((HttpServletRequest) servletRequest), now).tryAcquire(now);
+        if (wait > 0) {
+            rejected.update(1);
+            HttpServletResponse response = (HttpServletResponse) servletResponse;
+            long retryAfterSeconds = (long) Math.ceil(wait / (double) TimeUnit.SECONDS.toNanos(1));
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+            response.sendError(TOO_MANY_REQUESTS);
+            return;
+        }
+
+        allowed.update(1);
+        chain.doFilter(servletRequest, servletResponse);
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    String getKey(HttpServletRequest request)
+    {
+        String key;
+        switch (this.key) {
+            case USER:
+                Principal principal = request.getUserPrincipal();
+                key = (principal != null) ? principal.getName() : getClientAddress(request);
+                break;
+            case ROUTE:
+                return getRoute(request.getRequestURI());
+            default:
+                key = getClientAddress(request);
+        }
+        if (perRoute) {
+            key = key + " " + getRoute(request.getRequestURI());
+        }
+        return key;
+    }
+
+    private String getClientAddress(HttpServletRequest request)
+    {
+        String clientAddress = request.getRemoteAddr();
+        if (clientAddress == null || !isTrustedProxy(clientAddress)) {
+            return clientAddress;
+        }
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
+            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(e.nextElement()));
+        }
+        // each proxy appends the address it received the request from
+        for (String address : Lists.reverse(builder.build())) {
+            clientAddress = address;
+            if (!isTrustedProxy(address)) {
+                break;
+            }
+        }
+        return clientAddress;
+    }
+
+    private boolean isTrustedProxy(String address)
+    {
+        Inet4Address inetAddress;
+        try {
+            inetAddress = InetAddresses.getCoercedIPv4Address(InetAddresses.forString(address));
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (Inet4Networks.isPrivateNetworkAddress(inetAddress)) {
+            return true;
+        }
+        for (Inet4Network network : trustedProxies) {
+            if (network.containsAddress(inetAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a comma separated list of CIDR networks.
+     *
+     * @throws IllegalArgumentException if a network is malformed
+     */
+    static List<Inet4Network> parseNetworks(@Nullable String networks)
+    {
+        if (networks == null) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<Inet4Network> builder = ImmutableList.builder();
+        for (String network : Splitter.on(',').trimResults().omitEmptyStrings().split(networks)) {
+            try {
+                builder.add(Inet4Network.fromCidr(network));
+            }
+            catch (ClassCastException e) {
+                throw new IllegalArgumentException("not an IPv4 network: " + network);
+            }
+        }
+        return builder.build();
+    }
+
+    private String getRoute(String path)
+    {
+        for (int i = 0; i < routePatterns.size(); i++) {
+            if (routePatterns.get(i).matcher(path).matches()) {
+                return routes.get(i);
+            }
+        }
+        return PerRouteStats.OTHER;
+    }
+
+    private TokenBucket getBucket(String key, long now)
+    {
+        if (now - lastEviction.get() >= idleTimeoutNanos) {
+            evictIdleBuckets(now);
+        }
+
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        // the bound is approximate under concurrent inserts
+        if (buckets.size() >= maxKeys) {
+            if (now - lastEviction.get() >= fullEvictionIntervalNanos) {
+                evictIdleBuckets(now);
+            }
+            if (buckets.size() >= maxKeys) {
+                return overflow;
+            }
+        }
+        bucket = new TokenBucket(intervalNanos, burst, now);
+        TokenBucket existing = buckets.putIfAbsent(key, bucket);
+        return (existing == null) ? bucket : existing;
+    }
+
+    private void evictIdleBuckets(long now)
+    {
+        // only one request pays for the sweep
+        long last = lastEviction.get();
+        if (!lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        for (Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isIdle(now, idleTimeoutNanos)) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Managed
+    public int getKeyCount()
+    {
+        return buckets.size();
+    }
+
+    @Managed(description = "Rejected request count of the keys with the most rejections")
+    public Map<String, Long> getTopRejectedKeys()
+    {
+        ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+        for (Entry<String, Long> entry : BY_COUNT.greatestOf(getRejectedCounts().entrySet(), TOP_KEYS)) {
+            counts.put(entry);
+        }
+        return counts.build();
+    }
+
+    private Map<String, Long> getRejectedCounts()
+    {
+        ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+        for (Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            long count = entry.getValue().getRejectedCount();
+            if (count > 0) {
+                counts.put(entry.getKey(), count);
+            }
+        }
+        if (overflow.getRejectedCount() > 0) {
+            counts.put(OVERFLOW, overflow.getRejectedCount());
+        }
+        return counts.build();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getAllowed()
+    {
+        return allowed;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
+import io.airlift.log.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Hands request log entries from the request threads to a dedicated writer
+ * thread through a bounded lock-free {@link RingBuffer}.
+ */
+class RequestLogQueue
+{
+    /**
+     * Receives the entries on the writer thread.
+     */
+    interface Sink
+    {
+        void append(HttpRequestEvent event);
+
+        /**
+         * Called after each batch of entries, and periodically while the
+         * queue is empty, to write out whatever has been buffered.
+         */
+        void flush();
+    }
+
+    private static final Logger log = Logger.get(RequestLogQueue.class);
+
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final RingBuffer<HttpRequestEvent> queue;
+    private final LogOverflowPolicy overflowPolicy;
+    private final RequestLogStats stats;
+    private final Sink sink;
+    private final Thread writerThread;
+    private volatile boolean stopping;
+
+    public RequestLogQueue(int queueSize, LogOverflowPolicy overflowPolicy, RequestLogStats stats, Sink sink)
+    {
+        this.queue = new RingBuffer<>(queueSize);
+        this.overflowPolicy = checkNotNull(overflowPolicy, "overflowPolicy is null");
+        this.stats = checkNotNull(stats, "stats is null");
+        this.sink = checkNotNull(sink, "sink is null");
+
+        stats.setQueue(queue);
+        writerThread = new Thread(new Writer(), "http-request-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void enqueue(HttpRequestEvent event)
+    {
+        if (queue.offer(event)) {
+            return;
+        }
+        if (overflowPolicy == LogOverflowPolicy.DROP) {
+            stats.recordDropped();
+            return;
+        }
+
+        stats.recordBlocked();
+        while (!queue.offer(event)) {
+            if (stopping) {
+                stats.recordDropped();
+                return;
+            }
+            LockSupport.parkNanos(FULL_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Writes the queued entries and stops the writer thread.
+     */
+    public void stop()
+            throws InterruptedException
+    {
+        stopping = true;
+        LockSupport.unpark(writerThread);
+        writerThread.join(STOP_TIMEOUT_MILLIS);
+        if (writerThread.isAlive()) {
+            log.warn("Request log writer did not finish writing queued entries in %sms", STOP_TIMEOUT_MILLIS);
+        }
+    }
+
+    private class Writer
+            implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (true) {
+                // read the flag before draining, so entries queued before stop() are written
+                boolean stopRequested = stopping;
+                int entries = 0;
+                int written = 0;
+                HttpRequestEvent event;
+                while (entries < MAX_BATCH_SIZE && (event = queue.poll()) != null) {
+                    entries++;
+                    // a bad entry must not stop the writer, or request threads block on a full queue
+                    try {
+                        sink.append(event);
+                        written++;
+                    }
+                    catch (RuntimeException e) {
+                        stats.recordFailed();
+                        log.error(e, "Error writing request log entry for %s", event.getRequestUri());
+                    }
+                }
+
+                long start = System.nanoTime();
+                try {
+                    sink.flush();
+                }
+                catch (RuntimeException e) {
+                    log.error(e, "Error writing request log");
+                }
+
+                if (written > 0) {
+                    stats.recordWrite(written, System.nanoTime() - start);
+                }
+                if (entries == 0) {
+                    if (stopRequested) {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                }
+            }
+        }
+    }
+}
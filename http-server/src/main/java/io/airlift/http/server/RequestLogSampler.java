@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.Duration;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides which requests are written to the request log and which are
+ * posted as {@link HttpRequestEvent}s, so high-volume endpoints such as
+ * health checks can be sampled.
+ * <p>
+ * Rules are a comma separated list of {@code <path-prefix>[:<status-class>]=<rate>},
+ * for example {@code /v1/status:2xx=0.01,/health=0}. The first rule matching
+ * the request path and response status decides the fraction of requests kept.
+ * Requests that match no rule, server errors (5xx), and requests at least as
+ * slow as the slow request threshold are always kept, so sampling never hides
+ * failures or slow requests. A rule without a status class does not match
+ * client errors (4xx) either; they are only sampled by a rule that names the
+ * 4xx class, for example to thin out scanners probing for missing pages.
+ */
+public final class RequestLogSampler
+{
+    private final List<Rule> logRules;
+    private final List<Rule> eventRules;
+    private final long slowRequestMillis;
+    private final RequestLogStats stats;
+
+    public static RequestLogSampler keepAll(RequestLogStats stats)
+    {
+        return new RequestLogSampler(ImmutableList.<Rule>of(), ImmutableList.<Rule>of(), null, stats);
+    }
+
+    public RequestLogSampler(List<Rule> logRules, List<Rule> eventRules, @Nullable Duration slowRequestThreshold, RequestLogStats stats)
+    {
+        this.logRules = ImmutableList.copyOf(checkNotNull(logRules, "logRules is null"));
+        this.eventRules = ImmutableList.copyOf(checkNotNull(eventRules, "eventRules is null"));
+        this.slowRequestMillis = (slowRequestThreshold == null) ? Long.MAX_VALUE : slowRequestThreshold.toMillis();
+        this.stats = checkNotNull(stats, "stats is null");
+    }
+
+    public boolean shouldLog(HttpRequestEvent event)
+    {
+        if (keep(logRules, event)) {
+            return true;
+        }
+        stats.recordLogSampledOut();
+        return false;
+    }
+
+    public boolean shouldPostEvent(HttpRequestEvent event)
+    {
+        if (keep(eventRules, event)) {
+            return true;
+        }
+        stats.recordEventSampledOut();
+        return false;
+    }
+
+    private boolean keep(List<Rule> rules, HttpRequestEvent event)
+    {
+        if (rules.isEmpty() || event.getResponseCode() >= 500 || event.getTimeToLastByte() >= slowRequestMillis) {
+            return true;
+        }
+        String path = getPath(event.getRequestUri());
+        for (Rule rule : rules) {
+            if (rule.matches(path, event.getResponseCode())) {
+                return rule.sample();
+            }
+        }
+        return true;
+    }
+
+    static String getPath(@Nullable String requestUri)
+    {
+        if (requestUri == null) {
+            return "";
+        }
+        int start = 0;
+        if (!requestUri.startsWith("/")) {
+            // absolute form, as sent to proxies
+            int scheme = requestUri.indexOf("://");
+            if (scheme >= 0) {
+                start = requestUri.indexOf('/', scheme + 3);
+                if (start < 0) {
+                    return "/";
+                }
+            }
+        }
+        int end = requestUri.indexOf('?', start);
+        return requestUri.substring(start, (end < 0) ? requestUri.length() : end);
+    }
+
+    /**
+     * Parses a comma separated list of rules.
+     *
+     * @throws IllegalArgumentException if a rule is malformed
+     */
+    public static List<Rule> parseRules(@Nullable String rules)
+    {
+        if (rules == null) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<Rule> builder = ImmutableList.builder();
+        for (String rule : Splitter.on(',').trimResults().omitEmptyStrings().split(rules)) {
+            builder.add(Rule.parse(rule));
+        }
+        return builder.build();
+    }
+
+    public static class Rule
+    {
+        private final String pathPrefix;
+        private final int statusClass;
+        private final double rate;
+
+        /**
+         * @param statusClass the first digit of the matched status codes, or
+         * zero to match any status below 400
+         * @param rate the fraction of matching requests to keep
+         */
+        public Rule(String pathPrefix, int statusClass, double rate)
+        {
+            this.pathPrefix = checkNotNull(pathPrefix, "pathPrefix is null");
+            checkArgument(statusClass == 0 || (statusClass >= 1 && statusClass <= 5), "statusClass must be 0 or 1 to 5");
+            checkArgument(rate >= 0 && rate <= 1, "rate must be between 0 and 1");
+            this.statusClass = statusClass;
+            this.rate = rate;
+        }
+
+        static Rule parse(String rule)
+        {
+            int equals = rule.lastIndexOf('=');
+            checkArgument(equals > 0, "sampling rule '%s' is not of the form <path-prefix>[:<status-class>]=<rate>", rule);
+
+            String pathPrefix = rule.substring(0, equals).trim();
+            int statusClass = 0;
+            int colon = pathPrefix.lastIndexOf(':');
+            if (colon >= 0) {
+                String status = pathPrefix.substring(colon + 1).trim();
+                checkArgument(status.matches("[1-5]xx"), "sampling rule '%s' has invalid status class '%s'", rule, status);
+                statusClass = status.charAt(0) - '0';
+                pathPrefix = pathPrefix.substring(0, colon).trim();
+            }
+            checkArgument(pathPrefix.startsWith("/"), "sampling rule '%s' path prefix must start with '/'", rule);
+
+            double rate;
+            try {
+                rate = Double.parseDouble(rule.substring(equals + 1).trim());
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("sampling rule '%s' has invalid rate", rule));
+            }
+            checkArgument(rate >= 0 && rate <= 1, "sampling rule '%s' rate must be between 0 and 1", rule);
+
+            return new Rule(pathPrefix, statusClass, rate);
+        }
+
+        public String getPathPrefix()
+        {
+            return pathPrefix;
+        }
+
+        public int getStatusClass()
+        {
+            return statusClass;
+        }
+
+        public double getRate()
+        {
+            return rate;
+        }
+
+        boolean matches(String path, int status)
+        {
+            if (!path.startsWith(pathPrefix)) {
+                return false;
+            }
+            if (statusClass == 0) {
+                // client errors are only sampled by a rule that asks for them
+                return status < 400;
+            }
+            return status / 100 == statusClass;
+        }
+
+        boolean sample()
+        {
+            return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+        }
+
+        @Override
+        public String toString()
+        {
+            return pathPrefix + ((statusClass == 0) ? "" : ":" + statusClass + "xx") + "=" + rate;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.DistributionStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of the request log writer and of requests left out of the
+ * log or the event stream by {@link RequestLogSampler}.
+ */
+public class RequestLogStats
+{
+    private final CounterStat written = new CounterStat();
+    private final CounterStat dropped = new CounterStat();
+    private final CounterStat failed = new CounterStat();
+    private final CounterStat blocked = new CounterStat();
+    private final CounterStat logSampledOut = new CounterStat();
+    private final CounterStat eventSampledOut = new CounterStat();
+    private final DistributionStat batchSize = new DistributionStat();
+    private final TimeStat writeTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private volatile RingBuffer<?> queue;
+
+    void setQueue(RingBuffer<?> queue)
+    {
+        this.queue = queue;
+    }
+
+    void recordWrite(int entries, long nanos)
+    {
+        written.update(entries);
+        batchSize.add(entries);
+        writeTime.add(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordDropped()
+    {
+        dropped.update(1);
+    }
+
+    void recordFailed()
+    {
+        failed.update(1);
+    }
+
+    void recordBlocked()
+    {
+        blocked.update(1);
+    }
+
+    void recordLogSampledOut()
+    {
+        logSampledOut.update(1);
+    }
+
+    void recordEventSampledOut()
+    {
+        eventSampledOut.update(1);
+    }
+
+    @Managed
+    public int getQueueDepth()
+    {
+        RingBuffer<?> queue = this.queue;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    @Managed
+    public int getQueueCapacity()
+    {
+        RingBuffer<?> queue = this.queue;
+        return (queue == null) ? 0 : queue.capacity();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getWritten()
+    {
+        return written;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDropped()
+    {
+        return dropped;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailed()
+    {
+        return failed;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getBlocked()
+    {
+        return blocked;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getLogSampledOut()
+    {
+        return logSampledOut;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getEventSampledOut()
+    {
+        return eventSampledOut;
+    }
+
+    @Managed
+    @Nested
+    public DistributionStat getBatchSize()
+    {
+        return batchSize;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getWriteTime()
+    {
+        return writeTime;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.airlift.http.server;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import io.airlift.stats.CounterStat;
 import io.airlift.stats.DistributionStat;
 import io.airlift.stats.TimeStat;
@@ -23,22 +25,41 @@ import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import java.util.List;
+
 public class RequestStats
 {
     private final CounterStat request;
     private final TimeStat requestTime;
     private final DistributionStat readBytes;
     private final DistributionStat writtenBytes;
+    private final boolean perRouteEnabled;
+    private final PerRouteStats routes;
 
-    @Inject
     public RequestStats()
+    {
+        this(false, ImmutableList.<String>of(), 0);
+    }
+
+    @Inject
+    public RequestStats(HttpServerConfig config)
+    {
+        this(config.isPerRouteStatsEnabled(),
+                (config.getPerRouteStatsPathTemplates() == null) ? ImmutableList.<String>of() : Splitter.on(',').trimResults().omitEmptyStrings().splitToList(config.getPerRouteStatsPathTemplates()),
+                config.getPerRouteStatsMaxRoutes());
+    }
+
+    public RequestStats(boolean perRouteEnabled, List<String> pathTemplates, int maxRoutes)
     {
         request = new CounterStat();
         requestTime = new TimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
+        this.perRouteEnabled = perRouteEnabled;
+        routes = new PerRouteStats(pathTemplates, maxRoutes);
     }
 
     public void record(String method, int responseCode, long requestSizeInBytes, long responseSizeInBytes, Duration schedulingDelay, Duration requestProcessingTime)
@@ -49,6 +70,19 @@ public class RequestStats
         writtenBytes.add(responseSizeInBytes);
     }
 
+    /**
+     * Records a request and, when per-route stats are enabled, the stats of its route.
+     *
+     * @param route the route set by the application, or null to match the path against the path templates
+     */
+    public void record(@Nullable String route, String path, String method, int responseCode, long requestSizeInBytes, long responseSizeInBytes, Duration schedulingDelay, Duration requestProcessingTime)
+    {
+        record(method, responseCode, requestSizeInBytes, responseSizeInBytes, schedulingDelay, requestProcessingTime);
+        if (perRouteEnabled) {
+            routes.getRouteStats(route, path).record(responseCode, requestProcessingTime);
+        }
+    }
+
     @Managed
     @Flatten
     public CounterStat getRequest()
@@ -76,4 +110,11 @@ public class RequestStats
     {
         return writtenBytes;
     }
+
+    @Managed
+    @Nested
+    public PerRouteStats getRoutes()
+    {
+        return routes;
+    }
 }
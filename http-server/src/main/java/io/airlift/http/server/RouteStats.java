@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of the requests to a single route, broken down by response
+ * status class. Responses with a status outside 1xx to 5xx are counted as
+ * other.
+ */
+public class RouteStats
+{
+    private static final String[] NAMES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+    private static final int OTHER = 0;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NAMES.length);
+    private final TimeStat requestTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat successTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat clientErrorTime = new TimeStat(TimeUnit.MILLISECONDS);
+    private final TimeStat serverErrorTime = new TimeStat(TimeUnit.MILLISECONDS);
+
+    public void record(int responseCode, Duration requestProcessingTime)
+    {
+        int index = getIndex(responseCode);
+        counts.incrementAndGet(index);
+        requestTime.add(requestProcessingTime);
+        switch (index) {
+            case 2:
+                successTime.add(requestProcessingTime);
+                break;
+            case 4:
+                clientErrorTime.add(requestProcessingTime);
+                break;
+            case 5:
+                serverErrorTime.add(requestProcessingTime);
+                break;
+        }
+    }
+
+    private static int getIndex(int responseCode)
+    {
+        int statusClass = responseCode / 100;
+        if (statusClass < 1 || statusClass > 5) {
+            return OTHER;
+        }
+        return statusClass;
+    }
+
+    @Managed
+    public long getRequestCount()
+    {
+        long total = 0;
+        for (int i = 0; i < NAMES.length; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    @Managed
+    public long getSuccess()
+    {
+        return counts.get(2);
+    }
+
+    @Managed
+    public long getRedirection()
+    {
+        return counts.get(3);
+    }
+
+    @Managed
+    public long getClientError()
+    {
+        return counts.get(4);
+    }
+
+    @Managed
+    public long getServerError()
+    {
+        return counts.get(5);
+    }
+
+    @Managed(description = "Request count of each status class")
+    public Map<String, Long> getStatusClassCounts()
+    {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (int i = 0; i < NAMES.length; i++) {
+            builder.put(NAMES[i], counts.get(i));
+        }
+        return builder.build();
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRequestTime()
+    {
+        return requestTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getSuccessTime()
+    {
+        return successTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getClientErrorTime()
+    {
+        return clientErrorTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getServerErrorTime()
+    {
+        return serverErrorTime;
+    }
+}
@@ -43,7 +43,8 @@ public class StatsRecordingHandler
 
         Duration schedulingDelay = new Duration(max(0, dispatchTime - request.getTimeStamp()), TimeUnit.MILLISECONDS);
 
-        stats.record(request.getMethod(), response.getStatus(), request.getContentRead(), response.getContentCount(), schedulingDelay, requestTime);
+        String route = (String) request.getAttribute(PerRouteStats.ROUTE_ATTRIBUTE);
+        stats.record(route, request.getRequestURI(), request.getMethod(), response.getStatus(), request.getContentRead(), response.getContentCount(), schedulingDelay, requestTime);
     }
 
     @Override
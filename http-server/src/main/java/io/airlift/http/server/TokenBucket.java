@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lock-free token bucket holding up to {@code burst} tokens and refilled
+ * with one token every {@code intervalNanos}.
+ * <p>
+ * The whole state is a single timestamp, the time at which the bucket will
+ * be full again, so acquiring a token is one compare-and-set.
+ */
+class TokenBucket
+{
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullTime;
+    private final AtomicLong rejected = new AtomicLong();
+
+    TokenBucket(long intervalNanos, int burst, long now)
+    {
+        checkArgument(intervalNanos > 0, "intervalNanos must be greater than zero");
+        checkArgument(burst > 0, "burst must be greater than zero");
+        this.intervalNanos = intervalNanos;
+        this.capacityNanos = intervalNanos * burst;
+        this.fullTime = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token from the bucket.
+     *
+     * @return zero if a token was taken, or else the nanoseconds until one
+     * will be available
+     */
+    public long tryAcquire(long now)
+    {
+        while (true) {
+            long current = fullTime.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long wait = next - now - capacityNanos;
+            if (wait > 0) {
+                rejected.incrementAndGet();
+                return wait;
+            }
+            if (fullTime.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the bucket has been full for at least {@code idleNanos},
+     * in which case discarding it loses no state.
+     */
+    public boolean isIdle(long now, long idleNanos)
+    {
+        return now - fullTime.get() >= idleNanos;
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+}
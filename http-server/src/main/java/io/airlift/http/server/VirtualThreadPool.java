@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.log.Logger;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.concurrent.Threads.isVirtualThreadSupported;
+import static io.airlift.concurrent.Threads.threadPerTaskExecutor;
+import static io.airlift.concurrent.Threads.virtualThreadsNamed;
+
+/**
+ * Server thread pool that runs request handling on virtual threads, so
+ * blocking resources do not need a platform thread each.
+ * <p>
+ * The acceptors and selectors that the connectors start with the server
+ * never finish and must not be pinned to virtual threads, so everything
+ * executed before {@link #startDispatching()} runs on a small platform
+ * {@link QueuedThreadPool}. At most {@code maxConcurrency} jobs run at once;
+ * the rest wait for a permit. On JVMs without virtual threads, jobs run on
+ * a daemon thread pool that grows up to {@code maxPlatformWorkers} threads,
+ * or {@code maxConcurrency} if that is lower, and shrinks when idle; the
+ * remaining jobs wait in its queue. A platform thread for each of the
+ * thousands of jobs allowed on virtual threads would exhaust memory.
+ */
+@ManagedObject("Server thread pool running requests on virtual threads")
+public class VirtualThreadPool
+        extends ContainerLifeCycle
+        implements ThreadPool
+{
+    private static final Logger log = Logger.get(VirtualThreadPool.class);
+
+    private final QueuedThreadPool platformPool;
+    private final Executor workerExecutor;
+    private final ThreadPoolExecutor elasticExecutor;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicInteger queuedJobs = new AtomicInteger();
+    private final AtomicLong completedJobs = new AtomicLong();
+    private volatile boolean dispatching;
+
+    /**
+     * @param maxPlatformWorkers the maximum number of worker threads when
+     * virtual threads are not supported
+     */
+    public VirtualThreadPool(String name, int platformThreads, int maxConcurrency, int maxPlatformWorkers, int idleTimeoutMillis)
+    {
+        checkArgument(platformThreads > 0, "platformThreads must be greater than zero");
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be greater than zero");
+        checkArgument(maxPlatformWorkers > 0, "maxPlatformWorkers must be greater than zero");
+        this.maxConcurrency = maxConcurrency;
+        permits = new Semaphore(maxConcurrency);
+
+        platformPool = new QueuedThreadPool(platformThreads, platformThreads, idleTimeoutMillis);
+        platformPool.setName(name);
+        addBean(platformPool);
+
+        if (isVirtualThreadSupported()) {
+            workerExecutor = threadPerTaskExecutor(virtualThreadsNamed(name + "-virtual-"));
+            elasticExecutor = null;
+        }
+        else {
+            int elasticThreads = Math.min(maxConcurrency, maxPlatformWorkers);
+            log.warn("Virtual threads are not supported by this JVM: requests for %s will run on an elastic thread pool of up to %s threads", name, elasticThreads);
+            elasticExecutor = new ThreadPoolExecutor(elasticThreads, elasticThreads, idleTimeoutMillis, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadsNamed(name + "-elastic-%s"));
+            elasticExecutor.allowCoreThreadTimeOut(true);
+            workerExecutor = elasticExecutor;
+        }
+    }
+
+    /**
+     * Runs jobs executed from now on, which are request handling once the
+     * server has started, on the worker threads.
+     */
+    public void startDispatching()
+    {
+        dispatching = true;
+    }
+
+    @Override
+    protected void doStop()
+            throws Exception
+    {
+        dispatching = false;
+        if (elasticExecutor != null) {
+            elasticExecutor.shutdownNow();
+        }
+        super.doStop();
+    }
+
+    @Override
+    public void execute(final Runnable job)
+    {
+        if (!dispatching) {
+            platformPool.execute(job);
+            return;
+        }
+
+        queuedJobs.incrementAndGet();
+        try {
+            workerExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    permits.acquireUninterruptibly();
+                    queuedJobs.decrementAndGet();
+                    activeJobs.incrementAndGet();
+                    try {
+                        job.run();
+                    }
+                    finally {
+                        activeJobs.decrementAndGet();
+                        completedJobs.incrementAndGet();
+                        permits.release();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            queuedJobs.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void join()
+            throws InterruptedException
+    {
+        platformPool.join();
+    }
+
+    @Override
+    @ManagedAttribute("number of platform threads plus running jobs")
+    public int getThreads()
+    {
+        return platformPool.getThreads() + activeJobs.get();
+    }
+
+    @Override
+    @ManagedAttribute("number of idle platform threads")
+    public int getIdleThreads()
+    {
+        return platformPool.getIdleThreads();
+    }
+
+    /**
+     * Reports whether the platform pool can run the acceptors and selectors.
+     * Worker threads are created on demand, so they never run low.
+     */
+    @Override
+    @ManagedAttribute("platform pool is low on threads")
+    public boolean isLowOnThreads()
+    {
+        return platformPool.isLowOnThreads();
+    }
+
+    @ManagedAttribute("maximum number of jobs running at once")
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @ManagedAttribute("number of running jobs")
+    public int getBusyThreads()
+    {
+        return activeJobs.get();
+    }
+
+    @ManagedAttribute("number of jobs waiting to run")
+    public int getQueueSize()
+    {
+        return queuedJobs.get();
+    }
+
+    @ManagedAttribute("number of finished jobs")
+    public long getCompletedJobs()
+    {
+        return completedJobs.get();
+    }
+
+    @ManagedAttribute("jobs run on virtual threads")
+    public boolean isVirtual()
+    {
+        return elasticExecutor == null;
+    }
+}
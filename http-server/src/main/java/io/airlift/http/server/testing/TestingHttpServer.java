@@ -83,7 +83,7 @@ public class TestingHttpServer
                 null,
                 null,
                 new TraceTokenManager(),
-                new RequestStats(),
+                new RequestStats(config),
                 new NullEventClient());
         this.httpServerInfo = httpServerInfo;
     }
@@ -0,0 +1,123 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import io.airlift.http.server.testing.TestingHttpServer;
+import io.airlift.log.Logging;
+import io.airlift.node.NodeInfo;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.concurrent.Threads.isVirtualThreadSupported;
+
+/**
+ * Compares the throughput of the queued thread pool and the virtual thread
+ * pool when every request blocks, at a concurrency well above the default
+ * thread count.
+ */
+public class BenchmarkBlockingHandlers
+{
+    private static final int CLIENTS = 2_000;
+    private static final long BLOCK_MILLIS = 50;
+    private static final long WARMUP_MILLIS = 5_000;
+    private static final long MEASURE_MILLIS = 15_000;
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        Logging.initialize().disableConsole();
+        System.out.println("virtual threads are " + (isVirtualThreadSupported() ? "supported" : "not supported, using the elastic pool"));
+
+        run("queued, 200 threads", new HttpServerConfig().setHttpPort(0));
+        run("queued, 2000 threads", new HttpServerConfig().setHttpPort(0).setMaxThreads(2_000));
+        run("virtual", new HttpServerConfig().setHttpPort(0).setVirtualThreadsEnabled(true));
+        run("virtual, 500 concurrency", new HttpServerConfig().setHttpPort(0).setVirtualThreadsEnabled(true).setVirtualThreadsMaxConcurrency(500));
+    }
+
+    private static void run(String name, HttpServerConfig config)
+            throws Exception
+    {
+        NodeInfo nodeInfo = new NodeInfo("test");
+        HttpServerInfo httpServerInfo = new HttpServerInfo(config, nodeInfo);
+        TestingHttpServer server = new TestingHttpServer(httpServerInfo, nodeInfo, config, new BlockingServlet(), ImmutableMap.<String, String>of());
+        server.start();
+        try {
+            URL url = server.getBaseUrl().resolve("/benchmark").toURL();
+            load(url, WARMUP_MILLIS);
+            long requests = load(url, MEASURE_MILLIS);
+            System.out.printf("%-28s %,10.0f requests/s (ideal %,.0f)%n",
+                    name,
+                    requests / (MEASURE_MILLIS / 1000.0),
+                    CLIENTS * 1000.0 / BLOCK_MILLIS);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static long load(final URL url, long durationMillis)
+            throws InterruptedException
+    {
+        final AtomicLong requests = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(CLIENTS);
+        final long end = System.currentTimeMillis() + durationMillis;
+        for (int i = 0; i < CLIENTS; i++) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                            try (InputStream input = connection.getInputStream()) {
+                                ByteStreams.copy(input, ByteStreams.nullOutputStream());
+                            }
+                            requests.incrementAndGet();
+                        }
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        return requests.get();
+    }
+
+    private static class BlockingServlet
+            extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException
+        {
+            try {
+                // stands in for a blocking call to a database or another service
+                Thread.sleep(BLOCK_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            }
+            response.setContentType("text/plain");
+            response.getOutputStream().write("ok".getBytes());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import io.airlift.http.server.testing.TestingHttpServer;
+import io.airlift.log.Logging;
+import io.airlift.node.NodeInfo;
+import io.airlift.units.DataSize;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+
+/**
+ * Measures the loopback throughput of the HTTP connector with each of the
+ * connector settings changed from the Jetty defaults in turn.
+ */
+public class BenchmarkConnectorTuning
+{
+    private static final int CLIENTS = 64;
+    private static final int RESPONSE_SIZE = 16 * 1024;
+    private static final long WARMUP_MILLIS = 3_000;
+    private static final long MEASURE_MILLIS = 10_000;
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        Logging.initialize().disableConsole();
+
+        Map<String, HttpServerConfig> configs = new LinkedHashMap<>();
+        configs.put("defaults", config());
+        configs.put("1 acceptor, 1 selector", config().setHttpAcceptors(1).setHttpSelectors(1));
+        configs.put("1 acceptor, 4 selectors", config().setHttpAcceptors(1).setHttpSelectors(4));
+        configs.put("2 acceptors, 8 selectors", config().setHttpAcceptors(2).setHttpSelectors(8));
+        configs.put("accept queue 1024", config().setAcceptQueueSize(1024));
+        configs.put("socket buffers 16kB", config()
+                .setSocketReceiveBufferSize(new DataSize(16, KILOBYTE))
+                .setSocketSendBufferSize(new DataSize(16, KILOBYTE)));
+        configs.put("socket buffers 1MB", config()
+                .setSocketReceiveBufferSize(new DataSize(1024, KILOBYTE))
+                .setSocketSendBufferSize(new DataSize(1024, KILOBYTE)));
+        configs.put("input buffer 4kB", config().setInputBufferSize(new DataSize(4, KILOBYTE)));
+        configs.put("output buffer 8kB", config().setOutputBufferSize(new DataSize(8, KILOBYTE)));
+        configs.put("output buffer 128kB", config().setOutputBufferSize(new DataSize(128, KILOBYTE)));
+
+        for (Entry<String, HttpServerConfig> entry : configs.entrySet()) {
+            run(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static HttpServerConfig config()
+    {
+        return new HttpServerConfig()
+                .setHttpPort(0)
+                .setMaxThreads(CLIENTS * 2);
+    }
+
+    private static void run(String name, HttpServerConfig config)
+            throws Exception
+    {
+        NodeInfo nodeInfo = new NodeInfo("test");
+        HttpServerInfo httpServerInfo = new HttpServerInfo(config, nodeInfo);
+        TestingHttpServer server = new TestingHttpServer(httpServerInfo, nodeInfo, config, new FixedResponseServlet(), ImmutableMap.<String, String>of());
+        server.start();
+        try {
+            URL url = server.getBaseUrl().resolve("/benchmark").toURL();
+            load(url, WARMUP_MILLIS);
+            long requests = load(url, MEASURE_MILLIS);
+
+            double seconds = MEASURE_MILLIS / 1000.0;
+            System.out.printf("%-28s %,10.0f requests/s %8.1f MB/s%n",
+                    name,
+                    requests / seconds,
+                    requests * (double) RESPONSE_SIZE / seconds / 1024 / 1024);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static long load(final URL url, final long durationMillis)
+            throws InterruptedException
+    {
+        final AtomicLong requests = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(CLIENTS);
+        final long end = System.currentTimeMillis() + durationMillis;
+        for (int i = 0; i < CLIENTS; i++) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                            // reading the whole body lets the connection be reused
+                            try (InputStream input = connection.getInputStream()) {
+                                ByteStreams.copy(input, ByteStreams.nullOutputStream());
+                            }
+                            requests.incrementAndGet();
+                        }
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        return requests.get();
+    }
+
+    private static class FixedResponseServlet
+            extends HttpServlet
+    {
+        private final byte[] body;
+
+        private FixedResponseServlet()
+        {
+            body = new byte[RESPONSE_SIZE];
+            Arrays.fill(body, (byte) 'x');
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException
+        {
+            response.setContentType("application/octet-stream");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+}
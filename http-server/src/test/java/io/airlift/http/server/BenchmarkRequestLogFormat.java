@@ -0,0 +1,147 @@
+package io.airlift.http.server;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the throughput and size of the text request log, as written by
+ * {@link HttpLogLayout} and compressed by logback when the file is rolled,
+ * with the {@link BinaryRequestLogWriter binary format}.
+ */
+public class BenchmarkRequestLogFormat
+{
+    private static final int RECORDS = 1_000_000;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        HttpRequestEvent[] events = new HttpRequestEvent[1024];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new HttpRequestEvent(new DateTime(now + i),
+                    "tt-" + Integer.toHexString(i * 7919),
+                    "10.0.0." + (i % 250),
+                    "http",
+                    i % 4 == 0 ? "POST" : "GET",
+                    "/v1/resource/" + (i % 97) + "?query=" + i,
+                    null,
+                    "airlift-http-client/0.96",
+                    null,
+                    i % 4 == 0 ? 512 + i : 0,
+                    i % 4 == 0 ? "application/json" : null,
+                    2048 + (i * 31 % 4096),
+                    i % 50 == 0 ? 404 : 200,
+                    "application/json",
+                    1,
+                    (long) (i % 13),
+                    i % 29);
+        }
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            text(events);
+            binary(events);
+        }
+    }
+
+    private static void text(HttpRequestEvent[] events)
+            throws IOException
+    {
+        HttpLogLayout layout = new HttpLogLayout();
+        CountingOutputStream raw = new CountingOutputStream();
+        CountingOutputStream compressed = new CountingOutputStream();
+
+        long start = System.nanoTime();
+        try (Writer writer = new OutputStreamWriter(new TeeOutputStream(raw, new GZIPOutputStream(compressed, 64 * 1024)), UTF_8)) {
+            for (int i = 0; i < RECORDS; i++) {
+                writer.write(layout.doLayout(events[i % events.length]));
+            }
+        }
+        report("text+gzip", System.nanoTime() - start, compressed.count, raw.count);
+    }
+
+    private static void binary(HttpRequestEvent[] events)
+            throws IOException
+    {
+        CountingOutputStream output = new CountingOutputStream();
+
+        long start = System.nanoTime();
+        try (BinaryRequestLogWriter writer = new BinaryRequestLogWriter(output, 64 * 1024)) {
+            for (int i = 0; i < RECORDS; i++) {
+                writer.append(events[i % events.length]);
+            }
+        }
+        report("binary", System.nanoTime() - start, output.count, -1);
+    }
+
+    private static void report(String name, long nanos, long bytes, long uncompressedBytes)
+    {
+        System.out.printf("%-10s %,10.0f records/s  %6.1f bytes/record%s%n",
+                name,
+                RECORDS / (nanos / 1.0e9),
+                (double) bytes / RECORDS,
+                uncompressedBytes < 0 ? "" : String.format("  (%.1f uncompressed)", (double) uncompressedBytes / RECORDS));
+    }
+
+    private static class CountingOutputStream
+            extends OutputStream
+    {
+        private long count;
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+        }
+    }
+
+    private static class TeeOutputStream
+            extends OutputStream
+    {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            first.close();
+            second.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.airlift.http.server;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveLifoQueue
+{
+    @Test
+    public void testFifoBelowThreshold()
+            throws Exception
+    {
+        AdaptiveLifoQueue queue = new AdaptiveLifoQueue(2);
+        Job first = new Job();
+        Job second = new Job();
+        queue.offer(first);
+        queue.offer(second);
+
+        assertRuns(queue.poll(), first);
+        assertRuns(queue.take(), second);
+    }
+
+    @Test
+    public void testLifoAboveThreshold()
+            throws Exception
+    {
+        AdaptiveLifoQueue queue = new AdaptiveLifoQueue(2);
+        Job first = new Job();
+        Job second = new Job();
+        Job third = new Job();
+        Job fourth = new Job();
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(third);
+        queue.offer(fourth);
+
+        assertRuns(queue.poll(), fourth);
+        assertRuns(queue.poll(1, TimeUnit.SECONDS), third);
+        // back at the threshold, so the backlog drains oldest first
+        assertRuns(queue.take(), first);
+        assertRuns(queue.poll(), second);
+    }
+
+    @Test
+    public void testQueueTime()
+            throws Exception
+    {
+        final AtomicLong firstCall = new AtomicLong();
+        final AtomicLong secondCall = new AtomicLong();
+        AdaptiveLifoQueue queue = new AdaptiveLifoQueue(2);
+        queue.offer(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                firstCall.set(AdaptiveLifoQueue.getCurrentQueueMillis());
+                secondCall.set(AdaptiveLifoQueue.getCurrentQueueMillis());
+            }
+        });
+
+        Thread.sleep(100);
+        queue.take().run();
+
+        assertTrue(firstCall.get() >= 100, "queue time " + firstCall.get());
+        assertEquals(secondCall.get(), 0);
+        assertEquals(AdaptiveLifoQueue.getCurrentQueueMillis(), -1);
+    }
+
+    private static void assertRuns(Runnable polled, Job expected)
+    {
+        polled.run();
+        assertEquals(expected.getRuns(), 1);
+    }
+
+    private static class Job
+            implements Runnable
+    {
+        private int runs;
+
+        @Override
+        public void run()
+        {
+            runs++;
+        }
+
+        public int getRuns()
+        {
+            return runs;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.airlift.http.server;
+
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Request;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdmissionControlFilter
+{
+    private MockCurrentTimeMillisProvider time;
+    private HttpServerConfig config;
+
+    @BeforeMethod
+    public void setup()
+    {
+        time = new MockCurrentTimeMillisProvider(1_000_000);
+        config = new HttpServerConfig()
+                .setAdmissionControlEnabled(true)
+                .setAdmissionTargetQueueTime(new Duration(50, TimeUnit.MILLISECONDS))
+                .setAdmissionInterval(new Duration(100, TimeUnit.MILLISECONDS))
+                .setAdmissionMaxQueueTime(new Duration(1, TimeUnit.SECONDS))
+                .setAdmissionRetryAfter(new Duration(1500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDisabled()
+            throws Exception
+    {
+        AdmissionControlFilter filter = new AdmissionControlFilter(config.setAdmissionControlEnabled(false), time);
+
+        assertAdmitted(filter, request("/v1/query", 10_000));
+        assertEquals(filter.getQueueTime().getAllTime().getCount(), 0.0);
+    }
+
+    @Test
+    public void testMaxQueueTime()
+            throws Exception
+    {
+        AdmissionControlFilter filter = new AdmissionControlFilter(config, time);
+
+        assertAdmitted(filter, request("/v1/query", 1000));
+        assertRejected(filter, request("/v1/query", 1001));
+
+        assertEquals(filter.getRejectedQueueTime().getTotalCount(), 1);
+        assertEquals(filter.getQueueTime().getAllTime().getCount(), 2.0);
+        assertFalse(filter.isOverloaded());
+    }
+
+    @Test
+    public void testStandingQueue()
+            throws Exception
+    {
+        AdmissionControlFilter filter = new AdmissionControlFilter(config, time);
+
+        // every request in the first interval waits longer than the target
+        assertAdmitted(filter, request("/v1/query", 200));
+        assertAdmitted(filter, request("/v1/query", 80));
+        time.incrementTime(100);
+        assertAdmitted(filter, request("/v1/query", 60));
+        assertTrue(filter.isOverloaded());
+
+        // while overloaded, requests are rejected after the target queue time
+        assertRejected(filter, request("/v1/query", 51));
+        assertAdmitted(filter, request("/v1/query", 10));
+
+        // the queue drained during the interval
+        time.incrementTime(100);
+        assertAdmitted(filter, request("/v1/query", 200));
+        assertFalse(filter.isOverloaded());
+    }
+
+    @Test
+    public void testMaxConcurrentRequests()
+            throws Exception
+    {
+        final AdmissionControlFilter filter = new AdmissionControlFilter(config.setAdmissionMaxConcurrentRequests(1), time);
+        final HttpServletResponse nestedResponse = mock(HttpServletResponse.class);
+
+        filter.doFilter(request("/v1/query", 0), mock(HttpServletResponse.class), new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse)
+                    throws IOException, ServletException
+            {
+                assertEquals(filter.getInFlightRequests(), 1);
+                filter.doFilter(request("/v1/query", 0), nestedResponse, mock(FilterChain.class));
+            }
+        });
+
+        verify(nestedResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertEquals(filter.getRejectedConcurrency().getTotalCount(), 1);
+        assertEquals(filter.getInFlightRequests(), 0);
+    }
+
+    @Test
+    public void testExemptions()
+            throws Exception
+    {
+        AdmissionControlFilter filter = new AdmissionControlFilter(config
+                .setAdmissionExemptPaths("/v1/status, /v1/announcement")
+                .setAdmissionPriorityHeader("X-Priority"), time);
+
+        assertAdmitted(filter, request("/v1/status/detail", 10_000));
+
+        Request critical = request("/v1/query", 10_000);
+        when(critical.getHeader("X-Priority")).thenReturn("Critical");
+        assertAdmitted(filter, critical);
+
+        Request normal = request("/v1/query", 10_000);
+        when(normal.getHeader("X-Priority")).thenReturn("normal");
+        assertRejected(filter, normal);
+
+        assertEquals(filter.getExempt().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testQueueTimeFromWorkerQueue()
+            throws Exception
+    {
+        final AdmissionControlFilter filter = new AdmissionControlFilter(config.setAdmissionMaxQueueTime(new Duration(50, TimeUnit.MILLISECONDS)), time);
+        // the request timestamp is set after the job leaves the queue
+        final Request request = request("/v1/query", 0);
+
+        AdaptiveLifoQueue queue = new AdaptiveLifoQueue(2);
+        queue.offer(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    assertRejected(filter, request);
+                }
+                catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        Thread.sleep(100);
+        queue.take().run();
+
+        assertEquals(filter.getRejectedQueueTime().getTotalCount(), 1);
+        assertTrue(filter.getQueueTime().getAllTime().getMax() >= 100);
+    }
+
+    private Request request(String path, long queueMillis)
+    {
+        Request request = mock(Request.class);
+        when(request.getRequestURI()).thenReturn(path);
+        when(request.getTimeStamp()).thenReturn(time.getCurrentTimeMillis() - queueMillis);
+        return request;
+    }
+
+    private static void assertAdmitted(AdmissionControlFilter filter, Request request)
+            throws Exception
+    {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(response, never()).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    private static void assertRejected(AdmissionControlFilter filter, Request request)
+            throws Exception
+    {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+        verify(chain, never()).doFilter(request, response);
+        verify(response).setHeader("Retry-After", "2");
+        verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,362 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import io.airlift.event.client.InMemoryEventClient;
+import io.airlift.http.server.BinaryRequestLogConverter.OutputFormat;
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTime;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.testing.FileUtils.deleteRecursively;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBinaryRequestLog
+{
+    private File directory;
+    private File file;
+
+    @BeforeMethod
+    public void setup()
+    {
+        directory = Files.createTempDir();
+        file = new File(directory, "requests.bin");
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void testRoundTrip()
+            throws Exception
+    {
+        HttpRequestEvent full = new HttpRequestEvent(new DateTime(1_400_000_000_123L),
+                "token",
+                "1.2.3.4",
+                "https",
+                "POST",
+                "/v1/foo?bar=baz",
+                "martin",
+                "HttpClient 4.0",
+                "http://www.example.com",
+                5432,
+                "application/json",
+                32311,
+                201,
+                "text/plain",
+                3,
+                456L,
+                3453);
+        HttpRequestEvent sparse = new HttpRequestEvent(new DateTime(1_400_000_000_124L),
+                null,
+                null,
+                null,
+                "GET",
+                null,
+                null,
+                null,
+                null,
+                0,
+                null,
+                -1,
+                404,
+                null,
+                0,
+                null,
+                0);
+
+        try (BinaryRequestLogWriter writer = new BinaryRequestLogWriter(new FileOutputStream(file), 1024)) {
+            writer.append(full);
+            writer.append(sparse);
+        }
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(file)) {
+            assertTrue(reader.isIndexed());
+            List<HttpRequestEvent> events = ImmutableList.copyOf(reader.read());
+            assertEquals(events.size(), 2);
+            assertEventEquals(events.get(0), full);
+            assertEventEquals(events.get(1), sparse);
+            assertNull(events.get(1).getTimeToFirstByte());
+            assertNull(events.get(1).getRequestUri());
+        }
+    }
+
+    @Test
+    public void testTimeRange()
+            throws Exception
+    {
+        long base = 1_400_000_000_000L;
+        try (BinaryRequestLogWriter writer = new BinaryRequestLogWriter(new FileOutputStream(file), 256)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.append(event(base + i));
+            }
+        }
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(file)) {
+            assertTrue(reader.getBlocks().size() > 10);
+
+            List<HttpRequestEvent> events = ImmutableList.copyOf(reader.read(base + 250, base + 300));
+            assertEquals(events.size(), 50);
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(events.get(i).getTimeStamp().getMillis(), base + 250 + i);
+            }
+
+            assertFalse(reader.read(base + 1000, base + 2000).hasNext());
+            assertEquals(ImmutableList.copyOf(reader.read()).size(), 1000);
+        }
+    }
+
+    @Test
+    public void testUnclosedFile()
+            throws Exception
+    {
+        long base = 1_400_000_000_000L;
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter(new FileOutputStream(file), 256);
+        for (int i = 0; i < 100; i++) {
+            writer.append(event(base + i));
+        }
+        writer.finishBlock();
+        // these records are never written, as if the process died
+        writer.append(event(base + 100));
+
+        // a partially written block at the end is ignored
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(output.length());
+            output.write(new byte[] {0x42, 0x4c, 0x4f});
+        }
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(file)) {
+            assertFalse(reader.isIndexed());
+            Iterator<HttpRequestEvent> events = reader.read();
+            for (int i = 0; i < 100; i++) {
+                assertEquals(events.next().getTimeStamp().getMillis(), base + i);
+            }
+            assertFalse(events.hasNext());
+        }
+    }
+
+    @Test
+    public void testCorruptBlockSize()
+            throws Exception
+    {
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter(new FileOutputStream(file), 256);
+        writer.append(event(1_400_000_000_000L));
+        writer.finishBlock();
+
+        // the uncompressed size follows the magic number of the first block
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(BinaryRequestLogFormat.FILE_HEADER_SIZE + 4);
+            output.writeInt(Integer.MAX_VALUE);
+        }
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(file)) {
+            reader.read().next();
+            fail("expected exception");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+            assertTrue(e.getCause().getMessage().contains("corrupt"), e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testBlockIsWrittenAtOnce()
+            throws Exception
+    {
+        final AtomicInteger writes = new AtomicInteger();
+        FilterOutputStream output = new FilterOutputStream(new ByteArrayOutputStream())
+        {
+            @Override
+            public void write(int b)
+                    throws IOException
+            {
+                writes.incrementAndGet();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                    throws IOException
+            {
+                writes.incrementAndGet();
+                out.write(b, off, len);
+            }
+        };
+
+        long base = 1_400_000_000_000L;
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter(output, 256);
+        for (int i = 0; i < 100; i++) {
+            writer.append(event(base + i));
+        }
+        assertEquals(writes.get(), 0);
+        writer.finishBlock();
+        assertEquals(writes.get(), 1);
+    }
+
+    @Test
+    public void testRequestLog()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(request.getRemoteAddr()).thenReturn("1.1.1.1");
+        when(request.getMethod()).thenReturn("GET");
+        when(response.getStatus()).thenReturn(200);
+
+        InMemoryEventClient eventClient = new InMemoryEventClient();
+        RequestLogStats stats = new RequestLogStats();
+        String path = new File(directory, "http-request.log").getPath();
+        BinaryRequestLog logger = new BinaryRequestLog(path, 1, null, eventClient, new SystemCurrentTimeMillisProvider(), 16, LogOverflowPolicy.BLOCK, stats);
+        for (int i = 0; i < 1000; i++) {
+            logger.log(request, response);
+        }
+        logger.stop();
+
+        File[] files = directory.listFiles();
+        assertEquals(files.length, 1);
+        assertTrue(files[0].getName().startsWith("http-request.log-"), files[0].getName());
+        assertTrue(files[0].getName().endsWith(".0.bin"), files[0].getName());
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(files[0])) {
+            List<HttpRequestEvent> events = ImmutableList.copyOf(reader.read());
+            assertEquals(events.size(), 1000);
+            for (HttpRequestEvent event : events) {
+                assertEquals(event.getClientAddress(), "1.1.1.1");
+                assertEquals(event.getMethod(), "GET");
+                assertEquals(event.getResponseCode(), 200);
+            }
+        }
+        assertEquals(eventClient.getEvents().size(), 1000);
+        assertEquals(stats.getWritten().getTotalCount(), 1000);
+
+        // a restart starts a new file instead of appending to the old one
+        logger = new BinaryRequestLog(path, 1, null, eventClient, new SystemCurrentTimeMillisProvider(), 0, LogOverflowPolicy.BLOCK, stats);
+        logger.log(request, response);
+        logger.stop();
+        assertEquals(directory.listFiles().length, 2);
+    }
+
+    @Test
+    public void testSynchronousLogIsFlushedWhenIdle()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(response.getStatus()).thenReturn(200);
+
+        String path = new File(directory, "http-request.log").getPath();
+        BinaryRequestLog logger = new BinaryRequestLog(path, 1, null, new InMemoryEventClient(), new SystemCurrentTimeMillisProvider(), 0, LogOverflowPolicy.BLOCK, new RequestLogStats());
+        try {
+            logger.log(request, response);
+            File[] files = directory.listFiles();
+            assertEquals(files.length, 1);
+
+            // no further request arrives, so only the timer can write the block
+            long deadline = System.nanoTime() + SECONDS.toNanos(10);
+            while (files[0].length() <= BinaryRequestLogFormat.FILE_HEADER_SIZE) {
+                assertTrue(System.nanoTime() < deadline, "block was not written");
+                Thread.sleep(50);
+            }
+            try (BinaryRequestLogReader reader = new BinaryRequestLogReader(files[0])) {
+                assertEquals(ImmutableList.copyOf(reader.read()).size(), 1);
+            }
+        }
+        finally {
+            logger.stop();
+        }
+    }
+
+    @Test
+    public void testDailyRollover()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(response.getStatus()).thenReturn(200);
+
+        DateTime start = new DateTime().withTimeAtStartOfDay().plusHours(23);
+        MockCurrentTimeMillisProvider currentTimeMillisProvider = new MockCurrentTimeMillisProvider(start.getMillis());
+        String path = new File(directory, "http-request.log").getPath();
+        BinaryRequestLog logger = new BinaryRequestLog(path, 7, null, new InMemoryEventClient(), currentTimeMillisProvider, 16, LogOverflowPolicy.BLOCK, new RequestLogStats());
+        logger.log(request, response);
+        currentTimeMillisProvider.incrementTime(MINUTES.toMillis(30));
+        logger.log(request, response);
+        currentTimeMillisProvider.incrementTime(MINUTES.toMillis(45));
+        logger.log(request, response);
+        logger.stop();
+
+        assertEquals(directory.listFiles().length, 2);
+    }
+
+    @Test
+    public void testConvert()
+            throws Exception
+    {
+        HttpRequestEvent event = event(1_400_000_000_000L);
+
+        StringWriter tsv = new StringWriter();
+        BinaryRequestLogConverter.convert(ImmutableList.of(event).iterator(), OutputFormat.TSV, tsv);
+        assertEquals(tsv.toString(), new HttpLogLayout().doLayout(event));
+
+        StringWriter json = new StringWriter();
+        BinaryRequestLogConverter.convert(ImmutableList.of(event, event).iterator(), OutputFormat.JSON, json);
+        List<String> lines = ImmutableList.copyOf(json.toString().split("\n"));
+        assertEquals(lines.size(), 2);
+        assertTrue(lines.get(0).startsWith("{"), lines.get(0));
+        assertTrue(lines.get(0).contains("\"requestUri\":\"/v1/item\""), lines.get(0));
+    }
+
+    private static HttpRequestEvent event(long timestamp)
+    {
+        return new HttpRequestEvent(new DateTime(timestamp), "token", "10.0.0.1", "http", "GET", "/v1/item", null, "agent", null, 0, null, 100, 200, "application/json", 1, 2L, 3);
+    }
+
+    private static void assertEventEquals(HttpRequestEvent actual, HttpRequestEvent expected)
+    {
+        assertEquals(actual.getTimeStamp().getMillis(), expected.getTimeStamp().getMillis());
+        assertEquals(actual.getTraceToken(), expected.getTraceToken());
+        assertEquals(actual.getClientAddress(), expected.getClientAddress());
+        assertEquals(actual.getProtocol(), expected.getProtocol());
+        assertEquals(actual.getMethod(), expected.getMethod());
+        assertEquals(actual.getRequestUri(), expected.getRequestUri());
+        assertEquals(actual.getUser(), expected.getUser());
+        assertEquals(actual.getAgent(), expected.getAgent());
+        assertEquals(actual.getReferrer(), expected.getReferrer());
+        assertEquals(actual.getRequestSize(), expected.getRequestSize());
+        assertEquals(actual.getRequestContentType(), expected.getRequestContentType());
+        assertEquals(actual.getResponseSize(), expected.getResponseSize());
+        assertEquals(actual.getResponseCode(), expected.getResponseCode());
+        assertEquals(actual.getResponseContentType(), expected.getResponseContentType());
+        assertEquals(actual.getTimeToDispatch(), expected.getTimeToDispatch());
+        assertEquals(actual.getTimeToFirstByte(), expected.getTimeToFirstByte());
+        assertEquals(actual.getTimeToLastByte(), expected.getTimeToLastByte());
+    }
+}
@@ -0,0 +1,209 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static com.google.common.net.HttpHeaders.VARY;
+import static io.airlift.http.server.ClassPathResourceHandler.acceptsGzip;
+import static io.airlift.http.server.ClassPathResourceHandler.parseRange;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestClassPathResourceHandler
+{
+    private Server server;
+    private URI baseUri;
+    private byte[] script;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        script = Resources.toByteArray(Resources.getResource("webapp/static/app.js"));
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new ClassPathResourceHandler(
+                "/static",
+                "webapp/static",
+                ImmutableList.of("app.js"),
+                new DataSize(1, DataSize.Unit.MEGABYTE),
+                new Duration(1, TimeUnit.HOURS)));
+        server.start();
+        baseUri = URI.create("http://localhost:" + connector.getLocalPort());
+    }
+
+    @AfterMethod
+    public void teardown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testGet()
+            throws Exception
+    {
+        for (int i = 0; i < 2; i++) {
+            // the second request is served from the cache
+            HttpURLConnection connection = open("/static/app.js");
+            assertEquals(connection.getResponseCode(), 200);
+            assertEquals(connection.getContentType(), "application/javascript");
+            assertEquals(connection.getContentLength(), script.length);
+            assertEquals(connection.getHeaderField(CACHE_CONTROL), "public, max-age=3600");
+            assertTrue(connection.getHeaderField(ETAG).matches("\"[0-9a-f]{40}\""), connection.getHeaderField(ETAG));
+            assertNull(connection.getHeaderField(CONTENT_ENCODING));
+            assertEquals(read(connection), script);
+        }
+
+        // welcome file
+        assertEquals(read(open("/static")), script);
+        assertEquals(open("/static/missing.js").getResponseCode(), 404);
+    }
+
+    @Test
+    public void testHead()
+            throws Exception
+    {
+        HttpURLConnection connection = open("/static/app.js");
+        connection.setRequestMethod("HEAD");
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getContentLength(), script.length);
+    }
+
+    @Test
+    public void testGzip()
+            throws Exception
+    {
+        HttpURLConnection identity = open("/static/app.js");
+        assertEquals(identity.getResponseCode(), 200);
+
+        HttpURLConnection connection = open("/static/app.js");
+        connection.setRequestProperty(ACCEPT_ENCODING, "deflate, gzip");
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getHeaderField(CONTENT_ENCODING), "gzip");
+        assertEquals(connection.getHeaderField(VARY), ACCEPT_ENCODING);
+        assertTrue(connection.getContentLength() < script.length);
+        assertNotEquals(connection.getHeaderField(ETAG), identity.getHeaderField(ETAG));
+        try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+            assertEquals(ByteStreams.toByteArray(in), script);
+        }
+    }
+
+    @Test
+    public void testNotModified()
+            throws Exception
+    {
+        String etag = open("/static/app.js").getHeaderField(ETAG);
+
+        HttpURLConnection connection = open("/static/app.js");
+        connection.setRequestProperty(IF_NONE_MATCH, "\"other\", " + etag);
+        assertEquals(connection.getResponseCode(), 304);
+        assertEquals(connection.getHeaderField(ETAG), etag);
+
+        connection = open("/static/app.js");
+        connection.setRequestProperty(IF_NONE_MATCH, "\"other\"");
+        assertEquals(connection.getResponseCode(), 200);
+    }
+
+    @Test
+    public void testRange()
+            throws Exception
+    {
+        HttpURLConnection connection = open("/static/app.js");
+        connection.setRequestProperty(RANGE, "bytes=10-19");
+        connection.setRequestProperty(ACCEPT_ENCODING, "gzip");
+        assertEquals(connection.getResponseCode(), 206);
+        assertEquals(connection.getHeaderField(CONTENT_RANGE), "bytes 10-19/" + script.length);
+        assertNull(connection.getHeaderField(CONTENT_ENCODING));
+        assertEquals(read(connection), Arrays.copyOfRange(script, 10, 20));
+
+        connection = open("/static/app.js");
+        connection.setRequestProperty(RANGE, "bytes=" + script.length + "-");
+        assertEquals(connection.getResponseCode(), 416);
+        assertEquals(connection.getHeaderField(CONTENT_RANGE), "bytes */" + script.length);
+    }
+
+    @Test
+    public void testParseRange()
+    {
+        assertRange(parseRange("bytes=0-9", 100), 0, 9);
+        assertRange(parseRange("bytes=90-", 100), 90, 99);
+        assertRange(parseRange("bytes=90-200", 100), 90, 99);
+        assertRange(parseRange("bytes=-10", 100), 90, 99);
+        assertRange(parseRange("bytes=-200", 100), 0, 99);
+        assertUnsatisfiable(parseRange("bytes=100-", 100));
+        assertUnsatisfiable(parseRange("bytes=-0", 100));
+        assertNull(parseRange("bytes=0-9,20-29", 100));
+        assertNull(parseRange("bytes=9-0", 100));
+        assertNull(parseRange("items=0-9", 100));
+        assertNull(parseRange("bytes=a-b", 100));
+    }
+
+    @Test
+    public void testAcceptsGzip()
+    {
+        assertTrue(acceptsGzip("gzip"));
+        assertTrue(acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(acceptsGzip("*"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("deflate"));
+        assertFalse(acceptsGzip(null));
+    }
+
+    private static void assertRange(long[] range, long first, long last)
+    {
+        assertEquals(range.length, 2);
+        assertEquals(range[0], first);
+        assertEquals(range[1], last);
+    }
+
+    private static void assertUnsatisfiable(long[] range)
+    {
+        assertEquals(range.length, 0);
+    }
+
+    private HttpURLConnection open(String path)
+            throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) baseUri.resolve(path).toURL().openConnection();
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static byte[] read(HttpURLConnection connection)
+            throws IOException
+    {
+        try (InputStream in = connection.getInputStream()) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
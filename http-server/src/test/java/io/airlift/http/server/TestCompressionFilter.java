@@ -0,0 +1,357 @@
+package io.airlift.http.server;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import io.airlift.units.DataSize;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestCompressionFilter
+{
+    private static final String LARGE = Strings.repeat("{\"key\": \"value\"}, ", 500);
+    private static final String SMALL = "{\"key\": \"value\"}";
+
+    private CompressionStats stats;
+    private CompressionFilter filter;
+
+    @BeforeMethod
+    public void setup()
+    {
+        stats = new CompressionStats();
+        filter = new CompressionFilter(new HttpServerConfig().setCompressionExcludedPaths("/v1/stream"), stats);
+    }
+
+    @Test
+    public void testCompress()
+            throws Exception
+    {
+        for (int i = 0; i < 3; i++) {
+            HttpServletResponse response = response("application/json");
+            CapturingOutputStream output = capture(response);
+            filter.doFilter(request("/v1/query", "gzip"), response, writing(LARGE));
+
+            verify(response).setHeader("Content-Encoding", "gzip");
+            verify(response).addHeader("Vary", "Accept-Encoding");
+            verify(response, never()).setContentLengthLong(LARGE.length());
+            assertEquals(gunzip(output.toByteArray()), LARGE);
+        }
+
+        assertEquals(stats.getCompressed().getTotalCount(), 3);
+        assertEquals(stats.getUncompressedBytes(), 3L * LARGE.length());
+        assertTrue(stats.getCompressionRatio() > 10);
+        assertEquals(stats.getCompressionTime().getAllTime().getCount(), 3.0);
+        // the deflater is reused
+        assertEquals(stats.getDeflatersCreated().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testWriter()
+            throws Exception
+    {
+        HttpServletResponse response = response("text/plain");
+        when(response.getCharacterEncoding()).thenReturn("UTF-8");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                    throws IOException
+            {
+                response.getWriter().write(LARGE);
+            }
+        });
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        assertEquals(gunzip(output.toByteArray()), LARGE);
+    }
+
+    @Test
+    public void testFlush()
+            throws Exception
+    {
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                    throws IOException
+            {
+                ServletOutputStream out = response.getOutputStream();
+                out.write(LARGE.getBytes(UTF_8));
+                out.flush();
+                out.write(LARGE.getBytes(UTF_8));
+            }
+        });
+
+        assertEquals(gunzip(output.toByteArray()), LARGE + LARGE);
+    }
+
+    @Test
+    public void testAsync()
+            throws Exception
+    {
+        HttpServletRequest request = request("/v1/query", "gzip");
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.isAsyncStarted()).thenReturn(true);
+        when(request.getAsyncContext()).thenReturn(asyncContext);
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+
+        // the handler writes the body but leaves the stream open
+        filter.doFilter(request, response, writing(LARGE));
+        assertEquals(stats.getCompressed().getTotalCount(), 0);
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+        listener.getValue().onComplete(new AsyncEvent(asyncContext));
+
+        assertEquals(gunzip(output.toByteArray()), LARGE);
+        assertEquals(stats.getCompressed().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testSendErrorAfterCompressionStarted()
+            throws Exception
+    {
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                    throws IOException
+            {
+                response.getOutputStream().write(LARGE.getBytes(UTF_8));
+                ((HttpServletResponse) response).sendError(500);
+            }
+        });
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setHeader("Content-Encoding", null);
+        verify(response).sendError(500);
+        // the gzip stream is abandoned without a trailer
+        assertEquals(stats.getCompressed().getTotalCount(), 0);
+
+        // the deflater was returned to the pool
+        response = response("application/json");
+        output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, writing(LARGE));
+        assertEquals(gunzip(output.toByteArray()), LARGE);
+        assertEquals(stats.getDeflatersCreated().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testMinSize()
+            throws Exception
+    {
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, writing(SMALL));
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response).setContentLengthLong(SMALL.length());
+        assertEquals(new String(output.toByteArray(), UTF_8), SMALL);
+        assertEquals(stats.getSkippedSize().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testDeclaredContentLength()
+            throws Exception
+    {
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "gzip"), response, new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                    throws IOException
+            {
+                response.setContentLength(SMALL.length());
+                response.getOutputStream().write(SMALL.getBytes(UTF_8));
+            }
+        });
+
+        verify(response).setContentLengthLong(SMALL.length());
+        assertEquals(new String(output.toByteArray(), UTF_8), SMALL);
+    }
+
+    @Test
+    public void testAlreadyCompressedType()
+            throws Exception
+    {
+        HttpServletResponse response = response("image/png");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/image", "gzip"), response, writing(LARGE));
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response, never()).addHeader("Vary", "Accept-Encoding");
+        assertEquals(new String(output.toByteArray(), UTF_8), LARGE);
+        assertEquals(stats.getSkippedType().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testClientDoesNotAcceptGzip()
+            throws Exception
+    {
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request("/v1/query", "identity"), response, writing(LARGE));
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        assertEquals(new String(output.toByteArray(), UTF_8), LARGE);
+    }
+
+    @Test
+    public void testDisabledAttribute()
+            throws Exception
+    {
+        HttpServletRequest request = request("/v1/query", "gzip");
+        when(request.getAttribute(CompressionFilter.DISABLED_ATTRIBUTE)).thenReturn(true);
+        HttpServletResponse response = response("application/json");
+        CapturingOutputStream output = capture(response);
+        filter.doFilter(request, response, writing(LARGE));
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        assertEquals(new String(output.toByteArray(), UTF_8), LARGE);
+    }
+
+    @Test
+    public void testExcludedPath()
+            throws Exception
+    {
+        HttpServletRequest request = request("/v1/stream/events", "gzip");
+        HttpServletResponse response = response("application/json");
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testIsCompressible()
+    {
+        assertTrue(filter.isCompressible("application/json; charset=UTF-8"));
+        assertTrue(filter.isCompressible("text/html"));
+        assertTrue(filter.isCompressible("image/svg+xml"));
+        assertFalse(filter.isCompressible("image/png"));
+        assertFalse(filter.isCompressible("video/mp4"));
+        assertFalse(filter.isCompressible("application/zip"));
+        assertFalse(filter.isCompressible(null));
+
+        CompressionFilter configured = new CompressionFilter(new HttpServerConfig()
+                .setCompressionMimeTypes("application/json, text/*")
+                .setCompressionExcludedMimeTypes("text/event-stream")
+                .setCompressionMinSize(new DataSize(0, DataSize.Unit.BYTE)), stats);
+        assertTrue(configured.isCompressible("Application/JSON"));
+        assertTrue(configured.isCompressible("text/plain"));
+        assertFalse(configured.isCompressible("text/event-stream"));
+        assertFalse(configured.isCompressible("application/xml"));
+    }
+
+    private static HttpServletRequest request(String path, String acceptEncoding)
+    {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURI()).thenReturn(path);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        return request;
+    }
+
+    private static HttpServletResponse response(String contentType)
+    {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getContentType()).thenReturn(contentType);
+        return response;
+    }
+
+    private static CapturingOutputStream capture(HttpServletResponse response)
+            throws IOException
+    {
+        CapturingOutputStream output = new CapturingOutputStream();
+        when(response.getOutputStream()).thenReturn(output);
+        return output;
+    }
+
+    private static FilterChain writing(final String body)
+    {
+        return new FilterChain()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                    throws IOException
+            {
+                response.getOutputStream().write(body.getBytes(UTF_8));
+            }
+        };
+    }
+
+    private static String gunzip(byte[] bytes)
+            throws IOException
+    {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(ByteStreams.toByteArray(input), UTF_8);
+        }
+    }
+
+    private static class CapturingOutputStream
+            extends ServletOutputStream
+    {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b)
+        {
+            output.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            output.write(bytes, offset, length);
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener)
+        {
+        }
+
+        public byte[] toByteArray()
+        {
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package io.airlift.http.server;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.jetty.JettyHttpClient;
+import io.airlift.http.server.testing.TestingHttpServer;
+import io.airlift.node.NodeInfo;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static io.airlift.http.client.HttpUriBuilder.uriBuilderFrom;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.testing.Closeables.closeQuietly;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class TestCompressionFilterServer
+{
+    private static final String LARGE = Strings.repeat("{\"key\": \"value\"}, ", 500);
+
+    private TestingHttpServer server;
+    private HttpClient client;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        NodeInfo nodeInfo = new NodeInfo("test");
+        HttpServerConfig config = new HttpServerConfig().setHttpPort(0);
+        HttpServerInfo httpServerInfo = new HttpServerInfo(config, nodeInfo);
+        server = new TestingHttpServer(httpServerInfo, nodeInfo, config, new CompressionServlet(), ImmutableMap.<String, String>of());
+        server.start();
+        client = new JettyHttpClient(new HttpClientConfig().setConnectTimeout(new Duration(1, SECONDS)));
+    }
+
+    @AfterMethod
+    public void teardown()
+            throws Exception
+    {
+        closeQuietly(client);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOutputStream()
+            throws Exception
+    {
+        assertCompressed(execute("/json"));
+    }
+
+    @Test
+    public void testWriter()
+            throws Exception
+    {
+        assertCompressed(execute("/writer"));
+    }
+
+    @Test
+    public void testAsync()
+            throws Exception
+    {
+        assertCompressed(execute("/async"));
+    }
+
+    @Test
+    public void testSendError()
+            throws Exception
+    {
+        // the error page replaces the partially compressed body
+        CapturedResponse response = execute("/error");
+        assertEquals(response.getStatusCode(), 500);
+        assertNull(response.getContentEncoding());
+        assertFalse(response.getBody().length >= 2 && (response.getBody()[0] & 0xff) == 0x1f && (response.getBody()[1] & 0xff) == 0x8b, "error page is gzipped");
+    }
+
+    @Test
+    public void testClientDoesNotAcceptGzip()
+            throws Exception
+    {
+        Request request = prepareGet().setUri(uriBuilderFrom(server.getBaseUrl()).replacePath("/json").build()).build();
+        CapturedResponse response = client.execute(request, new CapturingResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        assertNull(response.getContentEncoding());
+        assertEquals(new String(response.getBody(), UTF_8), LARGE);
+    }
+
+    private CapturedResponse execute(String path)
+    {
+        Request request = prepareGet()
+                .setUri(uriBuilderFrom(server.getBaseUrl()).replacePath(path).build())
+                .setHeader("Accept-Encoding", "gzip")
+                .build();
+        return client.execute(request, new CapturingResponseHandler());
+    }
+
+    private static void assertCompressed(CapturedResponse response)
+            throws IOException
+    {
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getContentEncoding(), "gzip");
+        assertEquals(response.getVary(), "Accept-Encoding");
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertEquals(new String(ByteStreams.toByteArray(input), UTF_8), LARGE);
+        }
+    }
+
+    private static class CompressionServlet
+            extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest request, final HttpServletResponse response)
+                throws IOException
+        {
+            switch (request.getRequestURI()) {
+                case "/json":
+                    response.setContentType("application/json");
+                    response.getOutputStream().write(LARGE.getBytes(UTF_8));
+                    break;
+                case "/writer":
+                    response.setContentType("text/plain; charset=UTF-8");
+                    response.getWriter().write(LARGE);
+                    break;
+                case "/async":
+                    response.setContentType("application/json");
+                    final AsyncContext asyncContext = request.startAsync();
+                    asyncContext.start(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try {
+                                response.getOutputStream().write(LARGE.getBytes(UTF_8));
+                            }
+                            catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                            finally {
+                                asyncContext.complete();
+                            }
+                        }
+                    });
+                    break;
+                case "/error":
+                    response.setContentType("application/json");
+                    response.getOutputStream().write(LARGE.getBytes(UTF_8));
+                    response.sendError(500);
+                    break;
+                default:
+                    response.sendError(404);
+            }
+        }
+    }
+
+    private static class CapturingResponseHandler
+            implements ResponseHandler<CapturedResponse, RuntimeException>
+    {
+        @Override
+        public CapturedResponse handleException(Request request, Exception exception)
+        {
+            throw new RuntimeException(exception);
+        }
+
+        @Override
+        public CapturedResponse handle(Request request, Response response)
+        {
+            try {
+                return new CapturedResponse(
+                        response.getStatusCode(),
+                        response.getHeader("Content-Encoding"),
+                        response.getHeader("Vary"),
+                        ByteStreams.toByteArray(response.getInputStream()));
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class CapturedResponse
+    {
+        private final int statusCode;
+        private final String contentEncoding;
+        private final String vary;
+        private final byte[] body;
+
+        private CapturedResponse(int statusCode, String contentEncoding, String vary, byte[] body)
+        {
+            this.statusCode = statusCode;
+            this.contentEncoding = contentEncoding;
+            this.vary = vary;
+            this.body = body;
+        }
+
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        public String getContentEncoding()
+        {
+            return contentEncoding;
+        }
+
+        public String getVary()
+        {
+            return vary;
+        }
+
+        public byte[] getBody()
+        {
+            return body;
+        }
+    }
+}
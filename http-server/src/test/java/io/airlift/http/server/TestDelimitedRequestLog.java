@@ -19,6 +19,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 import io.airlift.event.client.InMemoryEventClient;
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
 import io.airlift.tracetoken.TraceTokenManager;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.server.Request;
@@ -242,4 +243,54 @@ public class TestDelimitedRequestLog
 
         Assert.assertEquals(event.getClientAddress(), clientIp);
     }
+
+    @Test
+    public void testAsyncWriteLog()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(request.getRemoteAddr()).thenReturn("1.1.1.1");
+        when(request.getMethod()).thenReturn("GET");
+
+        InMemoryEventClient eventClient = new InMemoryEventClient();
+        RequestLogStats stats = new RequestLogStats();
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, null, eventClient, new SystemCurrentTimeMillisProvider(), 16, LogOverflowPolicy.BLOCK, stats);
+        for (int i = 0; i < 1000; i++) {
+            logger.log(request, response);
+        }
+        logger.stop();
+
+        List<String> lines = Files.readLines(file, Charsets.UTF_8);
+        Assert.assertEquals(lines.size(), 1000);
+        for (String line : lines) {
+            Assert.assertTrue(line.contains("\t1.1.1.1\tGET\t"), line);
+        }
+        Assert.assertEquals(eventClient.getEvents().size(), 1000);
+        Assert.assertEquals(stats.getWritten().getTotalCount(), 1000);
+        Assert.assertEquals(stats.getDropped().getTotalCount(), 0);
+        Assert.assertEquals(stats.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testAsyncDropWhenFull()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+
+        InMemoryEventClient eventClient = new InMemoryEventClient();
+        RequestLogStats stats = new RequestLogStats();
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, null, eventClient, new SystemCurrentTimeMillisProvider(), 1, LogOverflowPolicy.DROP, stats);
+        for (int i = 0; i < 10_000; i++) {
+            logger.log(request, response);
+        }
+        logger.stop();
+
+        // every entry is either written or counted as dropped, and events are never dropped
+        long written = Files.readLines(file, Charsets.UTF_8).size();
+        Assert.assertEquals(stats.getWritten().getTotalCount(), written);
+        Assert.assertEquals(written + stats.getDropped().getTotalCount(), 10_000);
+        Assert.assertEquals(eventClient.getEvents().size(), 10_000);
+    }
 }
@@ -17,13 +17,20 @@ package io.airlift.http.server;
 
 import com.google.common.collect.ImmutableMap;
 import io.airlift.configuration.testing.ConfigAssertions;
+import io.airlift.http.server.HttpServerConfig.LogFormat;
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
+import io.airlift.http.server.HttpServerConfig.RateLimitKey;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import org.testng.annotations.Test;
 
+import javax.validation.constraints.AssertTrue;
+
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static io.airlift.testing.ValidationAssertions.assertFailsValidation;
+
 public class TestHttpServerConfig
 {
     @Test
@@ -38,6 +45,13 @@ public class TestHttpServerConfig
                 .setKeystorePassword(null)
                 .setLogPath("var/log/http-request.log")
                 .setLogRetentionTime((new Duration(15, TimeUnit.DAYS)))
+                .setLogAsyncEnabled(true)
+                .setLogQueueSize(10_000)
+                .setLogOverflowPolicy(LogOverflowPolicy.BLOCK)
+                .setLogFormat(LogFormat.TEXT)
+                .setLogSamplingRules(null)
+                .setEventSamplingRules(null)
+                .setSamplingSlowRequestThreshold(null)
                 .setMinThreads(2)
                 .setMaxThreads(200)
                 .setThreadMaxIdleTime(new Duration(1, TimeUnit.MINUTES))
@@ -48,6 +62,50 @@ public class TestHttpServerConfig
                 .setAdminMinThreads(2)
                 .setAdminMaxThreads(200)
                 .setMaxRequestHeaderSize(null)
+                .setResourceCacheSize(new DataSize(16, DataSize.Unit.MEGABYTE))
+                .setResourceMaxAge(new Duration(5, TimeUnit.MINUTES))
+                .setPerRouteStatsEnabled(false)
+                .setPerRouteStatsPathTemplates(null)
+                .setPerRouteStatsMaxRoutes(100)
+                .setAdmissionControlEnabled(false)
+                .setAdmissionMaxConcurrentRequests(0)
+                .setAdmissionTargetQueueTime(new Duration(50, TimeUnit.MILLISECONDS))
+                .setAdmissionInterval(new Duration(100, TimeUnit.MILLISECONDS))
+                .setAdmissionMaxQueueTime(new Duration(1, TimeUnit.SECONDS))
+                .setAdmissionExemptPaths(null)
+                .setAdmissionPriorityHeader(null)
+                .setAdmissionRetryAfter(new Duration(1, TimeUnit.SECONDS))
+                .setLifoQueueThreshold(0)
+                .setVirtualThreadsEnabled(false)
+                .setVirtualThreadsMaxConcurrency(10_000)
+                .setVirtualThreadsPlatformThreads(16)
+                .setRateLimitEnabled(false)
+                .setRateLimitKey(RateLimitKey.CLIENT_ADDRESS)
+                .setRateLimitPerRoute(false)
+                .setRateLimitRequestsPerSecond(100)
+                .setRateLimitBurst(100)
+                .setRateLimitMaxKeys(10_000)
+                .setRateLimitIdleTimeout(new Duration(5, TimeUnit.MINUTES))
+                .setRateLimitTrustedProxies(null)
+                .setHttpAcceptors(-1)
+                .setHttpSelectors(-1)
+                .setHttpsAcceptors(-1)
+                .setHttpsSelectors(-1)
+                .setAdminAcceptors(0)
+                .setAdminSelectors(-1)
+                .setAcceptQueueSize(0)
+                .setSocketReceiveBufferSize(null)
+                .setSocketSendBufferSize(null)
+                .setInputBufferSize(null)
+                .setOutputBufferSize(null)
+                .setMaxResponseHeaderSize(null)
+                .setCompressionEnabled(true)
+                .setCompressionLevel(6)
+                .setCompressionMinSize(new DataSize(1, DataSize.Unit.KILOBYTE))
+                .setCompressionMimeTypes(null)
+                .setCompressionExcludedMimeTypes(null)
+                .setCompressionExcludedPaths(null)
+                .setCompressionDeflaterPoolSize(64)
         );
     }
  
@@ -63,6 +121,13 @@ public class TestHttpServerConfig
                 .put("http-server.https.keystore.key", "keystore password")
                 .put("http-server.log.path", "/log")
                 .put("http-server.log.retention-time", "1d")
+                .put("http-server.log.async.enabled", "false")
+                .put("http-server.log.async.queue-size", "100")
+                .put("http-server.log.async.overflow-policy", "DROP")
+                .put("http-server.log.format", "BINARY")
+                .put("http-server.log.sampling.rules", "/v1/status:2xx=0.01")
+                .put("http-server.log.event-sampling.rules", "/health=0")
+                .put("http-server.log.sampling.slow-request-threshold", "1s")
                 .put("http-server.threads.min", "100")
                 .put("http-server.threads.max", "500")
                 .put("http-server.threads.max-idle-time", "10m")
@@ -73,6 +138,50 @@ public class TestHttpServerConfig
                 .put("http-server.admin.threads.min", "3")
                 .put("http-server.admin.threads.max", "4")
                 .put("http-server.max-request-header-size", "32kB")
+                .put("http-server.resources.cache-size", "1MB")
+                .put("http-server.resources.max-age", "1h")
+                .put("http-server.stats.per-route.enabled", "true")
+                .put("http-server.stats.per-route.path-templates", "/v1/query/{queryId}")
+                .put("http-server.stats.per-route.max-routes", "10")
+                .put("http-server.admission.enabled", "true")
+                .put("http-server.admission.max-concurrent-requests", "50")
+                .put("http-server.admission.target-queue-time", "20ms")
+                .put("http-server.admission.interval", "500ms")
+                .put("http-server.admission.max-queue-time", "2s")
+                .put("http-server.admission.exempt-paths", "/v1/status")
+                .put("http-server.admission.priority-header", "X-Priority")
+                .put("http-server.admission.retry-after", "5s")
+                .put("http-server.threads.lifo-queue-threshold", "10")
+                .put("http-server.threads.virtual.enabled", "true")
+                .put("http-server.threads.virtual.max-concurrency", "500")
+                .put("http-server.threads.virtual.platform-threads", "8")
+                .put("http-server.rate-limit.enabled", "true")
+                .put("http-server.rate-limit.key", "USER")
+                .put("http-server.rate-limit.per-route", "true")
+                .put("http-server.rate-limit.requests-per-second", "2.5")
+                .put("http-server.rate-limit.burst", "5")
+                .put("http-server.rate-limit.max-keys", "1000")
+                .put("http-server.rate-limit.idle-timeout", "1m")
+                .put("http-server.rate-limit.trusted-proxies", "203.0.113.0/24")
+                .put("http-server.http.acceptors", "2")
+                .put("http-server.http.selectors", "4")
+                .put("http-server.https.acceptors", "3")
+                .put("http-server.https.selectors", "5")
+                .put("http-server.admin.acceptors", "1")
+                .put("http-server.admin.selectors", "1")
+                .put("http-server.accept-queue-size", "1024")
+                .put("http-server.socket.receive-buffer-size", "256kB")
+                .put("http-server.socket.send-buffer-size", "512kB")
+                .put("http-server.input-buffer-size", "8kB")
+                .put("http-server.output-buffer-size", "64kB")
+                .put("http-server.max-response-header-size", "16kB")
+                .put("http-server.compression.enabled", "false")
+                .put("http-server.compression.level", "1")
+                .put("http-server.compression.min-size", "256B")
+                .put("http-server.compression.mime-types", "application/json, text/*")
+                .put("http-server.compression.excluded-mime-types", "text/event-stream")
+                .put("http-server.compression.excluded-paths", "/v1/stream")
+                .put("http-server.compression.deflater-pool-size", "8")
                 .build();
 
         HttpServerConfig expected = new HttpServerConfig()
@@ -84,11 +193,62 @@ public class TestHttpServerConfig
                 .setKeystorePassword("keystore password")
                 .setLogPath("/log")
                 .setLogRetentionTime(new Duration(1, TimeUnit.DAYS))
+                .setLogAsyncEnabled(false)
+                .setLogQueueSize(100)
+                .setLogOverflowPolicy(LogOverflowPolicy.DROP)
+                .setLogFormat(LogFormat.BINARY)
+                .setLogSamplingRules("/v1/status:2xx=0.01")
+                .setEventSamplingRules("/health=0")
+                .setSamplingSlowRequestThreshold(new Duration(1, TimeUnit.SECONDS))
                 .setMinThreads(100)
                 .setMaxThreads(500)
                 .setThreadMaxIdleTime(new Duration(10, TimeUnit.MINUTES))
                 .setNetworkMaxIdleTime(new Duration(20, TimeUnit.MINUTES))
                 .setMaxRequestHeaderSize(new DataSize(32, DataSize.Unit.KILOBYTE))
+                .setResourceCacheSize(new DataSize(1, DataSize.Unit.MEGABYTE))
+                .setResourceMaxAge(new Duration(1, TimeUnit.HOURS))
+                .setPerRouteStatsEnabled(true)
+                .setPerRouteStatsPathTemplates("/v1/query/{queryId}")
+                .setPerRouteStatsMaxRoutes(10)
+                .setAdmissionControlEnabled(true)
+                .setAdmissionMaxConcurrentRequests(50)
+                .setAdmissionTargetQueueTime(new Duration(20, TimeUnit.MILLISECONDS))
+                .setAdmissionInterval(new Duration(500, TimeUnit.MILLISECONDS))
+                .setAdmissionMaxQueueTime(new Duration(2, TimeUnit.SECONDS))
+                .setAdmissionExemptPaths("/v1/status")
+                .setAdmissionPriorityHeader("X-Priority")
+                .setAdmissionRetryAfter(new Duration(5, TimeUnit.SECONDS))
+                .setLifoQueueThreshold(10)
+                .setVirtualThreadsEnabled(true)
+                .setVirtualThreadsMaxConcurrency(500)
+                .setVirtualThreadsPlatformThreads(8)
+                .setRateLimitEnabled(true)
+                .setRateLimitKey(RateLimitKey.USER)
+                .setRateLimitPerRoute(true)
+                .setRateLimitRequestsPerSecond(2.5)
+                .setRateLimitBurst(5)
+                .setRateLimitMaxKeys(1000)
+                .setRateLimitIdleTimeout(new Duration(1, TimeUnit.MINUTES))
+                .setRateLimitTrustedProxies("203.0.113.0/24")
+                .setHttpAcceptors(2)
+                .setHttpSelectors(4)
+                .setHttpsAcceptors(3)
+                .setHttpsSelectors(5)
+                .setAdminAcceptors(1)
+                .setAdminSelectors(1)
+                .setAcceptQueueSize(1024)
+                .setSocketReceiveBufferSize(new DataSize(256, DataSize.Unit.KILOBYTE))
+                .setSocketSendBufferSize(new DataSize(512, DataSize.Unit.KILOBYTE))
+                .setInputBufferSize(new DataSize(8, DataSize.Unit.KILOBYTE))
+                .setOutputBufferSize(new DataSize(64, DataSize.Unit.KILOBYTE))
+                .setMaxResponseHeaderSize(new DataSize(16, DataSize.Unit.KILOBYTE))
+                .setCompressionEnabled(false)
+                .setCompressionLevel(1)
+                .setCompressionMinSize(new DataSize(256, DataSize.Unit.BYTE))
+                .setCompressionMimeTypes("application/json, text/*")
+                .setCompressionExcludedMimeTypes("text/event-stream")
+                .setCompressionExcludedPaths("/v1/stream")
+                .setCompressionDeflaterPoolSize(8)
                 .setUserAuthFile("/auth")
                 .setAdminEnabled(false)
                 .setAdminPort(3)
@@ -97,4 +257,37 @@ public class TestHttpServerConfig
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
+
+    @Test
+    public void testValidations()
+    {
+        assertFailsValidation(new HttpServerConfig().setLogSamplingRules("/v1/status:2xx"),
+                "samplingRulesValid",
+                "sampling rules must be comma separated <path-prefix>[:<status-class>]=<rate>",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setEventSamplingRules("/v1/status:6xx=0.5"),
+                "samplingRulesValid",
+                "sampling rules must be comma separated <path-prefix>[:<status-class>]=<rate>",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setPerRouteStatsPathTemplates("/v1/query, v1/status"),
+                "perRouteStatsPathTemplatesValid",
+                "per-route stats path templates must start with '/'",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setAdmissionTargetQueueTime(new Duration(2, TimeUnit.SECONDS)),
+                "admissionQueueTimeValid",
+                "admission target queue time must not exceed max queue time",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setRateLimitTrustedProxies("10.0.0.0/8, 192.0.2.1"),
+                "rateLimitTrustedProxiesValid",
+                "rate limit trusted proxies must be comma separated CIDR networks",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setRateLimitTrustedProxies("::1/128"),
+                "rateLimitTrustedProxiesValid",
+                "rate limit trusted proxies must be comma separated CIDR networks",
+                AssertTrue.class);
+        assertFailsValidation(new HttpServerConfig().setHttpsSelectors(0),
+                "selectorsValid",
+                "selectors must be -1 for the Jetty default or greater than zero",
+                AssertTrue.class);
+    }
 }
@@ -0,0 +1,107 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.http.server.PerRouteStats.OTHER;
+import static io.airlift.http.server.PerRouteStats.compileTemplate;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestPerRouteStats
+{
+    private static final Duration TEN_MILLIS = new Duration(10, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void testTemplates()
+    {
+        assertTrue(compileTemplate("/v1/query/{queryId}").matcher("/v1/query/abc").matches());
+        assertFalse(compileTemplate("/v1/query/{queryId}").matcher("/v1/query/abc/def").matches());
+        assertFalse(compileTemplate("/v1/query/{queryId}").matcher("/v1/query/").matches());
+        assertTrue(compileTemplate("/v1/{type}/{id}.json").matcher("/v1/node/1.json").matches());
+        assertFalse(compileTemplate("/v1/{type}/{id}.json").matcher("/v1/node/1xjson").matches());
+        assertTrue(compileTemplate("/v1/status").matcher("/v1/status").matches());
+    }
+
+    @Test
+    public void testRouteLookup()
+    {
+        PerRouteStats stats = new PerRouteStats(ImmutableList.of("/v1/query/{queryId}", "/v1/query"), 3);
+
+        RouteStats query = stats.getRouteStats(null, "/v1/query/123");
+        assertSame(stats.getRouteStats(null, "/v1/query/456"), query);
+        assertSame(stats.getRoutes().get("/v1/query/{queryId}"), query);
+        assertSame(stats.getRouteStats(null, "/v1/query"), stats.getRoutes().get("/v1/query"));
+        assertSame(stats.getRouteStats(null, "/v1/other"), stats.getRoutes().get(OTHER));
+
+        // the route attribute takes precedence over templates
+        RouteStats resource = stats.getRouteStats("QueryResource.getQuery", "/v1/query/123");
+        assertNotSame(resource, query);
+        assertSame(stats.getRouteStats("QueryResource.getQuery", "/v1/query/123"), resource);
+        assertEquals(stats.getRouteCount(), 3);
+
+        // new routes beyond the cap share the other entry
+        assertSame(stats.getRouteStats("QueryResource.cancelQuery", "/v1/query/123"), stats.getRoutes().get(OTHER));
+        assertEquals(stats.getRouteCount(), 3);
+    }
+
+    @Test
+    public void testStatusClasses()
+    {
+        PerRouteStats stats = new PerRouteStats(ImmutableList.of("/v1/query/{queryId}"), 10);
+        RouteStats route = stats.getRouteStats(null, "/v1/query/1");
+        route.record(200, TEN_MILLIS);
+        route.record(204, TEN_MILLIS);
+        route.record(404, TEN_MILLIS);
+        route.record(503, TEN_MILLIS);
+        route.record(0, TEN_MILLIS);
+
+        assertEquals(route.getRequestCount(), 5);
+        assertEquals(route.getSuccess(), 2);
+        assertEquals(route.getClientError(), 1);
+        assertEquals(route.getServerError(), 1);
+        assertEquals(route.getStatusClassCounts(), ImmutableMap.builder()
+                .put("other", 1L)
+                .put("1xx", 0L)
+                .put("2xx", 2L)
+                .put("3xx", 0L)
+                .put("4xx", 1L)
+                .put("5xx", 1L)
+                .build());
+        assertEquals(route.getSuccessTime().getAllTime().getCount(), 2.0);
+        assertEquals(route.getRequestTime().getAllTime().getCount(), 5.0);
+
+        assertEquals(stats.getRequestCounts(), ImmutableMap.of("/v1/query/{queryId}", 5L, OTHER, 0L));
+        assertEquals(stats.getServerErrorCounts().get("/v1/query/{queryId}"), (Long) 1L);
+        assertEquals(stats.getStatusClassCounts("/v1/query/{queryId}"), route.getStatusClassCounts());
+        assertEquals(stats.getStatusClassCounts("missing"), ImmutableMap.of());
+    }
+
+    @Test
+    public void testRequestStats()
+    {
+        RequestStats disabled = new RequestStats();
+        disabled.record("QueryResource.getQuery", "/v1/query/1", "GET", 200, 0, 0, TEN_MILLIS, TEN_MILLIS);
+        assertEquals(disabled.getRoutes().getRouteCount(), 0);
+        assertEquals(disabled.getRequest().getTotalCount(), 1);
+
+        RequestStats enabled = new RequestStats(new HttpServerConfig()
+                .setPerRouteStatsEnabled(true)
+                .setPerRouteStatsPathTemplates("/v1/query/{queryId}, /v1/status"));
+        enabled.record("QueryResource.getQuery", "/v1/query/1", "GET", 200, 0, 0, TEN_MILLIS, TEN_MILLIS);
+        enabled.record(null, "/v1/status", "GET", 500, 0, 0, TEN_MILLIS, TEN_MILLIS);
+        assertEquals(enabled.getRoutes().getRequestCounts(), ImmutableMap.of(
+                "/v1/query/{queryId}", 0L,
+                "/v1/status", 1L,
+                "QueryResource.getQuery", 1L,
+                OTHER, 0L));
+        assertEquals(enabled.getRequest().getTotalCount(), 2);
+    }
+}
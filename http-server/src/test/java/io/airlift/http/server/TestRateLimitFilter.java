@@ -0,0 +1,195 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.http.server.HttpServerConfig.RateLimitKey;
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestRateLimitFilter
+{
+    private TestingTicker ticker;
+    private HttpServerConfig config;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        config = new HttpServerConfig()
+                .setRateLimitEnabled(true)
+                .setRateLimitRequestsPerSecond(2)
+                .setRateLimitBurst(2);
+    }
+
+    @Test
+    public void testDisabled()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config.setRateLimitEnabled(false), ticker);
+
+        for (int i = 0; i < 10; i++) {
+            assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        }
+        assertEquals(filter.getKeyCount(), 0);
+    }
+
+    @Test
+    public void testTokenBucket()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config, ticker);
+
+        assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        assertRejected(filter, request("1.2.3.4", "/v1/query"), "1");
+
+        // other clients have their own bucket
+        assertAllowed(filter, request("5.6.7.8", "/v1/query"));
+
+        // one token is added every 500ms
+        ticker.increment(500, TimeUnit.MILLISECONDS);
+        assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        assertRejected(filter, request("1.2.3.4", "/v1/query"), "1");
+
+        assertEquals(filter.getAllowed().getTotalCount(), 4);
+        assertEquals(filter.getRejected().getTotalCount(), 2);
+        assertEquals(filter.getTopRejectedKeys(), ImmutableMap.of("1.2.3.4", 2L));
+    }
+
+    @Test
+    public void testRetryAfter()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config.setRateLimitRequestsPerSecond(0.25).setRateLimitBurst(1), ticker);
+
+        assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        ticker.increment(1, TimeUnit.SECONDS);
+        assertRejected(filter, request("1.2.3.4", "/v1/query"), "3");
+    }
+
+    @Test
+    public void testForwardedFor()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config, ticker);
+
+        HttpServletRequest request = request("10.0.0.1", "/v1/query");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(Collections.singleton("1.2.3.4, 10.0.0.2")));
+        assertEquals(filter.getKey(request), "1.2.3.4");
+    }
+
+    @Test
+    public void testSpoofedForwardedFor()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config, ticker);
+
+        // a client that connects directly cannot choose its key
+        HttpServletRequest request = request("5.6.7.8", "/v1/query");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(Collections.singleton("1.2.3.4")));
+        assertEquals(filter.getKey(request), "5.6.7.8");
+
+        // entries added before a trusted proxy are ignored
+        filter = new RateLimitFilter(config.setRateLimitTrustedProxies("203.0.113.0/24"), ticker);
+        request = request("203.0.113.7", "/v1/query");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(Collections.singleton("9.9.9.9, 1.2.3.4")));
+        assertEquals(filter.getKey(request), "1.2.3.4");
+
+        request = request("203.0.113.7", "/v1/query");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(Collections.singleton("bogus")));
+        assertEquals(filter.getKey(request), "bogus");
+    }
+
+    @Test
+    public void testKeys()
+            throws Exception
+    {
+        config.setPerRouteStatsPathTemplates("/v1/query/{queryId}");
+
+        HttpServletRequest anonymous = request("1.2.3.4", "/v1/query/abc");
+        HttpServletRequest authenticated = request("1.2.3.4", "/v1/query/abc");
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn("alice");
+        when(authenticated.getUserPrincipal()).thenReturn(principal);
+
+        RateLimitFilter filter = new RateLimitFilter(config.setRateLimitKey(RateLimitKey.USER), ticker);
+        assertEquals(filter.getKey(anonymous), "1.2.3.4");
+        assertEquals(filter.getKey(authenticated), "alice");
+
+        filter = new RateLimitFilter(config.setRateLimitKey(RateLimitKey.CLIENT_ADDRESS).setRateLimitPerRoute(true), ticker);
+        assertEquals(filter.getKey(anonymous), "1.2.3.4 /v1/query/{queryId}");
+        assertEquals(filter.getKey(request("1.2.3.4", "/v1/status")), "1.2.3.4 other");
+
+        filter = new RateLimitFilter(config.setRateLimitKey(RateLimitKey.ROUTE), ticker);
+        assertEquals(filter.getKey(authenticated), "/v1/query/{queryId}");
+    }
+
+    @Test
+    public void testMaxKeys()
+            throws Exception
+    {
+        RateLimitFilter filter = new RateLimitFilter(config
+                .setRateLimitMaxKeys(1)
+                .setRateLimitIdleTimeout(new Duration(10, TimeUnit.SECONDS)), ticker);
+
+        assertAllowed(filter, request("1.2.3.4", "/v1/query"));
+        assertEquals(filter.getKeyCount(), 1);
+
+        // new keys share the overflow bucket while the map is full
+        assertAllowed(filter, request("5.6.7.8", "/v1/query"));
+        assertAllowed(filter, request("9.9.9.9", "/v1/query"));
+        assertRejected(filter, request("5.6.7.8", "/v1/query"), "1");
+        assertEquals(filter.getKeyCount(), 1);
+        assertEquals(filter.getTopRejectedKeys(), ImmutableMap.of("overflow", 1L));
+
+        // the idle bucket is evicted to make room
+        ticker.increment(11, TimeUnit.SECONDS);
+        assertAllowed(filter, request("5.6.7.8", "/v1/query"));
+        assertEquals(filter.getKeyCount(), 1);
+        assertEquals(filter.getTopRejectedKeys(), ImmutableMap.of("overflow", 1L));
+    }
+
+    private static HttpServletRequest request(String remoteAddress, String path)
+    {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn(remoteAddress);
+        when(request.getRequestURI()).thenReturn(path);
+        return request;
+    }
+
+    private static void assertAllowed(RateLimitFilter filter, HttpServletRequest request)
+            throws Exception
+    {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(response, never()).sendError(RateLimitFilter.TOO_MANY_REQUESTS);
+    }
+
+    private static void assertRejected(RateLimitFilter filter, HttpServletRequest request, String retryAfter)
+            throws Exception
+    {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+        verify(chain, never()).doFilter(request, response);
+        verify(response).setHeader("Retry-After", retryAfter);
+        verify(response).sendError(RateLimitFilter.TOO_MANY_REQUESTS);
+    }
+}
@@ -0,0 +1,59 @@
+package io.airlift.http.server;
+
+import io.airlift.http.server.HttpServerConfig.LogOverflowPolicy;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestRequestLogQueue
+{
+    @Test(timeOut = 10000)
+    public void testFailedEntryDoesNotStopWriter()
+            throws Exception
+    {
+        final HttpRequestEvent bad = mockEvent("/bad");
+        final List<HttpRequestEvent> appended = new CopyOnWriteArrayList<>();
+        RequestLogStats stats = new RequestLogStats();
+
+        // a queue much smaller than the number of entries blocks if the writer dies
+        RequestLogQueue queue = new RequestLogQueue(4, LogOverflowPolicy.BLOCK, stats, new RequestLogQueue.Sink()
+        {
+            @Override
+            public void append(HttpRequestEvent event)
+            {
+                if (event == bad) {
+                    throw new IllegalStateException("cannot format entry");
+                }
+                appended.add(event);
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+        });
+
+        queue.enqueue(bad);
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(mockEvent("/good"));
+        }
+        queue.stop();
+
+        assertEquals(appended.size(), 100);
+        assertEquals(stats.getFailed().getTotalCount(), 1);
+        assertEquals(stats.getWritten().getTotalCount(), 100);
+        assertEquals(stats.getDropped().getTotalCount(), 0);
+    }
+
+    private static HttpRequestEvent mockEvent(String uri)
+    {
+        HttpRequestEvent event = mock(HttpRequestEvent.class);
+        when(event.getRequestUri()).thenReturn(uri);
+        return event;
+    }
+}
@@ -0,0 +1,151 @@
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.server.RequestLogSampler.Rule;
+import io.airlift.units.Duration;
+import org.joda.time.DateTime;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.http.server.RequestLogSampler.getPath;
+import static io.airlift.http.server.RequestLogSampler.parseRules;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestRequestLogSampler
+{
+    @Test
+    public void testParseRules()
+    {
+        List<Rule> rules = parseRules(" /v1/status:2xx=0.01, /health=0 ,,/v1:5xx=1");
+        assertEquals(rules.size(), 3);
+        assertRule(rules.get(0), "/v1/status", 2, 0.01);
+        assertRule(rules.get(1), "/health", 0, 0);
+        assertRule(rules.get(2), "/v1", 5, 1);
+
+        assertEquals(parseRules(null), ImmutableList.of());
+        assertEquals(parseRules(""), ImmutableList.of());
+    }
+
+    @Test
+    public void testParseInvalidRules()
+    {
+        for (String rule : ImmutableList.of("/v1", "/v1=", "/v1=abc", "/v1=1.5", "/v1=-0.1", "v1=0.5", "/v1:2xy=0.5", "/v1:6xx=0.5", "=0.5")) {
+            try {
+                parseRules(rule);
+                throw new AssertionError("expected rule to be rejected: " + rule);
+            }
+            catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testGetPath()
+    {
+        assertEquals(getPath("/v1/status?x=1"), "/v1/status");
+        assertEquals(getPath("/v1/status"), "/v1/status");
+        assertEquals(getPath("http://www.example.com/aaa/ccc?param=1"), "/aaa/ccc");
+        assertEquals(getPath("http://www.example.com"), "/");
+        assertEquals(getPath(null), "");
+    }
+
+    @Test
+    public void testSampling()
+    {
+        RequestLogStats stats = new RequestLogStats();
+        RequestLogSampler sampler = new RequestLogSampler(
+                parseRules("/v1/status:2xx=0,/health=0"),
+                parseRules("/v1/status=0"),
+                new Duration(1, TimeUnit.SECONDS),
+                stats);
+
+        // sampled out of the log only for 2xx
+        assertFalse(sampler.shouldLog(event("/v1/status?full=true", 200, 10)));
+        assertTrue(sampler.shouldLog(event("/v1/status", 500, 10)));
+        assertTrue(sampler.shouldLog(event("/v1/status", 404, 10)));
+        // slow requests are always kept
+        assertTrue(sampler.shouldLog(event("/v1/status", 200, 1000)));
+        assertFalse(sampler.shouldLog(event("/health", 200, 10)));
+        assertTrue(sampler.shouldLog(event("/v1/other", 200, 10)));
+
+        // events are controlled separately
+        assertFalse(sampler.shouldPostEvent(event("/v1/status", 200, 10)));
+        assertTrue(sampler.shouldPostEvent(event("/health", 200, 10)));
+
+        assertEquals(stats.getLogSampledOut().getTotalCount(), 2);
+        assertEquals(stats.getEventSampledOut().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testErrorsAreKept()
+    {
+        RequestLogStats stats = new RequestLogStats();
+        RequestLogSampler sampler = new RequestLogSampler(
+                parseRules("/health=0,/v1:5xx=0,/static:4xx=0"),
+                parseRules("/=0"),
+                null,
+                stats);
+
+        // a rule without a status class only drops successful responses
+        assertFalse(sampler.shouldLog(event("/health", 200, 10)));
+        assertTrue(sampler.shouldLog(event("/health", 503, 10)));
+        assertTrue(sampler.shouldLog(event("/health", 404, 10)));
+        assertFalse(sampler.shouldPostEvent(event("/health", 200, 10)));
+        assertTrue(sampler.shouldPostEvent(event("/health", 500, 10)));
+        assertTrue(sampler.shouldPostEvent(event("/health", 429, 10)));
+
+        // server errors are kept even by a rule that names them
+        assertTrue(sampler.shouldLog(event("/v1/items", 500, 10)));
+
+        // client errors are sampled only by a rule that names them
+        assertFalse(sampler.shouldLog(event("/static/missing.png", 404, 10)));
+        assertTrue(sampler.shouldLog(event("/static/missing.png", 500, 10)));
+
+        assertEquals(stats.getLogSampledOut().getTotalCount(), 2);
+        assertEquals(stats.getEventSampledOut().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testFirstMatchingRuleWins()
+    {
+        RequestLogSampler sampler = new RequestLogSampler(
+                parseRules("/v1/status=1,/v1=0"),
+                ImmutableList.<Rule>of(),
+                null,
+                new RequestLogStats());
+
+        assertTrue(sampler.shouldLog(event("/v1/status", 200, 10)));
+        assertFalse(sampler.shouldLog(event("/v1/other", 200, 10)));
+        assertTrue(sampler.shouldPostEvent(event("/v1/other", 200, 10)));
+    }
+
+    @Test
+    public void testSampleRate()
+    {
+        RequestLogSampler sampler = new RequestLogSampler(parseRules("/=0.25"), ImmutableList.<Rule>of(), null, new RequestLogStats());
+
+        int kept = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (sampler.shouldLog(event("/v1/status", 200, 1))) {
+                kept++;
+            }
+        }
+        assertTrue(kept > 23_000 && kept < 27_000, "kept " + kept);
+    }
+
+    private static void assertRule(Rule rule, String pathPrefix, int statusClass, double rate)
+    {
+        assertEquals(rule.getPathPrefix(), pathPrefix);
+        assertEquals(rule.getStatusClass(), statusClass);
+        assertEquals(rule.getRate(), rate);
+    }
+
+    private static HttpRequestEvent event(String uri, int status, long timeToLastByte)
+    {
+        return new HttpRequestEvent(new DateTime(), null, "1.1.1.1", "http", "GET", uri, null, null, null, 0, null, 0, status, null, 0, null, timeToLastByte);
+    }
+}
@@ -0,0 +1,87 @@
+package io.airlift.http.server;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestRingBuffer
+{
+    @Test
+    public void testCapacityIsRoundedToPowerOfTwo()
+    {
+        assertEquals(new RingBuffer<String>(1).capacity(), 1);
+        assertEquals(new RingBuffer<String>(8).capacity(), 8);
+        assertEquals(new RingBuffer<String>(1000).capacity(), 1024);
+    }
+
+    @Test
+    public void testFirstInFirstOut()
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        assertNull(buffer.poll());
+
+        // wrap around the array several times
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(4));
+            assertEquals(buffer.size(), 4);
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals(buffer.poll(), (Integer) i);
+            }
+            assertNull(buffer.poll());
+            assertEquals(buffer.size(), 0);
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers()
+            throws Exception
+    {
+        final int producers = 8;
+        final int elementsPerProducer = 100_000;
+        final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int element = 0; element < elementsPerProducer; element++) {
+                        while (!buffer.offer(element)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        long sum = 0;
+        int polled = 0;
+        while (polled < producers * elementsPerProducer) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                sum += element;
+                polled++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(sum, (long) producers * elementsPerProducer * (elementsPerProducer - 1) / 2);
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,145 @@
+package io.airlift.http.server;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestVirtualThreadPool
+{
+    private VirtualThreadPool pool;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        pool = new VirtualThreadPool("test-worker", 4, 1, 100, 60_000);
+        pool.start();
+    }
+
+    @AfterMethod
+    public void teardown()
+            throws Exception
+    {
+        pool.stop();
+    }
+
+    @Test
+    public void testPlatformThreadsBeforeDispatching()
+            throws Exception
+    {
+        assertTrue(runOn(pool).startsWith("test-worker-"));
+        assertFalse(pool.isLowOnThreads());
+
+        pool.startDispatching();
+        assertTrue(runOn(pool).startsWith(pool.isVirtual() ? "test-worker-virtual-" : "test-worker-elastic-"));
+    }
+
+    @Test
+    public void testMaxConcurrency()
+            throws Exception
+    {
+        pool.startDispatching();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        pool.execute(blocking);
+        pool.execute(blocking);
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(pool.getBusyThreads(), 1);
+        assertEquals(pool.getQueueSize(), 1);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(pool.getQueueSize(), 0);
+    }
+
+    @Test
+    public void testPlatformWorkersAreBounded()
+            throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool("test-bounded", 4, 10_000, 1, 60_000);
+        pool.start();
+        try {
+            pool.startDispatching();
+
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(2);
+            Runnable blocking = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            };
+            pool.execute(blocking);
+            pool.execute(blocking);
+
+            // without virtual threads, the second job waits for the only worker thread
+            int expectedBusy = pool.isVirtual() ? 2 : 1;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getBusyThreads() < expectedBusy) {
+                assertTrue(System.nanoTime() < deadline, "jobs did not start");
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(pool.getBusyThreads(), expectedBusy);
+            assertEquals(pool.getQueueSize(), 2 - expectedBusy);
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.stop();
+        }
+    }
+
+    private static String runOn(VirtualThreadPool pool)
+            throws InterruptedException
+    {
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                threadName.set(Thread.currentThread().getName());
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return threadName.get();
+    }
+}
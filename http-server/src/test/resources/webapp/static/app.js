@@ -0,0 +1,61 @@
+// test script served by TestClassPathResourceHandler
+function item0() { return "item number 0 of the test script"; }
+function item1() { return "item number 1 of the test script"; }
+function item2() { return "item number 2 of the test script"; }
+function item3() { return "item number 3 of the test script"; }
+function item4() { return "item number 4 of the test script"; }
+function item5() { return "item number 5 of the test script"; }
+function item6() { return "item number 6 of the test script"; }
+function item7() { return "item number 7 of the test script"; }
+function item8() { return "item number 8 of the test script"; }
+function item9() { return "item number 9 of the test script"; }
+function item10() { return "item number 10 of the test script"; }
+function item11() { return "item number 11 of the test script"; }
+function item12() { return "item number 12 of the test script"; }
+function item13() { return "item number 13 of the test script"; }
+function item14() { return "item number 14 of the test script"; }
+function item15() { return "item number 15 of the test script"; }
+function item16() { return "item number 16 of the test script"; }
+function item17() { return "item number 17 of the test script"; }
+function item18() { return "item number 18 of the test script"; }
+function item19() { return "item number 19 of the test script"; }
+function item20() { return "item number 20 of the test script"; }
+function item21() { return "item number 21 of the test script"; }
+function item22() { return "item number 22 of the test script"; }
+function item23() { return "item number 23 of the test script"; }
+function item24() { return "item number 24 of the test script"; }
+function item25() { return "item number 25 of the test script"; }
+function item26() { return "item number 26 of the test script"; }
+function item27() { return "item number 27 of the test script"; }
+function item28() { return "item number 28 of the test script"; }
+function item29() { return "item number 29 of the test script"; }
+function item30() { return "item number 30 of the test script"; }
+function item31() { return "item number 31 of the test script"; }
+function item32() { return "item number 32 of the test script"; }
+function item33() { return "item number 33 of the test script"; }
+function item34() { return "item number 34 of the test script"; }
+function item35() { return "item number 35 of the test script"; }
+function item36() { return "item number 36 of the test script"; }
+function item37() { return "item number 37 of the test script"; }
+function item38() { return "item number 38 of the test script"; }
+function item39() { return "item number 39 of the test script"; }
+function item40() { return "item number 40 of the test script"; }
+function item41() { return "item number 41 of the test script"; }
+function item42() { return "item number 42 of the test script"; }
+function item43() { return "item number 43 of the test script"; }
+function item44() { return "item number 44 of the test script"; }
+function item45() { return "item number 45 of the test script"; }
+function item46() { return "item number 46 of the test script"; }
+function item47() { return "item number 47 of the test script"; }
+function item48() { return "item number 48 of the test script"; }
+function item49() { return "item number 49 of the test script"; }
+function item50() { return "item number 50 of the test script"; }
+function item51() { return "item number 51 of the test script"; }
+function item52() { return "item number 52 of the test script"; }
+function item53() { return "item number 53 of the test script"; }
+function item54() { return "item number 54 of the test script"; }
+function item55() { return "item number 55 of the test script"; }
+function item56() { return "item number 56 of the test script"; }
+function item57() { return "item number 57 of the test script"; }
+function item58() { return "item number 58 of the test script"; }
+function item59() { return "item number 59 of the test script"; }
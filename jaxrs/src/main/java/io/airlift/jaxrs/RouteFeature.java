@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jaxrs;
+
+import io.airlift.http.server.PerRouteStats;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Names the route of each request after the matched resource method, as
+ * {@code ResourceClass.method}, so the server can keep per-route statistics.
+ * The route is stored in the {@value PerRouteStats#ROUTE_ATTRIBUTE} request
+ * attribute.
+ */
+@Provider
+public class RouteFeature
+        implements DynamicFeature
+{
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context)
+    {
+        String route = resourceInfo.getResourceClass().getSimpleName() + "." + resourceInfo.getResourceMethod().getName();
+        context.register(new RouteFilter(route));
+    }
+
+    private static class RouteFilter
+            implements ContainerRequestFilter
+    {
+        private final String route;
+
+        private RouteFilter(String route)
+        {
+            this.route = route;
+        }
+
+        @Override
+        public void filter(ContainerRequestContext request)
+        {
+            // the servlet container stores request properties as servlet request attributes
+            request.setProperty(PerRouteStats.ROUTE_ATTRIBUTE, route);
+        }
+    }
+}
@@ -77,6 +77,9 @@ public class SmileMapper
 
     public static final Logger log = Logger.get(SmileMapper.class);
 
+    // factories are thread safe and expensive to create
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+
     private final ObjectMapper objectMapper;
 
     @Inject
@@ -122,7 +125,7 @@ public class SmileMapper
     {
         Object object;
         try {
-            JsonParser jsonParser = new SmileFactory().createParser(inputStream);
+            JsonParser jsonParser = SMILE_FACTORY.createParser(inputStream);
 
             // Important: we are NOT to close the underlying stream after
             // mapping, so we need to instruct parser:
@@ -178,7 +181,7 @@ public class SmileMapper
             OutputStream outputStream)
             throws IOException
     {
-        JsonGenerator jsonGenerator = new SmileFactory().createGenerator(outputStream);
+        JsonGenerator jsonGenerator = SMILE_FACTORY.createGenerator(outputStream);
 
         // Important: we are NOT to close the underlying stream after
         // mapping, so we need to instruct generator:
@@ -0,0 +1,44 @@
+package io.airlift.jaxrs;
+
+import io.airlift.http.server.PerRouteStats;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestRouteFeature
+{
+    @Test
+    public void testRouteAttribute()
+            throws Exception
+    {
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        when(resourceInfo.getResourceClass()).thenReturn((Class) QueryResource.class);
+        when(resourceInfo.getResourceMethod()).thenReturn(QueryResource.class.getMethod("getQuery"));
+        FeatureContext context = mock(FeatureContext.class);
+
+        new RouteFeature().configure(resourceInfo, context);
+
+        ArgumentCaptor<Object> filter = ArgumentCaptor.forClass(Object.class);
+        verify(context).register(filter.capture());
+
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        ((ContainerRequestFilter) filter.getValue()).filter(request);
+        verify(request).setProperty(PerRouteStats.ROUTE_ATTRIBUTE, "QueryResource.getQuery");
+    }
+
+    public static class QueryResource
+    {
+        public String getQuery()
+        {
+            return "query";
+        }
+    }
+}
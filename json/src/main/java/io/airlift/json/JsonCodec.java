@@ -15,6 +15,10 @@
  */
 package io.airlift.json;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Supplier;
@@ -22,7 +26,9 @@ import com.google.common.base.Suppliers;
 import com.google.common.reflect.TypeParameter;
 import com.google.common.reflect.TypeToken;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
@@ -175,6 +181,49 @@ public class JsonCodec<T>
         }
     }
 
+    /**
+     * Coverts the json read from the specified stream into an instance of type T.
+     * The json is parsed as it is read, without buffering the whole stream.
+     * The stream is closed when parsing completes.
+     *
+     * @param json the stream of json to parse
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the json can not be converted to the type T
+     * @throws IOException if the stream can not be read
+     */
+    public T fromJson(InputStream json)
+            throws IllegalArgumentException, IOException
+    {
+        try {
+            return mapper.readValue(json, javaType);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s json stream", javaType), e);
+        }
+    }
+
+    /**
+     * Coverts the data read from the specified stream, in the format of the
+     * specified factory such as a {@code SmileFactory} for binary json, into
+     * an instance of type T. The stream is closed when parsing completes.
+     *
+     * @param factory the factory for the format of the data
+     * @param data the stream of data to parse
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the data can not be converted to the type T
+     * @throws IOException if the stream can not be read
+     */
+    public T fromJson(JsonFactory factory, InputStream data)
+            throws IllegalArgumentException, IOException
+    {
+        try (JsonParser parser = factory.createParser(data)) {
+            return mapper.readValue(parser, javaType);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s %s data", javaType, factory.getFormatName()), e);
+        }
+    }
+
     /**
      * Converts the specified instance to json.
      *
@@ -193,6 +242,28 @@ public class JsonCodec<T>
         }
     }
 
+    /**
+     * Converts the specified instance to bytes in the format of the specified
+     * factory, such as a {@code SmileFactory} for binary json.
+     *
+     * @param factory the factory for the format of the data
+     * @param instance the instance to convert
+     * @return the encoded bytes
+     * @throws IllegalArgumentException if the specified instance can not be converted
+     */
+    public byte[] toJsonBytes(JsonFactory factory, T instance)
+            throws IllegalArgumentException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            mapper.writeValue(generator, instance);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(String.format("%s could not be converted to %s", instance.getClass().getName(), factory.getFormatName()), e);
+        }
+        return out.toByteArray();
+    }
+
     @SuppressWarnings("unchecked")
     TypeToken<T> getTypeToken()
     {
@@ -15,15 +15,19 @@
  */
 package io.airlift.json;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.util.Map;
 
 import static io.airlift.json.JsonCodec.jsonCodec;
 import static io.airlift.json.JsonCodec.listJsonCodec;
 import static io.airlift.json.JsonCodec.mapJsonCodec;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
 
 public class TestJsonCodec
 {
@@ -99,6 +103,23 @@ public class TestJsonCodec
         ImmutablePerson.validatePersonJsonCodec(jsonCodec);
     }
 
+    @Test
+    public void testFromJsonStream()
+            throws Exception
+    {
+        JsonCodec<List<Person>> jsonCodec = listJsonCodec(Person.class);
+        List<Person> expected = ImmutableList.of(new Person().setName("dain").setRocks(true), new Person().setName("martin").setRocks(false));
+
+        assertEquals(jsonCodec.fromJson(new ByteArrayInputStream(jsonCodec.toJsonBytes(expected))), expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFromJsonStreamInvalid()
+            throws Exception
+    {
+        jsonCodec(Person.class).fromJson(new ByteArrayInputStream("{ \"name\": ".getBytes(UTF_8)));
+    }
+
     // todo this should not throw an exception, but jackson will try to write to the private final field. remove this when jackson is fixed
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void testAsymmetricJsonCodec()